@@ -0,0 +1,106 @@
+package com.github.search.benchmarks;
+
+import com.github.search.content.AhoCorasick;
+import com.github.search.content.ByteContentSearcher;
+import com.github.search.utils.Utils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * content match of all the files of a tree with 1, 4 or 16 content words: the decoded line match of
+ * {@link Utils#readAndLineMatch(File, Charset, AhoCorasick, java.util.function.Consumer)} against the
+ * byte search of ---byte_search, on many small files and on a few huge ones. the chunked byte search
+ * cuts the files above 32 MiB in chunks searched on the common fork join pool.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ContentMatchBenchmark {
+    @Param({"SMALL_FILES", "HUGE_FILES"})
+    public SyntheticTrees.Shape shape;
+
+    @Param({"1", "4", "16"})
+    public int wordCount;
+
+    private Path root;
+    private List<File> files;
+    private AhoCorasick wordsMatcher;
+    private ByteContentSearcher byteSearcher;
+    private ByteContentSearcher chunkedSearcher;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        root = SyntheticTrees.create(shape);
+        files = new ArrayList<>();
+        for (Path file : SyntheticTrees.files(root)) {
+            files.add(file.toFile());
+        }
+        List<String> words = Arrays.asList(SyntheticTrees.RARE_WORDS).subList(0, wordCount);
+        wordsMatcher = AhoCorasick.compile(words);
+        byteSearcher = new ByteContentSearcher(words, StandardCharsets.UTF_8, 1024 * 1024);
+        chunkedSearcher = new ByteContentSearcher(words, StandardCharsets.UTF_8, 1024 * 1024, 1);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        SyntheticTrees.delete(root);
+    }
+
+    @Benchmark
+    public int lineMatch(Blackhole blackhole) throws IOException {
+        int matched = 0;
+        for (File file : files) {
+            if(Utils.readAndLineMatch(file, StandardCharsets.UTF_8, wordsMatcher, blackhole::consume)){
+                matched++;
+            }
+        }
+        return matched;
+    }
+
+    @Benchmark
+    public int byteSearch(Blackhole blackhole) throws IOException {
+        int matched = 0;
+        for (File file : files) {
+            if(byteSearcher.search(file, (lineNum, line, wordIndex, byteOffset) -> blackhole.consume(line))){
+                matched++;
+            }
+        }
+        return matched;
+    }
+
+    @Benchmark
+    public int chunkedByteSearch(Blackhole blackhole) throws IOException {
+        int matched = 0;
+        for (File file : files) {
+            if(chunkedSearcher.search(file, (lineNum, line, wordIndex, byteOffset) -> blackhole.consume(line))){
+                matched++;
+            }
+        }
+        return matched;
+    }
+}
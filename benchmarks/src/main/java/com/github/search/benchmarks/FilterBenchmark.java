@@ -0,0 +1,87 @@
+package com.github.search.benchmarks;
+
+import com.github.search.filter.FilterNode;
+import com.github.search.filter.FilterNodes;
+import com.github.search.filter.FilterPlan;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.AccessMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * the predicate chain of a search over the pre-read attributes of the WIDE tree: name, time, size
+ * and access conditions, combined with ---match all or any. no file system access but the access check.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FilterBenchmark {
+    @Param({"true", "false"})
+    public boolean matchAll;
+
+    @Param({"true", "false"})
+    public boolean posixAttrs;
+
+    private Path root;
+    private List<Path> files;
+    private List<BasicFileAttributes> attrs;
+    private FilterPlan filterPlan;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        root = SyntheticTrees.create(SyntheticTrees.Shape.WIDE);
+        files = SyntheticTrees.files(root);
+        attrs = new ArrayList<>(files.size());
+        for (Path file : files) {
+            attrs.add(posixAttrs ? Files.readAttributes(file, PosixFileAttributes.class) : Files.readAttributes(file, BasicFileAttributes.class));
+        }
+
+        List<FilterNode> filters = new ArrayList<>();
+        filters.add(FilterNodes.namePrefixes(Arrays.asList("f1", "f2")));
+        filters.add(FilterNodes.nameSuffixes(Arrays.asList(".log", ".java")));
+        filters.add(FilterNodes.modifiedTimeRange(0, Long.MAX_VALUE));
+        filters.add(FilterNodes.sizeRange(0, 1024 * 1024));
+        filters.add(FilterNodes.access(Collections.singletonList(AccessMode.READ), posixAttrs));
+        filterPlan = FilterPlan.compile(filters, matchAll);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        SyntheticTrees.delete(root);
+    }
+
+    @Benchmark
+    public int filter(){
+        int matched = 0;
+        for (int i = 0; i < files.size(); i++) {
+            if(filterPlan.test(files.get(i), attrs.get(i))){
+                matched++;
+            }
+        }
+        return matched;
+    }
+}
@@ -0,0 +1,102 @@
+package com.github.search.benchmarks;
+
+import com.github.search.content.ContentSearchPipeline;
+import com.github.search.output.FileResults;
+import com.github.search.output.ResultWriter;
+import com.github.search.utils.Utils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * the hand-off cost of the content pipeline: 10000 files through the bounded queue, the workers and
+ * the ordered sink with a content search that does nothing but emit one match per 10 files.
+ * compare with {@link #direct()}, the same searches on the calling thread.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PipelineBenchmark {
+    private static final int FILES = 10000;
+
+    @Param({"1", "4"})
+    public int workers;
+
+    @Param({"16", "1024"})
+    public int queueCapacity;
+
+    private File[] files;
+    private ThreadPoolExecutor executor;
+    private ResultWriter out;
+    private ContentSearchPipeline.ContentSearch contentSearch;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        files = new File[FILES];
+        for (int i = 0; i < FILES; i++) {
+            files[i] = new File("/bench/f" + i + ".log");
+        }
+        executor = Utils.newUnboundedThreadPool("fast-search-bench", 60);
+        out = new ResultWriter(new OutputStream() {
+            @Override
+            public void write(int b) {
+                // discard.
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                // discard.
+            }
+        }, StandardCharsets.UTF_8, 20);
+        contentSearch = (file, output) -> {
+            boolean matched = file.getName().hashCode() % 10 == 0;
+            if(matched){
+                output.match(file.getPath(), 1, file.getName(), null, -1);
+            }
+            return matched;
+        };
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executor.shutdown();
+        out.close();
+    }
+
+    @Benchmark
+    public void pipeline() throws InterruptedException {
+        ContentSearchPipeline pipeline = new ContentSearchPipeline(contentSearch, out, workers, queueCapacity, executor);
+        for (File file : files) {
+            pipeline.submit(file, 0, 0);
+        }
+        pipeline.finish();
+    }
+
+    @Benchmark
+    public void direct() throws Exception {
+        for (File file : files) {
+            FileResults results = out.results(file, 0, 0);
+            contentSearch.search(file, results);
+            out.write(results);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.github.search.benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * synthetic directory trees of the benchmarks, generated under a temp dir with a fixed seed.
+ * the size of the huge files is set by -Dfast.search.bench.huge.mb (default 64).
+ */
+public final class SyntheticTrees {
+    /**
+     * words of the generated lines, the benchmark content words are taken from the rare ones.
+     * */
+    static final String[] COMMON_WORDS = {"alpha", "beta", "gamma", "delta", "info", "debug", "request", "response",
+            "user", "session", "thread", "cache", "value", "index", "node", "status"};
+    static final String[] RARE_WORDS = {"timeout", "exception", "refused", "overflow", "deadlock", "corrupt",
+            "rollback", "evicted", "throttled", "unreachable", "mismatch", "truncated", "orphaned", "stale",
+            "poisoned", "starved"};
+
+    private SyntheticTrees(){
+        // no instance.
+    }
+
+    public enum Shape {
+        // 8 chains of 64 nested directories, 4 files per directory.
+        DEEP,
+        // 64 directories of 64 files under the root.
+        WIDE,
+        // 16 directories of 1000 files of a few lines.
+        SMALL_FILES,
+        // 2 files of -Dfast.search.bench.huge.mb each.
+        HUGE_FILES,
+        // 16 directories of 16 files, every directory links back to the root and to its parent.
+        SYMLINK_LOOPS
+    }
+
+    public static Path create(Shape shape) throws IOException {
+        Path root = Files.createTempDirectory("fast-search-bench-" + shape.name().toLowerCase() + "-");
+        Random random = new Random(42);
+        switch (shape){
+            case DEEP:
+                for (int chain = 0; chain < 8; chain++) {
+                    Path dir = root;
+                    for (int depth = 0; depth < 64; depth++) {
+                        dir = Files.createDirectories(dir.resolve("d" + chain + "_" + depth));
+                        writeFiles(dir, 4, 20, random);
+                    }
+                }
+                break;
+            case WIDE:
+                for (int i = 0; i < 64; i++) {
+                    writeFiles(Files.createDirectories(root.resolve("w" + i)), 64, 20, random);
+                }
+                break;
+            case SMALL_FILES:
+                for (int i = 0; i < 16; i++) {
+                    writeFiles(Files.createDirectories(root.resolve("s" + i)), 1000, 3, random);
+                }
+                break;
+            case HUGE_FILES:
+                long hugeBytes = Long.getLong("fast.search.bench.huge.mb", 64L) * 1024 * 1024;
+                for (int i = 0; i < 2; i++) {
+                    writeFile(root.resolve("huge" + i + ".log"), hugeBytes, random);
+                }
+                break;
+            case SYMLINK_LOOPS:
+                for (int i = 0; i < 16; i++) {
+                    Path dir = Files.createDirectories(root.resolve("l" + i).resolve("sub"));
+                    writeFiles(dir, 16, 20, random);
+                    Files.createSymbolicLink(dir.resolve("to_root"), root);
+                    Files.createSymbolicLink(dir.resolve("to_parent"), dir.getParent());
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("unknown shape: " + shape);
+        }
+        return root;
+    }
+
+    /**
+     * the regular files of the tree, symbolic links are not followed.
+     * */
+    public static List<Path> files(Path root) throws IOException {
+        List<Path> files = new ArrayList<>();
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if(attrs.isRegularFile()){
+                    files.add(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return files;
+    }
+
+    public static void delete(Path root) throws IOException {
+        if(root == null || !Files.exists(root)){
+            return;
+        }
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private static void writeFiles(Path dir, int count, int lines, Random random) throws IOException {
+        String[] suffixes = {".log", ".txt", ".java", ".xml"};
+        for (int i = 0; i < count; i++) {
+            try(BufferedWriter writer = Files.newBufferedWriter(dir.resolve("f" + i + suffixes[i % suffixes.length]), StandardCharsets.UTF_8)){
+                for (int line = 0; line < lines; line++) {
+                    writer.write(line(random));
+                    writer.newLine();
+                }
+            }
+        }
+    }
+
+    private static void writeFile(Path file, long bytes, Random random) throws IOException {
+        long written = 0;
+        try(BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)){
+            while (written < bytes){
+                String line = line(random);
+                writer.write(line);
+                writer.newLine();
+                written += line.length() + 1;
+            }
+        }
+    }
+
+    /**
+     * about 80 bytes of common words, one line in 100 holds a rare word.
+     * */
+    private static String line(Random random){
+        StringBuilder line = new StringBuilder(96);
+        while (line.length() < 80){
+            if(line.length() > 0){
+                line.append(' ');
+            }
+            line.append(COMMON_WORDS[random.nextInt(COMMON_WORDS.length)]);
+        }
+        if(random.nextInt(100) == 0){
+            line.append(' ').append(RARE_WORDS[random.nextInt(RARE_WORDS.length)]);
+        }
+        return line.toString();
+    }
+}
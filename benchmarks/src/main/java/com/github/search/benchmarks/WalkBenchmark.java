@@ -0,0 +1,58 @@
+package com.github.search.benchmarks;
+
+import com.github.search.utils.Utils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * directory walk of the synthetic trees: the single thread {@code FilterFileVisitor} walk
+ * (walkThreads = 1) against the parallel walker, the file filter is a cheap suffix test.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WalkBenchmark {
+    @Param({"DEEP", "WIDE", "SMALL_FILES", "SYMLINK_LOOPS"})
+    public SyntheticTrees.Shape shape;
+
+    @Param({"1", "4"})
+    public int walkThreads;
+
+    private Path root;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        root = SyntheticTrees.create(shape);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        SyntheticTrees.delete(root);
+    }
+
+    @Benchmark
+    public Collection<String> walk(){
+        File baseDir = root.toFile();
+        return Utils.dirFileScan(baseDir, path -> path.getFileName().toString().endsWith(".log"), walkThreads, 64);
+    }
+}
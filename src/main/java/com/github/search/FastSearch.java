@@ -2,22 +2,35 @@ package com.github.search;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.nio.charset.Charset;
+import java.nio.file.AccessMode;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.List;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
-import java.util.function.Predicate;
+import com.github.search.content.BinaryFiles;
+import com.github.search.content.ByteContentSearcher;
+import com.github.search.content.ContentExecutors;
+import com.github.search.content.ReadOrder;
+import com.github.search.engine.SearchEngine;
+import com.github.search.engine.SearchQuery;
+import com.github.search.engine.SearchSummary;
+import com.github.search.index.FileIndexStore;
+import com.github.search.index.IndexMode;
+import com.github.search.output.ResultFormat;
+import com.github.search.server.LocalSockets;
+import com.github.search.server.SearchClient;
+import com.github.search.server.SearchServer;
 import com.github.search.utils.Tuple;
 import com.github.search.utils.Utils;
 import static com.github.search.utils.Utils.paramIndexSearch;
 
 public class FastSearch {
     private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+    private static final int DEFAULT_PORT = 47123;
 
     private static final String USAGE =
             "usage: " + LINE_SEPARATOR +
@@ -26,21 +39,85 @@ public class FastSearch {
                     "    ---file_prefixes file_prefixes(comma-delimited) " + LINE_SEPARATOR +
                     "    ---file_suffixes file_suffixes(comma-delimited) " + LINE_SEPARATOR +
                     "    ---file_names file_names(comma-delimited) " + LINE_SEPARATOR +
+                    "    ---file_glob file_glob(the file name matches the glob: * ? [a-z] {log,txt}) " + LINE_SEPARATOR +
+                    "    ---file_name_regex file_name_regex(a part of the file name matches the java regex) " + LINE_SEPARATOR +
                     "    ---file_size_range file_size_range(format must be:[min_bytes,max_bytes]) " + LINE_SEPARATOR +
                     "    ---file_modified_time_range file_modified_time_range(format must be:[yyyyMMddHHmmss,yyyyMMddHHmmss]) " + LINE_SEPARATOR +
                     "    ---file_access read|write|execute(comma-delimited) " + LINE_SEPARATOR +
-                    "    ---file_content_words file_content_words(comma-delimited)"
+                    "    ---file_content_words file_content_words(comma-delimited) " + LINE_SEPARATOR +
+                    "    ---file_content_regex file_content_regex(print the lines a part of which matches the java regex, " + LINE_SEPARATOR +
+                    "        a literal every match needs is searched on the file bytes first, not with ---file_content_words) " + LINE_SEPARATOR +
+                    "    ---archives (search the lines inside gzip and zip/jar files, found by their magic bytes, a match names " + LINE_SEPARATOR +
+                    "        the zip entry as archive!/entry) " + LINE_SEPARATOR +
+                    "    ---binary_files skip|bytes|text(files with a nul byte or many control bytes in their first 8 KiB, skip: not searched, " + LINE_SEPARATOR +
+                    "        bytes: the words are searched on the raw bytes and a match prints no line, text: searched as text, default skip) " + LINE_SEPARATOR +
+                    "    ---legacy_charset legacy_charset(charset of the text files that are not ascii, utf-8 or utf-16 with a byte order mark, " + LINE_SEPARATOR +
+                    "        default the platform charset, ISO-8859-1 when it is UTF-8 or US-ASCII) " + LINE_SEPARATOR +
+                    "    ---files_with_matches (print the files whose content matches instead of the lines, a file is read up to its first match) " + LINE_SEPARATOR +
+                    "    ---max_count max_count(matched lines printed per file, the file is read up to the last one) " + LINE_SEPARATOR +
+                    "    ---limit limit(listed files and matched lines or files of the whole search, the walk and the content search " + LINE_SEPARATOR +
+                    "        stop when it is reached) " + LINE_SEPARATOR +
+                    "    ---output text|json|nul|binary(format of the results, json: a json line per file or match with its size, mtime, " + LINE_SEPARATOR +
+                    "        line, byte offset and word, nul: the paths ended by a nul byte, binary: length-prefixed records, " + LINE_SEPARATOR +
+                    "        the run time and the stats go to stderr unless text, default text) " + LINE_SEPARATOR +
+                    "    ---walk_threads walk_threads(parallel directory walk, default 1) " + LINE_SEPARATOR +
+                    "    ---max_open_dirs max_open_dirs(max directory streams open at the same time, default 64) " + LINE_SEPARATOR +
+                    "    ---posix_attrs (read posix attributes in the walk, answer ---file_access from the permission bits) " + LINE_SEPARATOR +
+                    "    ---canonical_paths (canonicalize every walked file on its own instead of resolving it against its real directory) " + LINE_SEPARATOR +
+                    "    ---max_depth max_depth(max depth of the searched files, the files of the dirs are at depth 1, default unlimited) " + LINE_SEPARATOR +
+                    "    ---same_filesystem (do not descend into the directories on another file system than the dir, walk only) " + LINE_SEPARATOR +
+                    "    ---exclude_dirs exclude_dirs(directory names or paths whose sub tree is skipped, comma-delimited) " + LINE_SEPARATOR +
+                    "    ---exclude exclude(gitignore patterns relative to the dirs, a matched directory is not walked, comma-delimited) " + LINE_SEPARATOR +
+                    "    ---ignore_files (skip the entries matched by the .gitignore and .ignore files of the walked directories) " + LINE_SEPARATOR +
+                    "    ---skip_hidden (skip the files and directories whose name starts with a dot) " + LINE_SEPARATOR +
+                    "    ---vcs_dirs (walk the .git, .hg, .svn, .bzr, _darcs and CVS directories, skipped by default) " + LINE_SEPARATOR +
+                    "    ---match all|any(a file must match all the conditions or any of them, default all) " + LINE_SEPARATOR +
+                    "    ---filter_stats (print the selectivity of every condition and the content queue metrics) " + LINE_SEPARATOR +
+                    "    ---stats json|text(print the walk, filter, content and pool metrics of the search at the end, json: one json line) " + LINE_SEPARATOR +
+                    "    ---stats_interval stats_interval(seconds between the metrics dumps to stderr while the search runs, " + LINE_SEPARATOR +
+                    "        the server dumps its search metrics to its log, default none) " + LINE_SEPARATOR +
+                    "    ---byte_search (search the content words on the raw file bytes) " + LINE_SEPARATOR +
+                    "    ---mmap_threshold mmap_threshold(byte search memory maps files of this size or larger, at most 1073741824, default 1048576) " + LINE_SEPARATOR +
+                    "    ---parallel_threshold parallel_threshold(files of this size or larger are byte searched in 32 MiB chunks on all the cores, " + LINE_SEPARATOR +
+                    "        the content words and the literal of ---file_content_regex, default 268435456) " + LINE_SEPARATOR +
+                    "    ---content_threads content_threads(content search workers, default cpu cores) " + LINE_SEPARATOR +
+                    "    ---content_queue_size content_queue_size(files queued between the walk and the content workers, default 1024) " + LINE_SEPARATOR +
+                    "    ---content_executor auto|platform|virtual(platform: ---content_threads workers, virtual: a virtual thread per file " + LINE_SEPARATOR +
+                    "        on java 21+, auto: virtual when the runtime has virtual threads, default auto) " + LINE_SEPARATOR +
+                    "    ---max_open_files max_open_files(files searched at the same time by the virtual threads, default 512) " + LINE_SEPARATOR +
+                    "    ---device_reads device_reads(files of one device searched at the same time, the other devices take the rest " + LINE_SEPARATOR +
+                    "        of the content threads, e.g. 1 or 2 for a spinning disk, default no limit per device) " + LINE_SEPARATOR +
+                    "    ---read_order inode|walk(order of the queued files of one device, inode: an elevator over the inode numbers " + LINE_SEPARATOR +
+                    "        for fewer seeks, walk: the order the walk found them, default inode) " + LINE_SEPARATOR +
+                    "    ---index trust|refresh|rebuild|watch(search the file metadata index of the dirs, trust: use the existing index, " + LINE_SEPARATOR +
+                    "        refresh: re-list the changed directories, rebuild: walk the dirs again, watch: refresh and keep the index up to date) " + LINE_SEPARATOR +
+                    "    ---index_dir index_dir(directory of the index files, default ~/.fast-search/index) " + LINE_SEPARATOR +
+                    "    ---watch_interval watch_interval(seconds between the index saves of ---index watch, default 5) " + LINE_SEPARATOR +
+                    "    ---content_index (answer ---file_content_words of unchanged files from the content index in ---index_dir, " + LINE_SEPARATOR +
+                    "        changed and new files are searched as a whole and indexed after the search) " + LINE_SEPARATOR +
+                    "    ---server (run as a search server, keeps the jvm, the content threads and the ---index trust|watch indexes warm) " + LINE_SEPARATOR +
+                    "    ---client (send the search to the search server and print its output) " + LINE_SEPARATOR +
+                    "    ---socket socket(unix domain socket file of ---server and ---client, default ~/.fast-search/fast-search.sock) " + LINE_SEPARATOR +
+                    "    ---port port(use a tcp socket on the loopback address instead, the default when unix domain sockets are unsupported: 47123, " + LINE_SEPARATOR +
+                    "        the client sends the token the server writes to ~/.fast-search/fast-search-<port>.token, readable by its owner only)"
             ;
 
-    private static void printUsageAndExit(String...messages){
-        for (String message : messages) {
-            System.err.println(message);
+    /**
+     * invalid command line, the search prints the message and the usage.
+     * */
+    private static final class UsageException extends IllegalArgumentException {
+        private static final long serialVersionUID = 1L;
+
+        private UsageException(String message) {
+            super(message);
         }
-        System.err.println(USAGE);
-        System.exit(1);
     }
 
-    private static List<String> getDirsParam(String[] args){
+    private static void usageError(String message){
+        throw new UsageException(message);
+    }
+
+    private static List<String> getDirsParam(String[] args,PrintStream err){
         List<String> dirList = new ArrayList<>();
         int index = paramIndexSearch(args,"---dirs");
         if(index != -1){
@@ -50,19 +127,179 @@ public class FastSearch {
                 if(Utils.dirExists(s)){
                     dirList.add(s);
                 }else{
-                    System.err.printf("warn: dir %s not exists.",s);
+                    err.printf("warn: dir %s not exists.",s);
                 }
             }
             if(dirList.isEmpty()){
-                printUsageAndExit("error: ---dirs is empty:" + dirsStr);
+                usageError("error: ---dirs is empty:" + dirsStr);
             }
         }else {
-            printUsageAndExit("error: ---dirs not found!");
+            usageError("error: ---dirs not found!");
         }
 
         return dirList;
     }
 
+    /**
+     * json, text or null when the metrics are not printed.
+     * */
+    private static String getStatsParam(String[] args){
+        int index = paramIndexSearch(args,"---stats");
+        if(index == -1){
+            return null;
+        }
+        if(index + 1 >= args.length){
+            usageError("error: ---stats is empty!");
+        }
+        String stats = args[index+1].toLowerCase();
+        if(!"json".equals(stats) && !"text".equals(stats)){
+            usageError("error: ---stats must be json or text: " + args[index+1]);
+        }
+        return stats;
+    }
+
+    /**
+     * true for a virtual thread per file, the platform workers otherwise.
+     * */
+    private static boolean getVirtualThreadsParam(String[] args,PrintStream err){
+        int index = paramIndexSearch(args,"---content_executor");
+        String executor = "auto";
+        if(index != -1){
+            if(index + 1 >= args.length){
+                usageError("error: ---content_executor is empty!");
+            }
+            executor = args[index+1].toLowerCase();
+        }
+        switch (executor){
+            case "platform":
+                return false;
+            case "virtual":
+                if(!ContentExecutors.virtualThreadsSupported()){
+                    err.println("warn: virtual threads need java 21 or later, running " +
+                            System.getProperty("java.version") + ", the content search uses the platform workers.");
+                    return false;
+                }
+                return true;
+            case "auto":
+                return ContentExecutors.virtualThreadsSupported();
+            default:
+                usageError("error: ---content_executor must be auto, platform or virtual: " + args[index+1]);
+                return false;
+        }
+    }
+
+    private static BinaryFiles getBinaryFilesParam(String[] args){
+        int index = paramIndexSearch(args,"---binary_files");
+        if(index == -1){
+            return BinaryFiles.SKIP;
+        }
+        String binaryFiles = index + 1 < args.length ? args[index+1] : "";
+        try{
+            return BinaryFiles.valueOf(binaryFiles.toUpperCase());
+        }catch (IllegalArgumentException iae){
+            usageError("error: ---binary_files must be skip, bytes or text: " + binaryFiles);
+            return BinaryFiles.SKIP;
+        }
+    }
+
+    private static ReadOrder getReadOrderParam(String[] args){
+        int index = paramIndexSearch(args,"---read_order");
+        if(index == -1){
+            return ReadOrder.INODE;
+        }
+        String readOrder = index + 1 < args.length ? args[index+1] : "";
+        try{
+            return ReadOrder.valueOf(readOrder.toUpperCase());
+        }catch (IllegalArgumentException iae){
+            usageError("error: ---read_order must be inode or walk: " + readOrder);
+            return ReadOrder.INODE;
+        }
+    }
+
+    private static ResultFormat getOutputFormatParam(String[] args){
+        int index = paramIndexSearch(args,"---output");
+        if(index == -1){
+            return ResultFormat.TEXT;
+        }
+        String format = index + 1 < args.length ? args[index+1] : "";
+        try{
+            return ResultFormat.valueOf(format.toUpperCase());
+        }catch (IllegalArgumentException iae){
+            usageError("error: ---output must be text, json, nul or binary: " + format);
+            return ResultFormat.TEXT;
+        }
+    }
+
+    /**
+     * the charset of the text that is not valid utf-8: the platform charset, unless it is utf-8 or ascii,
+     * which do not decode the 8 bit charsets.
+     * */
+    private static Charset getLegacyCharsetParam(String[] args){
+        int index = paramIndexSearch(args,"---legacy_charset");
+        if(index == -1){
+            return SearchQuery.Builder.defaultLegacyCharset();
+        }
+        String legacyCharset = index + 1 < args.length ? args[index+1] : "";
+        try{
+            return Charset.forName(legacyCharset);
+        }catch (IllegalArgumentException iae){
+            usageError("error: ---legacy_charset is not a supported charset: " + legacyCharset);
+            return null;
+        }
+    }
+
+    private static long getLimitParam(String[] args){
+        return paramIndexSearch(args,"---limit") == -1 ? Long.MAX_VALUE : getIntParam(args,"---limit",1);
+    }
+
+    private static int getStatsIntervalParam(String[] args){
+        return paramIndexSearch(args,"---stats_interval") == -1 ? 0 : getIntParam(args,"---stats_interval",0);
+    }
+
+    private static List<String> getExcludeDirsParam(String[] args){
+        List<String> excludeDirs = new ArrayList<>();
+        int index = paramIndexSearch(args,"---exclude_dirs");
+        if(index != -1){
+            if(index + 1 >= args.length){
+                usageError("error: ---exclude_dirs is empty!");
+            }
+            String excludeDirsStr = args[index+1];
+            String[] tempArr = excludeDirsStr.split(",");
+            for (String s : tempArr) {
+                if(s != null && !s.isEmpty()){
+                    excludeDirs.add(s);
+                }
+            }
+            if(excludeDirs.isEmpty()){
+                usageError("error: ---exclude_dirs is empty:" + excludeDirsStr);
+            }
+        }
+
+        return excludeDirs;
+    }
+
+    private static List<String> getExcludeParam(String[] args){
+        List<String> excludes = new ArrayList<>();
+        int index = paramIndexSearch(args,"---exclude");
+        if(index != -1){
+            if(index + 1 >= args.length){
+                usageError("error: ---exclude is empty!");
+            }
+            String excludeStr = args[index+1];
+            String[] tempArr = excludeStr.split(",");
+            for (String s : tempArr) {
+                if(s != null && !s.trim().isEmpty()){
+                    excludes.add(s.trim());
+                }
+            }
+            if(excludes.isEmpty()){
+                usageError("error: ---exclude is empty:" + excludeStr);
+            }
+        }
+
+        return excludes;
+    }
+
     private static List<String> getFilePrefixParam(String[] args){
         List<String> prefixList = new ArrayList<>();
         int index = paramIndexSearch(args,"---file_prefixes");
@@ -75,7 +312,7 @@ public class FastSearch {
                 }
             }
             if(prefixList.isEmpty()){
-                printUsageAndExit("error: ---file_prefixes is empty:" + prefixStr);
+                usageError("error: ---file_prefixes is empty:" + prefixStr);
             }
         }
 
@@ -94,7 +331,7 @@ public class FastSearch {
                 }
             }
             if(suffixList.isEmpty()){
-                printUsageAndExit("error: ---file_suffixes is empty:" + suffixStr);
+                usageError("error: ---file_suffixes is empty:" + suffixStr);
             }
         }
 
@@ -113,13 +350,28 @@ public class FastSearch {
                 }
             }
             if(namesList.isEmpty()){
-                printUsageAndExit("error: ---file_names is empty:" + namesStr);
+                usageError("error: ---file_names is empty:" + namesStr);
             }
         }
 
         return namesList;
     }
 
+    /**
+     * the pattern of the param, null if the param is absent.
+     * */
+    private static String getPatternParam(String[] args,String param){
+        int index = paramIndexSearch(args,param);
+        if(index != -1){
+            if(index + 1 >= args.length || args[index+1].isEmpty()){
+                usageError("error: " + param + " is empty!");
+            }
+            return args[index+1];
+        }
+
+        return null;
+    }
+
     private static Tuple<Long,Long> getFileModifiedTimeRangeParam(String[] args){
         Tuple<Long,Long> modifiedTimeRangeTuple = null;
 
@@ -128,13 +380,13 @@ public class FastSearch {
             String modifiedTimeRangeStr = args[index+1];
             String[] tempArr = modifiedTimeRangeStr.replaceAll("[\\[\\]]","").split(",");
             if(tempArr.length != 2){
-                printUsageAndExit("error: ---file_modified_time_range is invalid:" + modifiedTimeRangeStr);
+                usageError("error: ---file_modified_time_range is invalid:" + modifiedTimeRangeStr);
             }
 
             long minTs = Utils.parseTs(tempArr[0]);
             long maxTs = Utils.parseTs(tempArr[1]);
             if(minTs <= 0 || maxTs <= 0 || minTs > maxTs){
-                printUsageAndExit("error: ---file_modified_time_range is invalid:" + modifiedTimeRangeStr);
+                usageError("error: ---file_modified_time_range is invalid:" + modifiedTimeRangeStr);
             }
 
             modifiedTimeRangeTuple = new Tuple<>(minTs,maxTs);
@@ -151,14 +403,14 @@ public class FastSearch {
             String fileSizeRangeStr = args[index+1];
             String[] tempArr = fileSizeRangeStr.replaceAll("[\\[\\]]","").split(",");
             if(tempArr.length != 2){
-                printUsageAndExit("error: ---file_size_range is invalid:" + fileSizeRangeStr);
+                usageError("error: ---file_size_range is invalid:" + fileSizeRangeStr);
             }
 
             long minBytes = Utils.longParse(tempArr[0]);
             long maxBytes = Utils.longParse(tempArr[1]);
 
             if(minBytes < 0 || maxBytes < 0 || minBytes > maxBytes){
-                printUsageAndExit("error: ---file_size_range is invalid:" + fileSizeRangeStr);
+                usageError("error: ---file_size_range is invalid:" + fileSizeRangeStr);
             }
 
             sizeRangeTuple = new Tuple<>(minBytes,maxBytes);
@@ -167,7 +419,7 @@ public class FastSearch {
         return sizeRangeTuple;
     }
 
-    private static List<String> getFileAccessParam(String[] args){
+    private static List<String> getFileAccessParam(String[] args,PrintStream err){
         List<String> fileAccessList = new ArrayList<>();
         int index = paramIndexSearch(args,"---file_access");
         if(index != -1){
@@ -179,12 +431,12 @@ public class FastSearch {
                    s.equalsIgnoreCase("execute")){
                     fileAccessList.add(s);
                 }else{
-                    System.err.printf("warn: access %s is invalid. %n",s);
+                    err.printf("warn: access %s is invalid. %n",s);
                 }
             }
 
             if(fileAccessList.isEmpty()){
-                printUsageAndExit("error: ---file_access is empty:" + fileAccessStr);
+                usageError("error: ---file_access is empty:" + fileAccessStr);
             }
         }
 
@@ -204,196 +456,377 @@ public class FastSearch {
             }
 
             if(fileContentWordsList.isEmpty()){
-                printUsageAndExit("error: ---file_content_words is empty:" + fileContentWordsStr);
+                usageError("error: ---file_content_words is empty:" + fileContentWordsStr);
             }
         }
 
         return fileContentWordsList;
     }
 
-    public static void main(String[] args){
-        List<String> dirList = getDirsParam(args);
-        List<String> prefixList = getFilePrefixParam(args);
-        List<String> suffixList = getFileSuffixParam(args);
-        List<String> fileNames = getFileNamesParam(args);
-        Tuple<Long,Long> modifiedTimeRange = getFileModifiedTimeRangeParam(args);
-        Tuple<Long,Long> fileSizeRange = getFileSizeRangeParam(args);
-        List<String> fileAccessList = getFileAccessParam(args);
-        List<String> fileContentWordsList = getFileContentWordsParam(args);
-
-        if(prefixList.isEmpty() && suffixList.isEmpty() &&
-           fileNames.isEmpty() && modifiedTimeRange == null &&
-           fileSizeRange == null && fileAccessList.isEmpty() &&
-           fileContentWordsList.isEmpty()){
-            System.err.println("error: no search condition found!");
-            System.exit(1);
+    private static int getMmapThresholdParam(String[] args){
+        int mmapThreshold = getIntParam(args,"---mmap_threshold",1024 * 1024);
+        if(mmapThreshold > ByteContentSearcher.MAX_MMAP_THRESHOLD){
+            usageError("error: ---mmap_threshold must be at most " + ByteContentSearcher.MAX_MMAP_THRESHOLD + ":" + mmapThreshold);
         }
+        return mmapThreshold;
+    }
 
-        long startMillis = System.currentTimeMillis();
-        // ConcurrentLinkedQueue<File> filesQueue = new ConcurrentLinkedQueue<>();
-        ThreadPoolExecutor poolExecutor = Utils.newCachedThreadPool(4,8,30,10000);
-
-        Predicate<Path> fileFilter = new Predicate<Path>() {
-            @Override
-            public boolean test(Path path) {
-                File file = path.toFile();
+    private static int getIntParam(String[] args,String param,int defaultValue){
+        int value = defaultValue;
+        int index = paramIndexSearch(args,param);
+        if(index != -1){
+            String valueStr = index + 1 < args.length ? args[index+1] : "";
+            try{
+                value = Integer.parseInt(valueStr);
+            }catch (NumberFormatException nfe){
+                usageError("error: " + param + " is invalid:" + valueStr);
+            }
+            if(value <= 0){
+                usageError("error: " + param + " must be positive:" + valueStr);
+            }
+        }
 
-                boolean filterFlag = false;
+        return value;
+    }
 
-                if(!prefixList.isEmpty()){
-                    boolean prefixFlag = false;
-                    for (String s : prefixList) {
-                        if(file.getName().startsWith(s)){
-                            prefixFlag = true;
-                        }
-                    }
-                    filterFlag = prefixFlag;
-                }
+    private static boolean getMatchAllParam(String[] args){
+        boolean matchAll = true;
+        int index = paramIndexSearch(args,"---match");
+        if(index != -1){
+            String matchStr = index + 1 < args.length ? args[index+1] : "";
+            if(matchStr.equalsIgnoreCase("any")){
+                matchAll = false;
+            }else if(!matchStr.equalsIgnoreCase("all")){
+                usageError("error: ---match is invalid:" + matchStr);
+            }
+        }
 
-                if(filterFlag){
-                    return filterFlag;
-                }
+        return matchAll;
+    }
 
-                if(!suffixList.isEmpty()){
-                    boolean suffixFlag = false;
-                    for (String s : suffixList) {
-                        if(file.getName().endsWith(s)){
-                            suffixFlag = true;
-                        }
-                    }
-                    filterFlag = suffixFlag;
-                }
+    private static List<AccessMode> toAccessModes(List<String> fileAccessList){
+        List<AccessMode> accessModes = new ArrayList<>();
+        for (String s : fileAccessList) {
+            if(s.equalsIgnoreCase("read")){
+                accessModes.add(AccessMode.READ);
+            }else if(s.equalsIgnoreCase("write")){
+                accessModes.add(AccessMode.WRITE);
+            }else{
+                accessModes.add(AccessMode.EXECUTE);
+            }
+        }
+        return accessModes;
+    }
 
-                if(filterFlag){
-                    return filterFlag;
-                }
+    private static IndexMode getIndexModeParam(String[] args){
+        IndexMode indexMode = null;
+        int index = paramIndexSearch(args,"---index");
+        if(index != -1){
+            String indexModeStr = index + 1 < args.length ? args[index+1] : "";
+            try{
+                indexMode = IndexMode.valueOf(indexModeStr.toUpperCase());
+            }catch (IllegalArgumentException iae){
+                usageError("error: ---index is invalid:" + indexModeStr);
+            }
+        }
 
-                if(!fileNames.isEmpty()){
-                    boolean fileNameFlag = false;
-                    for (String fileName : fileNames) {
-                        // contains or equals?
-                        if(file.getName().contains(fileName)){
-                            fileNameFlag = true;
-                        }
-                    }
-                    filterFlag = fileNameFlag;
-                }
+        return indexMode;
+    }
 
-                if(filterFlag){
-                    return filterFlag;
-                }
+    private static Path getIndexDirParam(String[] args){
+        int index = paramIndexSearch(args,"---index_dir");
+        if(index != -1){
+            if(index + 1 >= args.length){
+                usageError("error: ---index_dir is empty!");
+            }
+            return Paths.get(args[index+1]);
+        }
 
-                if(modifiedTimeRange != null){
-                    long lastModified = file.lastModified();
-                    filterFlag = lastModified >= modifiedTimeRange.v1() && lastModified <= modifiedTimeRange.v2();
-                }
+        return FileIndexStore.defaultIndexDir();
+    }
 
-                if(filterFlag){
-                    return filterFlag;
-                }
+    public static void main(String[] args){
+        if(paramIndexSearch(args,"---server") != -1){
+            serve(args);
+            return;
+        }
+        if(paramIndexSearch(args,"---client") != -1){
+            int exitCode = forward(args);
+            if(exitCode != 0){
+                System.exit(exitCode);
+            }
+            return;
+        }
+        int watchInterval;
+        try{
+            watchInterval = getIntParam(args,"---watch_interval",5);
+        }catch (UsageException ue){
+            System.err.println(ue.getMessage());
+            System.err.println(USAGE);
+            System.exit(1);
+            return;
+        }
+        SearchEngine engine = new SearchEngine(watchInterval,0,System.err);
+        int exitCode = run(args,System.out,System.err,engine);
+        if(exitCode == 0 && engine.watchedIndexes() > 0){
+            // the engine saves the watched indexes every interval, until the process is killed.
+            System.out.flush();
+            System.out.println("watching " + engine.watchedIndexes() + " index(es), every " + watchInterval + " seconds.");
+            for (;;) {
+                Utils.sleepQuietly(watchInterval * 1000L);
+            }
+        }
+        try{
+            engine.close();
+        }catch (IOException ioe){
+            System.err.println("warn: close search engine failed. " + Utils.stackTrace(ioe));
+        }
+        if(exitCode != 0){
+            System.exit(exitCode);
+        }
+    }
 
-                if(fileSizeRange != null){
-                    long fileSize = file.length();
-                    filterFlag = fileSize >= fileSizeRange.v1() && fileSize <= fileSizeRange.v2();
-                }
+    /**
+     * one search with the command line arguments, returns the exit code.
+     * @param engine runs the search, shared with the other searches of the server.
+     * */
+    public static int run(String[] args,PrintStream out,PrintStream err,SearchEngine engine){
+        try{
+            return search(args,out,err,engine);
+        }catch (UsageException ue){
+            err.println(ue.getMessage());
+            err.println(USAGE);
+            return 1;
+        }
+    }
 
-                if(filterFlag){
-                    return filterFlag;
-                }
+    private static int search(String[] args,PrintStream out,PrintStream err,SearchEngine engine){
+        List<String> dirList = getDirsParam(args,err);
+        List<String> prefixList = getFilePrefixParam(args);
+        List<String> suffixList = getFileSuffixParam(args);
+        List<String> fileNames = getFileNamesParam(args);
+        String fileGlob = getPatternParam(args,"---file_glob");
+        String fileNameRegex = getPatternParam(args,"---file_name_regex");
+        Tuple<Long,Long> modifiedTimeRange = getFileModifiedTimeRangeParam(args);
+        Tuple<Long,Long> fileSizeRange = getFileSizeRangeParam(args);
+        List<String> fileAccessList = getFileAccessParam(args,err);
+        List<String> fileContentWordsList = getFileContentWordsParam(args);
+        String fileContentRegex = getPatternParam(args,"---file_content_regex");
+        if(fileContentRegex != null && !fileContentWordsList.isEmpty()){
+            usageError("error: ---file_content_regex and ---file_content_words can not be combined!");
+        }
+        boolean archives = paramIndexSearch(args,"---archives") != -1;
+        BinaryFiles binaryFiles = getBinaryFilesParam(args);
+        ResultFormat outputFormat = getOutputFormatParam(args);
+        Charset legacyCharset = getLegacyCharsetParam(args);
+        boolean filesWithMatches = paramIndexSearch(args,"---files_with_matches") != -1;
+        int maxCount = getIntParam(args,"---max_count",Integer.MAX_VALUE);
+        long limit = getLimitParam(args);
+        if((filesWithMatches || maxCount != Integer.MAX_VALUE) && fileContentWordsList.isEmpty() && fileContentRegex == null){
+            usageError("error: ---files_with_matches and ---max_count need ---file_content_words or ---file_content_regex!");
+        }
+        boolean contentIndex = paramIndexSearch(args,"---content_index") != -1;
+        if(archives && contentIndex){
+            usageError("error: ---archives and ---content_index can not be combined!");
+        }
+        boolean filterStats = paramIndexSearch(args,"---filter_stats") != -1;
+        String stats = getStatsParam(args);
 
-                if(!fileAccessList.isEmpty()){
-                    boolean fileAccessFlag = true;
-                    for (String s : fileAccessList) {
-                        if(s.equalsIgnoreCase("read")){
-                            if(!file.canRead()){
-                                fileAccessFlag = false;
-                            }
-                        }
-
-                        if(s.equalsIgnoreCase("write")){
-                            if(!file.canWrite()){
-                                fileAccessFlag = false;
-                            }
-                        }
-
-                        if(s.equalsIgnoreCase("execute")){
-                            if(!file.canExecute()){
-                                fileAccessFlag = false;
-                            }
-                        }
-                    }
+        if(prefixList.isEmpty() && suffixList.isEmpty() &&
+           fileNames.isEmpty() && fileGlob == null && fileNameRegex == null &&
+           modifiedTimeRange == null && fileSizeRange == null && fileAccessList.isEmpty() &&
+           fileContentWordsList.isEmpty() && fileContentRegex == null){
+            err.println("error: no search condition found!");
+            return 1;
+        }
 
-                    filterFlag = fileAccessFlag;
-                }
+        SearchQuery.Builder builder = new SearchQuery.Builder()
+                .dirs(dirList)
+                .namePrefixes(prefixList)
+                .nameSuffixes(suffixList)
+                .nameContains(fileNames)
+                .fileGlob(fileGlob)
+                .fileNameRegex(fileNameRegex)
+                .access(toAccessModes(fileAccessList))
+                .contentWords(fileContentWordsList)
+                .contentRegex(fileContentRegex)
+                .matchAll(getMatchAllParam(args))
+                .archives(archives)
+                .binaryFiles(binaryFiles)
+                .legacyCharset(legacyCharset)
+                .filesWithMatches(filesWithMatches)
+                .maxCount(maxCount)
+                .limit(limit)
+                .walkThreads(getIntParam(args,"---walk_threads",1))
+                .maxOpenDirs(getIntParam(args,"---max_open_dirs",64))
+                .posixAttributes(paramIndexSearch(args,"---posix_attrs") != -1)
+                .canonicalPaths(paramIndexSearch(args,"---canonical_paths") != -1)
+                .maxDepth(getIntParam(args,"---max_depth",Integer.MAX_VALUE))
+                .sameFileSystem(paramIndexSearch(args,"---same_filesystem") != -1)
+                .excludeDirs(getExcludeDirsParam(args))
+                .excludes(getExcludeParam(args))
+                .ignoreFiles(paramIndexSearch(args,"---ignore_files") != -1)
+                .skipHidden(paramIndexSearch(args,"---skip_hidden") != -1)
+                .vcsDirs(paramIndexSearch(args,"---vcs_dirs") != -1)
+                .byteSearch(paramIndexSearch(args,"---byte_search") != -1)
+                .mmapThreshold(getMmapThresholdParam(args))
+                .parallelThreshold(getIntParam(args,"---parallel_threshold",256 * 1024 * 1024))
+                .contentThreads(getIntParam(args,"---content_threads",Runtime.getRuntime().availableProcessors()))
+                .contentQueueSize(getIntParam(args,"---content_queue_size",1024))
+                .virtualThreads(getVirtualThreadsParam(args,err))
+                .maxOpenFiles(getIntParam(args,"---max_open_files",512))
+                .deviceReads(getIntParam(args,"---device_reads",Integer.MAX_VALUE))
+                .readOrder(getReadOrderParam(args))
+                .indexMode(getIndexModeParam(args))
+                .indexDir(getIndexDirParam(args))
+                .contentIndex(contentIndex)
+                .statsInterval(getStatsIntervalParam(args),!"text".equals(stats));
+        if(modifiedTimeRange != null){
+            builder.modifiedTimeRange(modifiedTimeRange.v1(),modifiedTimeRange.v2());
+        }
+        if(fileSizeRange != null){
+            builder.sizeRange(fileSizeRange.v1(),fileSizeRange.v2());
+        }
+        SearchQuery query = null;
+        try{
+            query = builder.build();
+        }catch (IllegalArgumentException iae){
+            usageError("error: " + iae.getMessage());
+        }
 
-                if(filterFlag){
-                    return filterFlag;
-                }
+        SearchSummary summary;
+        try{
+            summary = engine.search(query,out,outputFormat,err).await();
+        }catch (InterruptedException ie){
+            Thread.currentThread().interrupt();
+            err.println("error: search interrupted.");
+            return 1;
+        }
+        // the records of a structured output are not mixed with the reports.
+        PrintStream reportOut = outputFormat == ResultFormat.TEXT ? out : err;
+        reportOut.println("run time:" + summary.runMillis() / 1000 + " seconds!");
+        if(filterStats){
+            for (String report : summary.reports()) {
+                reportOut.println(report);
+            }
+        }
+        if(stats != null){
+            reportOut.println("json".equals(stats) ? summary.metrics().toJson() : summary.metrics().report());
+        }
+        // an interrupted search has dropped the files it did not search.
+        return summary.interrupted() ? 1 : 0;
+    }
 
-                if(!fileContentWordsList.isEmpty()){
-                    /*
-                    boolean fileContentFlag = false;
-                    try {
-                        fileContentFlag = Utils.readAndLineMatch(file, Charset.defaultCharset(),fileContentWordsList);
-                    } catch (IOException e) {
-                        // ignore
-                    }
-                    filterFlag = fileContentFlag;
-                    */
-
-                    // filesQueue.offer(file);
-
-                    Runnable task = new Runnable() {
-                        @Override
-                        public void run() {
-                            try {
-                                boolean matchLineSuccess = Utils.readAndLineMatch(
-                                        file,
-                                        Charset.defaultCharset(),
-                                        fileContentWordsList);
-                                if(matchLineSuccess){
-                                    System.out.println("match,thread:" + Thread.currentThread().getId() + ",file:" + file.getName());
-                                }
-                            } catch (IOException e) {
-                                // ignore
-                            }
-                        }
-                    };
-                    poolExecutor.submit(task);
-                }
+    private static int getPortParam(String[] args){
+        return paramIndexSearch(args,"---port") == -1 ? -1 : getIntParam(args,"---port",-1);
+    }
 
-                return filterFlag;
+    private static Path getSocketParam(String[] args){
+        int index = paramIndexSearch(args,"---socket");
+        if(index != -1){
+            if(index + 1 >= args.length){
+                usageError("error: ---socket is empty!");
             }
-        };
+            return Paths.get(args[index+1]);
+        }
 
-        // Runnable task = Utils.fileContentWordsSearchTask(filesQueue,fileContentWordsList);
-        // poolExecutor.submit(task);
+        return LocalSockets.defaultSocketFile();
+    }
 
-        int i = 0;
-        for (String dir : dirList) {
-            Path path = Paths.get(dir);
-            Collection<String> scanFiles = Utils.dirFileScan(path.toFile(),fileFilter);
-            for (String scanFile : scanFiles) {
-                System.out.println(++i + " => " + scanFile);
+    /**
+     * run the search server until the process is killed, every connection is one search.
+     * */
+    private static void serve(String[] args){
+        int port;
+        Path socketFile;
+        int watchInterval;
+        int statsInterval;
+        try{
+            port = getPortParam(args);
+            socketFile = getSocketParam(args);
+            watchInterval = getIntParam(args,"---watch_interval",5);
+            statsInterval = getStatsIntervalParam(args);
+        }catch (UsageException ue){
+            System.err.println(ue.getMessage());
+            System.err.println(USAGE);
+            System.exit(1);
+            return;
+        }
+
+        SearchEngine engine = new SearchEngine(watchInterval,statsInterval,System.err);
+        try{
+            boolean unixSocket = port == -1 && LocalSockets.unixDomainSupported();
+            byte[] token = null;
+            ServerSocketChannel serverChannel;
+            if(unixSocket){
+                serverChannel = LocalSockets.bind(socketFile);
+                socketFile.toFile().deleteOnExit();
+            }else{
+                // any local user reaches the loopback port, the clients prove they can read the token file.
+                int tcpPort = port == -1 ? DEFAULT_PORT : port;
+                Path tokenFile = LocalSockets.defaultTokenFile(tcpPort);
+                token = LocalSockets.writeToken(tokenFile);
+                tokenFile.toFile().deleteOnExit();
+                serverChannel = LocalSockets.bind(tcpPort);
             }
+            System.out.println("search server listening on " + serverChannel.getLocalAddress());
+            new SearchServer(serverChannel,engine.context().executor(),(searchArgs, out, err) -> run(searchArgs,out,err,engine),
+                    token,System.err).serve();
+        }catch (IOException ioe){
+            System.err.println("error: search server failed. " + Utils.stackTrace(ioe));
+            System.exit(1);
         }
+    }
 
-        long runSeconds = (System.currentTimeMillis() - startMillis) / 1000;
-        System.out.println("run time:" + runSeconds + " seconds!");
+    /**
+     * forward the search to the server, relative paths are resolved against the working directory of the client.
+     * */
+    private static int forward(String[] args){
+        List<String> forwardArgs = new ArrayList<>();
+        int port;
+        Path socketFile;
+        try{
+            port = getPortParam(args);
+            socketFile = getSocketParam(args);
+            for (int i = 0; i < args.length; i++) {
+                if(args[i].equalsIgnoreCase("---client")){
+                    continue;
+                }
+                forwardArgs.add(args[i]);
+                if(i + 1 < args.length && args[i].equalsIgnoreCase("---dirs")){
+                    List<String> dirs = new ArrayList<>();
+                    for (String dir : args[++i].split(",")) {
+                        dirs.add(new File(dir).getAbsolutePath());
+                    }
+                    forwardArgs.add(String.join(",",dirs));
+                }else if(i + 1 < args.length && args[i].equalsIgnoreCase("---index_dir")){
+                    forwardArgs.add(new File(args[++i]).getAbsolutePath());
+                }else if(i + 1 < args.length && args[i].equalsIgnoreCase("---exclude_dirs")){
+                    // names stay names, paths are resolved.
+                    List<String> excludeDirs = new ArrayList<>();
+                    for (String dir : args[++i].split(",")) {
+                        excludeDirs.add(dir.indexOf('/') != -1 || dir.indexOf(File.separatorChar) != -1 ?
+                                new File(dir).getAbsolutePath() : dir);
+                    }
+                    forwardArgs.add(String.join(",",excludeDirs));
+                }
+            }
+        }catch (UsageException ue){
+            System.err.println(ue.getMessage());
+            System.err.println(USAGE);
+            return 1;
+        }
 
+        boolean unixSocket = port == -1 && LocalSockets.unixDomainSupported();
+        int tcpPort = port == -1 ? DEFAULT_PORT : port;
         try{
-            /*
-             * Blocks until all tasks have completed execution after a shutdown
-             * request, or the timeout occurs, or the current thread is
-             * interrupted, whichever happens first.
-             * true:if this executor terminated
-             * false:if the timeout elapsed before termination
-             * */
-            if(!poolExecutor.awaitTermination(1L, TimeUnit.SECONDS)) {
-                poolExecutor.shutdownNow();
+            byte[] token = unixSocket ? null : LocalSockets.readToken(LocalSockets.defaultTokenFile(tcpPort));
+            try(SocketChannel channel = unixSocket ? LocalSockets.connect(socketFile) : LocalSockets.connect(tcpPort)){
+                return SearchClient.forward(channel,token,forwardArgs.toArray(new String[0]),System.out,System.err);
             }
-        }catch (InterruptedException ie){
-            ie.printStackTrace();
+        }catch (IOException ioe){
+            System.err.println("error: search server not reachable. " + Utils.stackTrace(ioe));
+            return 1;
         }
     }
 
@@ -0,0 +1,353 @@
+package com.github.search.content;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Aho-Corasick automaton over a list of words, a text is matched against all the words in one pass.
+ * the automaton is a dense dfa over the distinct chars (or encoded bytes) of the words, built once
+ * per search and read-only afterwards, so one instance is shared by all the content search threads.
+ */
+public final class AhoCorasick {
+    private final String[] words;
+    // word length in chars, or in bytes for a byte automaton.
+    private final int[] wordLengths;
+    private final boolean byteSymbols;
+    // char (or unsigned byte) -> symbol class, class 0 is every symbol not in the words.
+    private final char[] charClass;
+    private final int alphabetSize;
+    // state * alphabetSize + class -> next state.
+    private final int[] transitions;
+    // word indexes ending at a state: outputs[outputStart[state] .. outputStart[state+1]).
+    private final int[] outputStart;
+    private final int[] outputs;
+
+    private AhoCorasick(String[] words, int[] wordLengths, boolean byteSymbols, char[] charClass, int alphabetSize,
+                        int[] transitions, int[] outputStart, int[] outputs) {
+        this.words = words;
+        this.wordLengths = wordLengths;
+        this.byteSymbols = byteSymbols;
+        this.charClass = charClass;
+        this.alphabetSize = alphabetSize;
+        this.transitions = transitions;
+        this.outputStart = outputStart;
+        this.outputs = outputs;
+    }
+
+    /**
+     * callback of a word match, start inclusive and end exclusive offsets in the text.
+     * */
+    public interface MatchListener {
+        void onMatch(int wordIndex, int start, int end);
+    }
+
+    /**
+     * a word match in a text.
+     * */
+    public static final class Match {
+        private final int wordIndex;
+        private final String word;
+        private final int start;
+        private final int end;
+
+        public Match(int wordIndex, String word, int start, int end) {
+            this.wordIndex = wordIndex;
+            this.word = word;
+            this.start = start;
+            this.end = end;
+        }
+
+        public int wordIndex() {
+            return wordIndex;
+        }
+
+        public String word() {
+            return word;
+        }
+
+        public int start() {
+            return start;
+        }
+
+        public int end() {
+            return end;
+        }
+
+        @Override
+        public String toString() {
+            return word + "@" + start;
+        }
+    }
+
+    /**
+     * callback of a word match in a byte buffer, start inclusive and end exclusive buffer indexes.
+     * return false to stop the scan.
+     * */
+    public interface ByteMatchListener {
+        boolean onMatch(int wordIndex, int start, int end);
+    }
+
+    /**
+     * automaton over the chars of the words.
+     * */
+    public static AhoCorasick compile(List<String> words){
+        List<int[]> symbols = new ArrayList<>(words.size());
+        for (String word : words) {
+            if(word == null || word.isEmpty()){
+                throw new IllegalArgumentException("word is empty.");
+            }
+            int[] wordSymbols = new int[word.length()];
+            for (int i = 0; i < word.length(); i++) {
+                wordSymbols[i] = word.charAt(i);
+            }
+            symbols.add(wordSymbols);
+        }
+        return compile(words, symbols, false);
+    }
+
+    /**
+     * automaton over the bytes of the words encoded with the charset, for scanning raw file content.
+     * */
+    public static AhoCorasick compile(List<String> words, Charset charset){
+        List<int[]> symbols = new ArrayList<>(words.size());
+        for (String word : words) {
+            if(word == null || word.isEmpty()){
+                throw new IllegalArgumentException("word is empty.");
+            }
+            byte[] bytes = word.getBytes(charset);
+            int[] wordSymbols = new int[bytes.length];
+            for (int i = 0; i < bytes.length; i++) {
+                wordSymbols[i] = bytes[i] & 0xFF;
+            }
+            symbols.add(wordSymbols);
+        }
+        return compile(words, symbols, true);
+    }
+
+    private static AhoCorasick compile(List<String> words, List<int[]> symbols, boolean byteSymbols){
+        if(words.isEmpty()){
+            throw new IllegalArgumentException("words is empty.");
+        }
+
+        char[] charClass = new char[byteSymbols ? 256 : Character.MAX_VALUE + 1];
+        int alphabetSize = 1;
+        int totalChars = 0;
+        for (int[] wordSymbols : symbols) {
+            for (int symbol : wordSymbols) {
+                if(charClass[symbol] == 0){
+                    charClass[symbol] = (char) alphabetSize++;
+                }
+            }
+            totalChars += wordSymbols.length;
+        }
+
+        int maxStates = totalChars + 1;
+        int[] transitions = new int[maxStates * alphabetSize];
+        Arrays.fill(transitions, -1);
+        List<List<Integer>> stateWords = new ArrayList<>();
+        stateWords.add(new ArrayList<>());
+        int stateCount = 1;
+
+        // trie
+        for (int w = 0; w < symbols.size(); w++) {
+            int[] wordSymbols = symbols.get(w);
+            int state = 0;
+            for (int symbol : wordSymbols) {
+                int index = state * alphabetSize + charClass[symbol];
+                if(transitions[index] == -1){
+                    transitions[index] = stateCount++;
+                    stateWords.add(new ArrayList<>());
+                }
+                state = transitions[index];
+            }
+            stateWords.get(state).add(w);
+        }
+
+        // failure links in breadth first order, missing transitions are resolved to the failure state's.
+        int[] fail = new int[stateCount];
+        int[] queue = new int[stateCount];
+        int head = 0;
+        int tail = 0;
+        for (int c = 0; c < alphabetSize; c++) {
+            int next = transitions[c];
+            if(next == -1){
+                transitions[c] = 0;
+            }else{
+                fail[next] = 0;
+                queue[tail++] = next;
+            }
+        }
+        while (head < tail){
+            int state = queue[head++];
+            List<Integer> failWords = stateWords.get(fail[state]);
+            if(!failWords.isEmpty()){
+                stateWords.get(state).addAll(failWords);
+            }
+            for (int c = 0; c < alphabetSize; c++) {
+                int index = state * alphabetSize + c;
+                int next = transitions[index];
+                int failNext = transitions[fail[state] * alphabetSize + c];
+                if(next == -1){
+                    transitions[index] = failNext;
+                }else{
+                    fail[next] = failNext;
+                    queue[tail++] = next;
+                }
+            }
+        }
+
+        int[] outputStart = new int[stateCount + 1];
+        int outputCount = 0;
+        for (int s = 0; s < stateCount; s++) {
+            outputStart[s] = outputCount;
+            outputCount += stateWords.get(s).size();
+        }
+        outputStart[stateCount] = outputCount;
+        int[] outputs = new int[outputCount];
+        for (int s = 0; s < stateCount; s++) {
+            List<Integer> wordIndexes = stateWords.get(s);
+            for (int i = 0; i < wordIndexes.size(); i++) {
+                outputs[outputStart[s] + i] = wordIndexes.get(i);
+            }
+        }
+
+        int[] wordLengths = new int[words.size()];
+        for (int w = 0; w < words.size(); w++) {
+            wordLengths[w] = symbols.get(w).length;
+        }
+
+        return new AhoCorasick(
+                words.toArray(new String[0]),
+                wordLengths,
+                byteSymbols,
+                charClass,
+                alphabetSize,
+                Arrays.copyOf(transitions, stateCount * alphabetSize),
+                outputStart,
+                outputs);
+    }
+
+    public int wordCount(){
+        return words.length;
+    }
+
+    public String word(int wordIndex){
+        return words[wordIndex];
+    }
+
+    /**
+     * length of the word in chars, or in bytes for a byte automaton.
+     * */
+    public int wordLength(int wordIndex){
+        return wordLengths[wordIndex];
+    }
+
+    public int maxWordLength(){
+        int maxLength = 0;
+        for (int wordLength : wordLengths) {
+            maxLength = Math.max(maxLength, wordLength);
+        }
+        return maxLength;
+    }
+
+    /**
+     * match the bytes in [from, to) of the buffer against all the words in one pass,
+     * the buffer position and limit are not changed. needs a byte automaton.
+     * */
+    public void scan(ByteBuffer buffer, int from, int to, ByteMatchListener listener){
+        if(!byteSymbols){
+            throw new IllegalStateException("not a byte automaton.");
+        }
+        int state = 0;
+        for (int i = from; i < to; i++) {
+            state = transitions[state * alphabetSize + charClass[buffer.get(i) & 0xFF]];
+            for (int o = outputStart[state]; o < outputStart[state + 1]; o++) {
+                int wordIndex = outputs[o];
+                if(!listener.onMatch(wordIndex, i + 1 - wordLengths[wordIndex], i + 1)){
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * match the text against all the words in one pass.
+     * */
+    public void scan(CharSequence text, MatchListener listener){
+        checkCharSymbols();
+        int state = 0;
+        for (int i = 0; i < text.length(); i++) {
+            state = transitions[state * alphabetSize + charClass[text.charAt(i)]];
+            for (int o = outputStart[state]; o < outputStart[state + 1]; o++) {
+                int wordIndex = outputs[o];
+                listener.onMatch(wordIndex, i + 1 - wordLengths[wordIndex], i + 1);
+            }
+        }
+    }
+
+    /**
+     * true if the text contains any of the words, stops at the first match.
+     * */
+    public boolean containsAny(CharSequence text){
+        checkCharSymbols();
+        int state = 0;
+        for (int i = 0; i < text.length(); i++) {
+            state = transitions[state * alphabetSize + charClass[text.charAt(i)]];
+            if(outputStart[state] != outputStart[state + 1]){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * all the word matches in the text, ordered by end offset.
+     * */
+    public List<Match> findAll(CharSequence text){
+        List<Match> matches = new ArrayList<>();
+        scan(text, (wordIndex, start, end) -> matches.add(new Match(wordIndex, words[wordIndex], start, end)));
+        return matches;
+    }
+
+    /**
+     * the matched words of the text with their start offsets, in word list order, in one pass.
+     * empty when no word matches, nothing is allocated for such a text.
+     * */
+    public Map<String, List<Integer>> matchedWords(CharSequence text){
+        checkCharSymbols();
+        List<Match> matches = null;
+        int state = 0;
+        for (int i = 0; i < text.length(); i++) {
+            state = transitions[state * alphabetSize + charClass[text.charAt(i)]];
+            for (int o = outputStart[state]; o < outputStart[state + 1]; o++) {
+                int wordIndex = outputs[o];
+                if(matches == null){
+                    matches = new ArrayList<>();
+                }
+                matches.add(new Match(wordIndex, words[wordIndex], i + 1 - wordLengths[wordIndex], i + 1));
+            }
+        }
+        if(matches == null){
+            return Collections.emptyMap();
+        }
+        Map<String, List<Integer>> matchedWords = new LinkedHashMap<>();
+        matches.sort((m1, m2) -> m1.wordIndex != m2.wordIndex ? Integer.compare(m1.wordIndex, m2.wordIndex)
+                                                               : Integer.compare(m1.start, m2.start));
+        for (Match match : matches) {
+            matchedWords.computeIfAbsent(match.word, w -> new ArrayList<>()).add(match.start);
+        }
+        return matchedWords;
+    }
+
+    private void checkCharSymbols(){
+        if(byteSymbols){
+            throw new IllegalStateException("not a char automaton.");
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.github.search.content;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import com.github.search.output.FileResults;
+
+/**
+ * content search inside gzip and zip (jar) files, told apart from the plain files by their magic bytes.
+ * the compressed bytes are inflated as a stream while the lines are searched, nothing is written to disk.
+ * the entries of a zip are searched in parallel on the common fork join pool, their matches are printed
+ * in the entry order and name the entry as archive!/entry. the searcher is shared by the content search threads.
+ */
+public final class ArchiveSearcher {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Charset charset;
+    private final LineSearch lineSearch;
+
+    /**
+     * archive formats.
+     * */
+    public enum Format {
+        GZIP,
+        ZIP
+    }
+
+    /**
+     * @param charset charset of the decompressed files.
+     * @param lineSearch search of the lines of one decompressed file, called concurrently.
+     * */
+    public ArchiveSearcher(Charset charset, LineSearch lineSearch) {
+        this.charset = charset;
+        this.lineSearch = lineSearch;
+    }
+
+    /**
+     * the archive format of the file from its first bytes, null for a plain file.
+     * */
+    public static Format format(File file) throws IOException {
+        byte[] magic = new byte[4];
+        int length = 0;
+        try(FileInputStream in = new FileInputStream(file)){
+            int read;
+            while (length < magic.length && (read = in.read(magic, length, magic.length - length)) != -1){
+                length += read;
+            }
+        }
+        return format(magic, length);
+    }
+
+    /**
+     * the archive format from the first bytes of a file, null for a plain file.
+     * @param length count of the bytes read.
+     * */
+    public static Format format(byte[] head, int length){
+        if(length >= 2 && head[0] == (byte) 0x1f && head[1] == (byte) 0x8b){
+            return Format.GZIP;
+        }
+        // a local file header, or the end of central directory of an empty zip.
+        if(length >= 4 && head[0] == 'P' && head[1] == 'K' &&
+           (head[2] == 3 && head[3] == 4 || head[2] == 5 && head[3] == 6)){
+            return Format.ZIP;
+        }
+        return null;
+    }
+
+    /**
+     * search the decompressed lines of the archive, returns true if any line matches.
+     * */
+    public boolean search(File file, Format format, FileResults output) throws IOException {
+        if(format == Format.GZIP){
+            // a gzip file of several members, as written by a log rotation appending to it, is read to its end.
+            try(BufferedReader reader = reader(new GZIPInputStream(new FileInputStream(file), BUFFER_SIZE))){
+                return lineSearch.search(file.getPath(), reader, output);
+            }
+        }
+
+        try(ZipFile zipFile = new ZipFile(file)){
+            List<ZipEntry> entries = new ArrayList<>();
+            for (ZipEntry entry : Collections.list(zipFile.entries())) {
+                if(!entry.isDirectory()){
+                    entries.add(entry);
+                }
+            }
+            List<EntryResult> results = entries.parallelStream()
+                    .map(entry -> searchEntry(zipFile, file.getPath() + "!/" + entry.getName(), entry, output.part()))
+                    .collect(Collectors.toList());
+
+            boolean matched = false;
+            IOException failure = null;
+            for (EntryResult result : results) {
+                output.append(result.results);
+                matched |= result.matched;
+                if(failure == null && result.failure != null){
+                    failure = result.failure;
+                }
+            }
+            if(failure != null){
+                // the matches of the other entries are kept.
+                throw failure;
+            }
+            return matched;
+        }
+    }
+
+    private EntryResult searchEntry(ZipFile zipFile, String source, ZipEntry entry, FileResults results){
+        try(BufferedReader reader = reader(zipFile.getInputStream(entry))){
+            return new EntryResult(lineSearch.search(source, reader, results), results, null);
+        }catch (IOException ioe){
+            return new EntryResult(false, results, ioe);
+        }
+    }
+
+    private BufferedReader reader(InputStream in){
+        return new BufferedReader(new InputStreamReader(in, charset), BUFFER_SIZE);
+    }
+
+    /**
+     * matches of one zip entry.
+     * */
+    private static final class EntryResult {
+        private final boolean matched;
+        private final FileResults results;
+        private final IOException failure;
+
+        private EntryResult(boolean matched, FileResults results, IOException failure) {
+            this.matched = matched;
+            this.results = results;
+            this.failure = failure;
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.github.search.content;
+
+/**
+ * what the content search does with the files the sniffer classifies as binary.
+ */
+public enum BinaryFiles {
+    /** the file is not searched, only its first block is read. */
+    SKIP,
+    /** the words are searched on the file bytes, a match is reported without the line. */
+    BYTES,
+    /** the file is decoded and searched as text in the search charset. */
+    TEXT
+}
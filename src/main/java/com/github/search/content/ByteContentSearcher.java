@@ -0,0 +1,564 @@
+package com.github.search.content;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * content search on the raw file bytes, without charset decoding and line splitting.
+ * the words are encoded once, a single word is scanned with Boyer-Moore-Horspool and
+ * several words with a byte Aho-Corasick automaton. files above the mmap threshold are
+ * memory mapped, smaller ones are streamed through pooled direct buffers of at most 256 KiB, cut after
+ * their last line feed; the rest of a file whose line does not fit in the buffer is mapped. a line is located and
+ * decoded only when it has a hit. the scan stops at the end of the last line the file limit lets it
+ * report. a file above the parallel threshold is cut at line feeds into chunks that are mapped and scanned
+ * on the common fork join pool, a window of them at a time, and their hits are reported in the file order:
+ * the line numbers of a chunk start after the line feeds of the chunks before it. a chunk scans the lines
+ * that start in it to their line feeds, a line longer than a chunk is scanned whole by the chunk it starts in.
+ * the searcher is shared by the content search threads.
+ */
+public final class ByteContentSearcher {
+    // mapped segment size of the files larger than one mapping.
+    private static final int MAX_SEGMENT = 1 << 30;
+    // capacity of the pooled read buffers, whatever the mmap threshold.
+    private static final int READ_BUFFER_SIZE = 256 * 1024;
+    // nominal chunk size of the parallel search, a chunk ends at the first line feed at or after the next chunk.
+    private static final int CHUNK_SIZE = 32 * 1024 * 1024;
+    // bytes a chunk scan goes through between two checks of the merge stop, cut at a line feed.
+    private static final int CHUNK_STEP = 1024 * 1024;
+    /**
+     * the largest mmap threshold, the size of one mapped segment.
+     * */
+    public static final int MAX_MMAP_THRESHOLD = MAX_SEGMENT;
+    private static final byte LF = '\n';
+    private static final byte CR = '\r';
+
+    private final Charset charset;
+    private final int wordCount;
+    // single word: Boyer-Moore-Horspool.
+    private final byte[] pattern;
+    private final int[] badCharShift;
+    // several words: Aho-Corasick.
+    private final AhoCorasick wordsMatcher;
+    private final int mmapThreshold;
+    private final long parallelThreshold;
+    private final DirectBufferPool bufferPool;
+
+    /**
+     * callback of a word hit, every word is reported once per line.
+     * */
+    public interface HitListener {
+        void onHit(long lineNum, String line, int wordIndex, long byteOffset);
+    }
+
+    /**
+     * @param words search words.
+     * @param charset file charset, must be supported, see {@link #supports(Charset)}.
+     * @param mmapThreshold files of this size or larger are memory mapped.
+     * */
+    public ByteContentSearcher(List<String> words, Charset charset, int mmapThreshold) {
+        this(words, charset, mmapThreshold, Long.MAX_VALUE);
+    }
+
+    /**
+     * @param words search words.
+     * @param charset file charset, must be supported, see {@link #supports(Charset)}.
+     * @param mmapThreshold files of this size or larger are memory mapped, at most {@link #MAX_MMAP_THRESHOLD}.
+     * @param parallelThreshold files of this size or larger are searched in parallel chunks.
+     * */
+    public ByteContentSearcher(List<String> words, Charset charset, int mmapThreshold, long parallelThreshold) {
+        if(!supports(charset)){
+            throw new IllegalArgumentException("charset is not supported: " + charset);
+        }
+        if(mmapThreshold <= 0 || mmapThreshold > MAX_MMAP_THRESHOLD){
+            throw new IllegalArgumentException("mmapThreshold must be in [1," + MAX_MMAP_THRESHOLD + "]: " + mmapThreshold);
+        }
+        if(parallelThreshold <= 0){
+            throw new IllegalArgumentException("parallelThreshold must be positive: " + parallelThreshold);
+        }
+        this.charset = charset;
+        this.wordCount = words.size();
+        if(words.size() == 1){
+            this.pattern = words.get(0).getBytes(charset);
+            if(pattern.length == 0){
+                throw new IllegalArgumentException("word is empty.");
+            }
+            this.badCharShift = new int[256];
+            Arrays.fill(badCharShift, pattern.length);
+            for (int i = 0; i < pattern.length - 1; i++) {
+                badCharShift[pattern[i] & 0xFF] = pattern.length - 1 - i;
+            }
+            this.wordsMatcher = null;
+        }else{
+            this.pattern = null;
+            this.badCharShift = null;
+            this.wordsMatcher = AhoCorasick.compile(words, charset);
+        }
+        this.mmapThreshold = mmapThreshold;
+        this.parallelThreshold = parallelThreshold;
+        this.bufferPool = new DirectBufferPool(Math.min(mmapThreshold, READ_BUFFER_SIZE), Runtime.getRuntime().availableProcessors() * 2);
+    }
+
+    /**
+     * the byte search needs a charset that encodes line feed and carriage return as single ascii bytes.
+     * */
+    public static boolean supports(Charset charset){
+        return Arrays.equals("\r\n".getBytes(charset), new byte[]{CR, LF});
+    }
+
+    /**
+     * search the file, returns true if any word is found.
+     * */
+    public boolean search(File file, HitListener listener) throws IOException {
+        return search(file, MatchLimits.NONE.file(), listener);
+    }
+
+    /**
+     * search the file until the file limit takes no more lines, returns true if any word is found.
+     * the hits of the last taken line are all reported.
+     * */
+    public boolean search(File file, MatchLimits.FileLimit fileLimit, HitListener listener) throws IOException {
+        try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)){
+            long size = channel.size();
+            if(size == 0){
+                return false;
+            }
+            if(size >= parallelThreshold && size > CHUNK_SIZE){
+                return searchChunks(channel, size, fileLimit, listener);
+            }
+
+            FileScan fileScan = new FileScan(fileLimit, listener);
+            long mapStart = 0;
+            if(size < mmapThreshold){
+                ByteBuffer buffer = bufferPool.acquire();
+                try{
+                    // file position of the first byte of the buffer.
+                    long bufferStart = 0;
+                    boolean eof = false;
+                    while (!fileScan.stopped){
+                        while (buffer.hasRemaining() && !eof){
+                            eof = channel.read(buffer) == -1;
+                        }
+                        int filled = buffer.position();
+                        if(eof){
+                            fileScan.scan(buffer, 0, filled, bufferStart);
+                            return fileScan.matched;
+                        }
+                        int lastLineEnd = lastIndexOf(buffer, LF, filled);
+                        if(lastLineEnd < 0){
+                            // a line longer than the buffer, the rest of the file is mapped.
+                            break;
+                        }
+                        int segmentEnd = lastLineEnd + 1;
+                        fileScan.scan(buffer, 0, segmentEnd, bufferStart);
+                        fileScan.advanceTo(segmentEnd);
+                        bufferStart += segmentEnd;
+                        // the start of the next line moves to the front, the next read fills the rest.
+                        ((Buffer) buffer).limit(filled);
+                        ((Buffer) buffer).position(segmentEnd);
+                        buffer.compact();
+                    }
+                    if(fileScan.stopped){
+                        return fileScan.matched;
+                    }
+                    mapStart = bufferStart;
+                }finally {
+                    bufferPool.release(buffer);
+                }
+                // the file may have grown since its size was read, it is mapped at its new size.
+                size = channel.size();
+            }
+
+            scanSegments(channel, mapStart, size, fileScan, null);
+            return fileScan.matched;
+        }
+    }
+
+    /**
+     * scan the bytes from to to in mappings of at most one segment, cut after their last line feed,
+     * so no line spans two segments.
+     * @param merge the merge of a chunk scan, null for a whole file. a chunk counts the line feeds of its last
+     *              segment too, for the line numbers of the next chunk, and ends early once the merge is stopped.
+     * */
+    private void scanSegments(FileChannel channel, long from, long to, FileScan fileScan, ChunkMerge merge) throws IOException {
+        long segmentStart = from;
+        while (segmentStart < to && !fileScan.stopped){
+            int segmentLength = (int) Math.min(to - segmentStart, MAX_SEGMENT);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, segmentStart, segmentLength);
+            int segmentEnd = segmentLength;
+            if(segmentStart + segmentLength < to){
+                int lastLineEnd = lastIndexOf(buffer, LF, segmentLength);
+                if(lastLineEnd >= 0){
+                    segmentEnd = lastLineEnd + 1;
+                }
+            }
+            if(merge == null){
+                fileScan.scan(buffer, 0, segmentEnd, segmentStart);
+            }else{
+                scanSteps(buffer, segmentEnd, segmentStart, fileScan, merge);
+            }
+            segmentStart += segmentEnd;
+            if(segmentStart < to || merge != null){
+                // line numbers continue in the next segment, or in the next chunk.
+                fileScan.advanceTo(segmentEnd);
+            }
+        }
+    }
+
+    /**
+     * scan a segment of a chunk a step at a time, the scan ends when the merge has stopped:
+     * the file limit is reached, so the hits of the chunk would not be merged.
+     * */
+    private static void scanSteps(ByteBuffer buffer, int segmentEnd, long segmentStart, FileScan fileScan, ChunkMerge merge){
+        int stepStart = 0;
+        while (stepStart < segmentEnd && !fileScan.stopped){
+            if(merge.stopped){
+                fileScan.stopped = true;
+                return;
+            }
+            int stepEnd = segmentEnd;
+            if(segmentEnd - stepStart > CHUNK_STEP){
+                int lineEnd = indexOf(buffer, LF, stepStart + CHUNK_STEP - 1, segmentEnd);
+                if(lineEnd >= 0){
+                    stepEnd = lineEnd + 1;
+                }
+            }
+            fileScan.scan(buffer, stepStart, stepEnd, segmentStart);
+            fileScan.advanceTo(stepEnd);
+            stepStart = stepEnd;
+        }
+    }
+
+    /**
+     * the chunks are scanned without a limit and merged in order on the calling thread, which applies the file limit.
+     * once the limit is reached the merge stops, and the scans still running end at their next step.
+     * */
+    private boolean searchChunks(FileChannel channel, long size, MatchLimits.FileLimit fileLimit, HitListener listener) throws IOException {
+        int chunks = (int) ((size + CHUNK_SIZE - 1) / CHUNK_SIZE);
+        // the chunks scanned ahead of the merge, their hits are held until their turn.
+        int window = ForkJoinPool.getCommonPoolParallelism() * 2;
+        ChunkMerge merge = new ChunkMerge(fileLimit, listener);
+        Deque<ForkJoinTask<ChunkScan>> scans = new ArrayDeque<>();
+        int next = 0;
+        try{
+            while (!merge.stopped && (next < chunks || !scans.isEmpty())){
+                while (next < chunks && scans.size() < window){
+                    int chunk = next++;
+                    scans.add(ForkJoinPool.commonPool().submit(() -> scanChunk(channel, size, chunk, merge)));
+                }
+                merge.merge(join(scans.poll()));
+            }
+            return merge.matched;
+        }finally {
+            // the running scans see the stop and end before the channel is closed.
+            merge.stopped = true;
+            for (ForkJoinTask<ChunkScan> scan : scans) {
+                if(!scan.cancel(false)){
+                    scan.quietlyJoin();
+                }
+            }
+        }
+    }
+
+    private ChunkScan scanChunk(FileChannel channel, long size, int chunk, ChunkMerge merge) throws IOException {
+        long chunkStart = (long) chunk * CHUNK_SIZE;
+        long chunkEnd = Math.min(chunkStart + CHUNK_SIZE, size);
+        ChunkScan chunkScan = new ChunkScan();
+        // the chunk scans the lines that start in it: from the first line start in the chunk,
+        // to the first line start at or after the next chunk, or the end of the file.
+        long from = chunk == 0 ? 0 : lineStart(channel, chunkStart - 1, chunkEnd - 1);
+        if(from < 0){
+            // a line of the chunks before it spans the whole chunk and is scanned by the chunk it starts in.
+            return chunkScan;
+        }
+        long to = chunkEnd >= size ? size : lineStart(channel, chunkEnd - 1, size);
+        if(to < 0){
+            to = size;
+        }
+
+        MatchLimits.FileLimit mergeLimit = new MatchLimits.FileLimit() {
+            @Override
+            public boolean tryLine() {
+                return !merge.stopped;
+            }
+
+            @Override
+            public boolean more() {
+                return !merge.stopped;
+            }
+        };
+        FileScan fileScan = new FileScan(mergeLimit, (lineNum, line, wordIndex, byteOffset) ->
+                chunkScan.hits.add(new Hit(lineNum, line, wordIndex, byteOffset)));
+        scanSegments(channel, from, to, fileScan, merge);
+        chunkScan.lineFeeds = fileScan.lineNum - 1;
+        return chunkScan;
+    }
+
+    /**
+     * the position after the first line feed from from to to, -1 when there is none. the bytes are
+     * mapped a chunk at a time, so the search for the end of a long line does not map it at once.
+     * */
+    private static long lineStart(FileChannel channel, long from, long to) throws IOException {
+        for (long windowStart = from; windowStart < to; windowStart += CHUNK_SIZE) {
+            int windowLength = (int) Math.min(to - windowStart, CHUNK_SIZE);
+            MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, windowLength);
+            int lineEnd = indexOf(window, LF, 0, windowLength);
+            if(lineEnd >= 0){
+                return windowStart + lineEnd + 1;
+            }
+        }
+        return -1;
+    }
+
+    private static ChunkScan join(ForkJoinTask<ChunkScan> scan) throws IOException {
+        try{
+            return scan.get();
+        }catch (InterruptedException ie){
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while searching the chunks.");
+        }catch (ExecutionException ee){
+            Throwable cause = ee.getCause();
+            if(cause instanceof IOException){
+                throw (IOException) cause;
+            }
+            if(cause instanceof RuntimeException){
+                throw (RuntimeException) cause;
+            }
+            if(cause instanceof Error){
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    private static int indexOf(ByteBuffer buffer, byte b, int from, int to){
+        for (int i = from; i < to; i++) {
+            if(buffer.get(i) == b){
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int lastIndexOf(ByteBuffer buffer, byte b, int to){
+        for (int i = to - 1; i >= 0; i--) {
+            if(buffer.get(i) == b){
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * a hit of a chunk, the line number counts from the chunk start.
+     * */
+    private static final class Hit {
+        private final long lineNum;
+        private final String line;
+        private final int wordIndex;
+        private final long byteOffset;
+
+        private Hit(long lineNum, String line, int wordIndex, long byteOffset) {
+            this.lineNum = lineNum;
+            this.line = line;
+            this.wordIndex = wordIndex;
+            this.byteOffset = byteOffset;
+        }
+    }
+
+    /**
+     * the hits and the line feed count of one chunk.
+     * */
+    private static final class ChunkScan {
+        private final List<Hit> hits = new ArrayList<>();
+        private long lineFeeds;
+    }
+
+    /**
+     * reports the chunk hits in the file order, the line feeds of the merged chunks are the prefix sum
+     * that turns the chunk line numbers into file line numbers.
+     * */
+    private static final class ChunkMerge {
+        private final MatchLimits.FileLimit fileLimit;
+        private final HitListener listener;
+        // read by the chunk scans.
+        private volatile boolean stopped;
+        private boolean matched;
+        private long lineFeeds;
+        private long takenLine;
+        private boolean lastLine;
+
+        private ChunkMerge(MatchLimits.FileLimit fileLimit, HitListener listener) {
+            this.fileLimit = fileLimit;
+            this.listener = listener;
+        }
+
+        private void merge(ChunkScan chunkScan){
+            for (Hit hit : chunkScan.hits) {
+                long lineNum = lineFeeds + hit.lineNum;
+                boolean newLine = takenLine != lineNum;
+                if(newLine){
+                    if(lastLine || !fileLimit.tryLine()){
+                        stopped = true;
+                        return;
+                    }
+                    takenLine = lineNum;
+                }
+                matched = true;
+                listener.onHit(lineNum, hit.line, hit.wordIndex, hit.byteOffset);
+                if(newLine){
+                    lastLine = !fileLimit.more();
+                }
+            }
+            lineFeeds += chunkScan.lineFeeds;
+            // no line spans two chunks, the last line is reported in full.
+            if(lastLine){
+                stopped = true;
+            }
+        }
+    }
+
+    /**
+     * scan state of one file: line number tracking and per line hit dedup.
+     * */
+    private final class FileScan implements AhoCorasick.ByteMatchListener {
+        private final MatchLimits.FileLimit fileLimit;
+        private final HitListener listener;
+        // line number of the last report of every word.
+        private final long[] reportedLine = new long[wordCount];
+        private boolean matched;
+        // line taken from the file limit, and the limit takes no more lines after it.
+        private long takenLine;
+        private boolean lastLine;
+        private boolean stopped;
+
+        private ByteBuffer buffer;
+        private int end;
+        private long segmentOffset;
+        // line number of lineStart, newlines are counted up to countedTo.
+        private long lineNum = 1;
+        private int lineStart;
+        private int countedTo;
+        private String lineText;
+
+        private FileScan(MatchLimits.FileLimit fileLimit, HitListener listener) {
+            this.fileLimit = fileLimit;
+            this.listener = listener;
+        }
+
+        private void scan(ByteBuffer buffer, int from, int to, long segmentOffset){
+            this.buffer = buffer;
+            this.end = to;
+            this.segmentOffset = segmentOffset;
+            this.lineStart = from;
+            this.countedTo = from;
+            this.lineText = null;
+
+            if(wordsMatcher != null){
+                wordsMatcher.scan(buffer, from, to, this);
+                if(lastLine && !stopped){
+                    // report the other words of the last line, the words reported already are skipped.
+                    stopped = true;
+                    int lineEnd = indexOf(buffer, LF, lineStart, to);
+                    wordsMatcher.scan(buffer, lineStart, lineEnd < 0 ? to : lineEnd, this);
+                }
+            }else{
+                horspool(from, to);
+            }
+        }
+
+        private void horspool(int from, int to){
+            int m = pattern.length;
+            int last = m - 1;
+            int pos = from;
+            while (pos <= to - m){
+                int j = last;
+                while (j >= 0 && buffer.get(pos + j) == pattern[j]){
+                    j--;
+                }
+                if(j < 0){
+                    if(!onMatch(0, pos, pos + m) || lastLine){
+                        stopped = true;
+                        return;
+                    }
+                    // the word is reported once per line, continue on the next line.
+                    int lineEnd = indexOf(buffer, LF, pos + m, to);
+                    if(lineEnd < 0){
+                        return;
+                    }
+                    pos = lineEnd + 1;
+                }else{
+                    pos += badCharShift[buffer.get(pos + last) & 0xFF];
+                }
+            }
+        }
+
+        @Override
+        public boolean onMatch(int wordIndex, int start, int end) {
+            advanceTo(start);
+            if(reportedLine[wordIndex] != lineNum){
+                boolean newLine = takenLine != lineNum;
+                if(newLine){
+                    if(lastLine || !fileLimit.tryLine()){
+                        stopped = true;
+                        return false;
+                    }
+                    takenLine = lineNum;
+                }
+                reportedLine[wordIndex] = lineNum;
+                matched = true;
+                listener.onHit(lineNum, lineText(), wordIndex, segmentOffset + start);
+                if(newLine){
+                    // asked after the report, the listener may take lines of its own.
+                    lastLine = !fileLimit.more();
+                }
+            }
+            // the scan of the last line goes on in scan(), only over that line.
+            return !lastLine || stopped;
+        }
+
+        private void advanceTo(int pos){
+            for (int i = countedTo; i < pos; i++) {
+                if(buffer.get(i) == LF){
+                    lineNum++;
+                    lineStart = i + 1;
+                    lineText = null;
+                }
+            }
+            countedTo = Math.max(countedTo, pos);
+        }
+
+        private String lineText(){
+            if(lineText == null){
+                int lineEnd = indexOf(buffer, LF, lineStart, end);
+                if(lineEnd < 0){
+                    lineEnd = end;
+                }
+                if(lineEnd > lineStart && buffer.get(lineEnd - 1) == CR){
+                    lineEnd--;
+                }
+                byte[] bytes = new byte[lineEnd - lineStart];
+                ByteBuffer lineBuffer = buffer.duplicate();
+                ((Buffer) lineBuffer).limit(lineEnd);
+                ((Buffer) lineBuffer).position(lineStart);
+                lineBuffer.get(bytes);
+                lineText = new String(bytes, charset);
+            }
+            return lineText;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.github.search.content;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * executors of the content search: a virtual thread per task when the runtime has them (jdk 21+),
+ * looked up by reflection so the jar still builds and runs on java 8.
+ */
+public final class ContentExecutors {
+    private static final Method NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR = virtualThreadPerTaskExecutorMethod();
+
+    private ContentExecutors(){
+        // no instance.
+    }
+
+    /**
+     * true on a runtime with virtual threads enabled.
+     * */
+    public static boolean virtualThreadsSupported(){
+        return NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null;
+    }
+
+    /**
+     * {@code Executors.newVirtualThreadPerTaskExecutor()}, a new virtual thread for every task.
+     * @throws UnsupportedOperationException the runtime has no virtual threads.
+     * */
+    public static ExecutorService newVirtualThreadPerTaskExecutor(){
+        if(NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR == null){
+            throw new UnsupportedOperationException("virtual threads need java 21 or later, running " +
+                    System.getProperty("java.version"));
+        }
+        return newExecutor(NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR);
+    }
+
+    private static Method virtualThreadPerTaskExecutorMethod(){
+        try{
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            // a preview api (java 19, 20) throws without --enable-preview.
+            newExecutor(method).shutdown();
+            return method;
+        }catch (NoSuchMethodException | RuntimeException ex){
+            return null;
+        }
+    }
+
+    private static ExecutorService newExecutor(Method method){
+        try{
+            return (ExecutorService) method.invoke(null);
+        }catch (ReflectiveOperationException roe){
+            Throwable cause = roe.getCause() == null ? roe : roe.getCause();
+            throw new UnsupportedOperationException("virtual threads are not available: " + cause, cause);
+        }
+    }
+}
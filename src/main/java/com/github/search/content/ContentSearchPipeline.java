@@ -0,0 +1,560 @@
+package com.github.search.content;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import com.github.search.metrics.LatencyHistogram;
+import com.github.search.output.FileResults;
+import com.github.search.output.ResultWriter;
+import com.github.search.utils.FileKeySet;
+
+/**
+ * content search stage of the walk: walker -> bounded file queue -> content workers -> ordered result sink.
+ * the walker blocks when the queue is full instead of searching files itself, {@link #finish()}
+ * closes the queue and waits until every submitted file is searched and printed.
+ * the results of a file are printed together and in the order the files were submitted. the files submitted
+ * and not printed yet are bounded by the reorder window: a file searched ahead of a slow one holds its results
+ * in the sink until its turn, and the walker blocks once the window is full. the next file of the order is
+ * streamed to the output while it is searched, a file searched ahead of it waits once its results reach the
+ * gate of {@link FileResults} while that next file is being searched, so the memory of the results stays bounded.
+ * the file queue is grouped by the device of the file keys: every device has its own limit of files read
+ * at the same time and starts its files in inode order, so a scan of several disks keeps each of them busy
+ * without seeking one of them back and forth, see {@link DeviceReadQueue}.
+ * with {@link #perFileTasks(ContentSearch, ResultWriter, int, ExecutorService)} every file is a task of its own
+ * instead, for an executor of virtual threads: the tasks are started from the same queue, up to the open files,
+ * so the reads in flight follow the storage instead of a worker count.
+ * {@link #cancel()} drops the files not searched yet, for a search that has all the results it needs.
+ */
+public final class ContentSearchPipeline {
+    private static final FileResult SINK_POISON_PILL = new FileResult(-1, null);
+
+    private final ContentSearch contentSearch;
+    private final ResultWriter out;
+    private final int workers;
+    private final DeviceReadQueue<FileTask> fileQueue;
+    private final BlockingQueue<FileResult> resultQueue = new LinkedBlockingQueue<>();
+    private final CountDownLatch workersDone;
+    // per file tasks: the executor of the tasks, started from the file queue up to the open files.
+    private final ExecutorService taskExecutor;
+    private final CountDownLatch sinkDone = new CountDownLatch(1);
+    // a permit per file submitted and not printed, released by the sink.
+    private final int reorderWindow;
+    private final Semaphore reorderPermits;
+    // the sequence number of the next file of the output and the results of the files being searched, under orderLock.
+    private final Object orderLock = new Object();
+    private final Map<Long, FileResults> searching = new HashMap<>();
+    private long head;
+    private final AtomicLong sequence = new AtomicLong();
+    private volatile boolean cancelled;
+
+    // queue metrics
+    private final int queueCapacity;
+    private final AtomicInteger maxQueueDepth = new AtomicInteger();
+    private final LongAdder producerBlocked = new LongAdder();
+    private final LongAdder producerBlockedNanos = new LongAdder();
+    private final LongAdder searchedFiles = new LongAdder();
+    private final LongAdder matchedFiles = new LongAdder();
+    private final LongAdder failedFiles = new LongAdder();
+    private final LongAdder cancelledFiles = new LongAdder();
+    // nanoseconds from the submit to a worker, and of the content search of a file.
+    private final LatencyHistogram queueWaitNanos = new LatencyHistogram();
+    private final LatencyHistogram searchNanos = new LatencyHistogram();
+
+    /**
+     * content search of one file, the matches are encoded into the results of the file.
+     * */
+    public interface ContentSearch {
+        boolean search(File file, FileResults output) throws IOException;
+    }
+
+    /**
+     * @param contentSearch content search of one file, called concurrently by the workers.
+     * @param out output of the results, written by the result sink thread only.
+     * @param workers content worker count.
+     * @param queueCapacity capacity of the file queue between the walker and the workers.
+     * @param executor runs the workers and the result sink, needs workers + 1 free threads.
+     * */
+    public ContentSearchPipeline(ContentSearch contentSearch, ResultWriter out, int workers, int queueCapacity, ExecutorService executor) {
+        this(contentSearch, out, workers, queueCapacity, executor, Integer.MAX_VALUE, ReadOrder.WALK);
+    }
+
+    /**
+     * @param deviceReads files of one device searched at the same time.
+     * @param readOrder order of the queued files of one device.
+     * */
+    public ContentSearchPipeline(ContentSearch contentSearch, ResultWriter out, int workers, int queueCapacity, ExecutorService executor,
+                                 int deviceReads, ReadOrder readOrder) {
+        if(workers <= 0){
+            throw new IllegalArgumentException("workers must be positive: " + workers);
+        }
+        if(queueCapacity <= 0){
+            throw new IllegalArgumentException("queueCapacity must be positive: " + queueCapacity);
+        }
+        this.contentSearch = contentSearch;
+        this.out = out;
+        this.workers = workers;
+        this.queueCapacity = queueCapacity;
+        this.fileQueue = new DeviceReadQueue<>(queueCapacity, workers, deviceReads, readOrder);
+        this.workersDone = new CountDownLatch(workers);
+        this.taskExecutor = null;
+        this.reorderWindow = reorderWindow(queueCapacity, workers);
+        this.reorderPermits = new Semaphore(reorderWindow);
+
+        for (int i = 0; i < workers; i++) {
+            executor.execute(this::workerLoop);
+        }
+        executor.execute(this::sinkLoop);
+    }
+
+    private ContentSearchPipeline(ContentSearch contentSearch, ResultWriter out, int maxOpenFiles, ExecutorService taskExecutor,
+                                  int deviceReads, ReadOrder readOrder) {
+        if(maxOpenFiles <= 0){
+            throw new IllegalArgumentException("maxOpenFiles must be positive: " + maxOpenFiles);
+        }
+        this.contentSearch = contentSearch;
+        this.out = out;
+        this.workers = maxOpenFiles;
+        this.queueCapacity = maxOpenFiles;
+        // the queued files wait for an open file, as many as can be open are queued to be ordered.
+        this.fileQueue = new DeviceReadQueue<>(maxOpenFiles, maxOpenFiles, deviceReads, readOrder);
+        this.workersDone = null;
+        this.taskExecutor = taskExecutor;
+        this.reorderWindow = reorderWindow(maxOpenFiles, maxOpenFiles);
+        this.reorderPermits = new Semaphore(reorderWindow);
+
+        taskExecutor.execute(this::sinkLoop);
+    }
+
+    /**
+     * the queued and the searched files, twice over, so a slow file does not stop the queue at once.
+     * */
+    private static int reorderWindow(int queueCapacity, int workers){
+        return (int) Math.min(Integer.MAX_VALUE, 2L * ((long) queueCapacity + workers));
+    }
+
+    /**
+     * one task per submitted file, at most maxOpenFiles files are searched at the same time and
+     * the submit blocks while they are all taken.
+     * @param contentSearch content search of one file, called concurrently by the tasks.
+     * @param out output of the results, written by the result sink task only.
+     * @param taskExecutor runs every file task and the result sink, a virtual thread per task executor
+     *                     or a pool with maxOpenFiles + 1 threads.
+     * */
+    public static ContentSearchPipeline perFileTasks(ContentSearch contentSearch, ResultWriter out,
+                                                     int maxOpenFiles, ExecutorService taskExecutor){
+        return perFileTasks(contentSearch, out, maxOpenFiles, taskExecutor, Integer.MAX_VALUE, ReadOrder.WALK);
+    }
+
+    /**
+     * @param deviceReads files of one device searched at the same time.
+     * @param readOrder order of the queued files of one device.
+     * */
+    public static ContentSearchPipeline perFileTasks(ContentSearch contentSearch, ResultWriter out,
+                                                     int maxOpenFiles, ExecutorService taskExecutor,
+                                                     int deviceReads, ReadOrder readOrder){
+        return new ContentSearchPipeline(contentSearch, out, maxOpenFiles, taskExecutor, deviceReads, readOrder);
+    }
+
+    /**
+     * queue the file for content search, blocks while the queue is full.
+     * @param size size of the file, carried by its results.
+     * @param lastModified epoch milliseconds, carried by its results.
+     * */
+    public void submit(File file, long size, long lastModified){
+        submit(file, size, lastModified, null, contentSearch);
+    }
+
+    /**
+     * queue the file for the given content search instead of the default one, blocks while the queue is full.
+     * */
+    public void submit(File file, long size, long lastModified, ContentSearch fileSearch){
+        submit(file, size, lastModified, null, fileSearch);
+    }
+
+    /**
+     * queue the file on the queue of its device, blocks while the queue is full.
+     * @param fileKey file key of the attributes of the walk, the device and the inode of the file, null when unknown.
+     * */
+    public void submit(File file, long size, long lastModified, Object fileKey){
+        submit(file, size, lastModified, fileKey, contentSearch);
+    }
+
+    /**
+     * queue the file on the queue of its device for the given content search, blocks while the queue is full.
+     * */
+    public void submit(File file, long size, long lastModified, Object fileKey, ContentSearch fileSearch){
+        if(!reorderPermits.tryAcquire()){
+            producerBlocked.increment();
+            long blockStart = System.nanoTime();
+            try{
+                reorderPermits.acquire();
+            }catch (InterruptedException ie){
+                Thread.currentThread().interrupt();
+                // no sequence taken, the file is not submitted.
+                return;
+            }
+            producerBlockedNanos.add(System.nanoTime() - blockStart);
+        }
+        FileTask task = new FileTask(sequence.getAndIncrement(), file, size, lastModified, fileSearch, System.nanoTime());
+        if(cancelled){
+            cancelledFiles.increment();
+            resultQueue.add(new FileResult(task.seq, null));
+            return;
+        }
+        // a key that is not a unix one, or whose text does not parse, queues in walk order on the unknown device.
+        long device = FileKeySet.device(fileKey);
+        long inode = device == DeviceReadQueue.UNKNOWN_DEVICE ? -1 : FileKeySet.inode(fileKey);
+        try{
+            if(!fileQueue.offer(task, device, inode)){
+                producerBlocked.increment();
+                long blockStart = System.nanoTime();
+                fileQueue.put(task, device, inode);
+                producerBlockedNanos.add(System.nanoTime() - blockStart);
+            }
+        }catch (InterruptedException ie){
+            Thread.currentThread().interrupt();
+            // keep the sequence gap-free for the ordered sink.
+            resultQueue.add(new FileResult(task.seq, null));
+            return;
+        }
+        if(taskExecutor != null){
+            startTasks();
+        }
+        updateMaxQueueDepth(queueDepth());
+    }
+
+    /**
+     * starts the queued files that have an open file and a read of their device, as tasks of their own.
+     * called after every submit and after every task, a file queued is started by the one or the other.
+     * */
+    private void startTasks(){
+        DeviceReadQueue.Read<FileTask> read;
+        while ((read = fileQueue.poll()) != null){
+            DeviceReadQueue.Read<FileTask> started = read;
+            try{
+                taskExecutor.execute(() -> {
+                    try{
+                        resultQueue.add(search(started.task()));
+                    }finally {
+                        fileQueue.done(started);
+                    }
+                    startTasks();
+                });
+            }catch (RejectedExecutionException ree){
+                failedFiles.increment();
+                resultQueue.add(new FileResult(started.task().seq, null));
+                fileQueue.done(started);
+            }
+        }
+    }
+
+    /**
+     * the queued files and the files submitted from now on are not searched, the searches
+     * running go on and their matches are printed. {@link #finish()} is still needed.
+     * */
+    public void cancel(){
+        cancelled = true;
+        synchronized (orderLock){
+            orderLock.notifyAll();
+        }
+    }
+
+    public boolean cancelled(){
+        return cancelled;
+    }
+
+    /**
+     * no more files: waits until every submitted file is searched and its matches are printed.
+     * */
+    public void finish() throws InterruptedException {
+        fileQueue.close();
+        if(taskExecutor != null){
+            // no file queued or searched: no file task left.
+            fileQueue.awaitIdle();
+        }else{
+            workersDone.await();
+        }
+        resultQueue.put(SINK_POISON_PILL);
+        sinkDone.await();
+    }
+
+    public String report(){
+        if(taskExecutor != null){
+            return String.format("content pipeline: per_file_tasks max_open_files=%d max_open_depth=%d reorder_window=%d devices=%d device_reads=%d " +
+                            "read_order=%s producer_blocked=%d producer_blocked_ms=%d searched=%d matched=%d failed=%d cancelled=%d",
+                    workers,
+                    maxQueueDepth.get(),
+                    reorderWindow,
+                    fileQueue.devices(),
+                    fileQueue.deviceReads(),
+                    fileQueue.readOrder().name().toLowerCase(),
+                    producerBlocked.sum(),
+                    producerBlockedNanos.sum() / 1000000,
+                    searchedFiles.sum(),
+                    matchedFiles.sum(),
+                    failedFiles.sum(),
+                    cancelledFiles.sum());
+        }
+        return String.format("content pipeline: workers=%d queue_capacity=%d max_queue_depth=%d reorder_window=%d devices=%d device_reads=%d " +
+                        "read_order=%s producer_blocked=%d producer_blocked_ms=%d searched=%d matched=%d failed=%d cancelled=%d",
+                workers,
+                queueCapacity,
+                maxQueueDepth.get(),
+                reorderWindow,
+                fileQueue.devices(),
+                fileQueue.deviceReads(),
+                fileQueue.readOrder().name().toLowerCase(),
+                producerBlocked.sum(),
+                producerBlockedNanos.sum() / 1000000,
+                searchedFiles.sum(),
+                matchedFiles.sum(),
+                failedFiles.sum(),
+                cancelledFiles.sum());
+    }
+
+    /**
+     * the worker count, the max open files of the per file tasks.
+     * */
+    public int workers() {
+        return workers;
+    }
+
+    public int queueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * files submitted and not printed before the submit blocks.
+     * */
+    public int reorderWindow() {
+        return reorderWindow;
+    }
+
+    /**
+     * files waiting for a worker now, the files in flight for the per file tasks.
+     * */
+    public int queueDepth(){
+        return taskExecutor != null ? fileQueue.reads() : fileQueue.queued();
+    }
+
+    /**
+     * the devices of the submitted files, 1 for the files without a unix file key.
+     * */
+    public int devices(){
+        return fileQueue.devices();
+    }
+
+    /**
+     * files of one device searched at the same time.
+     * */
+    public int deviceReads(){
+        return fileQueue.deviceReads();
+    }
+
+    public boolean perFileTasks(){
+        return taskExecutor != null;
+    }
+
+    public int maxQueueDepth() {
+        return maxQueueDepth.get();
+    }
+
+    /**
+     * submits that found the queue or the reorder window full and blocked the walker.
+     * */
+    public long producerBlocked() {
+        return producerBlocked.sum();
+    }
+
+    public long producerBlockedNanos() {
+        return producerBlockedNanos.sum();
+    }
+
+    public long submittedFiles(){
+        return sequence.get();
+    }
+
+    public long searchedFiles() {
+        return searchedFiles.sum();
+    }
+
+    public long matchedFiles() {
+        return matchedFiles.sum();
+    }
+
+    public long failedFiles() {
+        return failedFiles.sum();
+    }
+
+    /**
+     * files submitted or queued after {@link #cancel()}, not searched.
+     * */
+    public long cancelledFiles() {
+        return cancelledFiles.sum();
+    }
+
+    public LatencyHistogram queueWaitNanos() {
+        return queueWaitNanos;
+    }
+
+    public LatencyHistogram searchNanos() {
+        return searchNanos;
+    }
+
+    private void updateMaxQueueDepth(int depth){
+        int max = maxQueueDepth.get();
+        while (depth > max && !maxQueueDepth.compareAndSet(max, depth)){
+            max = maxQueueDepth.get();
+        }
+    }
+
+    private void workerLoop(){
+        try{
+            for (;;) {
+                DeviceReadQueue.Read<FileTask> read = fileQueue.take();
+                if(read == null){
+                    break;
+                }
+                try{
+                    resultQueue.put(search(read.task()));
+                }finally {
+                    fileQueue.done(read);
+                }
+            }
+        }catch (InterruptedException ie){
+            Thread.currentThread().interrupt();
+        }finally {
+            workersDone.countDown();
+        }
+    }
+
+    private FileResult search(FileTask task){
+        if(cancelled){
+            cancelledFiles.increment();
+            return new FileResult(task.seq, null);
+        }
+        long startNanos = System.nanoTime();
+        queueWaitNanos.record(startNanos - task.submitNanos);
+        FileResults results = out.results(task.file, task.size, task.lastModified, this::awaitTurn);
+        synchronized (orderLock){
+            searching.put(task.seq, results);
+            if(task.seq == head){
+                results.stream();
+            }
+        }
+        try{
+            if(task.contentSearch.search(task.file, results)){
+                matchedFiles.increment();
+            }
+        }catch (IOException | RuntimeException | Error ex){
+            // an error fails the file alone, e.g. a stack overflow of a regex on a long line: the sink needs
+            // a result for every sequence number, a worker that died without one would stop the output for good.
+            failedFiles.increment();
+        }
+        synchronized (orderLock){
+            searching.remove(task.seq);
+        }
+        searchNanos.record(System.nanoTime() - startNanos);
+        searchedFiles.increment();
+        return new FileResult(task.seq, results);
+    }
+
+    /**
+     * the gate of the results of a file searched ahead of its turn: waits while the next file of the output
+     * is being searched, that search does not wait and ends. when the next file is still queued the search
+     * goes on, the files queued ahead of it could otherwise take every worker.
+     * */
+    private void awaitTurn(FileResults results){
+        synchronized (orderLock){
+            while (!results.streamed() && !cancelled && searching.containsKey(head)){
+                try{
+                    orderLock.wait();
+                }catch (InterruptedException ie){
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * the file of the sequence number is the next one of the output, streamed if it is being searched.
+     * */
+    private void advance(long next){
+        synchronized (orderLock){
+            head = next;
+            FileResults results = searching.get(next);
+            if(results != null){
+                results.stream();
+            }
+            orderLock.notifyAll();
+        }
+    }
+
+    private void sinkLoop(){
+        Map<Long, FileResult> pending = new HashMap<>();
+        long next = 0;
+        try{
+            for (;;) {
+                FileResult result = resultQueue.take();
+                if(result == SINK_POISON_PILL){
+                    break;
+                }
+
+                pending.put(result.seq, result);
+                FileResult ready;
+                while ((ready = pending.remove(next)) != null){
+                    if(ready.results != null){
+                        out.write(ready.results);
+                    }
+                    next++;
+                    reorderPermits.release();
+                    advance(next);
+                }
+            }
+        }catch (InterruptedException ie){
+            Thread.currentThread().interrupt();
+        }finally {
+            sinkDone.countDown();
+        }
+    }
+
+    private static final class FileTask {
+        private final long seq;
+        private final File file;
+        private final long size;
+        private final long lastModified;
+        private final ContentSearch contentSearch;
+        private final long submitNanos;
+
+        private FileTask(long seq, File file, long size, long lastModified, ContentSearch contentSearch, long submitNanos) {
+            this.seq = seq;
+            this.file = file;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.contentSearch = contentSearch;
+            this.submitNanos = submitNanos;
+        }
+    }
+
+    private static final class FileResult {
+        private final long seq;
+        // null for a file not searched.
+        private final FileResults results;
+
+        private FileResult(long seq, FileResults results) {
+            this.seq = seq;
+            this.results = results;
+        }
+    }
+}
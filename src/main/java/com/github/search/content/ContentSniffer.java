@@ -0,0 +1,211 @@
+package com.github.search.content;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * classifies a file from its first block before the content search reads it: binary, ascii, utf-8,
+ * utf-16 by its byte order mark, or legacy text that is not valid utf-8. a block with a nul byte, or with
+ * too many control bytes, is binary. text is decoded with its sniffed charset, so the multi-byte words
+ * of a file in another charset than the search charset still match. the sniffer is shared by the content
+ * search threads.
+ */
+public final class ContentSniffer {
+    /**
+     * the bytes read to classify a file.
+     * */
+    public static final int BLOCK_SIZE = 8 * 1024;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Charset textCharset;
+    private final Charset legacyCharset;
+
+    /**
+     * file classes.
+     * */
+    public enum Kind {
+        BINARY,
+        ASCII,
+        UTF8,
+        UTF16,
+        LEGACY
+    }
+
+    /**
+     * @param textCharset charset of the ascii files, the search charset.
+     * @param legacyCharset charset of the text files that are not valid utf-8.
+     * */
+    public ContentSniffer(Charset textCharset, Charset legacyCharset) {
+        this.textCharset = textCharset;
+        this.legacyCharset = legacyCharset;
+    }
+
+    /**
+     * reads the first block of the file and classifies it.
+     * */
+    public Sniff sniff(File file) throws IOException {
+        byte[] block = new byte[BLOCK_SIZE];
+        int length = 0;
+        try(FileInputStream in = new FileInputStream(file)){
+            int read;
+            while (length < block.length && (read = in.read(block, length, block.length - length)) != -1){
+                length += read;
+            }
+        }
+        return sniff(block, length, length == block.length);
+    }
+
+    /**
+     * classifies the first bytes of a file.
+     * @param length count of the bytes read.
+     * @param truncated the file has more bytes, a multi-byte sequence may be cut at the end of the block.
+     * */
+    public Sniff sniff(byte[] block, int length, boolean truncated){
+        ArchiveSearcher.Format archive = ArchiveSearcher.format(block, length);
+        if(length >= 3 && block[0] == (byte) 0xef && block[1] == (byte) 0xbb && block[2] == (byte) 0xbf){
+            return new Sniff(Kind.UTF8, StandardCharsets.UTF_8, 3, archive);
+        }
+        if(length >= 2 && block[0] == (byte) 0xff && block[1] == (byte) 0xfe){
+            return new Sniff(Kind.UTF16, StandardCharsets.UTF_16LE, 2, archive);
+        }
+        if(length >= 2 && block[0] == (byte) 0xfe && block[1] == (byte) 0xff){
+            return new Sniff(Kind.UTF16, StandardCharsets.UTF_16BE, 2, archive);
+        }
+
+        int controls = 0;
+        boolean ascii = true;
+        boolean utf8 = true;
+        int i = 0;
+        while (i < length){
+            int b = block[i] & 0xff;
+            if(b < 0x80){
+                if(b == 0){
+                    return new Sniff(Kind.BINARY, null, 0, archive);
+                }
+                if(b < 0x20 && b != '\t' && b != '\n' && b != '\r' && b != '\f' && b != '\b' && b != 0x1b || b == 0x7f){
+                    controls++;
+                }
+                i++;
+                continue;
+            }
+            ascii = false;
+            if(utf8){
+                int sequence = utf8Sequence(block, i, length, truncated);
+                if(sequence > 0){
+                    i += sequence;
+                    continue;
+                }
+                utf8 = false;
+            }
+            i++;
+        }
+        // a tenth of control bytes is not text.
+        if(controls * 10 > length){
+            return new Sniff(Kind.BINARY, null, 0, archive);
+        }
+        if(ascii){
+            return new Sniff(Kind.ASCII, textCharset, 0, archive);
+        }
+        return utf8 ? new Sniff(Kind.UTF8, StandardCharsets.UTF_8, 0, archive) : new Sniff(Kind.LEGACY, legacyCharset, 0, archive);
+    }
+
+    /**
+     * the length of the valid utf-8 sequence that starts with the lead byte at i, 0 if it is invalid.
+     * */
+    private static int utf8Sequence(byte[] block, int i, int length, boolean truncated){
+        int b = block[i] & 0xff;
+        int sequence;
+        if(b >= 0xc2 && b <= 0xdf){
+            sequence = 2;
+        }else if(b >= 0xe0 && b <= 0xef){
+            sequence = 3;
+        }else if(b >= 0xf0 && b <= 0xf4){
+            sequence = 4;
+        }else{
+            return 0;
+        }
+        for (int j = 1; j < sequence; j++) {
+            if(i + j >= length){
+                // cut by the end of the block.
+                return truncated ? length - i : 0;
+            }
+            if((block[i + j] & 0xc0) != 0x80){
+                return 0;
+            }
+        }
+        return sequence;
+    }
+
+    /**
+     * the class of one file.
+     * */
+    public static final class Sniff {
+        private final Kind kind;
+        private final Charset charset;
+        private final int bomLength;
+        private final ArchiveSearcher.Format archive;
+
+        private Sniff(Kind kind, Charset charset, int bomLength, ArchiveSearcher.Format archive) {
+            this.kind = kind;
+            this.charset = charset;
+            this.bomLength = bomLength;
+            this.archive = archive;
+        }
+
+        public Kind kind() {
+            return kind;
+        }
+
+        /**
+         * charset of the text, null for a binary file.
+         * */
+        public Charset charset() {
+            return charset;
+        }
+
+        /**
+         * length of the byte order mark the text starts with, 0 without one.
+         * */
+        public int bomLength() {
+            return bomLength;
+        }
+
+        /**
+         * the archive format of the file, null for a plain file.
+         * */
+        public ArchiveSearcher.Format archive() {
+            return archive;
+        }
+
+        public boolean binary(){
+            return kind == Kind.BINARY;
+        }
+
+        /**
+         * a reader of the text after the byte order mark, decoded with the sniffed charset.
+         * */
+        public BufferedReader reader(File file) throws IOException {
+            InputStream in = new FileInputStream(file);
+            try{
+                long skip = bomLength;
+                while (skip > 0){
+                    long skipped = in.skip(skip);
+                    if(skipped <= 0){
+                        break;
+                    }
+                    skip -= skipped;
+                }
+                return new BufferedReader(new InputStreamReader(in, charset), BUFFER_SIZE);
+            }catch (IOException ioe){
+                in.close();
+                throw ioe;
+            }
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package com.github.search.content;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * bounded queue of the content reads between the walker and the readers, grouped by the device of the files.
+ * every device has its own queue and its own limit of reads in flight, the devices with a read to start are
+ * served round robin, so a slow disk takes its share of the readers and no more. the queue of a device is
+ * served as an elevator over the inode numbers: the next read is the lowest inode at or after the last one,
+ * then it wraps around, the blocks of the files are laid out close to their inodes on most file systems.
+ * a file without a unix file key is queued on the unknown device, in the walk order. thread safe.
+ */
+final class DeviceReadQueue<T> {
+    // the device of the files without a unix file key.
+    static final long UNKNOWN_DEVICE = -1;
+
+    private static final Comparator<Read<?>> INODE_ORDER =
+            Comparator.<Read<?>>comparingLong(read -> read.position).thenComparingLong(read -> read.seq);
+
+    private final int capacity;
+    private final int maxReads;
+    private final int deviceReads;
+    private final ReadOrder readOrder;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition readable = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final Condition idle = lock.newCondition();
+    private final Map<Long, Device<T>> devices = new HashMap<>();
+    private final List<Device<T>> deviceList = new ArrayList<>();
+    private int nextDevice;
+    private int queued;
+    private int reads;
+    private long seq;
+    private boolean closed;
+
+    /**
+     * @param capacity the reads queued before the walker blocks.
+     * @param maxReads the reads in flight over all the devices.
+     * @param deviceReads the reads in flight on one device.
+     * */
+    DeviceReadQueue(int capacity, int maxReads, int deviceReads, ReadOrder readOrder) {
+        if(capacity <= 0){
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        if(maxReads <= 0){
+            throw new IllegalArgumentException("maxReads must be positive: " + maxReads);
+        }
+        if(deviceReads <= 0){
+            throw new IllegalArgumentException("deviceReads must be positive: " + deviceReads);
+        }
+        this.capacity = capacity;
+        this.maxReads = maxReads;
+        this.deviceReads = Math.min(deviceReads, maxReads);
+        this.readOrder = readOrder;
+    }
+
+    /**
+     * queues the read without blocking, false when the queue is full.
+     * @param inode the inode of the file, -1 for none.
+     * */
+    boolean offer(T task, long device, long inode){
+        lock.lock();
+        try{
+            if(queued >= capacity){
+                return false;
+            }
+            enqueue(task, device, inode);
+            return true;
+        }finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * queues the read, blocks while the queue is full.
+     * */
+    void put(T task, long device, long inode) throws InterruptedException {
+        lock.lockInterruptibly();
+        try{
+            while (queued >= capacity){
+                notFull.await();
+            }
+            enqueue(task, device, inode);
+        }finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * the next read to start, blocks until one of a device under its limit is queued.
+     * the read is in flight until {@link #done(Read)}.
+     * @return null once the queue is closed and empty.
+     * */
+    Read<T> take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try{
+            for (;;) {
+                Read<T> read = next();
+                if(read != null){
+                    return read;
+                }
+                if(closed && queued == 0){
+                    return null;
+                }
+                readable.await();
+            }
+        }finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * the next read to start without blocking, null when every queued read waits for its device or none is queued.
+     * */
+    Read<T> poll(){
+        lock.lock();
+        try{
+            return next();
+        }finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * the read ended, its device may start the next one.
+     * */
+    void done(Read<T> read){
+        lock.lock();
+        try{
+            read.device.inFlight--;
+            reads--;
+            readable.signalAll();
+            if(reads == 0 && queued == 0){
+                idle.signalAll();
+            }
+        }finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * no more reads, {@link #take()} returns null once the queued reads are taken.
+     * */
+    void close(){
+        lock.lock();
+        try{
+            closed = true;
+            readable.signalAll();
+        }finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * waits until no read is queued or in flight.
+     * */
+    void awaitIdle() throws InterruptedException {
+        lock.lockInterruptibly();
+        try{
+            while (reads > 0 || queued > 0){
+                idle.await();
+            }
+        }finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * the reads queued and not started.
+     * */
+    int queued(){
+        lock.lock();
+        try{
+            return queued;
+        }finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * the reads in flight.
+     * */
+    int reads(){
+        lock.lock();
+        try{
+            return reads;
+        }finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * the devices the reads were queued on.
+     * */
+    int devices(){
+        lock.lock();
+        try{
+            return deviceList.size();
+        }finally {
+            lock.unlock();
+        }
+    }
+
+    int deviceReads() {
+        return deviceReads;
+    }
+
+    ReadOrder readOrder() {
+        return readOrder;
+    }
+
+    private void enqueue(T task, long device, long inode){
+        long readSeq = seq++;
+        Device<T> queue = devices.get(device);
+        if(queue == null){
+            queue = new Device<>();
+            devices.put(device, queue);
+            deviceList.add(queue);
+        }
+        // without an inode the walk order keeps the files of a directory together.
+        long position = readOrder == ReadOrder.INODE && inode >= 0 ? inode : readSeq;
+        queue.reads.add(new Read<>(task, queue, position, readSeq));
+        queued++;
+        readable.signal();
+    }
+
+    private Read<T> next(){
+        if(reads >= maxReads || queued == 0){
+            return null;
+        }
+        int deviceCount = deviceList.size();
+        for (int i = 0; i < deviceCount; i++) {
+            Device<T> device = deviceList.get((nextDevice + i) % deviceCount);
+            if(device.reads.isEmpty() || device.inFlight >= deviceReads){
+                continue;
+            }
+            nextDevice = (nextDevice + i + 1) % deviceCount;
+            Read<T> read = device.next();
+            device.inFlight++;
+            reads++;
+            queued--;
+            notFull.signal();
+            return read;
+        }
+        return null;
+    }
+
+    /**
+     * the reads of one device, under the lock of the queue.
+     * */
+    private static final class Device<T> {
+        private final TreeSet<Read<T>> reads = new TreeSet<>(INODE_ORDER);
+        private long head = Long.MIN_VALUE;
+        private int inFlight;
+
+        private Read<T> next(){
+            // the elevator goes on from the last position, the lowest position once it is past the end.
+            Read<T> read = reads.ceiling(new Read<>(null, this, head, Long.MIN_VALUE));
+            if(read == null){
+                read = reads.first();
+            }
+            reads.remove(read);
+            head = read.position;
+            return read;
+        }
+    }
+
+    /**
+     * a queued read: the task, its device and its position in the device order.
+     * */
+    static final class Read<T> {
+        private final T task;
+        private final Device<T> device;
+        private final long position;
+        private final long seq;
+
+        private Read(T task, Device<T> device, long position, long seq) {
+            this.task = task;
+            this.device = device;
+            this.position = position;
+            this.seq = seq;
+        }
+
+        T task() {
+            return task;
+        }
+    }
+}
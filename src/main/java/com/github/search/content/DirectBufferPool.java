@@ -0,0 +1,50 @@
+package com.github.search.content;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * pool of direct byte buffers of the same capacity, shared by the content search threads.
+ */
+public final class DirectBufferPool {
+    private final int bufferCapacity;
+    private final int maxPooled;
+    private final ConcurrentLinkedQueue<ByteBuffer> buffers = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooled = new AtomicInteger();
+
+    /**
+     * @param bufferCapacity capacity of every buffer.
+     * @param maxPooled max idle buffers kept by the pool.
+     * */
+    public DirectBufferPool(int bufferCapacity, int maxPooled) {
+        this.bufferCapacity = bufferCapacity;
+        this.maxPooled = maxPooled;
+    }
+
+    public int bufferCapacity() {
+        return bufferCapacity;
+    }
+
+    public ByteBuffer acquire(){
+        ByteBuffer buffer = buffers.poll();
+        if(buffer == null){
+            return ByteBuffer.allocateDirect(bufferCapacity);
+        }
+        pooled.decrementAndGet();
+        ((Buffer) buffer).clear();
+        return buffer;
+    }
+
+    public void release(ByteBuffer buffer){
+        if(buffer.capacity() != bufferCapacity || !buffer.isDirect()){
+            return;
+        }
+        if(pooled.incrementAndGet() <= maxPooled){
+            buffers.offer(buffer);
+        }else{
+            pooled.decrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package com.github.search.content;
+
+/**
+ * callback of the words found in a line by a decoded line search, every word is reported once per line.
+ */
+public interface LineMatchListener {
+    void onMatch(long lineNum, String line, String word);
+}
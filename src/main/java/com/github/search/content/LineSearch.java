@@ -0,0 +1,16 @@
+package com.github.search.content;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import com.github.search.output.FileResults;
+
+/**
+ * content search of the decoded lines of a reader: a file decoded with its sniffed charset,
+ * a gzip file or a zip entry. the reader is closed by the caller.
+ */
+public interface LineSearch {
+    /**
+     * @param source the file named in the match messages, archive!/entry for a zip entry.
+     * */
+    boolean search(String source, BufferedReader reader, FileResults output) throws IOException;
+}
@@ -0,0 +1,137 @@
+package com.github.search.content;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * early exit limits of one search: at most maxCount matched lines per file, and at most limit results
+ * in the whole search. a content search stops reading a file once it can not report more lines,
+ * and once the limit is reached, or the search is stopped, every search and the walk stop, the results
+ * already taken are printed. the limits are shared by the walker and content threads.
+ */
+public final class MatchLimits {
+    /**
+     * no limit, the searches read every line.
+     * */
+    public static final MatchLimits NONE = new MatchLimits(Integer.MAX_VALUE, Long.MAX_VALUE);
+
+    private final int maxCount;
+    private final long limit;
+    private final AtomicLong results = new AtomicLong();
+    private final AtomicBoolean reached = new AtomicBoolean();
+    private volatile Runnable onReached;
+
+    /**
+     * the matched lines of one file, a search asks before it reports a line.
+     * */
+    public interface FileLimit {
+        /**
+         * takes a matched line, false when the line must not be reported and the search must stop.
+         * */
+        boolean tryLine();
+
+        /**
+         * true while the file may report more lines.
+         * */
+        boolean more();
+    }
+
+    /**
+     * @param maxCount matched lines per file.
+     * @param limit results of the search.
+     * */
+    public MatchLimits(int maxCount, long limit) {
+        if(maxCount <= 0){
+            throw new IllegalArgumentException("maxCount must be positive: " + maxCount);
+        }
+        if(limit <= 0){
+            throw new IllegalArgumentException("limit must be positive: " + limit);
+        }
+        this.maxCount = maxCount;
+        this.limit = limit;
+    }
+
+    public int maxCount() {
+        return maxCount;
+    }
+
+    public long limit() {
+        return limit;
+    }
+
+    /**
+     * takes one result of the search, false once the limit is reached.
+     * */
+    public boolean tryResult(){
+        if(reached.get()){
+            return false;
+        }
+        if(limit == Long.MAX_VALUE){
+            return true;
+        }
+        long taken = results.incrementAndGet();
+        if(taken >= limit){
+            reach();
+        }
+        return taken <= limit;
+    }
+
+    /**
+     * ends the search as if the limit were reached, the walk and the content searches stop
+     * and the results taken already are printed. not for {@link #NONE}.
+     * */
+    public void stop(){
+        if(this == NONE){
+            throw new IllegalStateException("the no limit instance is shared");
+        }
+        reach();
+    }
+
+    private void reach(){
+        if(reached.compareAndSet(false, true)){
+            Runnable action = onReached;
+            if(action != null){
+                action.run();
+            }
+        }
+    }
+
+    /**
+     * true once the search took all its results.
+     * */
+    public boolean reached(){
+        return reached.get();
+    }
+
+    /**
+     * runs the action on the thread that takes the last result, at most once.
+     * */
+    public void onReached(Runnable action){
+        this.onReached = action;
+    }
+
+    /**
+     * the limit of a new file, used by one thread.
+     * */
+    public FileLimit file(){
+        return new LinesOfFile();
+    }
+
+    private final class LinesOfFile implements FileLimit {
+        private int lines;
+
+        @Override
+        public boolean tryLine() {
+            if(lines >= maxCount || !tryResult()){
+                return false;
+            }
+            lines++;
+            return true;
+        }
+
+        @Override
+        public boolean more() {
+            return lines < maxCount && !reached.get();
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.github.search.content;
+
+/**
+ * the order the queued content reads of one device are started in.
+ */
+public enum ReadOrder {
+    /** the order the walk found the files. */
+    WALK,
+    /** an elevator over the inode numbers, fewer seeks on spinning disks and network file systems. */
+    INODE
+}
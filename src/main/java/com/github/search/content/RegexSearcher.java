@@ -0,0 +1,161 @@
+package com.github.search.content;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import com.github.search.utils.RequiredLiterals;
+
+/**
+ * line search of a regex, the pattern is compiled once and shared by the content search threads.
+ * when every match needs a literal, the file bytes are scanned for it by a {@link ByteContentSearcher}
+ * first: a file without it is never decoded, and only its lines with the literal are matched by the regex.
+ */
+public final class RegexSearcher {
+    private final Pattern pattern;
+    private final String requiredLiteral;
+    private final Charset charset;
+    // null without a literal or for a charset the byte search does not support.
+    private final ByteContentSearcher literalSearcher;
+
+    /**
+     * callback of a matched line, every line is reported once.
+     * @param match the first match of the regex in the line.
+     * */
+    public interface LineListener {
+        void onLine(long lineNum, String line, String match);
+    }
+
+    /**
+     * @param regex java regex.
+     * @param charset file charset.
+     * @param mmapThreshold the literal scan memory maps files of this size or larger.
+     * @throws java.util.regex.PatternSyntaxException the regex is invalid.
+     * */
+    public RegexSearcher(String regex, Charset charset, int mmapThreshold) {
+        this(regex, charset, mmapThreshold, Long.MAX_VALUE);
+    }
+
+    /**
+     * @param regex java regex.
+     * @param charset file charset.
+     * @param mmapThreshold the literal scan memory maps files of this size or larger.
+     * @param parallelThreshold the literal scan searches files of this size or larger in parallel chunks.
+     * @throws java.util.regex.PatternSyntaxException the regex is invalid.
+     * */
+    public RegexSearcher(String regex, Charset charset, int mmapThreshold, long parallelThreshold) {
+        this.pattern = Pattern.compile(regex);
+        this.requiredLiteral = RequiredLiterals.ofRegex(regex);
+        this.charset = charset;
+        this.literalSearcher = requiredLiteral != null && ByteContentSearcher.supports(charset) ?
+                new ByteContentSearcher(Collections.singletonList(requiredLiteral), charset, mmapThreshold, parallelThreshold) : null;
+    }
+
+    public Pattern pattern() {
+        return pattern;
+    }
+
+    /**
+     * the literal every match contains, null if there is none.
+     * */
+    public String requiredLiteral() {
+        return requiredLiteral;
+    }
+
+    /**
+     * search the lines of the file, returns true if any line matches.
+     * */
+    public boolean search(File file, LineListener listener) throws IOException {
+        return search(file, MatchLimits.NONE.file(), listener);
+    }
+
+    /**
+     * search the lines of the file until the file limit takes no more lines, returns true if any line matches.
+     * */
+    public boolean search(File file, MatchLimits.FileLimit fileLimit, LineListener listener) throws IOException {
+        LineScan lineScan = new LineScan(pattern.matcher(""), fileLimit, listener);
+        if(literalSearcher != null){
+            // the byte scan passes every line with the literal once, only the lines the regex matches are taken.
+            MatchLimits.FileLimit literalLines = new MatchLimits.FileLimit() {
+                @Override
+                public boolean tryLine() {
+                    return lineScan.more();
+                }
+
+                @Override
+                public boolean more() {
+                    return lineScan.more();
+                }
+            };
+            literalSearcher.search(file, literalLines, (lineNum, line, wordIndex, byteOffset) -> lineScan.match(lineNum, line));
+            return lineScan.matched;
+        }
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), charset));
+        try {
+            return search(reader, lineScan);
+        }
+        finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * search the lines of the reader, a decompressed archive entry for instance, the reader is not closed.
+     * */
+    public boolean search(BufferedReader reader, MatchLimits.FileLimit fileLimit, LineListener listener) throws IOException {
+        return search(reader, new LineScan(pattern.matcher(""), fileLimit, listener));
+    }
+
+    private boolean search(BufferedReader reader, LineScan lineScan) throws IOException {
+        long lineNum = 0;
+        for (;;) {
+            String line = reader.readLine();
+            if (line == null || !lineScan.more()){
+                break;
+            }
+            lineNum++;
+            if(requiredLiteral == null || line.contains(requiredLiteral)){
+                lineScan.match(lineNum, line);
+            }
+        }
+        return lineScan.matched;
+    }
+
+    /**
+     * match state of one file, the matcher is reset for every line.
+     * */
+    private static final class LineScan {
+        private final Matcher matcher;
+        private final MatchLimits.FileLimit fileLimit;
+        private final LineListener listener;
+        private boolean matched;
+        private boolean stopped;
+
+        private LineScan(Matcher matcher, MatchLimits.FileLimit fileLimit, LineListener listener) {
+            this.matcher = matcher;
+            this.fileLimit = fileLimit;
+            this.listener = listener;
+        }
+
+        private void match(long lineNum, String line){
+            if(matcher.reset(line).find()){
+                if(!fileLimit.tryLine()){
+                    stopped = true;
+                    return;
+                }
+                matched = true;
+                listener.onLine(lineNum, line, matcher.group());
+            }
+        }
+
+        private boolean more(){
+            return !stopped && fileLimit.more();
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.github.search.engine;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * bounded in process pipe from the result writer of a search to the reader of its records: the
+ * writer blocks while the reader is behind. once the reader is closed the writes are dropped, so
+ * a cancelled search never blocks on a full pipe.
+ */
+final class RecordPipe {
+    private static final byte[] END = new byte[0];
+    // the writer checks the reader every interval while the pipe is full.
+    private static final long OFFER_MILLIS = 100;
+
+    private final BlockingQueue<byte[]> chunks;
+    private volatile boolean readerClosed;
+    private volatile Throwable failure;
+
+    /**
+     * @param capacity the writes buffered before the writer blocks.
+     * */
+    RecordPipe(int capacity) {
+        this.chunks = new ArrayBlockingQueue<>(capacity);
+    }
+
+    /**
+     * the writer side, used by one thread at a time, {@link OutputStream#close()} ends the stream.
+     * */
+    OutputStream output(){
+        return new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                if(len > 0){
+                    put(Arrays.copyOfRange(b, off, off + len));
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                put(END);
+            }
+        };
+    }
+
+    /**
+     * ends the stream with the failure of the writer, the reader throws it.
+     * */
+    void fail(Throwable failure) throws IOException {
+        this.failure = failure;
+        put(END);
+    }
+
+    /**
+     * the reader side, used by one thread. {@link InputStream#close()} drops the records not read yet.
+     * */
+    InputStream input(){
+        return new InputStream() {
+            private byte[] chunk = new byte[0];
+            private int position;
+
+            @Override
+            public int read() throws IOException {
+                byte[] one = new byte[1];
+                return read(one, 0, 1) == -1 ? -1 : one[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if(len == 0){
+                    return 0;
+                }
+                while (position == chunk.length){
+                    if(chunk == END){
+                        return -1;
+                    }
+                    chunk = take();
+                    position = 0;
+                }
+                int read = Math.min(len, chunk.length - position);
+                System.arraycopy(chunk, position, b, off, read);
+                position += read;
+                return read;
+            }
+
+            @Override
+            public void close() {
+                readerClosed = true;
+                chunks.clear();
+            }
+        };
+    }
+
+    private void put(byte[] chunk) throws IOException {
+        try{
+            while (!readerClosed){
+                if(chunks.offer(chunk, OFFER_MILLIS, TimeUnit.MILLISECONDS)){
+                    return;
+                }
+            }
+        }catch (InterruptedException ie){
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("record pipe write interrupted");
+        }
+    }
+
+    private byte[] take() throws IOException {
+        byte[] chunk;
+        try{
+            chunk = chunks.take();
+        }catch (InterruptedException ie){
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("record pipe read interrupted");
+        }
+        if(chunk == END && failure != null){
+            throw new IOException("search failed", failure);
+        }
+        return chunk;
+    }
+}
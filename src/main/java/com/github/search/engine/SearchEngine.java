@@ -0,0 +1,526 @@
+package com.github.search.engine;
+
+import com.github.search.content.AhoCorasick;
+import com.github.search.content.ArchiveSearcher;
+import com.github.search.content.BinaryFiles;
+import com.github.search.content.ByteContentSearcher;
+import com.github.search.content.ContentExecutors;
+import com.github.search.content.ContentSearchPipeline;
+import com.github.search.content.ContentSniffer;
+import com.github.search.content.LineSearch;
+import com.github.search.content.MatchLimits;
+import com.github.search.content.ReadOrder;
+import com.github.search.content.RegexSearcher;
+import com.github.search.filter.FilterNode;
+import com.github.search.filter.FilterNodes;
+import com.github.search.filter.FilterPlan;
+import com.github.search.index.ContentIndexSearch;
+import com.github.search.index.FileIndex;
+import com.github.search.index.FileIndexStore;
+import com.github.search.index.IndexMode;
+import com.github.search.metrics.SearchMetrics;
+import com.github.search.output.FileResults;
+import com.github.search.output.ResultFormat;
+import com.github.search.output.ResultReader;
+import com.github.search.output.ResultWriter;
+import com.github.search.server.SearchContext;
+import com.github.search.utils.FileKeySet;
+import com.github.search.utils.IgnoreRules;
+import com.github.search.utils.Tuple;
+import com.github.search.utils.Utils;
+import com.github.search.utils.WalkOptions;
+import com.github.search.utils.WalkStats;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AccessMode;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.function.BiConsumer;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
+
+/**
+ * runs the {@link SearchQuery searches} of an application: the engine owns the thread pool of the content
+ * workers and the loaded and watched indexes, shared by all its searches, so a process runs many searches
+ * without paying their setup again. every search runs in the background and is followed by its {@link SearchHandle}.
+ * the command line and the search server are clients of the engine. shared by the threads, closed once.
+ */
+public final class SearchEngine implements Closeable {
+    // the result writes buffered between a search and the reader of its records.
+    private static final int PIPE_CAPACITY = 64;
+
+    private final SearchContext context;
+    private final PrintStream log;
+
+    /**
+     * the watched indexes are saved every 5 seconds, the warnings go to the standard error.
+     * */
+    public SearchEngine() {
+        this(5, 0, System.err);
+    }
+
+    /**
+     * @param watchInterval seconds between the saves of the changed watched indexes.
+     * @param statsInterval seconds between the dumps of the engine metrics to the log, 0 for none.
+     * @param log warnings of the searches streamed as records, of the index saves and the metrics dumps.
+     * */
+    public SearchEngine(int watchInterval, int statsInterval, PrintStream log) {
+        this.context = new SearchContext(watchInterval, statsInterval, log);
+        this.log = log;
+    }
+
+    /**
+     * the pool, the indexes and the search counts shared by the searches of the engine.
+     * */
+    public SearchContext context() {
+        return context;
+    }
+
+    /**
+     * the indexes of ---index watch kept current by the engine until it is closed.
+     * */
+    public int watchedIndexes(){
+        return context.watchedIndexes();
+    }
+
+    /**
+     * starts the search, its results are written to the output in the format, flushed every 20 ms.
+     * the output is not closed, a write error to it cancels the search.
+     * @param err the warnings of the search and its metrics dumps.
+     * */
+    public SearchHandle search(SearchQuery query, OutputStream out, ResultFormat format, PrintStream err){
+        MatchLimits limits = new MatchLimits(query.filesWithMatches() ? 1 : query.maxCount(), query.limit());
+        SearchHandle handle = new SearchHandle(limits, new SearchMetrics(), null);
+        ResultWriter results = new ResultWriter(out, Charset.defaultCharset(), format, 20);
+        // nobody reads the results of a closed output, the search stops.
+        results.onError(handle::cancel);
+        start(query, results, err, limits, handle, null);
+        return handle;
+    }
+
+    /**
+     * starts the search, its results are read from {@link SearchHandle#results()} while it runs.
+     * the search waits while the results are not read, closing the stream of the results cancels it.
+     * */
+    public SearchHandle search(SearchQuery query){
+        MatchLimits limits = new MatchLimits(query.filesWithMatches() ? 1 : query.maxCount(), query.limit());
+        RecordPipe pipe = new RecordPipe(PIPE_CAPACITY);
+        SearchHandle handle = new SearchHandle(limits, new SearchMetrics(), new ResultReader(pipe.input()));
+        ResultWriter results = new ResultWriter(pipe.output(), StandardCharsets.UTF_8, ResultFormat.BINARY, 20);
+        start(query, results, log, limits, handle, pipe);
+        return handle;
+    }
+
+    /**
+     * saves the watched indexes and stops the pool, the searches running go on until their end.
+     * */
+    @Override
+    public void close() throws IOException {
+        context.close();
+    }
+
+    private void start(SearchQuery query, ResultWriter results, PrintStream err, MatchLimits limits,
+                       SearchHandle handle, RecordPipe pipe){
+        context.executor().execute(() -> {
+            long startNanos = System.nanoTime();
+            context.searchStarted();
+            boolean ok = false;
+            try{
+                SearchSummary summary = execute(query, results, err, limits, handle);
+                if(pipe != null){
+                    pipe.output().close();
+                }
+                ok = true;
+                handle.complete(summary);
+            }catch (Throwable t){
+                if(pipe != null){
+                    try{
+                        pipe.fail(t);
+                    }catch (IOException ioe){
+                        t.addSuppressed(ioe);
+                    }
+                }
+                handle.fail(t);
+            }finally {
+                context.searchFinished(System.nanoTime() - startNanos, ok ? 0 : 1);
+            }
+        });
+    }
+
+    private SearchSummary execute(SearchQuery query, ResultWriter results, PrintStream err,
+                                  MatchLimits limits, SearchHandle handle){
+        List<String> dirList = query.dirs();
+        List<String> prefixList = query.namePrefixes();
+        List<String> suffixList = query.nameSuffixes();
+        List<String> fileNames = query.nameContains();
+        String fileGlob = query.fileGlob();
+        String fileNameRegex = query.fileNameRegex();
+        Tuple<Long,Long> modifiedTimeRange = query.modifiedTimeRange();
+        Tuple<Long,Long> fileSizeRange = query.sizeRange();
+        List<AccessMode> fileAccessList = query.accessModes();
+        List<String> fileContentWordsList = query.contentWords();
+        String fileContentRegex = query.contentRegex();
+        boolean archives = query.archives();
+        BinaryFiles binaryFiles = query.binaryFiles();
+        Charset legacyCharset = query.legacyCharset();
+        boolean filesWithMatches = query.filesWithMatches();
+        int walkThreads = query.walkThreads();
+        int maxOpenDirs = query.maxOpenDirs();
+        boolean posixAttrs = query.posixAttributes();
+        boolean canonicalPaths = query.canonicalPaths();
+        int maxDepth = query.maxDepth();
+        boolean sameFileSystem = query.sameFileSystem();
+        List<String> excludeDirs = query.excludeDirs();
+        IgnoreRules ignoreRules = query.ignoreRules();
+        boolean matchAll = query.matchAll();
+        boolean byteSearch = query.byteSearch();
+        int mmapThreshold = query.mmapThreshold();
+        int parallelThreshold = query.parallelThreshold();
+        int contentThreads = query.contentThreads();
+        int contentQueueSize = query.contentQueueSize();
+        boolean virtualThreads = query.virtualThreads();
+        int maxOpenFiles = query.maxOpenFiles();
+        int deviceReads = query.deviceReads();
+        ReadOrder readOrder = query.readOrder();
+        IndexMode indexMode = query.indexMode();
+        Path indexDir = query.indexDir();
+        boolean contentIndex = query.contentIndex();
+        SearchMetrics metrics = handle.metrics();
+
+        long startMillis = System.currentTimeMillis();
+        if(query.statsInterval() > 0){
+            metrics.dumpEvery(query.statsInterval(),err::println,query.statsJson());
+        }
+        ThreadPoolExecutor poolExecutor = null;
+        ExecutorService taskExecutor = null;
+        ContentSearchPipeline contentPipeline = null;
+        ContentIndexSearch contentIndexSearch = null;
+        FileIndexStore indexStore = indexMode == null && !contentIndex ? null : new FileIndexStore(indexDir,walkThreads,maxOpenDirs);
+
+        // a file reached again through a link or an overlapping dir is listed and searched once.
+        FileKeySet visited = new FileKeySet();
+        List<FilterNode> filters = new ArrayList<>();
+        if(!prefixList.isEmpty()){
+            filters.add(FilterNodes.namePrefixes(prefixList));
+        }
+        if(!suffixList.isEmpty()){
+            filters.add(FilterNodes.nameSuffixes(suffixList));
+        }
+        if(!fileNames.isEmpty()){
+            filters.add(FilterNodes.nameContains(fileNames));
+        }
+        if(fileGlob != null){
+            filters.add(FilterNodes.nameGlob(fileGlob));
+        }
+        if(fileNameRegex != null){
+            filters.add(FilterNodes.nameRegex(fileNameRegex));
+        }
+        if(modifiedTimeRange != null){
+            filters.add(FilterNodes.modifiedTimeRange(modifiedTimeRange.v1(),modifiedTimeRange.v2()));
+        }
+        if(fileSizeRange != null){
+            filters.add(FilterNodes.sizeRange(fileSizeRange.v1(),fileSizeRange.v2()));
+        }
+        if(!fileAccessList.isEmpty()){
+            filters.add(FilterNodes.access(fileAccessList,posixAttrs));
+        }
+        if(!fileContentWordsList.isEmpty() || fileContentRegex != null){
+            // compiled once, shared read-only by the content workers.
+            Charset charset = query.charset();
+            String contentFilterName;
+            AhoCorasick wordsMatcher;
+            ContentSearchPipeline.ContentSearch contentSearch;
+            // the lines of a reader: a text in another charset, a binary file as bytes, a gzip file or a zip entry.
+            LineSearch readerSearch;
+            ContentSearchPipeline.ContentSearch binarySearch;
+            // the search of the files of the parallel threshold or larger, null for the content search.
+            ContentSearchPipeline.ContentSearch hugeFileSearch = null;
+            if(fileContentRegex != null){
+                RegexSearcher regexSearcher = new RegexSearcher(fileContentRegex,charset,mmapThreshold,parallelThreshold);
+                if(contentIndex){
+                    err.println("warn: the content index answers ---file_content_words only, ---file_content_regex reads the files.");
+                }
+                contentFilterName = "file_content_regex[" + fileContentRegex + "]";
+                wordsMatcher = null;
+                contentSearch = (file, output) -> printFileMatch(regexSearcher.search(file,limits.file(),(lineNum, line, match) -> {
+                    if(!filesWithMatches){
+                        output.match(file.getPath(),lineNum,line,match,-1);
+                    }
+                }),filesWithMatches,output);
+                readerSearch = (source, reader, output) -> regexSearcher.search(reader,limits.file(),(lineNum, line, match) -> {
+                    if(!filesWithMatches){
+                        output.match(source,lineNum,line,match,-1);
+                    }
+                });
+                // ISO-8859-1 maps every byte to one char, the regex runs on the bytes.
+                binarySearch = (file, output) -> {
+                    try(BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file),StandardCharsets.ISO_8859_1))){
+                        return printFileMatch(regexSearcher.search(reader,limits.file(),(lineNum, line, match) -> {
+                            if(!filesWithMatches){
+                                output.match(file.getPath(),lineNum,null,match,-1);
+                            }
+                        }),filesWithMatches,output);
+                    }
+                };
+            }else{
+                contentFilterName = "file_content_words" + fileContentWordsList;
+                wordsMatcher = AhoCorasick.compile(fileContentWordsList);
+                ByteContentSearcher byteSearcher = ByteContentSearcher.supports(charset) ?
+                        new ByteContentSearcher(fileContentWordsList,charset,mmapThreshold,parallelThreshold) : null;
+                ContentSearchPipeline.ContentSearch lineSearch = (file, output) -> printFileMatch(
+                        Utils.readAndLineMatch(file,charset,wordsMatcher,limits.file(),(lineNum, line, word) -> {
+                            if(!filesWithMatches){
+                                output.match(file.getPath(),lineNum,line,word,-1);
+                            }
+                        }),filesWithMatches,output);
+                if(byteSearcher != null){
+                    ContentSearchPipeline.ContentSearch bytesSearch = (file, output) -> printFileMatch(
+                            byteSearcher.search(file,limits.file(),(lineNum, line, wordIndex, byteOffset) -> {
+                                if(!filesWithMatches){
+                                    output.match(file.getPath(),lineNum,line,fileContentWordsList.get(wordIndex),byteOffset);
+                                }
+                            }),filesWithMatches,output);
+                    contentSearch = byteSearch ? bytesSearch : lineSearch;
+                    // a huge file takes the chunked byte search, one thread would read it alone.
+                    hugeFileSearch = bytesSearch;
+                }else{
+                    contentSearch = lineSearch;
+                }
+                readerSearch = (source, reader, output) -> Utils.readerLineMatch(reader,wordsMatcher,limits.file(),(lineNum, line, word) -> {
+                    if(!filesWithMatches){
+                        output.match(source,lineNum,line,word,-1);
+                    }
+                });
+                ByteContentSearcher binarySearcher = binaryFiles != BinaryFiles.BYTES || byteSearcher != null ? byteSearcher :
+                        new ByteContentSearcher(fileContentWordsList,StandardCharsets.ISO_8859_1,mmapThreshold,parallelThreshold);
+                binarySearch = (file, output) -> printFileMatch(binarySearcher.search(file,limits.file(),(lineNum, line, wordIndex, byteOffset) -> {
+                    if(!filesWithMatches){
+                        output.match(file.getPath(),lineNum,null,fileContentWordsList.get(wordIndex),byteOffset);
+                    }
+                }),filesWithMatches,output);
+            }
+            // the first block of every file tells the archives, the binaries and the charset of the text apart.
+            ContentSniffer sniffer = new ContentSniffer(charset,legacyCharset);
+            ArchiveSearcher archiveSearcher = archives ? new ArchiveSearcher(charset,readerSearch) : null;
+            Function<ContentSearchPipeline.ContentSearch,ContentSearchPipeline.ContentSearch> sniffed = plainSearch -> (file, output) -> {
+                ContentSniffer.Sniff sniff = sniffer.sniff(file);
+                metrics.fileSniffed(sniff.kind());
+                if(archiveSearcher != null && sniff.archive() != null){
+                    // the archives are inflated as streams.
+                    return printFileMatch(archiveSearcher.search(file,sniff.archive(),output),filesWithMatches,output);
+                }
+                if(sniff.binary()){
+                    switch (binaryFiles){
+                        case SKIP:
+                            return false;
+                        case BYTES:
+                            return binarySearch.search(file,output);
+                        default:
+                            return plainSearch.search(file,output);
+                    }
+                }
+                if(sniff.bomLength() == 0 && sniff.charset().equals(charset)){
+                    // the text of the search charset keeps the byte search.
+                    return plainSearch.search(file,output);
+                }
+                try(BufferedReader reader = sniff.reader(file)){
+                    return printFileMatch(readerSearch.search(file.getPath(),reader,output),filesWithMatches,output);
+                }
+            };
+            contentSearch = sniffed.apply(contentSearch);
+            // the size of the walk picks the search, the file is not stat-ed again.
+            ContentSearchPipeline.ContentSearch hugeSearch = hugeFileSearch == null ? contentSearch : sniffed.apply(hugeFileSearch);
+            ContentIndexSearch indexSearch = contentIndex && wordsMatcher != null ?
+                    new ContentIndexSearch(indexStore,fileContentWordsList,charset) : null;
+            contentIndexSearch = indexSearch;
+            metrics.setContentIndexSearch(indexSearch);
+
+            if(virtualThreads){
+                // a virtual thread per file + result sink, the open files bound the reads in flight.
+                taskExecutor = ContentExecutors.newVirtualThreadPerTaskExecutor();
+                contentPipeline = ContentSearchPipeline.perFileTasks(contentSearch,results,maxOpenFiles,taskExecutor,deviceReads,readOrder);
+            }else{
+                // workers + result sink
+                // the engine pool grows with the searches running, it rejects no task.
+                poolExecutor = context.executor();
+                contentPipeline = new ContentSearchPipeline(contentSearch,results,contentThreads,contentQueueSize,poolExecutor,deviceReads,readOrder);
+            }
+            ContentSearchPipeline pipeline = contentPipeline;
+            ContentSearchPipeline.ContentSearch fileSearch = contentSearch;
+            metrics.setContentPipeline(pipeline,poolExecutor);
+            // the files not searched yet are dropped once the limit is reached.
+            limits.onReached(pipeline::cancel);
+            if(limits.reached()){
+                // cancelled before the pipeline was set up.
+                pipeline.cancel();
+            }
+
+            // the content search runs on the pipeline and prints its matches, the file is not listed by the walk.
+            filters.add(FilterNodes.content(contentFilterName, (path, attrs) -> {
+                if(!visited.add(attrs.fileKey())){
+                    return false;
+                }
+                long[] candidateLines = indexSearch == null ? null : indexSearch.candidateLines(path,attrs);
+                if(candidateLines == null){
+                    metrics.contentBytes(attrs.size());
+                    pipeline.submit(path.toFile(),attrs.size(),attrs.lastModifiedTime().toMillis(),attrs.fileKey(),
+                            attrs.size() >= parallelThreshold ? hugeSearch : fileSearch);
+                }else{
+                    // unchanged indexed file, only its candidate lines are read.
+                    pipeline.submit(path.toFile(),attrs.size(),attrs.lastModifiedTime().toMillis(),attrs.fileKey(),(file, output) -> printFileMatch(
+                            indexSearch.searchLines(file,candidateLines,wordsMatcher,limits.file(),(lineNum, line, word) -> {
+                                if(!filesWithMatches){
+                                    output.match(file.getPath(),lineNum,line,word,-1);
+                                }
+                            }),filesWithMatches,output));
+                }
+                return false;
+            }));
+        }
+        FilterPlan filterPlan = FilterPlan.compile(filters,matchAll);
+        metrics.setFilterPlan(filterPlan);
+
+        WalkOptions walkOptions = new WalkOptions(walkThreads,maxOpenDirs,posixAttrs,canonicalPaths,maxDepth,sameFileSystem,excludeDirs,
+                limits::reached,ignoreRules);
+
+        // every file is printed as soon as the walk finds it, nothing is collected.
+        BiConsumer<String,BasicFileAttributes> sink = (scanFile, attrs) -> {
+            if(limits.tryResult()){
+                results.file(metrics.fileListed(),scanFile,attrs.size(),attrs.lastModifiedTime().toMillis());
+            }
+        };
+        long stageNanos = System.nanoTime();
+        for (String dir : dirList) {
+            if(limits.reached()){
+                break;
+            }
+            if(contentIndexSearch != null){
+                try{
+                    contentIndexSearch.open(Paths.get(dir));
+                }catch (IOException ioe){
+                    err.println("warn: content index of " + dir + " failed. " + Utils.stackTrace(ioe));
+                }
+            }
+            if(indexMode != null){
+                indexFileScan(indexStore,dir,indexMode,filterPlan,walkOptions,visited,metrics.walkStats(),err,sink);
+            }else{
+                Path path = Paths.get(dir);
+                Utils.dirFileScan(path.toFile(),filterPlan,walkOptions,visited,metrics.walkStats(),sink);
+            }
+        }
+        stageNanos = stage(metrics,"scan",stageNanos);
+
+        boolean interrupted = false;
+        if(contentPipeline != null){
+            try{
+                contentPipeline.finish();
+            }catch (InterruptedException ie){
+                // the interrupt stays set for the owner of the thread, the search ends with the files it searched.
+                Thread.currentThread().interrupt();
+                interrupted = true;
+                limits.stop();
+                contentPipeline.cancel();
+                err.println("warn: search interrupted while the content searches ran, its results are incomplete.");
+            }
+            if(taskExecutor != null){
+                taskExecutor.shutdown();
+            }
+            stageNanos = stage(metrics,"content_drain",stageNanos);
+        }
+        if(contentIndexSearch != null && !interrupted){
+            try{
+                contentIndexSearch.update();
+            }catch (IOException ioe){
+                err.println("warn: content index update failed. " + Utils.stackTrace(ioe));
+            }
+            stageNanos = stage(metrics,"content_index_update",stageNanos);
+        }
+
+        results.close();
+        stage(metrics,"output_flush",stageNanos);
+        metrics.close();
+
+        List<String> reports = new ArrayList<>();
+        reports.add(filterPlan.report());
+        if(contentPipeline != null){
+            reports.add(contentPipeline.report());
+        }
+        if(indexStore != null){
+            reports.addAll(indexStore.refreshReports());
+        }
+        if(contentIndexSearch != null){
+            reports.addAll(contentIndexSearch.reports());
+        }
+        return new SearchSummary(System.currentTimeMillis() - startMillis,handle.isCancelled(),interrupted,metrics,reports);
+    }
+
+    /**
+     * answer the filter from the index of the directory, walks the directory when the index fails.
+     * the indexes of ---index trust and ---index watch are kept by the engine across the searches.
+     * */
+    private void indexFileScan(FileIndexStore indexStore,
+                               String dir,
+                               IndexMode indexMode,
+                               FilterPlan filterPlan,
+                               WalkOptions walkOptions,
+                               FileKeySet visited,
+                               WalkStats walkStats,
+                               PrintStream err,
+                               BiConsumer<String,BasicFileAttributes> sink){
+        File baseDir = new File(dir);
+        try{
+            Path root = Paths.get(baseDir.getCanonicalPath());
+            BiPredicate<Path,BasicFileAttributes> pathFilter = walkOptions.pathFilter(root);
+            BiPredicate<Path,BasicFileAttributes> fileFilter = (file, attrs) -> pathFilter.test(file,attrs) && filterPlan.test(file,attrs);
+            if(indexMode == IndexMode.WATCH){
+                context.indexWatcher(indexStore,root).scan(fileFilter,sink);
+                return;
+            }
+            if(indexMode == IndexMode.TRUST){
+                context.trustedIndex(indexStore,root).scan(fileFilter,sink);
+                return;
+            }
+            FileIndex fileIndex = indexStore.open(root,indexMode);
+            fileIndex.scan(fileFilter,sink);
+            return;
+        }catch (IOException ioe){
+            err.println("warn: index of " + dir + " failed, walk the directory. " + Utils.stackTrace(ioe));
+        }
+
+        Utils.dirFileScan(baseDir,filterPlan,walkOptions,visited,walkStats,sink);
+    }
+
+    /**
+     * adds the time since the stage start to the metrics, returns the start of the next stage.
+     * */
+    private static long stage(SearchMetrics metrics,String name,long stageStartNanos){
+        long nowNanos = System.nanoTime();
+        metrics.stage(name,nowNanos - stageStartNanos);
+        return nowNanos;
+    }
+
+    /**
+     * the file match message after the line match messages of a matched file.
+     * @param filesWithMatches print the path of the file only.
+     * */
+    private static boolean printFileMatch(boolean matchLineSuccess,boolean filesWithMatches,FileResults output){
+        if(matchLineSuccess){
+            output.matchFile(filesWithMatches);
+        }
+        return matchLineSuccess;
+    }
+}
@@ -0,0 +1,139 @@
+package com.github.search.engine;
+
+import com.github.search.content.MatchLimits;
+import com.github.search.metrics.SearchMetrics;
+import com.github.search.output.ResultReader;
+import com.github.search.output.ResultRecord;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * a search running on a {@link SearchEngine}: its metrics while it runs, its cancellation, its end and,
+ * for a search started by {@link SearchEngine#search(SearchQuery)}, the stream of its results.
+ * shared by the threads.
+ */
+public final class SearchHandle {
+    private final MatchLimits limits;
+    private final SearchMetrics metrics;
+    private final ResultReader reader;
+    private final CompletableFuture<SearchSummary> summary = new CompletableFuture<>();
+    private volatile boolean cancelled;
+    private boolean streamed;
+
+    SearchHandle(MatchLimits limits, SearchMetrics metrics, ResultReader reader) {
+        this.limits = limits;
+        this.metrics = metrics;
+        this.reader = reader;
+    }
+
+    /**
+     * the metrics of the search, updated while it runs.
+     * */
+    public SearchMetrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * stops the walk and the content searches, the files being searched end at their next line.
+     * the results found until then are still written, {@link #await()} returns once they are.
+     * */
+    public void cancel(){
+        cancelled = true;
+        limits.stop();
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public boolean isDone(){
+        return summary.isDone();
+    }
+
+    /**
+     * waits for the end of the search, every result is written.
+     * @throws RuntimeException the failure of the search.
+     * */
+    public SearchSummary await() throws InterruptedException {
+        try{
+            return summary.get();
+        }catch (ExecutionException ee){
+            Throwable cause = ee.getCause();
+            if(cause instanceof RuntimeException){
+                throw (RuntimeException) cause;
+            }
+            if(cause instanceof Error){
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * the results in the order they are written, the stream blocks while the search runs and ends with it.
+     * closing the stream cancels the search. the results can be streamed once.
+     * @throws IllegalStateException the search writes to an output stream, or the results are streamed already.
+     * */
+    public synchronized Stream<ResultRecord> results(){
+        if(reader == null){
+            throw new IllegalStateException("the results are written to the output of the search");
+        }
+        if(streamed){
+            throw new IllegalStateException("the results are streamed already");
+        }
+        streamed = true;
+        Iterator<ResultRecord> records = new Iterator<ResultRecord>() {
+            private ResultRecord next;
+
+            @Override
+            public boolean hasNext() {
+                if(next == null){
+                    try{
+                        next = reader.read();
+                    }catch (IOException ioe){
+                        throw new UncheckedIOException(ioe);
+                    }
+                }
+                return next != null;
+            }
+
+            @Override
+            public ResultRecord next() {
+                if(!hasNext()){
+                    throw new NoSuchElementException();
+                }
+                ResultRecord record = next;
+                next = null;
+                return record;
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(records, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(() -> {
+                    if(!isDone()){
+                        cancel();
+                    }
+                    try{
+                        reader.close();
+                    }catch (IOException ioe){
+                        // the pipe has no resource.
+                    }
+                });
+    }
+
+    void complete(SearchSummary searchSummary){
+        summary.complete(searchSummary);
+    }
+
+    void fail(Throwable failure){
+        summary.completeExceptionally(failure);
+    }
+}
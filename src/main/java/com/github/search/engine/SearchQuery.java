@@ -0,0 +1,740 @@
+package com.github.search.engine;
+
+import com.github.search.content.BinaryFiles;
+import com.github.search.content.ByteContentSearcher;
+import com.github.search.content.ContentExecutors;
+import com.github.search.content.ReadOrder;
+import com.github.search.index.FileIndexStore;
+import com.github.search.index.IndexMode;
+import com.github.search.utils.IgnoreRules;
+import com.github.search.utils.Tuple;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AccessMode;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * one search: the dirs, the file conditions, the content condition, the limits and the walk, content
+ * and index options, the same as the command line options of the same names. immutable and checked
+ * once it is built, a query can be run any number of times by a {@link SearchEngine}.
+ */
+public final class SearchQuery {
+    private final List<String> dirs;
+    private final List<String> namePrefixes;
+    private final List<String> nameSuffixes;
+    private final List<String> nameContains;
+    private final String fileGlob;
+    private final String fileNameRegex;
+    private final Tuple<Long, Long> modifiedTimeRange;
+    private final Tuple<Long, Long> sizeRange;
+    private final List<AccessMode> accessModes;
+    private final List<String> contentWords;
+    private final String contentRegex;
+    private final boolean matchAll;
+    private final boolean archives;
+    private final BinaryFiles binaryFiles;
+    private final Charset charset;
+    private final Charset legacyCharset;
+    private final boolean filesWithMatches;
+    private final int maxCount;
+    private final long limit;
+    private final int walkThreads;
+    private final int maxOpenDirs;
+    private final boolean posixAttributes;
+    private final boolean canonicalPaths;
+    private final int maxDepth;
+    private final boolean sameFileSystem;
+    private final List<String> excludeDirs;
+    private final IgnoreRules ignoreRules;
+    private final boolean byteSearch;
+    private final int mmapThreshold;
+    private final int parallelThreshold;
+    private final int contentThreads;
+    private final int contentQueueSize;
+    private final boolean virtualThreads;
+    private final int maxOpenFiles;
+    private final int deviceReads;
+    private final ReadOrder readOrder;
+    private final IndexMode indexMode;
+    private final Path indexDir;
+    private final boolean contentIndex;
+    private final int statsInterval;
+    private final boolean statsJson;
+
+    private SearchQuery(Builder builder) {
+        this.dirs = copy(builder.dirs);
+        this.namePrefixes = copy(builder.namePrefixes);
+        this.nameSuffixes = copy(builder.nameSuffixes);
+        this.nameContains = copy(builder.nameContains);
+        this.fileGlob = builder.fileGlob;
+        this.fileNameRegex = builder.fileNameRegex;
+        this.modifiedTimeRange = builder.modifiedTimeRange;
+        this.sizeRange = builder.sizeRange;
+        this.accessModes = copy(builder.accessModes);
+        this.contentWords = copy(builder.contentWords);
+        this.contentRegex = builder.contentRegex;
+        this.matchAll = builder.matchAll;
+        this.archives = builder.archives;
+        this.binaryFiles = builder.binaryFiles;
+        this.charset = builder.charset;
+        this.legacyCharset = builder.legacyCharset;
+        this.filesWithMatches = builder.filesWithMatches;
+        this.maxCount = builder.maxCount;
+        this.limit = builder.limit;
+        this.walkThreads = builder.walkThreads;
+        this.maxOpenDirs = builder.maxOpenDirs;
+        this.posixAttributes = builder.posixAttributes;
+        this.canonicalPaths = builder.canonicalPaths;
+        this.maxDepth = builder.maxDepth;
+        this.sameFileSystem = builder.sameFileSystem;
+        this.excludeDirs = copy(builder.excludeDirs);
+        this.ignoreRules = new IgnoreRules(builder.excludes, builder.ignoreFiles, !builder.vcsDirs, builder.skipHidden);
+        this.byteSearch = builder.byteSearch;
+        this.mmapThreshold = builder.mmapThreshold;
+        this.parallelThreshold = builder.parallelThreshold;
+        this.contentThreads = builder.contentThreads;
+        this.contentQueueSize = builder.contentQueueSize;
+        this.virtualThreads = builder.virtualThreads == null ? ContentExecutors.virtualThreadsSupported() : builder.virtualThreads;
+        this.maxOpenFiles = builder.maxOpenFiles;
+        this.deviceReads = builder.deviceReads;
+        this.readOrder = builder.readOrder;
+        this.indexMode = builder.indexMode;
+        this.indexDir = builder.indexDir;
+        this.contentIndex = builder.contentIndex;
+        this.statsInterval = builder.statsInterval;
+        this.statsJson = builder.statsJson;
+    }
+
+    private static <T> List<T> copy(List<T> list){
+        return Collections.unmodifiableList(new ArrayList<>(list));
+    }
+
+    public List<String> dirs() {
+        return dirs;
+    }
+
+    public List<String> namePrefixes() {
+        return namePrefixes;
+    }
+
+    public List<String> nameSuffixes() {
+        return nameSuffixes;
+    }
+
+    public List<String> nameContains() {
+        return nameContains;
+    }
+
+    /**
+     * null when the names are not globbed.
+     * */
+    public String fileGlob() {
+        return fileGlob;
+    }
+
+    /**
+     * null when the names are not matched by a regex.
+     * */
+    public String fileNameRegex() {
+        return fileNameRegex;
+    }
+
+    /**
+     * the epoch milliseconds range, null for any time.
+     * */
+    public Tuple<Long, Long> modifiedTimeRange() {
+        return modifiedTimeRange;
+    }
+
+    /**
+     * the bytes range, null for any size.
+     * */
+    public Tuple<Long, Long> sizeRange() {
+        return sizeRange;
+    }
+
+    public List<AccessMode> accessModes() {
+        return accessModes;
+    }
+
+    public List<String> contentWords() {
+        return contentWords;
+    }
+
+    /**
+     * null when the content is not matched by a regex.
+     * */
+    public String contentRegex() {
+        return contentRegex;
+    }
+
+    /**
+     * true when a file must match every condition, false for any of them.
+     * */
+    public boolean matchAll() {
+        return matchAll;
+    }
+
+    public boolean archives() {
+        return archives;
+    }
+
+    public BinaryFiles binaryFiles() {
+        return binaryFiles;
+    }
+
+    /**
+     * the charset of the searched text.
+     * */
+    public Charset charset() {
+        return charset;
+    }
+
+    /**
+     * the charset of the text that is not ascii, utf-8 or utf-16 with a byte order mark.
+     * */
+    public Charset legacyCharset() {
+        return legacyCharset;
+    }
+
+    public boolean filesWithMatches() {
+        return filesWithMatches;
+    }
+
+    public int maxCount() {
+        return maxCount;
+    }
+
+    public long limit() {
+        return limit;
+    }
+
+    public int walkThreads() {
+        return walkThreads;
+    }
+
+    public int maxOpenDirs() {
+        return maxOpenDirs;
+    }
+
+    public boolean posixAttributes() {
+        return posixAttributes;
+    }
+
+    public boolean canonicalPaths() {
+        return canonicalPaths;
+    }
+
+    public int maxDepth() {
+        return maxDepth;
+    }
+
+    public boolean sameFileSystem() {
+        return sameFileSystem;
+    }
+
+    public List<String> excludeDirs() {
+        return excludeDirs;
+    }
+
+    /**
+     * the compiled exclude globs, ignore files, version control and hidden options.
+     * */
+    public IgnoreRules ignoreRules() {
+        return ignoreRules;
+    }
+
+    public boolean byteSearch() {
+        return byteSearch;
+    }
+
+    public int mmapThreshold() {
+        return mmapThreshold;
+    }
+
+    public int parallelThreshold() {
+        return parallelThreshold;
+    }
+
+    public int contentThreads() {
+        return contentThreads;
+    }
+
+    public int contentQueueSize() {
+        return contentQueueSize;
+    }
+
+    /**
+     * a virtual thread per file instead of the content threads.
+     * */
+    public boolean virtualThreads() {
+        return virtualThreads;
+    }
+
+    public int maxOpenFiles() {
+        return maxOpenFiles;
+    }
+
+    /**
+     * files of one device searched at the same time, {@link Integer#MAX_VALUE} for no limit per device.
+     * */
+    public int deviceReads() {
+        return deviceReads;
+    }
+
+    public ReadOrder readOrder() {
+        return readOrder;
+    }
+
+    /**
+     * null when the dirs are walked.
+     * */
+    public IndexMode indexMode() {
+        return indexMode;
+    }
+
+    public Path indexDir() {
+        return indexDir;
+    }
+
+    public boolean contentIndex() {
+        return contentIndex;
+    }
+
+    /**
+     * seconds between the metrics dumps while the search runs, 0 for none.
+     * */
+    public int statsInterval() {
+        return statsInterval;
+    }
+
+    public boolean statsJson() {
+        return statsJson;
+    }
+
+    /**
+     * true when the search reads the content of the files.
+     * */
+    public boolean searchesContent(){
+        return !contentWords.isEmpty() || contentRegex != null;
+    }
+
+    /**
+     * the builder of a query, the defaults are the ones of the command line. not thread safe.
+     * */
+    public static final class Builder {
+        private final List<String> dirs = new ArrayList<>();
+        private final List<String> namePrefixes = new ArrayList<>();
+        private final List<String> nameSuffixes = new ArrayList<>();
+        private final List<String> nameContains = new ArrayList<>();
+        private String fileGlob;
+        private String fileNameRegex;
+        private Tuple<Long, Long> modifiedTimeRange;
+        private Tuple<Long, Long> sizeRange;
+        private final List<AccessMode> accessModes = new ArrayList<>();
+        private final List<String> contentWords = new ArrayList<>();
+        private String contentRegex;
+        private boolean matchAll = true;
+        private boolean archives;
+        private BinaryFiles binaryFiles = BinaryFiles.SKIP;
+        private Charset charset = Charset.defaultCharset();
+        private Charset legacyCharset = defaultLegacyCharset();
+        private boolean filesWithMatches;
+        private int maxCount = Integer.MAX_VALUE;
+        private long limit = Long.MAX_VALUE;
+        private int walkThreads = 1;
+        private int maxOpenDirs = 64;
+        private boolean posixAttributes;
+        private boolean canonicalPaths;
+        private int maxDepth = Integer.MAX_VALUE;
+        private boolean sameFileSystem;
+        private final List<String> excludeDirs = new ArrayList<>();
+        private final List<String> excludes = new ArrayList<>();
+        private boolean ignoreFiles;
+        private boolean vcsDirs;
+        private boolean skipHidden;
+        private boolean byteSearch;
+        private int mmapThreshold = 1024 * 1024;
+        private int parallelThreshold = 256 * 1024 * 1024;
+        private int contentThreads = Runtime.getRuntime().availableProcessors();
+        private int contentQueueSize = 1024;
+        private Boolean virtualThreads;
+        private int maxOpenFiles = 512;
+        private int deviceReads = Integer.MAX_VALUE;
+        private ReadOrder readOrder = ReadOrder.INODE;
+        private IndexMode indexMode;
+        private Path indexDir = FileIndexStore.defaultIndexDir();
+        private boolean contentIndex;
+        private int statsInterval;
+        private boolean statsJson = true;
+
+        /**
+         * the platform charset, unless it is utf-8 or ascii, which do not decode the 8 bit charsets.
+         * */
+        public static Charset defaultLegacyCharset(){
+            Charset platform = Charset.defaultCharset();
+            return StandardCharsets.UTF_8.equals(platform) || StandardCharsets.US_ASCII.equals(platform) ?
+                    StandardCharsets.ISO_8859_1 : platform;
+        }
+
+        /**
+         * the directories searched, at least one.
+         * */
+        public Builder dirs(Collection<String> dirs){
+            this.dirs.addAll(dirs);
+            return this;
+        }
+
+        public Builder namePrefixes(Collection<String> prefixes){
+            this.namePrefixes.addAll(prefixes);
+            return this;
+        }
+
+        public Builder nameSuffixes(Collection<String> suffixes){
+            this.nameSuffixes.addAll(suffixes);
+            return this;
+        }
+
+        /**
+         * the file name contains one of the names.
+         * */
+        public Builder nameContains(Collection<String> names){
+            this.nameContains.addAll(names);
+            return this;
+        }
+
+        /**
+         * the file name matches the glob: * ? [a-z] {log,txt}.
+         * */
+        public Builder fileGlob(String glob){
+            this.fileGlob = glob;
+            return this;
+        }
+
+        /**
+         * a part of the file name matches the java regex.
+         * */
+        public Builder fileNameRegex(String regex){
+            this.fileNameRegex = regex;
+            return this;
+        }
+
+        /**
+         * @param minMillis epoch milliseconds, inclusive.
+         * @param maxMillis epoch milliseconds, inclusive.
+         * */
+        public Builder modifiedTimeRange(long minMillis, long maxMillis){
+            if(minMillis <= 0 || minMillis > maxMillis){
+                throw new IllegalArgumentException("modified time range is invalid: [" + minMillis + "," + maxMillis + "]");
+            }
+            this.modifiedTimeRange = new Tuple<>(minMillis, maxMillis);
+            return this;
+        }
+
+        /**
+         * @param minBytes inclusive.
+         * @param maxBytes inclusive.
+         * */
+        public Builder sizeRange(long minBytes, long maxBytes){
+            if(minBytes < 0 || minBytes > maxBytes){
+                throw new IllegalArgumentException("size range is invalid: [" + minBytes + "," + maxBytes + "]");
+            }
+            this.sizeRange = new Tuple<>(minBytes, maxBytes);
+            return this;
+        }
+
+        public Builder access(Collection<AccessMode> accessModes){
+            this.accessModes.addAll(accessModes);
+            return this;
+        }
+
+        /**
+         * the lines containing any of the words, not with {@link #contentRegex(String)}.
+         * */
+        public Builder contentWords(Collection<String> words){
+            this.contentWords.addAll(words);
+            return this;
+        }
+
+        /**
+         * the lines a part of which matches the java regex, not with {@link #contentWords(Collection)}.
+         * */
+        public Builder contentRegex(String regex){
+            this.contentRegex = regex;
+            return this;
+        }
+
+        /**
+         * true: a file must match all the conditions, false: any of them. default true.
+         * */
+        public Builder matchAll(boolean matchAll){
+            this.matchAll = matchAll;
+            return this;
+        }
+
+        public Builder archives(boolean archives){
+            this.archives = archives;
+            return this;
+        }
+
+        public Builder binaryFiles(BinaryFiles binaryFiles){
+            this.binaryFiles = binaryFiles;
+            return this;
+        }
+
+        /**
+         * the charset of the searched text, default the platform charset.
+         * */
+        public Builder charset(Charset charset){
+            this.charset = charset;
+            return this;
+        }
+
+        public Builder legacyCharset(Charset legacyCharset){
+            this.legacyCharset = legacyCharset;
+            return this;
+        }
+
+        public Builder filesWithMatches(boolean filesWithMatches){
+            this.filesWithMatches = filesWithMatches;
+            return this;
+        }
+
+        public Builder maxCount(int maxCount){
+            this.maxCount = positive("maxCount", maxCount);
+            return this;
+        }
+
+        public Builder limit(long limit){
+            if(limit <= 0){
+                throw new IllegalArgumentException("limit must be positive: " + limit);
+            }
+            this.limit = limit;
+            return this;
+        }
+
+        public Builder walkThreads(int walkThreads){
+            this.walkThreads = positive("walkThreads", walkThreads);
+            return this;
+        }
+
+        public Builder maxOpenDirs(int maxOpenDirs){
+            this.maxOpenDirs = positive("maxOpenDirs", maxOpenDirs);
+            return this;
+        }
+
+        public Builder posixAttributes(boolean posixAttributes){
+            this.posixAttributes = posixAttributes;
+            return this;
+        }
+
+        public Builder canonicalPaths(boolean canonicalPaths){
+            this.canonicalPaths = canonicalPaths;
+            return this;
+        }
+
+        public Builder maxDepth(int maxDepth){
+            this.maxDepth = positive("maxDepth", maxDepth);
+            return this;
+        }
+
+        public Builder sameFileSystem(boolean sameFileSystem){
+            this.sameFileSystem = sameFileSystem;
+            return this;
+        }
+
+        /**
+         * directory names, or absolute directory paths, whose sub tree is skipped.
+         * */
+        public Builder excludeDirs(Collection<String> excludeDirs){
+            this.excludeDirs.addAll(excludeDirs);
+            return this;
+        }
+
+        /**
+         * gitignore patterns relative to the dirs.
+         * */
+        public Builder excludes(Collection<String> excludes){
+            this.excludes.addAll(excludes);
+            return this;
+        }
+
+        public Builder ignoreFiles(boolean ignoreFiles){
+            this.ignoreFiles = ignoreFiles;
+            return this;
+        }
+
+        /**
+         * true walks the version control directories, skipped by default.
+         * */
+        public Builder vcsDirs(boolean vcsDirs){
+            this.vcsDirs = vcsDirs;
+            return this;
+        }
+
+        public Builder skipHidden(boolean skipHidden){
+            this.skipHidden = skipHidden;
+            return this;
+        }
+
+        public Builder byteSearch(boolean byteSearch){
+            this.byteSearch = byteSearch;
+            return this;
+        }
+
+        public Builder mmapThreshold(int mmapThreshold){
+            if(mmapThreshold <= 0 || mmapThreshold > ByteContentSearcher.MAX_MMAP_THRESHOLD){
+                throw new IllegalArgumentException("mmapThreshold must be in [1," + ByteContentSearcher.MAX_MMAP_THRESHOLD + "]: " + mmapThreshold);
+            }
+            this.mmapThreshold = mmapThreshold;
+            return this;
+        }
+
+        public Builder parallelThreshold(int parallelThreshold){
+            this.parallelThreshold = positive("parallelThreshold", parallelThreshold);
+            return this;
+        }
+
+        public Builder contentThreads(int contentThreads){
+            this.contentThreads = positive("contentThreads", contentThreads);
+            return this;
+        }
+
+        public Builder contentQueueSize(int contentQueueSize){
+            this.contentQueueSize = positive("contentQueueSize", contentQueueSize);
+            return this;
+        }
+
+        /**
+         * true: a virtual thread per file, false: the content threads. default virtual threads when the runtime has them.
+         * @throws IllegalArgumentException virtual threads on a runtime without them.
+         * */
+        public Builder virtualThreads(boolean virtualThreads){
+            if(virtualThreads && !ContentExecutors.virtualThreadsSupported()){
+                throw new IllegalArgumentException("virtual threads need java 21 or later: " + System.getProperty("java.version"));
+            }
+            this.virtualThreads = virtualThreads;
+            return this;
+        }
+
+        public Builder maxOpenFiles(int maxOpenFiles){
+            this.maxOpenFiles = positive("maxOpenFiles", maxOpenFiles);
+            return this;
+        }
+
+        /**
+         * files of one device searched at the same time, the other devices take the rest of the
+         * content threads or open files. default no limit per device.
+         * */
+        public Builder deviceReads(int deviceReads){
+            this.deviceReads = positive("deviceReads", deviceReads);
+            return this;
+        }
+
+        /**
+         * order of the queued files of one device, default {@link ReadOrder#INODE}.
+         * */
+        public Builder readOrder(ReadOrder readOrder){
+            if(readOrder == null){
+                throw new IllegalArgumentException("readOrder must not be null");
+            }
+            this.readOrder = readOrder;
+            return this;
+        }
+
+        /**
+         * null walks the dirs.
+         * */
+        public Builder indexMode(IndexMode indexMode){
+            this.indexMode = indexMode;
+            return this;
+        }
+
+        public Builder indexDir(Path indexDir){
+            this.indexDir = indexDir;
+            return this;
+        }
+
+        public Builder contentIndex(boolean contentIndex){
+            this.contentIndex = contentIndex;
+            return this;
+        }
+
+        /**
+         * dump the metrics of the search to its error output every interval while it runs.
+         * @param seconds 0 for none.
+         * @param json json lines instead of text.
+         * */
+        public Builder statsInterval(int seconds, boolean json){
+            if(seconds < 0){
+                throw new IllegalArgumentException("statsInterval must not be negative: " + seconds);
+            }
+            this.statsInterval = seconds;
+            this.statsJson = json;
+            return this;
+        }
+
+        /**
+         * @throws IllegalArgumentException no dir, no condition, conflicting options or an invalid pattern.
+         * */
+        public SearchQuery build(){
+            if(dirs.isEmpty()){
+                throw new IllegalArgumentException("no dir to search");
+            }
+            boolean content = !contentWords.isEmpty() || contentRegex != null;
+            if(namePrefixes.isEmpty() && nameSuffixes.isEmpty() && nameContains.isEmpty() &&
+               fileGlob == null && fileNameRegex == null && modifiedTimeRange == null &&
+               sizeRange == null && accessModes.isEmpty() && !content){
+                throw new IllegalArgumentException("no search condition found");
+            }
+            if(contentRegex != null && !contentWords.isEmpty()){
+                throw new IllegalArgumentException("contentRegex and contentWords can not be combined");
+            }
+            if((filesWithMatches || maxCount != Integer.MAX_VALUE) && !content){
+                throw new IllegalArgumentException("filesWithMatches and maxCount need contentWords or contentRegex");
+            }
+            if(archives && contentIndex){
+                throw new IllegalArgumentException("archives and contentIndex can not be combined");
+            }
+            // the patterns fail here rather than in the search.
+            checkPattern("fileGlob", fileGlob, true);
+            checkPattern("fileNameRegex", fileNameRegex, false);
+            checkPattern("contentRegex", contentRegex, false);
+            try{
+                return new SearchQuery(this);
+            }catch (PatternSyntaxException pse){
+                throw new IllegalArgumentException("excludes is invalid: " + pse.getMessage(), pse);
+            }
+        }
+
+        private static void checkPattern(String name, String pattern, boolean glob){
+            if(pattern == null){
+                return;
+            }
+            try{
+                if(glob){
+                    FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+                }else{
+                    Pattern.compile(pattern);
+                }
+            }catch (PatternSyntaxException pse){
+                throw new IllegalArgumentException(name + " is invalid: " + pse.getMessage(), pse);
+            }
+        }
+
+        private static int positive(String name, int value){
+            if(value <= 0){
+                throw new IllegalArgumentException(name + " must be positive: " + value);
+            }
+            return value;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.github.search.engine;
+
+import com.github.search.metrics.SearchMetrics;
+
+import java.util.List;
+
+/**
+ * the end of a search: its run time, its metrics and the reports of its filters, content queue and indexes.
+ */
+public final class SearchSummary {
+    private final long runMillis;
+    private final boolean cancelled;
+    private final boolean interrupted;
+    private final SearchMetrics metrics;
+    private final List<String> reports;
+
+    SearchSummary(long runMillis, boolean cancelled, boolean interrupted, SearchMetrics metrics, List<String> reports) {
+        this.runMillis = runMillis;
+        this.cancelled = cancelled;
+        this.interrupted = interrupted;
+        this.metrics = metrics;
+        this.reports = reports;
+    }
+
+    public long runMillis() {
+        return runMillis;
+    }
+
+    /**
+     * true when the search was cancelled before its end, its results are the ones found until then.
+     * */
+    public boolean cancelled() {
+        return cancelled;
+    }
+
+    /**
+     * true when the search thread was interrupted while the content searches ran, the files not searched
+     * by then were dropped and the content index was not updated.
+     * */
+    public boolean interrupted() {
+        return interrupted;
+    }
+
+    public SearchMetrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * the selectivity of every condition, the content queue metrics and the index reports, as printed by ---filter_stats.
+     * */
+    public List<String> reports() {
+        return reports;
+    }
+}
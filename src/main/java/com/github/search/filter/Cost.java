@@ -0,0 +1,15 @@
+package com.github.search.filter;
+
+/**
+ * estimated cost of a filter, the plan evaluates the cheaper filters first.
+ */
+public enum Cost {
+    /** in-memory test on the file name. */
+    NAME,
+    /** test on the attributes already read by the walk. */
+    ATTRIBUTE,
+    /** test that needs a syscall per file. */
+    IO,
+    /** test that reads the file content. */
+    CONTENT
+}
@@ -0,0 +1,34 @@
+package com.github.search.filter;
+
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * the file under test, the file name is computed once and shared by all name filters.
+ */
+public final class FileCandidate {
+    private final Path path;
+    private final BasicFileAttributes attrs;
+    private String fileName;
+
+    public FileCandidate(Path path, BasicFileAttributes attrs) {
+        this.path = path;
+        this.attrs = attrs;
+    }
+
+    public Path path() {
+        return path;
+    }
+
+    public BasicFileAttributes attrs() {
+        return attrs;
+    }
+
+    public String fileName() {
+        if(fileName == null){
+            Path name = path.getFileName();
+            fileName = name == null ? "" : name.toString();
+        }
+        return fileName;
+    }
+}
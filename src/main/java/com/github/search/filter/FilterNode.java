@@ -0,0 +1,56 @@
+package com.github.search.filter;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * node of the compiled filter tree, counts its evaluations and passes for the selectivity report.
+ * nodes are shared by the walker threads and must be thread safe.
+ */
+public abstract class FilterNode {
+    private final String name;
+    private final LongAdder evaluated = new LongAdder();
+    private final LongAdder passed = new LongAdder();
+
+    protected FilterNode(String name) {
+        this.name = name;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public abstract Cost cost();
+
+    protected abstract boolean matches(FileCandidate candidate);
+
+    public final boolean test(FileCandidate candidate){
+        evaluated.increment();
+        boolean matched = matches(candidate);
+        if(matched){
+            passed.increment();
+        }
+        return matched;
+    }
+
+    public List<FilterNode> children(){
+        return Collections.emptyList();
+    }
+
+    public long evaluated() {
+        return evaluated.sum();
+    }
+
+    public long passed() {
+        return passed.sum();
+    }
+
+    /**
+     * passed / evaluated, 1.0 when the node was never evaluated.
+     * */
+    public double selectivity(){
+        long evaluatedCount = evaluated();
+        return evaluatedCount == 0 ? 1.0 : (double) passed() / evaluatedCount;
+    }
+}
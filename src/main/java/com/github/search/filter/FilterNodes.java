@@ -0,0 +1,250 @@
+package com.github.search.filter;
+
+import com.github.search.utils.FileAccess;
+import com.github.search.utils.RequiredLiterals;
+
+import java.nio.file.AccessMode;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.BiPredicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * filter node factories and the and/or combinators.
+ */
+public final class FilterNodes {
+    private FilterNodes(){
+        // no instance.
+    }
+
+    /**
+     * all children must match, cheaper children are evaluated first and the evaluation
+     * stops at the first child that does not match.
+     * */
+    public static FilterNode and(List<FilterNode> children){
+        return new Combinator("and", children, true);
+    }
+
+    /**
+     * any child must match, cheaper children are evaluated first and the evaluation
+     * stops at the first child that matches.
+     * */
+    public static FilterNode or(List<FilterNode> children){
+        return new Combinator("or", children, false);
+    }
+
+    /**
+     * file name starts with any of the prefixes.
+     * */
+    public static FilterNode namePrefixes(List<String> prefixes){
+        String[] prefixArr = prefixes.toArray(new String[0]);
+        return new Leaf("file_prefixes" + prefixes, Cost.NAME) {
+            @Override
+            protected boolean matches(FileCandidate candidate) {
+                String fileName = candidate.fileName();
+                for (String prefix : prefixArr) {
+                    if(fileName.startsWith(prefix)){
+                        return true;
+                    }
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * file name ends with any of the suffixes.
+     * */
+    public static FilterNode nameSuffixes(List<String> suffixes){
+        String[] suffixArr = suffixes.toArray(new String[0]);
+        return new Leaf("file_suffixes" + suffixes, Cost.NAME) {
+            @Override
+            protected boolean matches(FileCandidate candidate) {
+                String fileName = candidate.fileName();
+                for (String suffix : suffixArr) {
+                    if(fileName.endsWith(suffix)){
+                        return true;
+                    }
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * file name contains any of the names.
+     * */
+    public static FilterNode nameContains(List<String> names){
+        String[] nameArr = names.toArray(new String[0]);
+        return new Leaf("file_names" + names, Cost.NAME) {
+            @Override
+            protected boolean matches(FileCandidate candidate) {
+                String fileName = candidate.fileName();
+                for (String name : nameArr) {
+                    if(fileName.contains(name)){
+                        return true;
+                    }
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * file name matches the glob, the glob is compiled once and the names without its literal are
+     * rejected before the matcher runs.
+     * @throws java.util.regex.PatternSyntaxException the glob is invalid.
+     * */
+    public static FilterNode nameGlob(String glob){
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+        String requiredLiteral = RequiredLiterals.ofGlob(glob);
+        return new Leaf("file_glob[" + glob + "]", Cost.NAME) {
+            @Override
+            protected boolean matches(FileCandidate candidate) {
+                if(requiredLiteral != null && !candidate.fileName().contains(requiredLiteral)){
+                    return false;
+                }
+                Path fileName = candidate.path().getFileName();
+                return fileName != null && matcher.matches(fileName);
+            }
+        };
+    }
+
+    /**
+     * a part of the file name matches the regex, the regex is compiled once and the names without
+     * its required literal are rejected before the regex runs.
+     * @throws java.util.regex.PatternSyntaxException the regex is invalid.
+     * */
+    public static FilterNode nameRegex(String regex){
+        Pattern pattern = Pattern.compile(regex);
+        String requiredLiteral = RequiredLiterals.ofRegex(regex);
+        // a matcher per walker thread, reset for every name.
+        ThreadLocal<Matcher> matchers = ThreadLocal.withInitial(() -> pattern.matcher(""));
+        return new Leaf("file_name_regex[" + regex + "]", Cost.NAME) {
+            @Override
+            protected boolean matches(FileCandidate candidate) {
+                String fileName = candidate.fileName();
+                if(requiredLiteral != null && !fileName.contains(requiredLiteral)){
+                    return false;
+                }
+                return matchers.get().reset(fileName).find();
+            }
+        };
+    }
+
+    /**
+     * file modified time in [minMillis, maxMillis].
+     * */
+    public static FilterNode modifiedTimeRange(long minMillis, long maxMillis){
+        return new Leaf("file_modified_time_range[" + minMillis + "," + maxMillis + "]", Cost.ATTRIBUTE) {
+            @Override
+            protected boolean matches(FileCandidate candidate) {
+                long lastModified = candidate.attrs().lastModifiedTime().toMillis();
+                return lastModified >= minMillis && lastModified <= maxMillis;
+            }
+        };
+    }
+
+    /**
+     * file size in [minBytes, maxBytes].
+     * */
+    public static FilterNode sizeRange(long minBytes, long maxBytes){
+        return new Leaf("file_size_range[" + minBytes + "," + maxBytes + "]", Cost.ATTRIBUTE) {
+            @Override
+            protected boolean matches(FileCandidate candidate) {
+                long fileSize = candidate.attrs().size();
+                return fileSize >= minBytes && fileSize <= maxBytes;
+            }
+        };
+    }
+
+    /**
+     * file is accessible with all the modes.
+     * @param posixAttributes the walk reads posix attributes, the check needs no syscall in most cases.
+     * */
+    public static FilterNode access(List<AccessMode> modes, boolean posixAttributes){
+        AccessMode[] modeArr = modes.toArray(new AccessMode[0]);
+        return new Leaf("file_access" + modes, posixAttributes ? Cost.ATTRIBUTE : Cost.IO) {
+            @Override
+            protected boolean matches(FileCandidate candidate) {
+                for (AccessMode mode : modeArr) {
+                    if(!FileAccess.check(candidate.path(), candidate.attrs(), mode)){
+                        return false;
+                    }
+                }
+                return true;
+            }
+        };
+    }
+
+    /**
+     * content test, always evaluated last.
+     * */
+    public static FilterNode content(String name, BiPredicate<Path, BasicFileAttributes> contentFilter){
+        return new Leaf(name, Cost.CONTENT) {
+            @Override
+            protected boolean matches(FileCandidate candidate) {
+                return contentFilter.test(candidate.path(), candidate.attrs());
+            }
+        };
+    }
+
+    private abstract static class Leaf extends FilterNode {
+        private final Cost cost;
+
+        private Leaf(String name, Cost cost) {
+            super(name);
+            this.cost = cost;
+        }
+
+        @Override
+        public Cost cost() {
+            return cost;
+        }
+    }
+
+    private static final class Combinator extends FilterNode {
+        private final FilterNode[] children;
+        private final boolean all;
+        private final Cost cost;
+
+        private Combinator(String name, List<FilterNode> children, boolean all) {
+            super(name);
+            List<FilterNode> sorted = new ArrayList<>(children);
+            // stable sort, nodes of the same cost keep the order they were given.
+            sorted.sort(Comparator.comparing(FilterNode::cost));
+            this.children = sorted.toArray(new FilterNode[0]);
+            this.all = all;
+            this.cost = sorted.isEmpty() ? Cost.NAME : sorted.get(sorted.size() - 1).cost();
+        }
+
+        @Override
+        public Cost cost() {
+            return cost;
+        }
+
+        @Override
+        protected boolean matches(FileCandidate candidate) {
+            for (FilterNode child : children) {
+                if(child.test(candidate) != all){
+                    return !all;
+                }
+            }
+            return all;
+        }
+
+        @Override
+        public List<FilterNode> children() {
+            List<FilterNode> childList = new ArrayList<>(children.length);
+            Collections.addAll(childList, children);
+            return childList;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.github.search.filter;
+
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.function.BiPredicate;
+
+/**
+ * compiled filter tree of the search options.
+ * the plan is one and/or combinator over the option filters: name tests first,
+ * then attribute tests, then tests that need a syscall, then the content test.
+ */
+public final class FilterPlan implements BiPredicate<Path, BasicFileAttributes> {
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+
+    private final FilterNode root;
+
+    private FilterPlan(FilterNode root) {
+        this.root = root;
+    }
+
+    /**
+     * @param filters the option filters.
+     * @param matchAll true: a file must match all the filters, false: any of them.
+     * */
+    public static FilterPlan compile(List<FilterNode> filters, boolean matchAll){
+        return new FilterPlan(matchAll ? FilterNodes.and(filters) : FilterNodes.or(filters));
+    }
+
+    @Override
+    public boolean test(Path path, BasicFileAttributes attrs) {
+        return root.test(new FileCandidate(path, attrs));
+    }
+
+    public FilterNode root() {
+        return root;
+    }
+
+    /**
+     * evaluation order and selectivity of every filter.
+     * */
+    public String report(){
+        StringBuilder sb = new StringBuilder("filter plan:");
+        appendNode(sb, root, 1);
+        return sb.toString();
+    }
+
+    private static void appendNode(StringBuilder sb, FilterNode node, int depth){
+        sb.append(LINE_SEPARATOR);
+        for (int i = 0; i < depth; i++) {
+            sb.append("  ");
+        }
+        sb.append(String.format("%s cost=%s evaluated=%d passed=%d selectivity=%s",
+                node.name(),
+                node.cost(),
+                node.evaluated(),
+                node.passed(),
+                node.evaluated() == 0 ? "-" : String.format("%.2f%%", node.selectivity() * 100)));
+        for (FilterNode child : node.children()) {
+            appendNode(sb, child, depth + 1);
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package com.github.search.index;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * inverted content index of the files of one root directory: every byte trigram of a line maps to
+ * the posting list of the (file id, line number, line byte offset) of the lines containing it.
+ * a content word is looked up by the intersection of the posting lists of its trigrams, so only
+ * the candidate lines of the candidate files are read. every file is keyed by its size and
+ * modified time, a changed file is searched and re-tokenized as a whole.
+ *
+ * <pre>
+ * magic, version, root, charset, files count, files: path, size, last modified,
+ * trigrams count, dictionary: trigram delta, postings length, postings
+ * postings: file id delta (0 = same file), line number (delta in the same file), offset (delta in the same file)
+ * </pre>
+ * all numbers are var-ints.
+ */
+public final class ContentIndex {
+    private static final int MAGIC = 0x46534349; // FSCI
+    private static final int VERSION = 1;
+
+    private final Path root;
+    private final Charset charset;
+    private final String[] paths;
+    private final long[] sizes;
+    private final long[] lastModifieds;
+    private final Map<String, Integer> fileIds;
+    private final int[] trigrams;
+    private final long[] postingOffsets;
+    private final int[] postingLengths;
+    private final ByteBuffer buffer;
+
+    private ContentIndex(Path root, Charset charset, String[] paths, long[] sizes, long[] lastModifieds,
+                         int[] trigrams, long[] postingOffsets, int[] postingLengths, ByteBuffer buffer) {
+        this.root = root;
+        this.charset = charset;
+        this.paths = paths;
+        this.sizes = sizes;
+        this.lastModifieds = lastModifieds;
+        this.trigrams = trigrams;
+        this.postingOffsets = postingOffsets;
+        this.postingLengths = postingLengths;
+        this.buffer = buffer;
+        this.fileIds = new HashMap<>(paths.length * 2);
+        for (int i = 0; i < paths.length; i++) {
+            fileIds.put(paths[i], i);
+        }
+    }
+
+    /**
+     * callback of the decoded postings.
+     * */
+    public interface PostingConsumer {
+        void accept(int fileId, long lineNum, long offset);
+    }
+
+    public Path root() {
+        return root;
+    }
+
+    public Charset charset() {
+        return charset;
+    }
+
+    public int fileCount(){
+        return paths.length;
+    }
+
+    public String path(int fileId){
+        return paths[fileId];
+    }
+
+    public long size(int fileId){
+        return sizes[fileId];
+    }
+
+    public long lastModified(int fileId){
+        return lastModifieds[fileId];
+    }
+
+    public int trigramCount(){
+        return trigrams.length;
+    }
+
+    public int trigram(int index){
+        return trigrams[index];
+    }
+
+    /**
+     * id of the file, -1 when the file is not indexed or changed since it was indexed.
+     * */
+    public int fileId(String relativePath, long size, long lastModified){
+        Integer fileId = fileIds.get(relativePath);
+        if(fileId == null || sizes[fileId] != size || lastModifieds[fileId] != lastModified){
+            return -1;
+        }
+        return fileId;
+    }
+
+    /**
+     * decode the posting list of the trigram at the dictionary index.
+     * */
+    public void postings(int index, PostingConsumer consumer){
+        ByteBuffer postings = buffer.duplicate();
+        ((Buffer) postings).position((int) postingOffsets[index]);
+        int end = (int) postingOffsets[index] + postingLengths[index];
+        int fileId = -1;
+        long lineNum = 0;
+        long offset = 0;
+        while (postings.position() < end){
+            int fileIdDelta = VarInts.readVarInt(postings);
+            if(fileIdDelta != 0){
+                fileId += fileIdDelta;
+                lineNum = 0;
+                offset = 0;
+            }
+            lineNum += VarInts.readVarLong(postings);
+            offset += VarInts.readVarLong(postings);
+            consumer.accept(fileId, lineNum, offset);
+        }
+    }
+
+    /**
+     * dictionary index of the trigram, -1 when no line contains it.
+     * */
+    public int trigramIndex(int trigram){
+        int index = Arrays.binarySearch(trigrams, trigram);
+        return index < 0 ? -1 : index;
+    }
+
+    public int postingLength(int index){
+        return postingLengths[index];
+    }
+
+    public static ContentIndex load(Path indexFile) throws IOException {
+        MappedByteBuffer buffer;
+        try(FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.READ)){
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        try{
+            if(buffer.getInt() != MAGIC){
+                throw new IOException("not a content index file: " + indexFile);
+            }
+            int version = buffer.getInt();
+            if(version != VERSION){
+                throw new IOException("unsupported content index version " + version + ": " + indexFile);
+            }
+            Path root = Paths.get(readString(buffer));
+            Charset charset = Charset.forName(readString(buffer));
+
+            int fileCount = VarInts.readVarInt(buffer);
+            String[] paths = new String[fileCount];
+            long[] sizes = new long[fileCount];
+            long[] lastModifieds = new long[fileCount];
+            for (int i = 0; i < fileCount; i++) {
+                paths[i] = readString(buffer);
+                sizes[i] = VarInts.readVarLong(buffer);
+                lastModifieds[i] = VarInts.readVarLong(buffer);
+            }
+
+            int trigramCount = VarInts.readVarInt(buffer);
+            int[] trigrams = new int[trigramCount];
+            int[] postingLengths = new int[trigramCount];
+            int trigram = 0;
+            for (int i = 0; i < trigramCount; i++) {
+                trigram += VarInts.readVarInt(buffer);
+                trigrams[i] = trigram;
+                postingLengths[i] = VarInts.readVarInt(buffer);
+            }
+            long[] postingOffsets = new long[trigramCount];
+            long offset = buffer.position();
+            for (int i = 0; i < trigramCount; i++) {
+                postingOffsets[i] = offset;
+                offset += postingLengths[i];
+            }
+
+            return new ContentIndex(root, charset, paths, sizes, lastModifieds,
+                    trigrams, postingOffsets, postingLengths, buffer);
+        }catch (RuntimeException ex){
+            throw new IOException("corrupt content index file: " + indexFile, ex);
+        }
+    }
+
+    /**
+     * write the index file.
+     * @param files indexed files, the file id is the list index.
+     * @param postings posting lists, sorted by trigram.
+     * */
+    static void write(Path indexFile, Path root, Charset charset, List<IndexEntry> files,
+                      int[] trigrams, List<ContentIndexBuilder.PostingWriter> postings) throws IOException {
+        Path parent = indexFile.toAbsolutePath().getParent();
+        if(parent != null){
+            Files.createDirectories(parent);
+        }
+        // a temp file of its own, two processes saving the same index do not write into one file.
+        Path tempFile = Files.createTempFile(parent, indexFile.getFileName().toString(), ".tmp");
+        boolean moved = false;
+        try{
+            try(OutputStream os = Files.newOutputStream(tempFile);
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os, 64 * 1024))){
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                writeString(out, root.toString());
+                writeString(out, charset.name());
+
+                VarInts.writeVarInt(out, files.size());
+                for (IndexEntry file : files) {
+                    writeString(out, file.relativePath());
+                    VarInts.writeVarLong(out, file.size());
+                    VarInts.writeVarLong(out, Math.max(0L, file.lastModified()));
+                }
+
+                VarInts.writeVarInt(out, trigrams.length);
+                int previous = 0;
+                for (int i = 0; i < trigrams.length; i++) {
+                    VarInts.writeVarInt(out, trigrams[i] - previous);
+                    VarInts.writeVarInt(out, postings.get(i).length());
+                    previous = trigrams[i];
+                }
+                for (ContentIndexBuilder.PostingWriter posting : postings) {
+                    posting.writeTo(out);
+                }
+            }
+
+            try{
+                Files.move(tempFile, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }catch (AtomicMoveNotSupportedException ex){
+                Files.move(tempFile, indexFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+            moved = true;
+        }finally {
+            if(!moved){
+                Files.deleteIfExists(tempFile);
+            }
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String str) throws IOException {
+        byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+        VarInts.writeVarInt(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer){
+        byte[] bytes = new byte[VarInts.readVarInt(buffer)];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
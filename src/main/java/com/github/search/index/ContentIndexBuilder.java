@@ -0,0 +1,249 @@
+package com.github.search.index;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * builds the content index of a root directory from the previous index: the postings of the files
+ * whose size and modified time did not change are copied, only the changed and new files are read
+ * and tokenized into line trigrams.
+ */
+public final class ContentIndexBuilder {
+    private int keptFiles;
+    private int tokenizedFiles;
+    private long tokenizedBytes;
+
+    /**
+     * write the content index of the files.
+     * @param oldIndex previous index of the root, null for a full build.
+     * @param files the files to index, files of the old index missing here are kept as they are.
+     * */
+    public void update(Path indexFile, Path root, Charset charset, ContentIndex oldIndex,
+                       Collection<IndexEntry> files) throws IOException {
+        if(oldIndex != null && !oldIndex.charset().equals(charset)){
+            oldIndex = null;
+        }
+
+        List<IndexEntry> indexFiles = new ArrayList<>();
+        List<IndexEntry> changedFiles = new ArrayList<>();
+        Set<String> seenPaths = new HashSet<>();
+        Map<Integer, IndexEntry> keptOldFiles = new HashMap<>();
+        for (IndexEntry file : files) {
+            if(!seenPaths.add(file.relativePath())){
+                continue;
+            }
+            int oldFileId = oldIndex == null ? -1 : oldIndex.fileId(file.relativePath(), file.size(), file.lastModified());
+            if(oldFileId >= 0){
+                keptOldFiles.put(oldFileId, file);
+            }else{
+                changedFiles.add(file);
+            }
+        }
+
+        // old ids are mapped in order, so the copied postings stay sorted by file id.
+        int[] newFileIds = new int[oldIndex == null ? 0 : oldIndex.fileCount()];
+        for (int oldFileId = 0; oldFileId < newFileIds.length; oldFileId++) {
+            IndexEntry kept = keptOldFiles.get(oldFileId);
+            String path = oldIndex.path(oldFileId);
+            if(kept == null && !seenPaths.contains(path)){
+                // not a candidate of this search, kept until it is seen changed.
+                kept = new IndexEntry(path, false, oldIndex.size(oldFileId), oldIndex.lastModified(oldFileId), -1, "", "");
+            }
+            if(kept == null){
+                newFileIds[oldFileId] = -1;
+            }else{
+                newFileIds[oldFileId] = indexFiles.size();
+                indexFiles.add(kept);
+                keptFiles++;
+            }
+        }
+
+        Map<Integer, PostingWriter> postings = new HashMap<>();
+        for (int index = 0; index < (oldIndex == null ? 0 : oldIndex.trigramCount()); index++) {
+            PostingWriter writer = new PostingWriter();
+            oldIndex.postings(index, (fileId, lineNum, offset) -> {
+                if(newFileIds[fileId] >= 0){
+                    writer.add(newFileIds[fileId], lineNum, offset);
+                }
+            });
+            if(writer.length() > 0){
+                postings.put(oldIndex.trigram(index), writer);
+            }
+        }
+
+        for (IndexEntry file : changedFiles) {
+            Path path = file.relativePath().isEmpty() ? root : root.resolve(file.relativePath());
+            int fileId = indexFiles.size();
+            Map<Integer, PostingWriter> filePostings = new HashMap<>();
+            try{
+                tokenize(path, fileId, filePostings);
+            }catch (IOException | RuntimeException ex){
+                // unreadable file is not indexed, it is searched as a whole the next time.
+                continue;
+            }
+            for (Map.Entry<Integer, PostingWriter> filePosting : filePostings.entrySet()) {
+                postings.computeIfAbsent(filePosting.getKey(), t -> new PostingWriter())
+                        .appendFile(fileId, filePosting.getValue());
+            }
+            indexFiles.add(file);
+            tokenizedFiles++;
+            tokenizedBytes += file.size();
+        }
+
+        int[] trigrams = new int[postings.size()];
+        int i = 0;
+        for (Integer trigram : postings.keySet()) {
+            trigrams[i++] = trigram;
+        }
+        Arrays.sort(trigrams);
+        List<PostingWriter> sortedPostings = new ArrayList<>(trigrams.length);
+        for (int trigram : trigrams) {
+            sortedPostings.add(postings.get(trigram));
+        }
+
+        ContentIndex.write(indexFile, root, charset, indexFiles, trigrams, sortedPostings);
+    }
+
+    public String report(){
+        return String.format("content index update: kept_files=%d tokenized_files=%d tokenized_bytes=%d",
+                keptFiles, tokenizedFiles, tokenizedBytes);
+    }
+
+    /**
+     * add the distinct trigrams of every line of the file to the postings.
+     * */
+    private static void tokenize(Path file, int fileId, Map<Integer, PostingWriter> postings) throws IOException {
+        int[] lineTrigrams = new int[256];
+        int lineTrigramCount = 0;
+        long lineNum = 1;
+        long lineOffset = 0;
+        long offset = 0;
+        int trigram = 0;
+        int lineBytes = 0;
+        byte[] bytes = new byte[64 * 1024];
+        try(InputStream in = Files.newInputStream(file)){
+            for (;;) {
+                int read = in.read(bytes);
+                if(read < 0){
+                    break;
+                }
+                for (int i = 0; i < read; i++, offset++) {
+                    byte b = bytes[i];
+                    if(b == '\n'){
+                        addLine(lineTrigrams, lineTrigramCount, fileId, lineNum, lineOffset, postings);
+                        lineTrigramCount = 0;
+                        lineBytes = 0;
+                        lineNum++;
+                        lineOffset = offset + 1;
+                        continue;
+                    }
+                    trigram = ((trigram << 8) | (b & 0xFF)) & 0xFFFFFF;
+                    if(++lineBytes >= 3){
+                        if(lineTrigramCount == lineTrigrams.length){
+                            lineTrigrams = Arrays.copyOf(lineTrigrams, lineTrigrams.length * 2);
+                        }
+                        lineTrigrams[lineTrigramCount++] = trigram;
+                    }
+                }
+            }
+        }
+        addLine(lineTrigrams, lineTrigramCount, fileId, lineNum, lineOffset, postings);
+    }
+
+    private static void addLine(int[] lineTrigrams, int count, int fileId, long lineNum, long lineOffset,
+                                Map<Integer, PostingWriter> postings){
+        if(count == 0){
+            return;
+        }
+        Arrays.sort(lineTrigrams, 0, count);
+        for (int i = 0; i < count; i++) {
+            if(i > 0 && lineTrigrams[i] == lineTrigrams[i - 1]){
+                continue;
+            }
+            postings.computeIfAbsent(lineTrigrams[i], t -> new PostingWriter(fileId)).add(fileId, lineNum, lineOffset);
+        }
+    }
+
+    /**
+     * var-int encoded posting list of one trigram, the postings are added in (file id, line number) order.
+     * */
+    static final class PostingWriter {
+        private byte[] bytes = new byte[16];
+        private int length;
+        private int lastFileId = -1;
+        private long lastLineNum;
+        private long lastOffset;
+
+        PostingWriter() {
+        }
+
+        /**
+         * postings of a single file, every posting starts with the same file delta 0.
+         * */
+        PostingWriter(int fileId) {
+            this.lastFileId = fileId;
+        }
+
+        void add(int fileId, long lineNum, long offset){
+            if(fileId != lastFileId){
+                writeVarLong(fileId - lastFileId);
+                lastFileId = fileId;
+                lastLineNum = 0;
+                lastOffset = 0;
+            }else{
+                writeVarLong(0);
+            }
+            writeVarLong(lineNum - lastLineNum);
+            writeVarLong(offset - lastOffset);
+            lastLineNum = lineNum;
+            lastOffset = offset;
+        }
+
+        /**
+         * append the postings of a single file written by {@link #PostingWriter(int)}.
+         * */
+        void appendFile(int fileId, PostingWriter filePostings){
+            writeVarLong(fileId - lastFileId);
+            // skip the leading file delta 0 of the single file postings.
+            if(length + filePostings.length > bytes.length){
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + filePostings.length));
+            }
+            System.arraycopy(filePostings.bytes, 1, bytes, length, filePostings.length - 1);
+            length += filePostings.length - 1;
+            lastFileId = fileId;
+            lastLineNum = filePostings.lastLineNum;
+            lastOffset = filePostings.lastOffset;
+        }
+
+        int length(){
+            return length;
+        }
+
+        void writeTo(DataOutput out) throws IOException {
+            out.write(bytes, 0, length);
+        }
+
+        private void writeVarLong(long value){
+            if(length + 10 > bytes.length){
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+            while ((value & ~0x7FL) != 0){
+                bytes[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[length++] = (byte) value;
+        }
+    }
+}
@@ -0,0 +1,358 @@
+package com.github.search.index;
+
+import com.github.search.content.AhoCorasick;
+import com.github.search.content.LineMatchListener;
+import com.github.search.content.MatchLimits;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * content word search of the root directories answered from their content indexes.
+ * the candidate lines of the words are looked up once per root, an unchanged indexed file is
+ * searched by reading only its candidate lines, a changed or new file is searched as a whole and
+ * tokenized by {@link #update()} after the search.
+ * a word shorter than 3 bytes has no trigram, every file is searched as a whole then.
+ */
+public final class ContentIndexSearch {
+    private static final int KEY_LINE_BITS = 32;
+
+    private final FileIndexStore indexStore;
+    private final List<String> words;
+    private final Charset charset;
+    private final List<RootSearch> roots = new CopyOnWriteArrayList<>();
+    private final List<String> reports = new CopyOnWriteArrayList<>();
+    private final LongAdder bytesRead = new LongAdder();
+    private volatile RootSearch current;
+
+    public ContentIndexSearch(FileIndexStore indexStore, List<String> words, Charset charset) {
+        this.indexStore = indexStore;
+        this.words = words;
+        this.charset = charset;
+    }
+
+    /**
+     * load the content index of the root and look up the candidate lines of the words,
+     * the following lookups are answered for the files of this root.
+     * @param walkRoot the root as the walk passes it, the index is keyed by the canonical root.
+     * */
+    public void open(Path walkRoot) throws IOException {
+        Path canonicalRoot = walkRoot.toRealPath();
+        Path indexFile = indexStore.contentIndexFile(canonicalRoot);
+        ContentIndex contentIndex = null;
+        if(Files.exists(indexFile)){
+            try{
+                ContentIndex loaded = ContentIndex.load(indexFile);
+                if(loaded.root().equals(canonicalRoot) && loaded.charset().equals(charset)){
+                    contentIndex = loaded;
+                }
+            }catch (IOException ioe){
+                // rebuild the unreadable index.
+            }
+        }
+
+        RootSearch rootSearch = new RootSearch(walkRoot.toAbsolutePath().normalize(), canonicalRoot, indexFile, contentIndex);
+        if(contentIndex != null){
+            rootSearch.candidates = candidates(contentIndex);
+        }
+        roots.add(rootSearch);
+        current = rootSearch;
+    }
+
+    /**
+     * the candidate lines of an unchanged indexed file as (line number, line offset) pairs, an empty
+     * array when no line can match, null when the file must be searched as a whole. the attributes
+     * of a file index search are the indexed ones, the file is stat-ed again before its postings are trusted.
+     * */
+    public long[] candidateLines(Path file, BasicFileAttributes attrs){
+        RootSearch rootSearch = current;
+        if(rootSearch == null){
+            return null;
+        }
+        // the walk passes paths under the walk root, the file index under the canonical root.
+        Path absoluteFile = file.toAbsolutePath().normalize();
+        String relativePath;
+        if(absoluteFile.startsWith(rootSearch.canonicalRoot)){
+            relativePath = FileIndexBuilder.relativePath(rootSearch.canonicalRoot, absoluteFile);
+        }else if(absoluteFile.startsWith(rootSearch.walkRoot)){
+            relativePath = FileIndexBuilder.relativePath(rootSearch.walkRoot, absoluteFile);
+        }else{
+            return null;
+        }
+        if(attrs instanceof IndexedFileAttributes){
+            try{
+                attrs = Files.readAttributes(file, BasicFileAttributes.class);
+            }catch (IOException ioe){
+                return null;
+            }
+        }
+        IndexEntry entry = new IndexEntry(relativePath, false, attrs.size(), attrs.lastModifiedTime().toMillis(), -1, "", "");
+        rootSearch.seenFiles.add(entry);
+
+        if(rootSearch.candidates == null){
+            return null;
+        }
+        int fileId = rootSearch.contentIndex.fileId(relativePath, entry.size(), entry.lastModified());
+        if(fileId < 0){
+            return null;
+        }
+        rootSearch.indexedFiles.increment();
+        long[] lines = rootSearch.candidates.get(fileId);
+        return lines == null ? new long[0] : lines;
+    }
+
+    /**
+     * match the candidate lines of the file, the same messages as a search of the whole file.
+     * */
+    public boolean searchLines(File file, long[] lines, AhoCorasick wordsMatcher, Consumer<String> output) throws IOException {
+        return searchLines(file, lines, wordsMatcher, MatchLimits.NONE.file(), output);
+    }
+
+    /**
+     * {@link #searchLines(File, long[], AhoCorasick, Consumer)} until the file limit takes no more lines.
+     * */
+    public boolean searchLines(File file, long[] lines, AhoCorasick wordsMatcher, MatchLimits.FileLimit fileLimit,
+                               Consumer<String> output) throws IOException {
+        return searchLines(file, lines, wordsMatcher, fileLimit,
+                (lineNum, line, word) -> output.accept(String.format("match:%s,%s,[ %s ]",file,lineNum,line)));
+    }
+
+    /**
+     * {@link #searchLines(File, long[], AhoCorasick, MatchLimits.FileLimit, Consumer)} passing every word found
+     * in a taken line to the listener.
+     * */
+    public boolean searchLines(File file, long[] lines, AhoCorasick wordsMatcher, MatchLimits.FileLimit fileLimit,
+                               LineMatchListener listener) throws IOException {
+        if(lines.length == 0){
+            return false;
+        }
+        boolean matchLineSuccess = false;
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)){
+            for (int i = 0; i < lines.length && fileLimit.more(); i += 2) {
+                buffer = readLine(channel, lines[i + 1], buffer);
+                bytesRead.add(buffer.limit());
+                String line = new String(buffer.array(), 0, buffer.limit(), charset);
+                if(line.endsWith("\r")){
+                    line = line.substring(0, line.length() - 1);
+                }
+                Map<String, List<Integer>> matchedWords = wordsMatcher.matchedWords(line);
+                if(!matchedWords.isEmpty()){
+                    if(!fileLimit.tryLine()){
+                        break;
+                    }
+                    for (String word : matchedWords.keySet()) {
+                        listener.onMatch(lines[i], line, word);
+                    }
+                    matchLineSuccess = true;
+                }
+            }
+        }
+        return matchLineSuccess;
+    }
+
+    /**
+     * write the content indexes of the opened roots: the files seen unchanged keep their postings,
+     * the changed and new files are tokenized.
+     * */
+    public void update() throws IOException {
+        for (RootSearch rootSearch : roots) {
+            ContentIndexBuilder builder = new ContentIndexBuilder();
+            builder.update(rootSearch.indexFile, rootSearch.canonicalRoot, charset,
+                    rootSearch.contentIndex, rootSearch.seenFiles);
+            reports.add(rootSearch.canonicalRoot + " content index: indexed_files=" + rootSearch.indexedFiles.sum() +
+                    " candidate_files=" + (rootSearch.candidates == null ? 0 : rootSearch.candidates.size()) +
+                    " " + builder.report());
+        }
+    }
+
+    public List<String> reports() {
+        return reports;
+    }
+
+    /**
+     * bytes of the candidate lines read by {@link #searchLines(File, long[], AhoCorasick, Consumer)}.
+     * */
+    public long bytesRead(){
+        return bytesRead.sum();
+    }
+
+    /**
+     * candidate lines of every file: the lines holding all the trigrams of at least one word.
+     * null when a word has no trigram.
+     * */
+    private Map<Integer, long[]> candidates(ContentIndex contentIndex){
+        TreeMap<Long, Long> lineOffsets = new TreeMap<>();
+        for (String word : words) {
+            byte[] bytes = word.getBytes(charset);
+            if(bytes.length < 3){
+                return null;
+            }
+            int[] trigramIndexes = new int[bytes.length - 2];
+            boolean missing = false;
+            for (int i = 0; i + 2 < bytes.length; i++) {
+                int trigram = ((bytes[i] & 0xFF) << 16) | ((bytes[i + 1] & 0xFF) << 8) | (bytes[i + 2] & 0xFF);
+                trigramIndexes[i] = contentIndex.trigramIndex(trigram);
+                if(trigramIndexes[i] < 0){
+                    missing = true;
+                    break;
+                }
+            }
+            if(missing){
+                // no line holds the word.
+                continue;
+            }
+
+            // the shortest posting list first, the others only narrow it.
+            Integer[] sorted = Arrays.stream(trigramIndexes).distinct().boxed().toArray(Integer[]::new);
+            Arrays.sort(sorted, (i1, i2) -> Integer.compare(contentIndex.postingLength(i1), contentIndex.postingLength(i2)));
+
+            LineList lines = new LineList();
+            contentIndex.postings(sorted[0], (fileId, lineNum, offset) -> lines.add(key(fileId, lineNum), offset));
+            for (int i = 1; i < sorted.length && lines.size > 0; i++) {
+                lines.retain(contentIndex, sorted[i]);
+            }
+            for (int i = 0; i < lines.size; i++) {
+                lineOffsets.put(lines.keys[i], lines.offsets[i]);
+            }
+        }
+
+        Map<Integer, List<Long>> fileLines = new HashMap<>();
+        for (Map.Entry<Long, Long> lineOffset : lineOffsets.entrySet()) {
+            int fileId = (int) (lineOffset.getKey() >>> KEY_LINE_BITS);
+            long lineNum = lineOffset.getKey() & ((1L << KEY_LINE_BITS) - 1);
+            List<Long> lines = fileLines.computeIfAbsent(fileId, f -> new ArrayList<>());
+            lines.add(lineNum);
+            lines.add(lineOffset.getValue());
+        }
+        Map<Integer, long[]> candidates = new HashMap<>();
+        for (Map.Entry<Integer, List<Long>> entry : fileLines.entrySet()) {
+            long[] lines = new long[entry.getValue().size()];
+            for (int i = 0; i < lines.length; i++) {
+                lines[i] = entry.getValue().get(i);
+            }
+            candidates.put(entry.getKey(), lines);
+        }
+        return Collections.unmodifiableMap(candidates);
+    }
+
+    private static long key(int fileId, long lineNum){
+        return ((long) fileId << KEY_LINE_BITS) | lineNum;
+    }
+
+    /**
+     * read the line at the offset into the buffer, without the line feed.
+     * */
+    private static ByteBuffer readLine(FileChannel channel, long offset, ByteBuffer buffer) throws IOException {
+        ((Buffer) buffer).clear();
+        long position = offset;
+        int scanned = 0;
+        for (;;) {
+            if(!buffer.hasRemaining()){
+                ByteBuffer grown = ByteBuffer.allocate(buffer.capacity() * 2);
+                ((Buffer) buffer).flip();
+                grown.put(buffer);
+                buffer = grown;
+            }
+            int read = channel.read(buffer, position);
+            if(read <= 0){
+                break;
+            }
+            position += read;
+            byte[] array = buffer.array();
+            for (; scanned < buffer.position(); scanned++) {
+                if(array[scanned] == '\n'){
+                    ((Buffer) buffer).limit(scanned);
+                    ((Buffer) buffer).position(0);
+                    return buffer;
+                }
+            }
+        }
+        ((Buffer) buffer).flip();
+        return buffer;
+    }
+
+    /**
+     * sorted line keys and offsets of one word.
+     * */
+    private static final class LineList {
+        private long[] keys = new long[64];
+        private long[] offsets = new long[64];
+        private int size;
+
+        private void add(long key, long offset){
+            if(size == keys.length){
+                keys = Arrays.copyOf(keys, size * 2);
+                offsets = Arrays.copyOf(offsets, size * 2);
+            }
+            keys[size] = key;
+            offsets[size] = offset;
+            size++;
+        }
+
+        /**
+         * keep the lines that are in the posting list too, both are sorted by key.
+         * */
+        private void retain(ContentIndex contentIndex, int trigramIndex){
+            boolean[] retained = new boolean[size];
+            int[] cursor = new int[1];
+            contentIndex.postings(trigramIndex, (fileId, lineNum, offset) -> {
+                long key = key(fileId, lineNum);
+                while (cursor[0] < size && keys[cursor[0]] < key){
+                    cursor[0]++;
+                }
+                if(cursor[0] < size && keys[cursor[0]] == key){
+                    retained[cursor[0]] = true;
+                }
+            });
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                if(retained[i]){
+                    keys[kept] = keys[i];
+                    offsets[kept] = offsets[i];
+                    kept++;
+                }
+            }
+            size = kept;
+        }
+    }
+
+    /**
+     * content index and search state of one root directory.
+     * */
+    private static final class RootSearch {
+        private final Path walkRoot;
+        private final Path canonicalRoot;
+        private final Path indexFile;
+        private final ContentIndex contentIndex;
+        private final ConcurrentLinkedQueue<IndexEntry> seenFiles = new ConcurrentLinkedQueue<>();
+        private Map<Integer, long[]> candidates;
+        private final LongAdder indexedFiles = new LongAdder();
+
+        private RootSearch(Path walkRoot, Path canonicalRoot, Path indexFile, ContentIndex contentIndex) {
+            this.walkRoot = walkRoot;
+            this.canonicalRoot = canonicalRoot;
+            this.indexFile = indexFile;
+            this.contentIndex = contentIndex;
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package com.github.search.index;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.BiPredicate;
+
+/**
+ * file metadata index of one root directory.
+ * on disk the entries are sorted by relative path, every path is stored as the length of the
+ * prefix shared with the previous path plus the remaining bytes, sizes and times are var-longs.
+ * a loaded index is memory mapped and decoded on every scan.
+ *
+ * <pre>
+ * magic, version, root, created millis, names count, names (owners and groups), entries count,
+ * entries: flags, shared prefix length, suffix length, suffix, size, last modified, permissions,
+ *          owner name index, group name index
+ * </pre>
+ */
+public final class FileIndex {
+    private static final int MAGIC = 0x46534958; // FSIX
+    private static final int VERSION = 1;
+    private static final int FLAG_DIRECTORY = 1;
+
+    private final Path root;
+    private final long createdMillis;
+    private final String[] names;
+    private final int entryCount;
+    private final ByteBuffer buffer;
+    private final int entriesOffset;
+
+    private FileIndex(Path root, long createdMillis, String[] names, int entryCount, ByteBuffer buffer, int entriesOffset) {
+        this.root = root;
+        this.createdMillis = createdMillis;
+        this.names = names;
+        this.entryCount = entryCount;
+        this.buffer = buffer;
+        this.entriesOffset = entriesOffset;
+    }
+
+    /**
+     * callback of the index entries in path order.
+     * */
+    public interface EntryConsumer {
+        void accept(IndexEntry entry);
+    }
+
+    public Path root() {
+        return root;
+    }
+
+    public long createdMillis() {
+        return createdMillis;
+    }
+
+    public int entryCount() {
+        return entryCount;
+    }
+
+    /**
+     * write the entries of the root directory to the index file, the entries are sorted here.
+     * */
+    public static void write(Path indexFile, Path root, long createdMillis, List<IndexEntry> entries) throws IOException {
+        List<IndexEntry> sorted = new ArrayList<>(entries);
+        sorted.sort((e1, e2) -> e1.relativePath().compareTo(e2.relativePath()));
+
+        Map<String, Integer> nameIndexes = new HashMap<>();
+        List<String> names = new ArrayList<>();
+        for (IndexEntry entry : sorted) {
+            for (String name : new String[]{entry.owner(), entry.group()}) {
+                if(!nameIndexes.containsKey(name)){
+                    nameIndexes.put(name, names.size());
+                    names.add(name);
+                }
+            }
+        }
+
+        Path parent = indexFile.toAbsolutePath().getParent();
+        if(parent != null){
+            Files.createDirectories(parent);
+        }
+        // a temp file of its own, two processes saving the same index do not write into one file.
+        Path tempFile = Files.createTempFile(parent, indexFile.getFileName().toString(), ".tmp");
+        boolean moved = false;
+        try{
+            try(OutputStream os = Files.newOutputStream(tempFile);
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os, 64 * 1024))){
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                writeString(out, root.toString());
+                out.writeLong(createdMillis);
+                VarInts.writeVarInt(out, names.size());
+                for (String name : names) {
+                    writeString(out, name);
+                }
+
+                VarInts.writeVarInt(out, sorted.size());
+                byte[] previous = new byte[0];
+                for (IndexEntry entry : sorted) {
+                    byte[] path = entry.relativePath().getBytes(StandardCharsets.UTF_8);
+                    int shared = 0;
+                    int max = Math.min(previous.length, path.length);
+                    while (shared < max && previous[shared] == path[shared]){
+                        shared++;
+                    }
+                    out.writeByte(entry.isDirectory() ? FLAG_DIRECTORY : 0);
+                    VarInts.writeVarInt(out, shared);
+                    VarInts.writeVarInt(out, path.length - shared);
+                    out.write(path, shared, path.length - shared);
+                    VarInts.writeVarLong(out, entry.size());
+                    VarInts.writeVarLong(out, Math.max(0L, entry.lastModified()));
+                    // permissions + 1, so the unknown -1 is stored as 0.
+                    VarInts.writeVarInt(out, entry.permissions() + 1);
+                    VarInts.writeVarInt(out, nameIndexes.get(entry.owner()));
+                    VarInts.writeVarInt(out, nameIndexes.get(entry.group()));
+                    previous = path;
+                }
+            }
+
+            try{
+                Files.move(tempFile, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }catch (AtomicMoveNotSupportedException ex){
+                Files.move(tempFile, indexFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+            moved = true;
+        }finally {
+            if(!moved){
+                Files.deleteIfExists(tempFile);
+            }
+        }
+    }
+
+    /**
+     * memory map the index file.
+     * */
+    public static FileIndex load(Path indexFile) throws IOException {
+        MappedByteBuffer buffer;
+        try(FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.READ)){
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        try{
+            if(buffer.getInt() != MAGIC){
+                throw new IOException("not an index file: " + indexFile);
+            }
+            int version = buffer.getInt();
+            if(version != VERSION){
+                throw new IOException("unsupported index version " + version + ": " + indexFile);
+            }
+            Path root = Paths.get(readString(buffer));
+            long createdMillis = buffer.getLong();
+            String[] names = new String[VarInts.readVarInt(buffer)];
+            for (int i = 0; i < names.length; i++) {
+                names[i] = readString(buffer);
+            }
+            int entryCount = VarInts.readVarInt(buffer);
+            return new FileIndex(root, createdMillis, names, entryCount, buffer, buffer.position());
+        }catch (RuntimeException ex){
+            throw new IOException("corrupt index file: " + indexFile, ex);
+        }
+    }
+
+    /**
+     * decode all the entries in path order.
+     * */
+    public void forEach(EntryConsumer consumer){
+        ByteBuffer entries = buffer.duplicate();
+        ((Buffer) entries).position(entriesOffset);
+        byte[] path = new byte[256];
+        for (int i = 0; i < entryCount; i++) {
+            int flags = entries.get();
+            int shared = VarInts.readVarInt(entries);
+            int suffixLength = VarInts.readVarInt(entries);
+            if(shared + suffixLength > path.length){
+                byte[] grown = new byte[Math.max(path.length * 2, shared + suffixLength)];
+                System.arraycopy(path, 0, grown, 0, shared);
+                path = grown;
+            }
+            entries.get(path, shared, suffixLength);
+            long size = VarInts.readVarLong(entries);
+            long lastModified = VarInts.readVarLong(entries);
+            int permissions = VarInts.readVarInt(entries) - 1;
+            String owner = names[VarInts.readVarInt(entries)];
+            String group = names[VarInts.readVarInt(entries)];
+
+            consumer.accept(new IndexEntry(
+                    new String(path, 0, shared + suffixLength, StandardCharsets.UTF_8),
+                    (flags & FLAG_DIRECTORY) != 0,
+                    size,
+                    lastModified,
+                    permissions,
+                    owner,
+                    group));
+        }
+    }
+
+    public List<IndexEntry> entries(){
+        List<IndexEntry> entries = new ArrayList<>(entryCount);
+        forEach(entries::add);
+        return entries;
+    }
+
+    /**
+     * the files of the index accepted by the filter, the same as a walk of the root.
+     * */
+    public Collection<String> scan(BiPredicate<Path, BasicFileAttributes> fileFilter){
+        List<String> filterFiles = new LinkedList<>();
+        scan(fileFilter, (path, attrs) -> filterFiles.add(path));
+        return Collections.unmodifiableCollection(filterFiles);
+    }
+
+    /**
+     * pass the files of the index accepted by the filter and their attributes to the sink, in path order.
+     * */
+    public void scan(BiPredicate<Path, BasicFileAttributes> fileFilter, BiConsumer<String, BasicFileAttributes> sink){
+        forEach(entry -> {
+            if(entry.isDirectory()){
+                return;
+            }
+            Path file = resolve(entry);
+            BasicFileAttributes attrs = IndexedFileAttributes.of(entry);
+            if(fileFilter.test(file, attrs)){
+                sink.accept(file.toString(), attrs);
+            }
+        });
+    }
+
+    public Path resolve(IndexEntry entry){
+        return resolve(entry.relativePath());
+    }
+
+    public Path resolve(String relativePath){
+        return relativePath.isEmpty() ? root : root.resolve(relativePath);
+    }
+
+    private static void writeString(DataOutputStream out, String str) throws IOException {
+        byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+        VarInts.writeVarInt(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer){
+        byte[] bytes = new byte[VarInts.readVarInt(buffer)];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
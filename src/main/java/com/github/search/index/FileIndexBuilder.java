@@ -0,0 +1,63 @@
+package com.github.search.index;
+
+import com.github.search.utils.ParallelFileWalker;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * walks a root directory and collects the index entries of all its files and directories.
+ */
+public final class FileIndexBuilder {
+    private FileIndexBuilder(){
+        // no instance.
+    }
+
+    /**
+     * @param root canonical root directory.
+     * @param walkThreads walker threads.
+     * @param maxOpenDirs max directory streams open at the same time.
+     * */
+    public static List<IndexEntry> build(Path root, int walkThreads, int maxOpenDirs) throws IOException {
+        ConcurrentLinkedQueue<IndexEntry> entries = new ConcurrentLinkedQueue<>();
+        entries.add(IndexEntry.of("", readAttributes(root)));
+
+        try(ParallelFileWalker fileWalker = new ParallelFileWalker(walkThreads, maxOpenDirs)){
+            fileWalker.walk(root,
+                    (dir, attrs) -> {
+                        entries.add(IndexEntry.of(relativePath(root, dir), attrs));
+                        return true;
+                    },
+                    (file, attrs) -> {
+                        entries.add(IndexEntry.of(relativePath(root, file), attrs));
+                        return false;
+                    },
+                    true);
+        }
+
+        return new ArrayList<>(entries);
+    }
+
+    /**
+     * relative path with '/' as separator.
+     * */
+    public static String relativePath(Path root, Path path){
+        String relativePath = root.relativize(path).toString();
+        String separator = path.getFileSystem().getSeparator();
+        return "/".equals(separator) ? relativePath : relativePath.replace(separator, "/");
+    }
+
+    static BasicFileAttributes readAttributes(Path path) throws IOException {
+        try{
+            return Files.readAttributes(path, PosixFileAttributes.class);
+        }catch (UnsupportedOperationException uoe){
+            return Files.readAttributes(path, BasicFileAttributes.class);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.github.search.index;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * index files of the root directories, one file per root in the index directory.
+ */
+public final class FileIndexStore {
+    private final Path indexDir;
+    private final int walkThreads;
+    private final int maxOpenDirs;
+    private final List<String> refreshReports = new CopyOnWriteArrayList<>();
+
+    /**
+     * @param indexDir directory of the index files.
+     * @param walkThreads walker threads of an index build.
+     * @param maxOpenDirs max directory streams open at the same time during an index build.
+     * */
+    public FileIndexStore(Path indexDir, int walkThreads, int maxOpenDirs) {
+        this.indexDir = indexDir;
+        this.walkThreads = walkThreads;
+        this.maxOpenDirs = maxOpenDirs;
+    }
+
+    public static Path defaultIndexDir(){
+        return Paths.get(System.getProperty("user.home"), ".fast-search", "index");
+    }
+
+    /**
+     * index file of the root: the root path with the separators replaced, plus its hash.
+     * */
+    public Path indexFile(Path root){
+        String rootStr = root.toString();
+        String name = rootStr.replaceAll("[^A-Za-z0-9._-]", "_");
+        if(name.length() > 100){
+            name = name.substring(name.length() - 100);
+        }
+        return indexDir.resolve(name + "-" + Integer.toHexString(rootStr.hashCode()) + ".idx");
+    }
+
+    /**
+     * content index file of the root, next to its metadata index file.
+     * */
+    public Path contentIndexFile(Path root){
+        String indexFileName = indexFile(root).getFileName().toString();
+        return indexDir.resolve(indexFileName.substring(0, indexFileName.length() - ".idx".length()) + ".cidx");
+    }
+
+    /**
+     * open the index of the canonical root directory, the root is walked when there is no index yet.
+     * */
+    public FileIndex open(Path root, IndexMode mode) throws IOException {
+        Path indexFile = indexFile(root);
+        FileIndex oldIndex = null;
+        if(mode != IndexMode.REBUILD && Files.exists(indexFile)){
+            try{
+                FileIndex fileIndex = FileIndex.load(indexFile);
+                if(fileIndex.root().equals(root)){
+                    oldIndex = fileIndex;
+                }
+            }catch (IOException ioe){
+                // rebuild the unreadable index.
+            }
+        }
+
+        if(oldIndex == null){
+            long createdMillis = System.currentTimeMillis();
+            FileIndex.write(indexFile, root, createdMillis, FileIndexBuilder.build(root, walkThreads, maxOpenDirs));
+            return FileIndex.load(indexFile);
+        }
+
+        if(mode == IndexMode.TRUST){
+            return oldIndex;
+        }
+
+        long createdMillis = System.currentTimeMillis();
+        IndexRefresher refresher = new IndexRefresher();
+        FileIndex.write(indexFile, root, createdMillis, refresher.refresh(oldIndex));
+        refreshReports.add(root + " " + refresher.report());
+        return FileIndex.load(indexFile);
+    }
+
+    /**
+     * write the entries as the index of the root directory.
+     * */
+    public void save(Path root, List<IndexEntry> entries) throws IOException {
+        FileIndex.write(indexFile(root), root, System.currentTimeMillis(), entries);
+    }
+
+    public List<String> refreshReports() {
+        return refreshReports;
+    }
+}
@@ -0,0 +1,85 @@
+package com.github.search.index;
+
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.Set;
+
+/**
+ * metadata of one file or directory of an index, the path is relative to the index root
+ * with '/' as separator.
+ */
+public final class IndexEntry {
+    private final String relativePath;
+    private final boolean directory;
+    private final long size;
+    private final long lastModified;
+    // posix permission bits, -1 when the file system has none.
+    private final int permissions;
+    private final String owner;
+    private final String group;
+
+    public IndexEntry(String relativePath, boolean directory, long size, long lastModified,
+                      int permissions, String owner, String group) {
+        this.relativePath = relativePath;
+        this.directory = directory;
+        this.size = size;
+        this.lastModified = lastModified;
+        this.permissions = permissions;
+        this.owner = owner;
+        this.group = group;
+    }
+
+    public static IndexEntry of(String relativePath, BasicFileAttributes attrs){
+        int permissions = -1;
+        String owner = "";
+        String group = "";
+        if(attrs instanceof PosixFileAttributes){
+            PosixFileAttributes posixAttrs = (PosixFileAttributes) attrs;
+            permissions = toBits(posixAttrs.permissions());
+            owner = posixAttrs.owner().getName();
+            group = posixAttrs.group().getName();
+        }
+        return new IndexEntry(relativePath, attrs.isDirectory(), attrs.size(),
+                attrs.lastModifiedTime().toMillis(), permissions, owner, group);
+    }
+
+    /**
+     * permission set to bits, OWNER_READ is the highest bit like the octal mode.
+     * */
+    public static int toBits(Set<PosixFilePermission> permissions){
+        int bits = 0;
+        for (PosixFilePermission permission : permissions) {
+            bits |= 1 << (8 - permission.ordinal());
+        }
+        return bits;
+    }
+
+    public String relativePath() {
+        return relativePath;
+    }
+
+    public boolean isDirectory() {
+        return directory;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    public long lastModified() {
+        return lastModified;
+    }
+
+    public int permissions() {
+        return permissions;
+    }
+
+    public String owner() {
+        return owner;
+    }
+
+    public String group() {
+        return group;
+    }
+}
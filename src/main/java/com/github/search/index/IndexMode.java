@@ -0,0 +1,15 @@
+package com.github.search.index;
+
+/**
+ * how a search uses the index of a root directory.
+ */
+public enum IndexMode {
+    /** use the existing index as is, build it only when there is none. */
+    TRUST,
+    /** re-list only the directories whose modified time changed since the index was built. */
+    REFRESH,
+    /** walk the whole root and rewrite the index. */
+    REBUILD,
+    /** refresh, then keep the index up to date from file system events. */
+    WATCH
+}
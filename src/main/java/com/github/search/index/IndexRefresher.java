@@ -0,0 +1,174 @@
+package com.github.search.index;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * incremental refresh of an index: every directory is stat-ed, a directory whose modified time
+ * did not change since the index was built is not listed again and its indexed children are stat-ed
+ * by their indexed paths instead. created, deleted and renamed entries change the directory modified
+ * time and are picked up by the listing; files modified in place do not, their stat picks up the new
+ * size and time.
+ */
+public final class IndexRefresher {
+    // directories modified this close to the index creation may have changed after it was built.
+    private static final long RACY_MILLIS = 2000;
+
+    private long statDirs;
+    private long listedDirs;
+    private long reusedDirs;
+    private long statFiles;
+
+    /**
+     * refresh the entries of the old index against the file system.
+     * */
+    public List<IndexEntry> refresh(FileIndex oldIndex){
+        Path root = oldIndex.root();
+        Map<String, IndexEntry> oldDirs = new HashMap<>();
+        Map<String, List<IndexEntry>> oldChildren = new HashMap<>();
+        oldIndex.forEach(entry -> {
+            if(entry.isDirectory()){
+                oldDirs.put(entry.relativePath(), entry);
+            }
+            if(!entry.relativePath().isEmpty()){
+                oldChildren.computeIfAbsent(parentOf(entry.relativePath()), p -> new ArrayList<>()).add(entry);
+            }
+        });
+
+        List<IndexEntry> entries = new ArrayList<>();
+        Deque<DirRef> dirs = new ArrayDeque<>();
+        dirs.push(new DirRef("", null));
+        while (!dirs.isEmpty()){
+            DirRef dirRef = dirs.pop();
+            Path dir = oldIndex.resolve(dirRef.relativePath);
+            BasicFileAttributes attrs;
+            try{
+                attrs = FileIndexBuilder.readAttributes(dir);
+                statDirs++;
+            }catch (IOException ioe){
+                // deleted.
+                continue;
+            }
+            if(!attrs.isDirectory()){
+                continue;
+            }
+            if(dirRef.isLoop(attrs.fileKey())){
+                continue;
+            }
+            DirRef current = new DirRef(dirRef.relativePath, attrs.fileKey(), dirRef.parent);
+            entries.add(IndexEntry.of(dirRef.relativePath, attrs));
+
+            IndexEntry oldDir = oldDirs.get(dirRef.relativePath);
+            long lastModified = attrs.lastModifiedTime().toMillis();
+            if(oldDir != null &&
+               oldDir.lastModified() == lastModified &&
+               lastModified < oldIndex.createdMillis() - RACY_MILLIS){
+                reusedDirs++;
+                for (IndexEntry child : oldChildren.getOrDefault(dirRef.relativePath, Collections.emptyList())) {
+                    if(child.isDirectory()){
+                        dirs.push(new DirRef(child.relativePath(), current));
+                        continue;
+                    }
+                    // an edit in place leaves the directory time alone, the file is stat-ed again.
+                    BasicFileAttributes childAttrs = readChildAttributes(oldIndex.resolve(child.relativePath()));
+                    if(childAttrs == null){
+                        continue;
+                    }
+                    if(childAttrs.isDirectory()){
+                        dirs.push(new DirRef(child.relativePath(), current));
+                    }else{
+                        statFiles++;
+                        entries.add(IndexEntry.of(child.relativePath(), childAttrs));
+                    }
+                }
+                continue;
+            }
+
+            listedDirs++;
+            try(DirectoryStream<Path> stream = Files.newDirectoryStream(dir)){
+                for (Path child : stream) {
+                    String childPath = FileIndexBuilder.relativePath(root, child);
+                    BasicFileAttributes childAttrs = readChildAttributes(child);
+                    if(childAttrs == null){
+                        continue;
+                    }
+                    if(childAttrs.isDirectory()){
+                        dirs.push(new DirRef(childPath, current));
+                    }else{
+                        statFiles++;
+                        entries.add(IndexEntry.of(childPath, childAttrs));
+                    }
+                }
+            }catch (IOException | RuntimeException ex){
+                // unreadable directory is skipped, the same as the walk.
+            }
+        }
+
+        return entries;
+    }
+
+    public String report(){
+        return String.format("index refresh: stat_dirs=%d listed_dirs=%d reused_dirs=%d stat_files=%d",
+                statDirs, listedDirs, reusedDirs, statFiles);
+    }
+
+    static String parentOf(String relativePath){
+        int index = relativePath.lastIndexOf('/');
+        return index < 0 ? "" : relativePath.substring(0, index);
+    }
+
+    private static BasicFileAttributes readChildAttributes(Path child){
+        try{
+            return FileIndexBuilder.readAttributes(child);
+        }catch (IOException ioe){
+            try{
+                return Files.readAttributes(child, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            }catch (IOException ex){
+                return null;
+            }
+        }
+    }
+
+    /**
+     * directory to refresh and its ancestors, used for the symbolic link cycle check.
+     * */
+    private static final class DirRef {
+        private final String relativePath;
+        private final Object fileKey;
+        private final DirRef parent;
+
+        private DirRef(String relativePath, DirRef parent) {
+            this(relativePath, null, parent);
+        }
+
+        private DirRef(String relativePath, Object fileKey, DirRef parent) {
+            this.relativePath = relativePath;
+            this.fileKey = fileKey;
+            this.parent = parent;
+        }
+
+        private boolean isLoop(Object dirKey){
+            if(dirKey == null){
+                return false;
+            }
+            for (DirRef ancestor = parent; ancestor != null; ancestor = ancestor.parent) {
+                if(Objects.equals(dirKey, ancestor.fileKey)){
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
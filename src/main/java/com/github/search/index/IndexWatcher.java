@@ -0,0 +1,207 @@
+package com.github.search.index;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.BiPredicate;
+
+/**
+ * in-memory index of a root directory kept up to date from {@link WatchService} events,
+ * every event costs a stat of the changed entry, the tree is never walked again.
+ * a created directory is walked and watched, a deleted directory removes its whole sub tree,
+ * an overflow re-lists the directory of the overflowed key. a symbolic link to a directory
+ * created while watching is indexed as an entry but not walked.
+ */
+public final class IndexWatcher implements Closeable {
+    private final Path root;
+    private final ConcurrentSkipListMap<String, IndexEntry> entries = new ConcurrentSkipListMap<>();
+    private final WatchService watchService;
+    private final Map<WatchKey, String> watchedDirs = new ConcurrentHashMap<>();
+    private final AtomicBoolean dirty = new AtomicBoolean();
+    private final AtomicLong events = new AtomicLong();
+    private final Thread watchThread;
+
+    public IndexWatcher(FileIndex fileIndex) throws IOException {
+        this.root = fileIndex.root();
+        this.watchService = root.getFileSystem().newWatchService();
+        fileIndex.forEach(entry -> entries.put(entry.relativePath(), entry));
+        for (IndexEntry entry : entries.values()) {
+            if(entry.isDirectory()){
+                register(entry.relativePath());
+            }
+        }
+
+        this.watchThread = new Thread(this::watchLoop, "fast-search-watch-" + root.getFileName());
+        this.watchThread.setDaemon(true);
+        this.watchThread.start();
+    }
+
+    public Path root() {
+        return root;
+    }
+
+    /**
+     * true once after every change of the entries.
+     * */
+    public boolean takeDirty(){
+        return dirty.getAndSet(false);
+    }
+
+    public long events(){
+        return events.get();
+    }
+
+    public List<IndexEntry> snapshot(){
+        return new ArrayList<>(entries.values());
+    }
+
+    /**
+     * the files accepted by the filter, the same as a walk of the root.
+     * */
+    public Collection<String> scan(BiPredicate<Path, BasicFileAttributes> fileFilter){
+        List<String> filterFiles = new LinkedList<>();
+        scan(fileFilter, (path, attrs) -> filterFiles.add(path));
+        return Collections.unmodifiableCollection(filterFiles);
+    }
+
+    /**
+     * pass the files accepted by the filter and their attributes to the sink, in path order.
+     * */
+    public void scan(BiPredicate<Path, BasicFileAttributes> fileFilter, BiConsumer<String, BasicFileAttributes> sink){
+        for (IndexEntry entry : entries.values()) {
+            if(entry.isDirectory()){
+                continue;
+            }
+            Path file = resolve(entry.relativePath());
+            BasicFileAttributes attrs = IndexedFileAttributes.of(entry);
+            if(fileFilter.test(file, attrs)){
+                sink.accept(file.toString(), attrs);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+        watchThread.interrupt();
+    }
+
+    private Path resolve(String relativePath){
+        return relativePath.isEmpty() ? root : root.resolve(relativePath);
+    }
+
+    private static String childOf(String dir, String name){
+        return dir.isEmpty() ? name : dir + "/" + name;
+    }
+
+    private void register(String relativePath){
+        try{
+            WatchKey key = resolve(relativePath).register(watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_DELETE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+            watchedDirs.put(key, relativePath);
+        }catch (IOException | RuntimeException ex){
+            // unreadable directory or watch limit reached, the directory is not watched.
+        }
+    }
+
+    private void watchLoop(){
+        try{
+            for (;;) {
+                WatchKey key = watchService.take();
+                String dir = watchedDirs.get(key);
+                if(dir != null){
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        events.incrementAndGet();
+                        if(event.kind() == StandardWatchEventKinds.OVERFLOW){
+                            relist(dir);
+                        }else{
+                            String child = childOf(dir, event.context().toString());
+                            if(event.kind() == StandardWatchEventKinds.ENTRY_DELETE){
+                                removeTree(child);
+                            }else{
+                                update(child, event.kind() == StandardWatchEventKinds.ENTRY_CREATE);
+                            }
+                        }
+                    }
+                    // the directory modified time changed with its entries.
+                    update(dir, false);
+                    dirty.set(true);
+                }
+                if(!key.reset()){
+                    watchedDirs.remove(key);
+                }
+            }
+        }catch (InterruptedException | ClosedWatchServiceException ex){
+            // closed.
+        }
+    }
+
+    private void update(String relativePath, boolean created){
+        BasicFileAttributes attrs;
+        try{
+            attrs = FileIndexBuilder.readAttributes(resolve(relativePath));
+        }catch (IOException ioe){
+            removeTree(relativePath);
+            return;
+        }
+        entries.put(relativePath, IndexEntry.of(relativePath, attrs));
+        if(created && attrs.isDirectory() && !Files.isSymbolicLink(resolve(relativePath))){
+            // a directory moved into the tree has entries of its own.
+            register(relativePath);
+            relist(relativePath);
+        }
+    }
+
+    private void relist(String dir){
+        Set<String> listed = new HashSet<>();
+        try(DirectoryStream<Path> stream = Files.newDirectoryStream(resolve(dir))){
+            for (Path child : stream) {
+                listed.add(childOf(dir, child.getFileName().toString()));
+            }
+        }catch (IOException | RuntimeException ex){
+            return;
+        }
+
+        for (String child : listed) {
+            update(child, !entries.containsKey(child));
+        }
+
+        Map<String, IndexEntry> subTree = dir.isEmpty() ? entries : entries.subMap(dir + "/", dir + "0");
+        int childStart = dir.isEmpty() ? 0 : dir.length() + 1;
+        for (String child : new ArrayList<>(subTree.keySet())) {
+            boolean directChild = !child.isEmpty() && child.indexOf('/', childStart) < 0;
+            if(directChild && !listed.contains(child)){
+                removeTree(child);
+            }
+        }
+    }
+
+    private void removeTree(String relativePath){
+        entries.remove(relativePath);
+        // '/' + 1 == '0', the sub map holds exactly the paths under relativePath/.
+        entries.subMap(relativePath + "/", relativePath + "0").clear();
+    }
+}
@@ -0,0 +1,115 @@
+package com.github.search.index;
+
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.GroupPrincipal;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * file attributes answered from an index entry, so the filter plan runs on the index
+ * the same way it runs on a walk.
+ */
+class IndexedFileAttributes implements BasicFileAttributes {
+    private final boolean directory;
+    private final long size;
+    private final FileTime lastModifiedTime;
+
+    IndexedFileAttributes(boolean directory, long size, long lastModified) {
+        this.directory = directory;
+        this.size = size;
+        this.lastModifiedTime = FileTime.fromMillis(lastModified);
+    }
+
+    static BasicFileAttributes of(IndexEntry entry){
+        if(entry.permissions() < 0){
+            return new IndexedFileAttributes(entry.isDirectory(), entry.size(), entry.lastModified());
+        }
+        return new Posix(entry.isDirectory(), entry.size(), entry.lastModified(),
+                entry.permissions(), entry.owner(), entry.group());
+    }
+
+    @Override
+    public FileTime lastModifiedTime() {
+        return lastModifiedTime;
+    }
+
+    @Override
+    public FileTime lastAccessTime() {
+        return lastModifiedTime;
+    }
+
+    @Override
+    public FileTime creationTime() {
+        return lastModifiedTime;
+    }
+
+    @Override
+    public boolean isRegularFile() {
+        return !directory;
+    }
+
+    @Override
+    public boolean isDirectory() {
+        return directory;
+    }
+
+    @Override
+    public boolean isSymbolicLink() {
+        return false;
+    }
+
+    @Override
+    public boolean isOther() {
+        return false;
+    }
+
+    @Override
+    public long size() {
+        return size;
+    }
+
+    @Override
+    public Object fileKey() {
+        return null;
+    }
+
+    private static final class Posix extends IndexedFileAttributes implements PosixFileAttributes {
+        private static final PosixFilePermission[] PERMISSIONS = PosixFilePermission.values();
+
+        private final int permissions;
+        private final String owner;
+        private final String group;
+
+        private Posix(boolean directory, long size, long lastModified, int permissions, String owner, String group) {
+            super(directory, size, lastModified);
+            this.permissions = permissions;
+            this.owner = owner;
+            this.group = group;
+        }
+
+        @Override
+        public UserPrincipal owner() {
+            return () -> owner;
+        }
+
+        @Override
+        public GroupPrincipal group() {
+            return () -> group;
+        }
+
+        @Override
+        public Set<PosixFilePermission> permissions() {
+            Set<PosixFilePermission> permissionSet = EnumSet.noneOf(PosixFilePermission.class);
+            for (PosixFilePermission permission : PERMISSIONS) {
+                if((permissions & (1 << (8 - permission.ordinal()))) != 0){
+                    permissionSet.add(permission);
+                }
+            }
+            return permissionSet;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.github.search.index;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * variable-byte encoding of non-negative ints and longs, 7 bits per byte, low bits first.
+ */
+public final class VarInts {
+    private VarInts(){
+        // no instance.
+    }
+
+    public static void writeVarLong(DataOutput out, long value) throws IOException {
+        if(value < 0){
+            throw new IllegalArgumentException("negative value: " + value);
+        }
+        while ((value & ~0x7FL) != 0){
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    public static void writeVarInt(DataOutput out, int value) throws IOException {
+        writeVarLong(out, value);
+    }
+
+    public static long readVarLong(ByteBuffer buffer){
+        long value = 0;
+        int shift = 0;
+        for (;;) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if((b & 0x80) == 0){
+                return value;
+            }
+            shift += 7;
+        }
+    }
+
+    public static int readVarInt(ByteBuffer buffer){
+        return (int) readVarLong(buffer);
+    }
+}
@@ -0,0 +1,124 @@
+package com.github.search.metrics;
+
+/**
+ * minimal json text writer of the metrics reports, one line, no pretty printing.
+ * the caller keeps the object and array calls balanced.
+ */
+public final class JsonWriter {
+    private final StringBuilder sb = new StringBuilder(512);
+    // a value was written at the current level, the next one needs a comma.
+    private boolean needsComma;
+
+    public JsonWriter beginObject(){
+        separate();
+        sb.append('{');
+        needsComma = false;
+        return this;
+    }
+
+    public JsonWriter endObject(){
+        sb.append('}');
+        needsComma = true;
+        return this;
+    }
+
+    public JsonWriter beginArray(){
+        separate();
+        sb.append('[');
+        needsComma = false;
+        return this;
+    }
+
+    public JsonWriter endArray(){
+        sb.append(']');
+        needsComma = true;
+        return this;
+    }
+
+    public JsonWriter name(String name){
+        separate();
+        appendString(name);
+        sb.append(':');
+        needsComma = false;
+        return this;
+    }
+
+    public JsonWriter value(long value){
+        separate();
+        sb.append(value);
+        needsComma = true;
+        return this;
+    }
+
+    public JsonWriter value(double value){
+        separate();
+        if(Double.isNaN(value) || Double.isInfinite(value)){
+            sb.append("null");
+        }else{
+            sb.append(value);
+        }
+        needsComma = true;
+        return this;
+    }
+
+    public JsonWriter value(boolean value){
+        separate();
+        sb.append(value);
+        needsComma = true;
+        return this;
+    }
+
+    public JsonWriter value(String value){
+        separate();
+        if(value == null){
+            sb.append("null");
+        }else{
+            appendString(value);
+        }
+        needsComma = true;
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return sb.toString();
+    }
+
+    private void separate(){
+        if(needsComma){
+            sb.append(',');
+            needsComma = false;
+        }
+    }
+
+    private void appendString(String value){
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c){
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if(c < 0x20){
+                        sb.append(String.format("\\u%04x", (int) c));
+                    }else{
+                        sb.append(c);
+                    }
+            }
+        }
+        sb.append('"');
+    }
+}
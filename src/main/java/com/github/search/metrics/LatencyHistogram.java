@@ -0,0 +1,117 @@
+package com.github.search.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * log-linear latency histogram in the style of HdrHistogram: the values below 32 have a bucket each,
+ * every power of two above is split in 32 buckets, so a percentile is off by less than 1/32 of the value.
+ * fixed size (1888 buckets), lock free and safe for concurrent recording.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = SUB_BUCKETS + (63 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator min = new LongAccumulator(Math::min, Long.MAX_VALUE);
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * @param value the latency in nanoseconds, negative values count as 0.
+     * */
+    public void record(long value){
+        long recorded = Math.max(0, value);
+        counts.incrementAndGet(bucket(recorded));
+        count.increment();
+        sum.add(recorded);
+        min.accumulate(recorded);
+        max.accumulate(recorded);
+    }
+
+    public long count(){
+        return count.sum();
+    }
+
+    public long sum(){
+        return sum.sum();
+    }
+
+    public long min(){
+        return count() == 0 ? 0 : min.get();
+    }
+
+    public long max(){
+        return max.get();
+    }
+
+    public double mean(){
+        long recorded = count();
+        return recorded == 0 ? 0 : (double) sum() / recorded;
+    }
+
+    /**
+     * the value at the percentile, the highest value of its bucket capped by the max.
+     * @param percentile from 0 to 100.
+     * */
+    public long percentile(double percentile){
+        long total = count();
+        if(total == 0){
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if(seen >= rank){
+                return Math.min(highestValue(i), max());
+            }
+        }
+        return max();
+    }
+
+    /**
+     * count, min, mean, p50, p90, p99, p99.9 and max.
+     * */
+    public void writeJson(JsonWriter json){
+        json.beginObject()
+                .name("count").value(count())
+                .name("min").value(min())
+                .name("mean").value(Math.round(mean()))
+                .name("p50").value(percentile(50))
+                .name("p90").value(percentile(90))
+                .name("p99").value(percentile(99))
+                .name("p999").value(percentile(99.9))
+                .name("max").value(max())
+                .endObject();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d min=%d mean=%d p50=%d p90=%d p99=%d p999=%d max=%d",
+                count(), min(), Math.round(mean()), percentile(50), percentile(90), percentile(99),
+                percentile(99.9), max());
+    }
+
+    private static int bucket(long value){
+        if(value < SUB_BUCKETS){
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) - SUB_BUCKETS;
+        return SUB_BUCKETS + shift * SUB_BUCKETS + subBucket;
+    }
+
+    private static long highestValue(int bucket){
+        if(bucket < SUB_BUCKETS){
+            return bucket;
+        }
+        int shift = (bucket - SUB_BUCKETS) / SUB_BUCKETS;
+        long subBucket = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+        return ((SUB_BUCKETS + subBucket + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,269 @@
+package com.github.search.metrics;
+
+import java.io.Closeable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import com.github.search.content.ContentSearchPipeline;
+import com.github.search.content.ContentSniffer;
+import com.github.search.filter.FilterNode;
+import com.github.search.filter.FilterPlan;
+import com.github.search.index.ContentIndexSearch;
+import com.github.search.utils.WalkStats;
+
+/**
+ * the instrumentation of one search: stage wall times, the walk counters, the evaluations of every filter,
+ * the content bytes, the content queue and pool, and the queue wait and search latency of the content files.
+ * every time is in nanoseconds. the report is a json line ({@link #toJson()}) or text lines ({@link #report()}),
+ * a long search can dump it every interval while it runs.
+ */
+public final class SearchMetrics implements Closeable {
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+
+    private final long startNanos = System.nanoTime();
+    private final WalkStats walkStats = new WalkStats();
+    private final AtomicLong listedFiles = new AtomicLong();
+    private final LongAdder contentBytes = new LongAdder();
+    private final LongAdder poolRejected = new LongAdder();
+    private final LongAdder[] sniffedFiles = newAdders(ContentSniffer.Kind.values().length);
+    private final Map<String, Long> stageNanos = new LinkedHashMap<>();
+    private volatile FilterPlan filterPlan;
+    private volatile ContentSearchPipeline contentPipeline;
+    private volatile ThreadPoolExecutor contentPool;
+    private volatile ContentIndexSearch contentIndexSearch;
+    private ScheduledExecutorService dumper;
+
+    /**
+     * counters of the directory walks, shared by the walks of the search.
+     * */
+    public WalkStats walkStats() {
+        return walkStats;
+    }
+
+    /**
+     * counts a listed file, returns its ordinal.
+     * */
+    public long fileListed(){
+        return listedFiles.incrementAndGet();
+    }
+
+    /**
+     * a file searched as a whole, its size is read by the content search.
+     * */
+    public void contentBytes(long bytes){
+        contentBytes.add(bytes);
+    }
+
+    /**
+     * a content file classified by the sniffer.
+     * */
+    public void fileSniffed(ContentSniffer.Kind kind){
+        sniffedFiles[kind.ordinal()].increment();
+    }
+
+    /**
+     * a task rejected by the full content pool.
+     * */
+    public void poolRejected(){
+        poolRejected.increment();
+    }
+
+    /**
+     * adds the wall time of a stage, the stages are reported in the order they first ended.
+     * */
+    public synchronized void stage(String name, long nanos){
+        stageNanos.merge(name, nanos, Long::sum);
+    }
+
+    public void setFilterPlan(FilterPlan filterPlan) {
+        this.filterPlan = filterPlan;
+    }
+
+    public void setContentPipeline(ContentSearchPipeline contentPipeline, ThreadPoolExecutor contentPool) {
+        this.contentPipeline = contentPipeline;
+        this.contentPool = contentPool;
+    }
+
+    public void setContentIndexSearch(ContentIndexSearch contentIndexSearch) {
+        this.contentIndexSearch = contentIndexSearch;
+    }
+
+    /**
+     * pass the report to the output every interval until {@link #close()}, from a daemon thread.
+     * @param json json lines instead of text.
+     * */
+    public synchronized void dumpEvery(int seconds, Consumer<String> output, boolean json){
+        if(seconds <= 0){
+            throw new IllegalArgumentException("seconds must be positive: " + seconds);
+        }
+        if(dumper != null){
+            return;
+        }
+        dumper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "fast-search-metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        dumper.scheduleWithFixedDelay(() -> output.accept(json ? toJson() : report()), seconds, seconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * stops the periodic dump.
+     * */
+    @Override
+    public synchronized void close(){
+        if(dumper != null){
+            dumper.shutdownNow();
+            dumper = null;
+        }
+    }
+
+    public String toJson(){
+        JsonWriter json = new JsonWriter().beginObject();
+        json.name("run_nanos").value(System.nanoTime() - startNanos);
+        json.name("stages").beginObject();
+        for (Map.Entry<String, Long> stage : stages().entrySet()) {
+            json.name(stage.getKey()).value(stage.getValue());
+        }
+        json.endObject();
+        json.name("listed_files").value(listedFiles.get());
+
+        json.name("walk").beginObject()
+                .name("dirs_listed").value(walkStats.dirsListed())
+                .name("files_visited").value(walkStats.filesVisited())
+                .name("stat_calls").value(walkStats.statCalls())
+                .name("duplicates_skipped").value(walkStats.duplicatesSkipped())
+                .name("dirs_pruned").value(walkStats.dirsPruned())
+                .name("entries_ignored").value(walkStats.entriesIgnored())
+                .name("walk_nanos").value(walkStats.walkNanos())
+                .endObject();
+
+        FilterPlan plan = filterPlan;
+        if(plan != null){
+            json.name("filters").beginArray();
+            writeFilter(json, plan.root(), 0);
+            json.endArray();
+        }
+
+        ContentSearchPipeline pipeline = contentPipeline;
+        if(pipeline != null){
+            ContentIndexSearch indexSearch = contentIndexSearch;
+            json.name("content").beginObject()
+                    .name("executor").value(pipeline.perFileTasks() ? "per_file_tasks" : "workers")
+                    .name("submitted_files").value(pipeline.submittedFiles())
+                    .name("searched_files").value(pipeline.searchedFiles())
+                    .name("matched_files").value(pipeline.matchedFiles())
+                    .name("failed_files").value(pipeline.failedFiles())
+                    .name("cancelled_files").value(pipeline.cancelledFiles())
+                    .name("bytes_read").value(contentBytes.sum() + (indexSearch == null ? 0 : indexSearch.bytesRead()))
+                    .name("index_bytes_read").value(indexSearch == null ? 0 : indexSearch.bytesRead())
+                    .name("workers").value(pipeline.workers())
+                    .name("queue_capacity").value(pipeline.queueCapacity())
+                    .name("queue_depth").value(pipeline.queueDepth())
+                    .name("max_queue_depth").value(pipeline.maxQueueDepth())
+                    .name("reorder_window").value(pipeline.reorderWindow())
+                    .name("devices").value(pipeline.devices())
+                    .name("device_reads").value(pipeline.deviceReads())
+                    .name("producer_blocked").value(pipeline.producerBlocked())
+                    .name("producer_blocked_nanos").value(pipeline.producerBlockedNanos());
+            json.name("sniffed_files").beginObject();
+            for (ContentSniffer.Kind kind : ContentSniffer.Kind.values()) {
+                json.name(kind.name().toLowerCase()).value(sniffedFiles[kind.ordinal()].sum());
+            }
+            json.endObject();
+            json.name("queue_wait_nanos");
+            pipeline.queueWaitNanos().writeJson(json);
+            json.name("search_nanos");
+            pipeline.searchNanos().writeJson(json);
+            json.endObject();
+        }
+
+        ThreadPoolExecutor pool = contentPool;
+        if(pool != null){
+            json.name("pool").beginObject()
+                    .name("threads").value(pool.getPoolSize())
+                    .name("active_threads").value(pool.getActiveCount())
+                    .name("largest_threads").value(pool.getLargestPoolSize())
+                    .name("queue_depth").value(pool.getQueue().size())
+                    .name("rejected").value(poolRejected.sum())
+                    .endObject();
+        }
+        return json.endObject().toString();
+    }
+
+    public String report(){
+        StringBuilder sb = new StringBuilder("search metrics: run_nanos=").append(System.nanoTime() - startNanos);
+        for (Map.Entry<String, Long> stage : stages().entrySet()) {
+            sb.append(' ').append(stage.getKey()).append("_nanos=").append(stage.getValue());
+        }
+        sb.append(" listed_files=").append(listedFiles.get());
+        sb.append(LINE_SEPARATOR).append(String.format(
+                "walk: dirs_listed=%d files_visited=%d stat_calls=%d duplicates_skipped=%d dirs_pruned=%d entries_ignored=%d walk_nanos=%d",
+                walkStats.dirsListed(), walkStats.filesVisited(), walkStats.statCalls(),
+                walkStats.duplicatesSkipped(), walkStats.dirsPruned(), walkStats.entriesIgnored(), walkStats.walkNanos()));
+
+        FilterPlan plan = filterPlan;
+        if(plan != null){
+            sb.append(LINE_SEPARATOR).append(plan.report());
+        }
+
+        ContentSearchPipeline pipeline = contentPipeline;
+        if(pipeline != null){
+            ContentIndexSearch indexSearch = contentIndexSearch;
+            long indexBytes = indexSearch == null ? 0 : indexSearch.bytesRead();
+            sb.append(LINE_SEPARATOR).append(String.format(
+                    "content: executor=%s submitted_files=%d searched_files=%d matched_files=%d failed_files=%d cancelled_files=%d bytes_read=%d " +
+                            "index_bytes_read=%d queue_depth=%d max_queue_depth=%d devices=%d device_reads=%d producer_blocked=%d producer_blocked_nanos=%d",
+                    pipeline.perFileTasks() ? "per_file_tasks" : "workers",
+                    pipeline.submittedFiles(), pipeline.searchedFiles(), pipeline.matchedFiles(), pipeline.failedFiles(), pipeline.cancelledFiles(),
+                    contentBytes.sum() + indexBytes, indexBytes, pipeline.queueDepth(), pipeline.maxQueueDepth(),
+                    pipeline.devices(), pipeline.deviceReads(), pipeline.producerBlocked(), pipeline.producerBlockedNanos()));
+            sb.append(LINE_SEPARATOR).append("content sniffed files:");
+            for (ContentSniffer.Kind kind : ContentSniffer.Kind.values()) {
+                sb.append(' ').append(kind.name().toLowerCase()).append('=').append(sniffedFiles[kind.ordinal()].sum());
+            }
+            sb.append(LINE_SEPARATOR).append("content queue wait nanos: ").append(pipeline.queueWaitNanos());
+            sb.append(LINE_SEPARATOR).append("content search nanos: ").append(pipeline.searchNanos());
+        }
+
+        ThreadPoolExecutor pool = contentPool;
+        if(pool != null){
+            sb.append(LINE_SEPARATOR).append(String.format(
+                    "pool: threads=%d active_threads=%d largest_threads=%d queue_depth=%d rejected=%d",
+                    pool.getPoolSize(), pool.getActiveCount(), pool.getLargestPoolSize(), pool.getQueue().size(),
+                    poolRejected.sum()));
+        }
+        return sb.toString();
+    }
+
+    private static LongAdder[] newAdders(int count){
+        LongAdder[] adders = new LongAdder[count];
+        for (int i = 0; i < count; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    private synchronized Map<String, Long> stages(){
+        return new LinkedHashMap<>(stageNanos);
+    }
+
+    private static void writeFilter(JsonWriter json, FilterNode node, int depth){
+        json.beginObject()
+                .name("name").value(node.name())
+                .name("depth").value(depth)
+                .name("cost").value(node.cost().name())
+                .name("evaluated").value(node.evaluated())
+                .name("passed").value(node.passed())
+                .endObject();
+        for (FilterNode child : node.children()) {
+            writeFilter(json, child, depth + 1);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.github.search.output;
+
+import java.io.File;
+
+/**
+ * the results of the content search of one file, encoded as they are found and written to the
+ * {@link ResultWriter} once the file is searched. the file that is the next one of the output order is
+ * {@link #stream() streamed}: its results go to the writer every 64 KiB while it is searched, so a file with
+ * millions of matches is not held in memory; the results of a larger one can then be split by the records
+ * of the walk. the search of a file that is not streamed passes its {@link Gate} once its results reach
+ * 1 MiB, which may wait for its turn. used by one thread at a time, {@link #stream()} excepted.
+ */
+public final class FileResults {
+    // the buffered results of a streamed file written at once.
+    private static final int STREAM_BYTES = 64 * 1024;
+    // the buffered results of a file that is not streamed that pass the gate.
+    private static final int GATE_BYTES = 1024 * 1024;
+
+    /**
+     * back pressure of the results buffered for a later turn of the output.
+     * */
+    public interface Gate {
+        /**
+         * called by the search of the file on every result once they reach 1 MiB, returns when the search goes on.
+         * */
+        void await(FileResults results);
+    }
+
+    private final ResultWriter writer;
+    private final Gate gate;
+    private final RecordEncoder encoder;
+    private final File file;
+    private final long size;
+    private final long lastModified;
+    private final RecordBuffer buffer = new RecordBuffer();
+    private volatile boolean streamed;
+
+    FileResults(ResultWriter writer, Gate gate, RecordEncoder encoder, File file, long size, long lastModified) {
+        this.writer = writer;
+        this.gate = gate;
+        this.encoder = encoder;
+        this.file = file;
+        this.size = size;
+        this.lastModified = lastModified;
+    }
+
+    public File file() {
+        return file;
+    }
+
+    /**
+     * a matched line of the file.
+     * @param source the path named by the match, archive!/entry for a zip entry.
+     * @param text the line, null for a binary file.
+     * @param word the matched word or regex match, null when unknown.
+     * @param byteOffset offset of the match in the file, -1 when unknown.
+     * */
+    public void match(String source, long lineNum, String text, String word, long byteOffset){
+        encoder.match(buffer, source, size, lastModified, lineNum, byteOffset, word, text);
+        written();
+    }
+
+    /**
+     * the file has matches.
+     * @param filesWithMatches the file is printed instead of its lines.
+     * */
+    public void matchFile(boolean filesWithMatches){
+        encoder.matchFile(buffer, file.getPath(), file.getName(), size, lastModified, filesWithMatches);
+        written();
+    }
+
+    /**
+     * the results of a part of the file searched on another thread, a zip entry for instance, see {@link #append(FileResults)}.
+     * */
+    public FileResults part(){
+        return new FileResults(null, null, encoder, file, size, lastModified);
+    }
+
+    /**
+     * appends the results of a part.
+     * */
+    public void append(FileResults part){
+        buffer.append(part.buffer);
+        written();
+    }
+
+    /**
+     * the file is the next one of the output: its results are written while it is searched from now on,
+     * the rest once it is searched. called by another thread than the search.
+     * */
+    public void stream(){
+        streamed = true;
+    }
+
+    public boolean streamed() {
+        return streamed;
+    }
+
+    public boolean isEmpty(){
+        return buffer.size() == 0;
+    }
+
+    RecordBuffer buffer() {
+        return buffer;
+    }
+
+    private void written(){
+        if(writer == null){
+            return;
+        }
+        if(!streamed && gate != null && buffer.size() >= GATE_BYTES){
+            gate.await(this);
+        }
+        if(streamed && buffer.size() >= STREAM_BYTES){
+            writer.write(this);
+            buffer.reset();
+        }
+    }
+}
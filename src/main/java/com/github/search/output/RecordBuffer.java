@@ -0,0 +1,213 @@
+package com.github.search.output;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * growable byte array the records are encoded into, strings are written as utf-8 char by char and numbers
+ * digit by digit, so a record costs no intermediate string. used by one thread at a time.
+ */
+final class RecordBuffer {
+    private static final byte[] EMPTY = new byte[0];
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    private byte[] bytes = EMPTY;
+    private int size;
+
+    int size(){
+        return size;
+    }
+
+    void reset(){
+        size = 0;
+    }
+
+    void writeByte(int b){
+        ensure(1);
+        bytes[size++] = (byte) b;
+    }
+
+    void writeBytes(byte[] b){
+        ensure(b.length);
+        System.arraycopy(b, 0, bytes, size, b.length);
+        size += b.length;
+    }
+
+    void append(RecordBuffer other){
+        ensure(other.size);
+        System.arraycopy(other.bytes, 0, bytes, size, other.size);
+        size += other.size;
+    }
+
+    void writeInt(int v){
+        ensure(4);
+        setInt(size, v);
+        size += 4;
+    }
+
+    void setInt(int at, int v){
+        bytes[at] = (byte) (v >>> 24);
+        bytes[at + 1] = (byte) (v >>> 16);
+        bytes[at + 2] = (byte) (v >>> 8);
+        bytes[at + 3] = (byte) v;
+    }
+
+    void writeLong(long v){
+        writeInt((int) (v >>> 32));
+        writeInt((int) v);
+    }
+
+    /**
+     * the ascii decimal digits of the value.
+     * */
+    void writeDecimal(long v){
+        if(v == Long.MIN_VALUE){
+            writeAscii(Long.toString(v));
+            return;
+        }
+        if(v < 0){
+            writeByte('-');
+            v = -v;
+        }
+        int digits = 1;
+        for (long rest = v / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+        ensure(digits);
+        for (int i = size + digits - 1; i >= size; i--) {
+            bytes[i] = (byte) ('0' + v % 10);
+            v /= 10;
+        }
+        size += digits;
+    }
+
+    void writeAscii(String s){
+        int length = s.length();
+        ensure(length);
+        for (int i = 0; i < length; i++) {
+            bytes[size++] = (byte) s.charAt(i);
+        }
+    }
+
+    void writeUtf8(CharSequence s){
+        int length = s.length();
+        ensure(length);
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            if(c < 0x80){
+                ensure(1);
+                bytes[size++] = (byte) c;
+            }else{
+                i = writeUtf8Char(s, i);
+            }
+        }
+    }
+
+    /**
+     * the string in the charset, without a copy for utf-8.
+     * */
+    void writeText(String s, Charset charset){
+        if(StandardCharsets.UTF_8.equals(charset)){
+            writeUtf8(s);
+        }else{
+            writeBytes(s.getBytes(charset));
+        }
+    }
+
+    /**
+     * an int32 utf-8 byte length, -1 for null, and the bytes.
+     * */
+    void writeLengthPrefixed(String s){
+        if(s == null){
+            writeInt(-1);
+            return;
+        }
+        int lengthAt = size;
+        writeInt(0);
+        writeUtf8(s);
+        setInt(lengthAt, size - lengthAt - 4);
+    }
+
+    /**
+     * a quoted and escaped json string, null without quotes.
+     * */
+    void writeJsonString(CharSequence s){
+        if(s == null){
+            writeAscii("null");
+            return;
+        }
+        writeByte('"');
+        int length = s.length();
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            if(c >= 0x80){
+                i = writeUtf8Char(s, i);
+            }else if(c == '"' || c == '\\'){
+                writeByte('\\');
+                writeByte(c);
+            }else if(c < 0x20){
+                switch (c){
+                    case '\n':
+                        writeAscii("\\n");
+                        break;
+                    case '\r':
+                        writeAscii("\\r");
+                        break;
+                    case '\t':
+                        writeAscii("\\t");
+                        break;
+                    default:
+                        writeAscii("\\u00");
+                        writeByte(HEX[c >> 4]);
+                        writeByte(HEX[c & 0xf]);
+                }
+            }else{
+                writeByte(c);
+            }
+        }
+        writeByte('"');
+    }
+
+    void writeTo(OutputStream out) throws IOException {
+        out.write(bytes, 0, size);
+    }
+
+    /**
+     * the non ascii char at i, a surrogate pair takes both chars, returns the index of the last char written.
+     * */
+    private int writeUtf8Char(CharSequence s, int i){
+        char c = s.charAt(i);
+        ensure(4);
+        if(c < 0x800){
+            bytes[size++] = (byte) (0xc0 | c >> 6);
+            bytes[size++] = (byte) (0x80 | c & 0x3f);
+            return i;
+        }
+        if(Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))){
+            int codePoint = Character.toCodePoint(c, s.charAt(i + 1));
+            bytes[size++] = (byte) (0xf0 | codePoint >> 18);
+            bytes[size++] = (byte) (0x80 | codePoint >> 12 & 0x3f);
+            bytes[size++] = (byte) (0x80 | codePoint >> 6 & 0x3f);
+            bytes[size++] = (byte) (0x80 | codePoint & 0x3f);
+            return i + 1;
+        }
+        if(Character.isSurrogate(c)){
+            // a lone surrogate is not encodable.
+            bytes[size++] = '?';
+            return i;
+        }
+        bytes[size++] = (byte) (0xe0 | c >> 12);
+        bytes[size++] = (byte) (0x80 | c >> 6 & 0x3f);
+        bytes[size++] = (byte) (0x80 | c & 0x3f);
+        return i;
+    }
+
+    private void ensure(int more){
+        if(size + more > bytes.length){
+            bytes = Arrays.copyOf(bytes, Math.max(Math.max(256, bytes.length * 2), size + more));
+        }
+    }
+}
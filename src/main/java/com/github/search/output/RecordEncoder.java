@@ -0,0 +1,212 @@
+package com.github.search.output;
+
+import java.nio.charset.Charset;
+
+/**
+ * writes the records of one {@link ResultFormat} into a {@link RecordBuffer}, shared by the threads.
+ */
+abstract class RecordEncoder {
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+
+    private static final int FILE = 1;
+    private static final int MATCH = 2;
+    private static final int MATCH_FILE = 3;
+
+    /**
+     * @param textCharset charset of the text format, the structured formats are utf-8.
+     * */
+    static RecordEncoder of(ResultFormat format, Charset textCharset){
+        switch (format){
+            case JSON:
+                return new JsonEncoder();
+            case NUL:
+                return new NulEncoder();
+            case BINARY:
+                return new BinaryEncoder();
+            default:
+                return new TextEncoder(textCharset);
+        }
+    }
+
+    /**
+     * a free text line, only the text format has one.
+     * */
+    void line(RecordBuffer buffer, String line){
+        // no text in the structured formats.
+    }
+
+    /**
+     * a file listed by the walk.
+     * @param ordinal the count of the files listed so far.
+     * */
+    abstract void file(RecordBuffer buffer, long ordinal, String path, long size, long mtime);
+
+    /**
+     * a matched line, text is null for a binary file.
+     * @param byteOffset -1 when unknown.
+     * */
+    abstract void match(RecordBuffer buffer, String path, long size, long mtime, long line, long byteOffset, String word, String text);
+
+    /**
+     * the end of the matches of a file with matches.
+     * @param fileName the name of the file, the text format prints it.
+     * @param filesWithMatches the file is printed instead of its lines.
+     * */
+    abstract void matchFile(RecordBuffer buffer, String path, String fileName, long size, long mtime, boolean filesWithMatches);
+
+    private static final class TextEncoder extends RecordEncoder {
+        private final Charset charset;
+
+        private TextEncoder(Charset charset) {
+            this.charset = charset;
+        }
+
+        @Override
+        void line(RecordBuffer buffer, String line) {
+            buffer.writeText(line, charset);
+            buffer.writeText(LINE_SEPARATOR, charset);
+        }
+
+        @Override
+        void file(RecordBuffer buffer, long ordinal, String path, long size, long mtime) {
+            buffer.writeDecimal(ordinal);
+            buffer.writeAscii(" => ");
+            line(buffer, path);
+        }
+
+        @Override
+        void match(RecordBuffer buffer, String path, long size, long mtime, long line, long byteOffset, String word, String text) {
+            buffer.writeAscii("match:");
+            buffer.writeText(path, charset);
+            buffer.writeByte(',');
+            buffer.writeDecimal(line);
+            buffer.writeAscii(",[ ");
+            if(text != null){
+                buffer.writeText(text, charset);
+            }else if(byteOffset >= 0){
+                buffer.writeAscii("binary, byte offset ");
+                buffer.writeDecimal(byteOffset);
+            }else{
+                buffer.writeAscii("binary");
+            }
+            line(buffer, " ]");
+        }
+
+        @Override
+        void matchFile(RecordBuffer buffer, String path, String fileName, long size, long mtime, boolean filesWithMatches) {
+            if(filesWithMatches){
+                buffer.writeAscii("match_file:");
+                line(buffer, path);
+            }else{
+                buffer.writeAscii("match,thread:");
+                buffer.writeDecimal(Thread.currentThread().getId());
+                buffer.writeAscii(",file:");
+                line(buffer, fileName);
+            }
+        }
+    }
+
+    private static final class JsonEncoder extends RecordEncoder {
+        @Override
+        void file(RecordBuffer buffer, long ordinal, String path, long size, long mtime) {
+            begin(buffer, "file", path, size, mtime);
+            buffer.writeAscii("}\n");
+        }
+
+        @Override
+        void match(RecordBuffer buffer, String path, long size, long mtime, long line, long byteOffset, String word, String text) {
+            begin(buffer, "match", path, size, mtime);
+            buffer.writeAscii(",\"line\":");
+            buffer.writeDecimal(line);
+            buffer.writeAscii(",\"byte_offset\":");
+            if(byteOffset >= 0){
+                buffer.writeDecimal(byteOffset);
+            }else{
+                buffer.writeAscii("null");
+            }
+            buffer.writeAscii(",\"word\":");
+            buffer.writeJsonString(word);
+            buffer.writeAscii(",\"text\":");
+            buffer.writeJsonString(text);
+            buffer.writeAscii("}\n");
+        }
+
+        @Override
+        void matchFile(RecordBuffer buffer, String path, String fileName, long size, long mtime, boolean filesWithMatches) {
+            if(filesWithMatches){
+                begin(buffer, "match_file", path, size, mtime);
+                buffer.writeAscii("}\n");
+            }
+        }
+
+        private static void begin(RecordBuffer buffer, String type, String path, long size, long mtime){
+            buffer.writeAscii("{\"type\":\"");
+            buffer.writeAscii(type);
+            buffer.writeAscii("\",\"path\":");
+            buffer.writeJsonString(path);
+            buffer.writeAscii(",\"size\":");
+            buffer.writeDecimal(size);
+            buffer.writeAscii(",\"mtime\":");
+            buffer.writeDecimal(mtime);
+        }
+    }
+
+    private static final class NulEncoder extends RecordEncoder {
+        @Override
+        void file(RecordBuffer buffer, long ordinal, String path, long size, long mtime) {
+            buffer.writeUtf8(path);
+            buffer.writeByte(0);
+        }
+
+        @Override
+        void match(RecordBuffer buffer, String path, long size, long mtime, long line, long byteOffset, String word, String text) {
+            // only the file is printed.
+        }
+
+        @Override
+        void matchFile(RecordBuffer buffer, String path, String fileName, long size, long mtime, boolean filesWithMatches) {
+            buffer.writeUtf8(path);
+            buffer.writeByte(0);
+        }
+    }
+
+    private static final class BinaryEncoder extends RecordEncoder {
+        @Override
+        void file(RecordBuffer buffer, long ordinal, String path, long size, long mtime) {
+            int lengthAt = begin(buffer, FILE, path, size, mtime);
+            end(buffer, lengthAt);
+        }
+
+        @Override
+        void match(RecordBuffer buffer, String path, long size, long mtime, long line, long byteOffset, String word, String text) {
+            int lengthAt = begin(buffer, MATCH, path, size, mtime);
+            buffer.writeLong(line);
+            buffer.writeLong(byteOffset);
+            buffer.writeLengthPrefixed(word);
+            buffer.writeLengthPrefixed(text);
+            end(buffer, lengthAt);
+        }
+
+        @Override
+        void matchFile(RecordBuffer buffer, String path, String fileName, long size, long mtime, boolean filesWithMatches) {
+            if(filesWithMatches){
+                int lengthAt = begin(buffer, MATCH_FILE, path, size, mtime);
+                end(buffer, lengthAt);
+            }
+        }
+
+        private static int begin(RecordBuffer buffer, int type, String path, long size, long mtime){
+            int lengthAt = buffer.size();
+            buffer.writeInt(0);
+            buffer.writeByte(type);
+            buffer.writeLong(size);
+            buffer.writeLong(mtime);
+            buffer.writeLengthPrefixed(path);
+            return lengthAt;
+        }
+
+        private static void end(RecordBuffer buffer, int lengthAt){
+            buffer.setInt(lengthAt, buffer.size() - lengthAt - 4);
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.github.search.output;
+
+/**
+ * encoding of the search results on the output.
+ * every record of the structured formats carries the path, size and modified time (epoch millis) of its file,
+ * a content match also carries the line number, the byte offset of the match (-1 when the line search does
+ * not know it), the matched word or regex match and the line text.
+ */
+public enum ResultFormat {
+    /** the lines for people: {@code n => path}, {@code match:path,line,[ text ]} and {@code match_file:path}. */
+    TEXT,
+    /**
+     * one json object per line: {@code {"type":"file"|"match"|"match_file","path":..,"size":..,"mtime":..}},
+     * a match adds {@code "line","byte_offset","word","text"}, the unknown values are null.
+     */
+    JSON,
+    /** the paths of the listed files and of the files with matches, each followed by a nul byte. */
+    NUL,
+    /**
+     * length-prefixed big endian records: int32 length of the rest, byte type (1 file, 2 match, 3 match_file),
+     * int64 size, int64 mtime, string path, and for a match int64 line, int64 byte offset, string word,
+     * string text. a string is an int32 byte length, -1 for null, and the utf-8 bytes.
+     */
+    BINARY
+}
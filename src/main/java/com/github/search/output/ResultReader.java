@@ -0,0 +1,78 @@
+package com.github.search.output;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * reads the records of the {@link ResultFormat#BINARY} format, the output of ---output binary
+ * or of a search streamed in process. used by one thread.
+ */
+public final class ResultReader implements Closeable {
+    private final DataInputStream in;
+    private byte[] bytes = new byte[256];
+
+    public ResultReader(InputStream in) {
+        this.in = new DataInputStream(new BufferedInputStream(in, 64 * 1024));
+    }
+
+    /**
+     * the next record, null at the end of the stream.
+     * @throws EOFException the stream ends inside a record.
+     * */
+    public ResultRecord read() throws IOException {
+        int first = in.read();
+        if(first == -1){
+            return null;
+        }
+        // the record length, the fields tell their own lengths.
+        in.readFully(bytes, 0, 3);
+        int typeCode = in.readUnsignedByte();
+        ResultRecord.Type type;
+        switch (typeCode){
+            case 1:
+                type = ResultRecord.Type.FILE;
+                break;
+            case 2:
+                type = ResultRecord.Type.MATCH;
+                break;
+            case 3:
+                type = ResultRecord.Type.MATCH_FILE;
+                break;
+            default:
+                throw new IOException("unknown record type: " + typeCode);
+        }
+        long size = in.readLong();
+        long lastModified = in.readLong();
+        String path = readString();
+        if(type != ResultRecord.Type.MATCH){
+            return new ResultRecord(type, path, size, lastModified, -1, -1, null, null);
+        }
+        long line = in.readLong();
+        long byteOffset = in.readLong();
+        String word = readString();
+        String text = readString();
+        return new ResultRecord(type, path, size, lastModified, line, byteOffset, word, text);
+    }
+
+    private String readString() throws IOException {
+        int length = in.readInt();
+        if(length < 0){
+            return null;
+        }
+        if(bytes.length < length){
+            bytes = new byte[Math.max(length, bytes.length * 2)];
+        }
+        in.readFully(bytes, 0, length);
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,96 @@
+package com.github.search.output;
+
+/**
+ * one result of a search decoded from the {@link ResultFormat#BINARY} format, see {@link ResultReader}.
+ */
+public final class ResultRecord {
+    private final Type type;
+    private final String path;
+    private final long size;
+    private final long lastModified;
+    private final long line;
+    private final long byteOffset;
+    private final String word;
+    private final String text;
+
+    /**
+     * kinds of records.
+     * */
+    public enum Type {
+        FILE,
+        MATCH,
+        MATCH_FILE
+    }
+
+    public ResultRecord(Type type, String path, long size, long lastModified, long line, long byteOffset, String word, String text) {
+        this.type = type;
+        this.path = path;
+        this.size = size;
+        this.lastModified = lastModified;
+        this.line = line;
+        this.byteOffset = byteOffset;
+        this.word = word;
+        this.text = text;
+    }
+
+    /**
+     * a file listed by the walk, a matched line, or a file with matches of ---files_with_matches.
+     * */
+    public Type type() {
+        return type;
+    }
+
+    /**
+     * the path of the file, archive!/entry for a match in a zip entry.
+     * */
+    public String path() {
+        return path;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    /**
+     * epoch milliseconds.
+     * */
+    public long lastModified() {
+        return lastModified;
+    }
+
+    /**
+     * the line number of a match, -1 for the other records.
+     * */
+    public long line() {
+        return line;
+    }
+
+    /**
+     * the offset of a match in the file, -1 when unknown.
+     * */
+    public long byteOffset() {
+        return byteOffset;
+    }
+
+    /**
+     * the matched word or regex match, null when unknown.
+     * */
+    public String word() {
+        return word;
+    }
+
+    /**
+     * the matched line, null for a binary file.
+     * */
+    public String text() {
+        return text;
+    }
+
+    @Override
+    public String toString() {
+        if(type != Type.MATCH){
+            return type + ":" + path;
+        }
+        return type + ":" + path + "," + line + ",[ " + (text == null ? "binary" : text) + " ]";
+    }
+}
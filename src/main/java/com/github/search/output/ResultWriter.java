@@ -0,0 +1,209 @@
+package com.github.search.output;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * the one buffered writer of the search results, shared by the walker threads and the content result sink.
+ * records are encoded in the {@link ResultFormat} straight into the buffer and written whole, the buffer
+ * is flushed when it is full, on a write after the flush interval and by a background flush every interval,
+ * so the first result shows up within the interval and a large result set costs one write call per buffer
+ * instead of one per line.
+ * like {@link java.io.PrintStream} a write error is remembered and the following records are dropped, the error
+ * of an output that is a print stream itself is checked on every flush and by the background flush.
+ */
+public final class ResultWriter implements Consumer<String>, Flushable, Closeable {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final OutputStream out;
+    private final ResultFormat format;
+    private final RecordEncoder encoder;
+    private final RecordBuffer buffer = new RecordBuffer();
+    private final long flushNanos;
+    private final ScheduledExecutorService flusher;
+    private long lastFlushNanos = System.nanoTime();
+    private boolean error;
+    private volatile Runnable onError;
+
+    /**
+     * @param out output of the results, not closed by {@link #close()}.
+     * @param flushMillis max milliseconds a written line stays in the buffer.
+     * */
+    public ResultWriter(OutputStream out, Charset charset, int flushMillis) {
+        this(out, charset, ResultFormat.TEXT, flushMillis);
+    }
+
+    /**
+     * @param out output of the results, not closed by {@link #close()}.
+     * @param charset charset of the text format, the structured formats are utf-8.
+     * @param flushMillis max milliseconds a written record stays in the buffer.
+     * */
+    public ResultWriter(OutputStream out, Charset charset, ResultFormat format, int flushMillis) {
+        if(flushMillis <= 0){
+            throw new IllegalArgumentException("flushMillis must be positive: " + flushMillis);
+        }
+        this.out = out;
+        this.format = format;
+        this.encoder = RecordEncoder.of(format, charset);
+        this.flushNanos = TimeUnit.MILLISECONDS.toNanos(flushMillis);
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "fast-search-result-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.flusher.scheduleWithFixedDelay(this::flushIfDirty, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * called once by the first write error, e.g. to stop a search whose reader went away.
+     * */
+    public void onError(Runnable onError) {
+        this.onError = onError;
+    }
+
+    public ResultFormat format() {
+        return format;
+    }
+
+    @Override
+    public void accept(String line) {
+        println(line);
+    }
+
+    /**
+     * a free text line, dropped by the structured formats.
+     * */
+    public synchronized void println(String line){
+        if(error){
+            return;
+        }
+        encoder.line(buffer, line);
+        written();
+    }
+
+    /**
+     * a file listed by the walk.
+     * @param ordinal the count of the files listed so far.
+     * @param lastModified epoch milliseconds.
+     * */
+    public synchronized void file(long ordinal, String path, long size, long lastModified){
+        if(error){
+            return;
+        }
+        encoder.file(buffer, ordinal, path, size, lastModified);
+        written();
+    }
+
+    /**
+     * the buffer of the content results of a file.
+     * @param lastModified epoch milliseconds.
+     * */
+    public FileResults results(File file, long size, long lastModified){
+        return results(file, size, lastModified, null);
+    }
+
+    /**
+     * the buffer of the content results of a file, streamed to this writer once it is its turn.
+     * @param gate back pressure of the results buffered before the turn of the file, null for none.
+     * */
+    public FileResults results(File file, long size, long lastModified, FileResults.Gate gate){
+        return new FileResults(this, gate, encoder, file, size, lastModified);
+    }
+
+    /**
+     * writes the content results of a file.
+     * */
+    public synchronized void write(FileResults results){
+        if(error || results.isEmpty()){
+            return;
+        }
+        if(results.buffer().size() >= BUFFER_SIZE){
+            // a large result set goes out without a copy.
+            flush();
+            try{
+                results.buffer().writeTo(out);
+            }catch (IOException ioe){
+                failed();
+            }
+            return;
+        }
+        buffer.append(results.buffer());
+        written();
+    }
+
+    @Override
+    public synchronized void flush(){
+        if(error){
+            return;
+        }
+        try{
+            buffer.writeTo(out);
+            out.flush();
+        }catch (IOException ioe){
+            failed();
+        }
+        buffer.reset();
+        checkOutput();
+        lastFlushNanos = System.nanoTime();
+    }
+
+    /**
+     * true when a write failed, the output was closed by the reader.
+     * */
+    public synchronized boolean checkError(){
+        return error;
+    }
+
+    /**
+     * stops the background flush and flushes the buffer.
+     * */
+    @Override
+    public void close(){
+        flusher.shutdown();
+        flush();
+    }
+
+    private void written(){
+        if(buffer.size() >= BUFFER_SIZE || System.nanoTime() - lastFlushNanos >= flushNanos){
+            flush();
+        }
+    }
+
+    private synchronized void flushIfDirty(){
+        if(buffer.size() > 0){
+            flush();
+        }else{
+            // a search without results notices a closed output too.
+            checkOutput();
+        }
+    }
+
+    /**
+     * a print stream swallows the write errors, they are asked for.
+     * */
+    private void checkOutput(){
+        if(!error && out instanceof PrintStream && ((PrintStream) out).checkError()){
+            failed();
+        }
+    }
+
+    private void failed(){
+        if(error){
+            return;
+        }
+        error = true;
+        Runnable callback = onError;
+        if(callback != null){
+            callback.run();
+        }
+    }
+}
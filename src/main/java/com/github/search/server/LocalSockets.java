@@ -0,0 +1,219 @@
+package com.github.search.server;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.SecureRandom;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * local sockets of the search server: a unix domain socket when the runtime supports it (java 16+),
+ * looked up by reflection so the code still runs on java 8, otherwise tcp on the loopback address.
+ * the directory of the socket is created readable by its owner only and the socket file is made owner only
+ * after the bind, the other local users cannot connect to it. every local user can connect to the loopback
+ * address, so a tcp server writes a random token into a file only its owner can read, and a tcp client has
+ * to send it first.
+ */
+public final class LocalSockets {
+    private static final ProtocolFamily UNIX = unixFamily();
+    static final int TOKEN_BYTES = 32;
+    private static final Set<PosixFilePermission> OWNER_ONLY =
+            EnumSet.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE);
+    private static final Set<PosixFilePermission> OWNER_ONLY_DIR =
+            EnumSet.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE, PosixFilePermission.OWNER_EXECUTE);
+
+    private LocalSockets(){
+        // no instance.
+    }
+
+    public static Path defaultSocketFile(){
+        return Paths.get(System.getProperty("user.home"), ".fast-search", "fast-search.sock");
+    }
+
+    /**
+     * the token file of the tcp server on the port.
+     * */
+    public static Path defaultTokenFile(int port){
+        return Paths.get(System.getProperty("user.home"), ".fast-search", "fast-search-" + port + ".token");
+    }
+
+    public static boolean unixDomainSupported(){
+        return UNIX != null;
+    }
+
+    /**
+     * listen on the unix domain socket file, a stale socket file of a dead server is replaced.
+     * the missing directories are created owner only, the socket file is made owner only.
+     * */
+    public static ServerSocketChannel bind(Path socketFile) throws IOException {
+        createPrivateDirectories(socketFile.toAbsolutePath().getParent());
+        if(Files.exists(socketFile)){
+            boolean listening;
+            try{
+                connect(socketFile).close();
+                listening = true;
+            }catch (IOException ioe){
+                listening = false;
+            }
+            if(listening){
+                throw new IOException("a server is already listening on " + socketFile);
+            }
+            Files.deleteIfExists(socketFile);
+        }
+        ServerSocketChannel serverChannel = (ServerSocketChannel) open(ServerSocketChannel.class);
+        try{
+            serverChannel.bind(unixAddress(socketFile));
+            if(posixSupported()){
+                Files.setPosixFilePermissions(socketFile, OWNER_ONLY);
+            }
+        }catch (IOException | RuntimeException ex){
+            serverChannel.close();
+            throw ex;
+        }
+        return serverChannel;
+    }
+
+    /**
+     * listen on the tcp port of the loopback address.
+     * */
+    public static ServerSocketChannel bind(int port) throws IOException {
+        ServerSocketChannel serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        return serverChannel;
+    }
+
+    public static SocketChannel connect(Path socketFile) throws IOException {
+        SocketChannel channel = (SocketChannel) open(SocketChannel.class);
+        try{
+            channel.connect(unixAddress(socketFile));
+        }catch (IOException | RuntimeException ex){
+            channel.close();
+            throw ex;
+        }
+        return channel;
+    }
+
+    public static SocketChannel connect(int port) throws IOException {
+        return SocketChannel.open(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+    }
+
+    /**
+     * write a new random token into the token file, readable and writable by its owner only.
+     * the file system must have posix permissions, the tcp server is not started without them.
+     * */
+    public static byte[] writeToken(Path tokenFile) throws IOException {
+        Path parent = tokenFile.toAbsolutePath().getParent();
+        createPrivateDirectories(parent);
+        if(Files.getFileAttributeView(parent, PosixFileAttributeView.class) == null){
+            throw new IOException("the token file of the tcp socket needs posix permissions: " + tokenFile);
+        }
+        byte[] token = new byte[TOKEN_BYTES];
+        new SecureRandom().nextBytes(token);
+        // created owner only, the token is never readable by the others, not even for a moment.
+        Path tempFile = Files.createTempFile(parent, tokenFile.getFileName().toString(), ".tmp",
+                PosixFilePermissions.asFileAttribute(OWNER_ONLY));
+        boolean moved = false;
+        try{
+            Files.write(tempFile, token);
+            try{
+                Files.move(tempFile, tokenFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }catch (AtomicMoveNotSupportedException ex){
+                Files.move(tempFile, tokenFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+            moved = true;
+        }finally {
+            if(!moved){
+                Files.deleteIfExists(tempFile);
+            }
+        }
+        return token;
+    }
+
+    /**
+     * read the token of the tcp server, a token file the group or the others can read or write is refused.
+     * */
+    public static byte[] readToken(Path tokenFile) throws IOException {
+        PosixFileAttributeView view = Files.getFileAttributeView(tokenFile, PosixFileAttributeView.class);
+        if(view == null){
+            throw new IOException("the token file of the tcp socket needs posix permissions: " + tokenFile);
+        }
+        Set<PosixFilePermission> permissions = view.readAttributes().permissions();
+        if(!OWNER_ONLY.containsAll(permissions)){
+            throw new IOException("the token file must be readable by its owner only, is " +
+                    PosixFilePermissions.toString(permissions) + ": " + tokenFile);
+        }
+        byte[] token = Files.readAllBytes(tokenFile);
+        if(token.length != TOKEN_BYTES){
+            throw new IOException("invalid token file: " + tokenFile);
+        }
+        return token;
+    }
+
+    private static void createPrivateDirectories(Path dir) throws IOException {
+        if(dir == null || Files.isDirectory(dir)){
+            return;
+        }
+        if(posixSupported()){
+            Files.createDirectories(dir, PosixFilePermissions.asFileAttribute(OWNER_ONLY_DIR));
+        }else{
+            Files.createDirectories(dir);
+        }
+    }
+
+    private static boolean posixSupported(){
+        return FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+    }
+
+    private static ProtocolFamily unixFamily(){
+        try{
+            return StandardProtocolFamily.valueOf("UNIX");
+        }catch (IllegalArgumentException iae){
+            return null;
+        }
+    }
+
+    private static Object open(Class<?> channelClass) throws IOException {
+        if(UNIX == null){
+            throw new IOException("unix domain sockets are not supported by java " + System.getProperty("java.version"));
+        }
+        return invoke(channelClass, "open", ProtocolFamily.class, UNIX);
+    }
+
+    private static SocketAddress unixAddress(Path socketFile) throws IOException {
+        try{
+            Class<?> addressClass = Class.forName("java.net.UnixDomainSocketAddress");
+            return (SocketAddress) invoke(addressClass, "of", Path.class, socketFile);
+        }catch (ClassNotFoundException cnfe){
+            throw new IOException("unix domain sockets are not supported by java " + System.getProperty("java.version"), cnfe);
+        }
+    }
+
+    private static Object invoke(Class<?> clazz, String method, Class<?> paramType, Object param) throws IOException {
+        try{
+            return clazz.getMethod(method, paramType).invoke(null, param);
+        }catch (InvocationTargetException ite){
+            if(ite.getCause() instanceof IOException){
+                throw (IOException) ite.getCause();
+            }
+            throw new IOException(clazz.getName() + "." + method + " failed", ite.getCause());
+        }catch (ReflectiveOperationException roe){
+            throw new IOException(clazz.getName() + "." + method + " is not supported", roe);
+        }
+    }
+}
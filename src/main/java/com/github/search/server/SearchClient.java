@@ -0,0 +1,71 @@
+package com.github.search.server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * thin client of the {@link SearchServer}: sends the command line arguments and copies the
+ * streamed output of the search to its own out and err.
+ */
+public final class SearchClient {
+    private SearchClient(){
+        // no instance.
+    }
+
+    /**
+     * run the search on the server, returns its exit code.
+     * */
+    public static int forward(SocketChannel channel, String[] args, OutputStream out, OutputStream err) throws IOException {
+        return forward(channel, null, args, out, err);
+    }
+
+    /**
+     * run the search on a tcp server, the request starts with its token.
+     * @param token token of the server, see {@link LocalSockets#readToken(java.nio.file.Path)}, null for none.
+     * */
+    public static int forward(SocketChannel channel, byte[] token, String[] args, OutputStream out, OutputStream err) throws IOException {
+        DataOutputStream request = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+        if(token != null){
+            request.writeInt(token.length);
+            request.write(token);
+        }
+        request.writeInt(args.length);
+        for (String arg : args) {
+            byte[] bytes = arg.getBytes(StandardCharsets.UTF_8);
+            request.writeInt(bytes.length);
+            request.write(bytes);
+        }
+        request.flush();
+
+        DataInputStream frames = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), 64 * 1024));
+        byte[] buffer = new byte[8192];
+        try{
+            for (;;) {
+                byte type = frames.readByte();
+                if(type == SearchServer.FRAME_EXIT){
+                    out.flush();
+                    err.flush();
+                    return frames.readInt();
+                }
+                OutputStream target = type == SearchServer.FRAME_ERR ? err : out;
+                int length = frames.readInt();
+                while (length > 0){
+                    int read = Math.min(length, buffer.length);
+                    frames.readFully(buffer, 0, read);
+                    target.write(buffer, 0, read);
+                    length -= read;
+                }
+            }
+        }catch (EOFException eof){
+            throw new IOException("the server closed the connection before the search finished", eof);
+        }
+    }
+}
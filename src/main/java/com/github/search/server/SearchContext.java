@@ -0,0 +1,184 @@
+package com.github.search.server;
+
+import com.github.search.index.FileIndex;
+import com.github.search.index.FileIndexStore;
+import com.github.search.index.IndexMode;
+import com.github.search.index.IndexWatcher;
+import com.github.search.metrics.JsonWriter;
+import com.github.search.metrics.LatencyHistogram;
+import com.github.search.utils.Utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * state of a search engine shared by all its searches: one thread pool for the content workers
+ * of every search, the loaded indexes of ---index trust and the watched indexes of ---index watch.
+ * a watched index is kept current from the file system events and saved every watch interval,
+ * so the following searches of its root never walk the directories.
+ * the context also counts the searches of the server and their latency, dumped to the log every stats interval.
+ */
+public final class SearchContext implements Closeable {
+    private final ThreadPoolExecutor executor = Utils.newUnboundedThreadPool("fast-search-server", 60);
+    private final Map<Path, LoadedIndex> loadedIndexes = new ConcurrentHashMap<>();
+    private final Map<Path, WatchedIndex> watchedIndexes = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler;
+    private final PrintStream log;
+    private final long startNanos = System.nanoTime();
+    private final LongAdder searches = new LongAdder();
+    private final LongAdder failedSearches = new LongAdder();
+    private final AtomicInteger activeSearches = new AtomicInteger();
+    private final LatencyHistogram searchNanos = new LatencyHistogram();
+
+    /**
+     * @param watchInterval seconds between the saves of the changed watched indexes.
+     * @param statsInterval seconds between the dumps of {@link #metricsJson()} to the log, 0 for none.
+     * @param log warnings of the background index saves and the metrics dumps.
+     * */
+    public SearchContext(int watchInterval, int statsInterval, PrintStream log) {
+        this.log = log;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "fast-search-server-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.scheduler.scheduleWithFixedDelay(this::saveWatchedIndexes, watchInterval, watchInterval, TimeUnit.SECONDS);
+        if(statsInterval > 0){
+            this.scheduler.scheduleWithFixedDelay(() -> log.println(metricsJson()), statsInterval, statsInterval, TimeUnit.SECONDS);
+        }
+    }
+
+    public void searchStarted(){
+        activeSearches.incrementAndGet();
+    }
+
+    /**
+     * @param nanos wall time of the search.
+     * @param exitCode exit code of the search, not 0 counts as failed.
+     * */
+    public void searchFinished(long nanos, int exitCode){
+        activeSearches.decrementAndGet();
+        searches.increment();
+        if(exitCode != 0){
+            failedSearches.increment();
+        }
+        searchNanos.record(nanos);
+    }
+
+    /**
+     * searches, search latency, pool and index counts of the server as one json line.
+     * */
+    public String metricsJson(){
+        JsonWriter json = new JsonWriter().beginObject()
+                .name("uptime_nanos").value(System.nanoTime() - startNanos)
+                .name("searches").value(searches.sum())
+                .name("failed_searches").value(failedSearches.sum())
+                .name("active_searches").value(activeSearches.get())
+                .name("pool_threads").value(executor.getPoolSize())
+                .name("pool_active_threads").value(executor.getActiveCount())
+                .name("pool_largest_threads").value(executor.getLargestPoolSize())
+                .name("loaded_indexes").value(loadedIndexes.size())
+                .name("watched_indexes").value(watchedIndexes.size());
+        json.name("search_nanos");
+        searchNanos.writeJson(json);
+        return json.endObject().toString();
+    }
+
+    /**
+     * shared by the searches, needs no shutdown per search.
+     * */
+    public ThreadPoolExecutor executor() {
+        return executor;
+    }
+
+    /**
+     * the index of the canonical root, loaded once until its index file changes.
+     * */
+    public FileIndex trustedIndex(FileIndexStore indexStore, Path root) throws IOException {
+        Path indexFile = indexStore.indexFile(root);
+        FileTime modifiedTime = Files.exists(indexFile) ? Files.getLastModifiedTime(indexFile) : null;
+        LoadedIndex loaded = loadedIndexes.get(indexFile);
+        if(loaded != null && modifiedTime != null && modifiedTime.equals(loaded.modifiedTime)){
+            return loaded.fileIndex;
+        }
+        FileIndex fileIndex = indexStore.open(root, IndexMode.TRUST);
+        loadedIndexes.put(indexFile, new LoadedIndex(fileIndex, Files.getLastModifiedTime(indexFile)));
+        return fileIndex;
+    }
+
+    /**
+     * the watcher of the canonical root, the index is refreshed and watched by the first search of the root.
+     * */
+    public synchronized IndexWatcher indexWatcher(FileIndexStore indexStore, Path root) throws IOException {
+        Path indexFile = indexStore.indexFile(root);
+        WatchedIndex watched = watchedIndexes.get(indexFile);
+        if(watched == null){
+            FileIndex fileIndex = indexStore.open(root, IndexMode.REFRESH);
+            watched = new WatchedIndex(indexStore, new IndexWatcher(fileIndex));
+            watchedIndexes.put(indexFile, watched);
+        }
+        return watched.indexWatcher;
+    }
+
+    /**
+     * count of the roots watched until the context is closed.
+     * */
+    public int watchedIndexes(){
+        return watchedIndexes.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        scheduler.shutdown();
+        saveWatchedIndexes();
+        for (WatchedIndex watched : watchedIndexes.values()) {
+            watched.indexWatcher.close();
+        }
+        executor.shutdown();
+    }
+
+    private void saveWatchedIndexes(){
+        for (WatchedIndex watched : watchedIndexes.values()) {
+            IndexWatcher indexWatcher = watched.indexWatcher;
+            if(indexWatcher.takeDirty()){
+                try{
+                    watched.indexStore.save(indexWatcher.root(), indexWatcher.snapshot());
+                }catch (IOException ioe){
+                    log.println("warn: save index of " + indexWatcher.root() + " failed. " + Utils.stackTrace(ioe));
+                }
+            }
+        }
+    }
+
+    private static final class LoadedIndex {
+        private final FileIndex fileIndex;
+        private final FileTime modifiedTime;
+
+        private LoadedIndex(FileIndex fileIndex, FileTime modifiedTime) {
+            this.fileIndex = fileIndex;
+            this.modifiedTime = modifiedTime;
+        }
+    }
+
+    private static final class WatchedIndex {
+        private final FileIndexStore indexStore;
+        private final IndexWatcher indexWatcher;
+
+        private WatchedIndex(FileIndexStore indexStore, IndexWatcher indexWatcher) {
+            this.indexStore = indexStore;
+            this.indexWatcher = indexWatcher;
+        }
+    }
+}
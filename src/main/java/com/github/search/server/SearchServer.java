@@ -0,0 +1,301 @@
+package com.github.search.server;
+
+import com.github.search.utils.Utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * long-running search server: every connection is one search, the client sends the command line
+ * arguments and the server streams the output back in frames, so the jvm start, the jit warm-up and
+ * the caches of the {@link SearchContext} are paid once for all the searches.
+ * a connection has a few seconds to send its request, at most max connections are handled at the same
+ * time and the next ones wait to be accepted. a client that goes away cancels its search: the end of its
+ * input, or a failed write of the output, is an error of the output stream of the search.
+ *
+ * <pre>
+ * request:  token of a tcp server (int length + bytes), argument count (int), arguments (int length + utf-8 bytes)
+ * response: frames of type OUT or ERR (byte), length (int), bytes; ends with EXIT (byte), exit code (int)
+ * </pre>
+ */
+public final class SearchServer implements Closeable {
+    static final byte FRAME_OUT = 1;
+    static final byte FRAME_ERR = 2;
+    static final byte FRAME_EXIT = 0;
+    // a request never has more arguments than this.
+    static final int MAX_ARGS = 4096;
+    // nor an argument longer than this.
+    static final int MAX_ARG_BYTES = 1024 * 1024;
+    // pause after a failed accept, so a lack of file descriptors does not spin the accept loop.
+    private static final long ACCEPT_RETRY_MILLIS = 100;
+    // a connection that sends no request in this time is closed.
+    static final long REQUEST_TIMEOUT_MILLIS = 10000;
+    public static final int DEFAULT_MAX_CONNECTIONS = 64;
+
+    private final ServerSocketChannel serverChannel;
+    private final ExecutorService executor;
+    private final SearchHandler handler;
+    // null for a unix domain socket, its owner only file permissions guard it, see LocalSockets#bind(Path).
+    private final byte[] token;
+    private final PrintStream log;
+    private final Semaphore connections;
+    private final ScheduledExecutorService requestTimeouts;
+
+    /**
+     * one search with the command line arguments, returns the exit code.
+     * */
+    public interface SearchHandler {
+        int search(String[] args, PrintStream out, PrintStream err);
+    }
+
+    /**
+     * @param serverChannel bound server socket.
+     * @param executor runs one task per connection.
+     * @param handler runs the searches, called concurrently.
+     * */
+    public SearchServer(ServerSocketChannel serverChannel, ExecutorService executor, SearchHandler handler) {
+        this(serverChannel, executor, handler, null, System.err);
+    }
+
+    /**
+     * @param token the token every request must start with, see {@link LocalSockets#writeToken(java.nio.file.Path)},
+     *              null for none.
+     * @param log the accept errors.
+     * */
+    public SearchServer(ServerSocketChannel serverChannel, ExecutorService executor, SearchHandler handler,
+                        byte[] token, PrintStream log) {
+        this(serverChannel, executor, handler, token, log, DEFAULT_MAX_CONNECTIONS);
+    }
+
+    /**
+     * @param maxConnections connections handled at the same time, a connection takes two tasks of the executor:
+     *                       its search and the watch of its input.
+     * */
+    public SearchServer(ServerSocketChannel serverChannel, ExecutorService executor, SearchHandler handler,
+                        byte[] token, PrintStream log, int maxConnections) {
+        if(maxConnections <= 0){
+            throw new IllegalArgumentException("maxConnections must be positive: " + maxConnections);
+        }
+        this.serverChannel = serverChannel;
+        this.executor = executor;
+        this.handler = handler;
+        this.token = token == null ? null : token.clone();
+        this.log = log;
+        this.connections = new Semaphore(maxConnections);
+        this.requestTimeouts = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "fast-search-request-timeout");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * accept connections until the server is closed, a failed accept is logged and the next one accepted.
+     * */
+    public void serve() throws IOException {
+        for (;;) {
+            try{
+                // the next connection waits in the backlog while all are handled.
+                connections.acquire();
+            }catch (InterruptedException ie){
+                Thread.currentThread().interrupt();
+                return;
+            }
+            SocketChannel channel;
+            try{
+                channel = serverChannel.accept();
+            }catch (ClosedChannelException ex){
+                // closed.
+                connections.release();
+                return;
+            }catch (IOException ioe){
+                connections.release();
+                log.println("warn: search server accept failed. " + ioe);
+                try{
+                    Thread.sleep(ACCEPT_RETRY_MILLIS);
+                }catch (InterruptedException ie){
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                continue;
+            }
+            try{
+                executor.execute(() -> handle(channel));
+            }catch (RejectedExecutionException ree){
+                connections.release();
+                closeQuietly(channel);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        requestTimeouts.shutdownNow();
+        serverChannel.close();
+    }
+
+    private void handle(SocketChannel channel){
+        try(SocketChannel client = channel){
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(client)));
+            // a peer that sends nothing does not keep the connection, the close ends the blocked read.
+            ScheduledFuture<?> requestTimeout = requestTimeouts.schedule(() -> closeQuietly(client),
+                    REQUEST_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            String[] args;
+            try{
+                if(token != null){
+                    checkToken(in);
+                }
+                args = readArgs(in);
+            }finally {
+                requestTimeout.cancel(false);
+            }
+
+            DataOutputStream frames = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(client), 64 * 1024));
+            FramePrintStream out = new FramePrintStream(new BufferedOutputStream(new FrameOutputStream(frames, FRAME_OUT), 8192));
+            PrintStream err = new PrintStream(new BufferedOutputStream(new FrameOutputStream(frames, FRAME_ERR), 8192));
+            try{
+                executor.execute(() -> watchInput(client, out));
+            }catch (RejectedExecutionException ree){
+                // the failed writes still cancel the search.
+            }
+            int exitCode;
+            try{
+                exitCode = handler.search(args, out, err);
+            }catch (RuntimeException ex){
+                err.println("error: search failed. " + Utils.stackTrace(ex));
+                exitCode = 2;
+            }
+            out.flush();
+            err.flush();
+            synchronized (frames){
+                frames.writeByte(FRAME_EXIT);
+                frames.writeInt(exitCode);
+                frames.flush();
+            }
+        }catch (IOException ioe){
+            // the client went away or sent an invalid request, its search output is dropped.
+        }finally {
+            connections.release();
+        }
+    }
+
+    /**
+     * the client sends nothing after its request, the end of its input is its disconnect. the channel is read
+     * directly, a stream of the channel would hold its blocking lock and stop the writes of the search.
+     * */
+    private static void watchInput(SocketChannel client, FramePrintStream out){
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        try{
+            while (client.read(buffer) != -1){
+                // nothing is expected.
+                ((Buffer) buffer).clear();
+            }
+        }catch (IOException ioe){
+            // reset by the client, or closed at the end of the search.
+        }
+        out.disconnected();
+    }
+
+    private static void closeQuietly(SocketChannel channel){
+        try{
+            channel.close();
+        }catch (IOException ioe){
+            // closed anyway.
+        }
+    }
+
+    private void checkToken(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if(length != token.length){
+            throw new IOException("invalid token length: " + length);
+        }
+        byte[] clientToken = new byte[length];
+        in.readFully(clientToken);
+        if(!MessageDigest.isEqual(token, clientToken)){
+            throw new IOException("invalid token.");
+        }
+    }
+
+    private static String[] readArgs(DataInputStream in) throws IOException {
+        int argCount = in.readInt();
+        if(argCount < 0 || argCount > MAX_ARGS){
+            throw new IOException("invalid argument count: " + argCount);
+        }
+        String[] args = new String[argCount];
+        for (int i = 0; i < argCount; i++) {
+            int length = in.readInt();
+            if(length < 0 || length > MAX_ARG_BYTES){
+                throw new IOException("invalid argument length: " + length);
+            }
+            byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            args[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return args;
+    }
+
+    /**
+     * the output of a search, its error tells the search that the client went away.
+     * */
+    private static final class FramePrintStream extends PrintStream {
+        private FramePrintStream(OutputStream out) {
+            super(out);
+        }
+
+        private void disconnected(){
+            setError();
+        }
+    }
+
+    /**
+     * every write is sent as one frame, out and err share the connection.
+     * */
+    private static final class FrameOutputStream extends OutputStream {
+        private final DataOutputStream frames;
+        private final byte type;
+
+        private FrameOutputStream(DataOutputStream frames, byte type) {
+            this.frames = frames;
+            this.type = type;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if(len == 0){
+                return;
+            }
+            synchronized (frames){
+                frames.writeByte(type);
+                frames.writeInt(len);
+                frames.write(b, off, len);
+                frames.flush();
+            }
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.github.search.utils;
+
+import java.io.IOException;
+import java.nio.file.AccessMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.Set;
+
+/**
+ * file access check on the attributes already read by the walker.
+ * with {@link PosixFileAttributes} the check is answered from the permission bits,
+ * otherwise (or when the bits are not enough to decide) it falls back to the access syscall.
+ * the user of the process is the owner of a file it owns, read once from the file system rather than from
+ * the user.name property. root reads and writes are decided by the access syscall, a read only mount refuses them.
+ */
+public final class FileAccess {
+    // the effective user of the process, null when it can not be read: every check takes the syscall.
+    private static final ProcessUser PROCESS_USER = ProcessUser.read();
+
+    private FileAccess(){
+        // no instance.
+    }
+
+    public static boolean check(Path file, BasicFileAttributes attrs, AccessMode mode){
+        if(attrs instanceof PosixFileAttributes && PROCESS_USER != null){
+            PosixFileAttributes posixAttrs = (PosixFileAttributes) attrs;
+            Set<PosixFilePermission> permissions = posixAttrs.permissions();
+
+            if(PROCESS_USER.root){
+                if(mode == AccessMode.EXECUTE &&
+                   !permissions.contains(PosixFilePermission.OWNER_EXECUTE) &&
+                   !permissions.contains(PosixFilePermission.GROUP_EXECUTE) &&
+                   !permissions.contains(PosixFilePermission.OTHERS_EXECUTE)){
+                    return false;
+                }
+                return accessSyscall(file, mode);
+            }
+
+            if(PROCESS_USER.user.equals(posixAttrs.owner())){
+                return permissions.contains(ownerPermission(mode));
+            }
+
+            // group membership is unknown here, decide only when group and others agree.
+            boolean groupAccess = permissions.contains(groupPermission(mode));
+            boolean othersAccess = permissions.contains(othersPermission(mode));
+            if(groupAccess == othersAccess){
+                return othersAccess;
+            }
+        }
+
+        return accessSyscall(file, mode);
+    }
+
+    private static boolean accessSyscall(Path file, AccessMode mode){
+        switch (mode){
+            case READ:
+                return Files.isReadable(file);
+            case WRITE:
+                return Files.isWritable(file);
+            default:
+                return Files.isExecutable(file);
+        }
+    }
+
+    private static PosixFilePermission ownerPermission(AccessMode mode){
+        switch (mode){
+            case READ:
+                return PosixFilePermission.OWNER_READ;
+            case WRITE:
+                return PosixFilePermission.OWNER_WRITE;
+            default:
+                return PosixFilePermission.OWNER_EXECUTE;
+        }
+    }
+
+    private static PosixFilePermission groupPermission(AccessMode mode){
+        switch (mode){
+            case READ:
+                return PosixFilePermission.GROUP_READ;
+            case WRITE:
+                return PosixFilePermission.GROUP_WRITE;
+            default:
+                return PosixFilePermission.GROUP_EXECUTE;
+        }
+    }
+
+    private static PosixFilePermission othersPermission(AccessMode mode){
+        switch (mode){
+            case READ:
+                return PosixFilePermission.OTHERS_READ;
+            case WRITE:
+                return PosixFilePermission.OTHERS_WRITE;
+            default:
+                return PosixFilePermission.OTHERS_EXECUTE;
+        }
+    }
+
+    /**
+     * the effective user of the process: the owner and the unix uid of /proc/self, or of a temporary file
+     * it creates where there is no procfs.
+     * */
+    private static final class ProcessUser {
+        private final UserPrincipal user;
+        private final boolean root;
+
+        private ProcessUser(UserPrincipal user, boolean root) {
+            this.user = user;
+            this.root = root;
+        }
+
+        private static ProcessUser read(){
+            try{
+                return of(Paths.get("/proc/self"));
+            }catch (IOException | RuntimeException ex){
+                // no procfs.
+            }
+            try{
+                Path probe = Files.createTempFile("fast-search-user", ".tmp");
+                try{
+                    return of(probe);
+                }finally {
+                    Files.deleteIfExists(probe);
+                }
+            }catch (IOException | RuntimeException ex){
+                return null;
+            }
+        }
+
+        private static ProcessUser of(Path ownedFile) throws IOException {
+            Object uid = Files.getAttribute(ownedFile, "unix:uid");
+            return new ProcessUser(Files.getOwner(ownedFile), uid instanceof Integer && (Integer) uid == 0);
+        }
+    }
+}
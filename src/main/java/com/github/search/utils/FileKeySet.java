@@ -0,0 +1,82 @@
+package com.github.search.utils;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * the file keys ({@link java.nio.file.attribute.BasicFileAttributes#fileKey()}) seen by the walks of one search,
+ * so a file or a directory reached again through a symbolic link, a hard link or an overlapping root is skipped.
+ * the key objects are held as they are, their equals and hashCode compare the (dev, ino) of unix keys
+ * without a string per key. thread safe.
+ */
+public final class FileKeySet {
+    private static final String DEV_PREFIX = "(dev=";
+    private static final String INO_PREFIX = ",ino=";
+
+    private final Set<Object> keys = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param fileKey file key of the attributes, null when the file system has none.
+     * @return false when the key was already added, true for a new key or a null key.
+     * */
+    public boolean add(Object fileKey){
+        return fileKey == null || keys.add(fileKey);
+    }
+
+    public long size(){
+        return keys.size();
+    }
+
+    /**
+     * the device of a unix file key parsed from its text, for the device read order and the file system check only,
+     * -1 when the key is not a unix one or its text is not the expected one.
+     * */
+    public static long device(Object fileKey){
+        return fileKey == null ? -1 : device(fileKey.toString());
+    }
+
+    /**
+     * the inode of a unix file key parsed from its text, -1 when the key is not a unix one or its text is not the expected one.
+     * */
+    public static long inode(Object fileKey){
+        if(fileKey == null){
+            return -1;
+        }
+        String key = fileKey.toString();
+        return device(key) == -1 ? -1 : inode(key);
+    }
+
+    private static long device(String key){
+        if(!key.startsWith(DEV_PREFIX)){
+            return -1;
+        }
+        int end = key.indexOf(',', DEV_PREFIX.length());
+        return end == -1 ? -1 : parse(key, DEV_PREFIX.length(), end, 16);
+    }
+
+    private static long inode(String key){
+        int start = key.indexOf(INO_PREFIX);
+        if(start == -1 || key.charAt(key.length() - 1) != ')'){
+            return -1;
+        }
+        return parse(key, start + INO_PREFIX.length(), key.length() - 1, 10);
+    }
+
+    /**
+     * unsigned number of key[start, end), -1 when it is not a number.
+     * */
+    private static long parse(String key, int start, int end, int radix){
+        if(start >= end){
+            return -1;
+        }
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = Character.digit(key.charAt(i), radix);
+            if(digit < 0){
+                return -1;
+            }
+            value = value * radix + digit;
+        }
+        return value;
+    }
+}
@@ -1,28 +1,170 @@
 package com.github.search.utils;
 
 import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitOption;
 import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.function.BiPredicate;
 import java.util.function.Predicate;
 
+/**
+ * file filter visitor of a walk from a canonical directory without {@code FileVisitOption.FOLLOW_LINKS}.
+ * the visitor follows the symbolic links itself: the attributes of the walk tell a link, so a regular entry
+ * costs the single lstat of the walk and only a link costs a second stat, a linked directory is walked in place.
+ * the canonical path of a filtered file is its name resolved against the real path of its directory,
+ * the real path of a directory reached through a symbolic link is resolved once per file key.
+ * the exclude, ignore and file system options of the {@link WalkOptions} skip a sub tree before it is listed,
+ * the max depth is the one of the walk. the filter gets the {@link BasicFileAttributes} of the walk,
+ * a walk of {@link java.nio.file.attribute.PosixFileAttributes} is the one of {@link ParallelFileWalker}, with the same single stat.
+ */
 public class FilterFileVisitor extends SimpleFileVisitor<Path> {
-    private final Predicate<Path> fileFilter;
+    private final BiPredicate<Path, BasicFileAttributes> fileFilter;
     private final List<String> filterFiles;
+    private final BiConsumer<String, BasicFileAttributes> sink;
+    private final WalkOptions options;
+    private final FileKeySet visited;
+    private final WalkStats stats;
+    private WalkOptions.FileSystemCheck fileSystemCheck;
+    // real paths of the directories being visited, null when unknown.
+    private final List<Path> realDirs = new ArrayList<>();
+    // the directories being visited and their file keys, to tell a link loop without the visited keys.
+    private final List<Path> dirs = new ArrayList<>();
+    private final List<Object> dirKeys = new ArrayList<>();
+    // ignore rules of the entries of the directories being visited, null when nothing is ignored.
+    private final List<IgnoreRules.DirRules> dirRules = new ArrayList<>();
+    private final RealDirCache realDirCache = new RealDirCache();
 
     public FilterFileVisitor(Predicate<Path> fileFilter){
+        this((path, attrs) -> fileFilter.test(path));
+    }
+
+    /**
+     * @param fileFilter filter on the path and the attributes read by the walk.
+     * */
+    public FilterFileVisitor(BiPredicate<Path, BasicFileAttributes> fileFilter){
         this.fileFilter = fileFilter;
         this.filterFiles = new LinkedList<>();
+        this.sink = (path, attrs) -> filterFiles.add(path);
+        this.options = new WalkOptions(1, 1, false);
+        this.visited = null;
+        this.stats = new WalkStats();
+    }
+
+    /**
+     * passes the canonical path and the attributes of every filtered file to the sink as soon as it is visited,
+     * {@link #getFilterFiles()} stays empty.
+     * @param visited file keys of the directories walked and the files filtered, the same as
+     *                {@link ParallelFileWalker#walk(Path, BiPredicate, BiPredicate, boolean, FileKeySet, WalkStats, BiConsumer)}.
+     * @param stats counters of the walk, every entry counts the stat of {@code Files.walkFileTree}.
+     * */
+    public FilterFileVisitor(BiPredicate<Path, BasicFileAttributes> fileFilter, WalkOptions options,
+                             FileKeySet visited, WalkStats stats, BiConsumer<String, BasicFileAttributes> sink){
+        this.fileFilter = fileFilter;
+        this.filterFiles = Collections.emptyList();
+        this.sink = sink;
+        this.options = options;
+        this.visited = visited;
+        this.stats = stats;
+    }
+
+    @Override
+    public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+        if(options.stopped()){
+            return FileVisitResult.TERMINATE;
+        }
+        stats.statCall();
+        return enterDirectory(dir, attrs, false);
+    }
+
+    private FileVisitResult enterDirectory(Path dir, BasicFileAttributes attrs, boolean linked){
+        Path realDir;
+        if(realDirs.isEmpty()){
+            // the walk starts from a canonical directory.
+            realDir = dir;
+            fileSystemCheck = options.fileSystemCheck(dir, attrs);
+        }else if(linked){
+            try{
+                realDir = realDirCache.realPath(dir, attrs.fileKey());
+            }catch (IOException ioe){
+                realDir = null;
+            }
+        }else{
+            Path parent = realDirs.get(realDirs.size() - 1);
+            realDir = parent == null ? null : parent.resolve(dir.getFileName());
+        }
+        IgnoreRules.DirRules rules = realDirs.isEmpty() ? options.ignoreRules(dir) : dirRules.get(dirRules.size() - 1);
+        if(!realDirs.isEmpty()){
+            if(options.isExcluded(dir, realDir) ||
+               fileSystemCheck != null && !fileSystemCheck.isSameFileSystem(dir, attrs)){
+                stats.dirPruned();
+                return FileVisitResult.SKIP_SUBTREE;
+            }
+            if(rules != null && rules.isIgnored(dir, true)){
+                stats.entryIgnored();
+                return FileVisitResult.SKIP_SUBTREE;
+            }
+        }
+        if(!firstVisit(attrs)){
+            // walked through a link or from an overlapping root.
+            return FileVisitResult.SKIP_SUBTREE;
+        }
+        realDirs.add(realDir);
+        dirs.add(dir);
+        dirKeys.add(attrs.fileKey());
+        dirRules.add(rules == null ? null : rules.enter(dir));
+        stats.dirListed();
+        return FileVisitResult.CONTINUE;
+    }
+
+    @Override
+    public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+        realDirs.remove(realDirs.size() - 1);
+        dirs.remove(dirs.size() - 1);
+        dirKeys.remove(dirKeys.size() - 1);
+        dirRules.remove(dirRules.size() - 1);
+        return FileVisitResult.CONTINUE;
     }
 
     @Override
     public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-        if (fileFilter.test(file)) {
-            filterFiles.add(file.toFile().getCanonicalPath());
+        if(options.stopped()){
+            return FileVisitResult.TERMINATE;
+        }
+        stats.statCall();
+        boolean linked = false;
+        if(attrs.isSymbolicLink()){
+            BasicFileAttributes targetAttrs = targetAttributes(file);
+            // broken link, visit the link itself.
+            if(targetAttrs != null){
+                attrs = targetAttrs;
+                linked = true;
+            }
+        }
+        IgnoreRules.DirRules rules = dirRules.isEmpty() ? null : dirRules.get(dirRules.size() - 1);
+        if(attrs.isDirectory()){
+            if(!linked){
+                // a directory at the max depth.
+                stats.dirPruned();
+                return FileVisitResult.CONTINUE;
+            }
+            return visitLinkedDirectory(file, attrs);
         }
-        return super.visitFile(file, attrs);
+        if(rules != null && rules.isIgnored(file, false)){
+            stats.entryIgnored();
+            return FileVisitResult.CONTINUE;
+        }
+        stats.fileVisited();
+        if (fileFilter.test(file, attrs) && firstVisit(attrs)) {
+            sink.accept(canonicalPath(file, linked), attrs);
+        }
+        return FileVisitResult.CONTINUE;
     }
 
     @Override
@@ -33,4 +175,94 @@ public class FilterFileVisitor extends SimpleFileVisitor<Path> {
     public Collection<String> getFilterFiles() {
         return Collections.unmodifiableCollection(filterFiles);
     }
+
+    /**
+     * walks the entries of a directory reached through a symbolic link, the walk does not follow it.
+     * the entries are at the depth of the link + 1, the same as a walk with {@code FileVisitOption.FOLLOW_LINKS}.
+     * */
+    private FileVisitResult visitLinkedDirectory(Path link, BasicFileAttributes attrs) throws IOException {
+        if(realDirs.size() >= options.maxDepth()){
+            stats.dirPruned();
+            return FileVisitResult.CONTINUE;
+        }
+        if(isLoop(link, attrs)){
+            stats.duplicateSkipped();
+            return FileVisitResult.CONTINUE;
+        }
+        FileVisitResult result = enterDirectory(link, attrs, true);
+        if(result != FileVisitResult.CONTINUE){
+            return result == FileVisitResult.TERMINATE ? result : FileVisitResult.CONTINUE;
+        }
+        List<Path> entries = new ArrayList<>();
+        try(DirectoryStream<Path> stream = Files.newDirectoryStream(link)){
+            for (Path entry : stream) {
+                entries.add(entry);
+            }
+        }catch (IOException | DirectoryIteratorException ex){
+            // same as visitFileFailed: unreadable directory is skipped.
+        }
+        Set<FileVisitOption> noFollow = EnumSet.noneOf(FileVisitOption.class);
+        for (Path entry : entries) {
+            if(options.stopped()){
+                break;
+            }
+            Files.walkFileTree(entry, noFollow, options.maxDepth() - realDirs.size(), this);
+        }
+        postVisitDirectory(link, null);
+        return options.stopped() ? FileVisitResult.TERMINATE : FileVisitResult.CONTINUE;
+    }
+
+    /**
+     * true when a linked directory is one being visited, the visited keys already skip it when it has a key.
+     * */
+    private boolean isLoop(Path dir, BasicFileAttributes attrs){
+        Object fileKey = attrs.fileKey();
+        if(visited != null && fileKey != null){
+            return false;
+        }
+        for (int i = 0; i < dirs.size(); i++) {
+            if(fileKey != null ? fileKey.equals(dirKeys.get(i)) : isSameFile(dirs.get(i), dir)){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isSameFile(Path path, Path other){
+        try{
+            return Files.isSameFile(path, other);
+        }catch (IOException ioe){
+            return false;
+        }
+    }
+
+    private BasicFileAttributes targetAttributes(Path link){
+        stats.statCall();
+        try{
+            return Files.readAttributes(link, BasicFileAttributes.class);
+        }catch (IOException ioe){
+            return null;
+        }
+    }
+
+    private String canonicalPath(Path file, boolean linked) throws IOException {
+        Path realDir = realDirs.isEmpty() ? null : realDirs.get(realDirs.size() - 1);
+        if(options.canonicalPaths() || realDir == null){
+            stats.statCall();
+            return file.toFile().getCanonicalPath();
+        }
+        if(linked){
+            stats.statCall();
+            return file.toRealPath().toString();
+        }
+        return realDir.resolve(file.getFileName()).toString();
+    }
+
+    private boolean firstVisit(BasicFileAttributes attrs){
+        if(visited == null || visited.add(attrs.fileKey())){
+            return true;
+        }
+        stats.duplicateSkipped();
+        return false;
+    }
 }
@@ -0,0 +1,383 @@
+package com.github.search.utils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * gitignore style exclusion of the walked entries: the exclude globs of the search, the .gitignore and
+ * .ignore files of the walked directories, the version control directories and the hidden entries.
+ * the rules are compiled once, a walk builds a tree of {@link DirRules} from its base directory where a
+ * directory without ignore files shares the node of its parent, an ignored directory is not listed.
+ * the patterns follow gitignore: a pattern with a slash is relative to the directory of its file, a
+ * trailing slash matches directories only, a leading ! re-includes, the last matching pattern wins and
+ * the patterns of a deeper directory win over the ones of its parents. the exclude globs are relative to
+ * the base directory and win over the ignore files. the ignore files above the base directory are not read.
+ */
+public final class IgnoreRules {
+    /**
+     * the ignore files read from every walked directory, the later one wins.
+     * */
+    public static final List<String> IGNORE_FILES = Collections.unmodifiableList(Arrays.asList(".gitignore", ".ignore"));
+
+    /**
+     * version control metadata directories.
+     * */
+    public static final Set<String> VCS_DIRS = Collections.unmodifiableSet(new HashSet<>(
+            Arrays.asList(".git", ".hg", ".svn", ".bzr", "_darcs", "CVS")));
+
+    /**
+     * no rules, nothing is ignored.
+     * */
+    public static final IgnoreRules NONE = new IgnoreRules(Collections.emptyList(), false, false, false);
+
+    private final Rule[] excludes;
+    private final boolean ignoreFiles;
+    private final boolean skipVcsDirs;
+    private final boolean skipHidden;
+
+    /**
+     * @param excludes gitignore patterns relative to the base directory of every walk.
+     * @param ignoreFiles read the {@link #IGNORE_FILES} of the walked directories.
+     * @param skipVcsDirs skip the {@link #VCS_DIRS}.
+     * @param skipHidden skip the entries whose name starts with a dot.
+     * @throws java.util.regex.PatternSyntaxException a pattern is invalid.
+     * */
+    public IgnoreRules(Collection<String> excludes, boolean ignoreFiles, boolean skipVcsDirs, boolean skipHidden) {
+        this.excludes = compile(excludes);
+        this.ignoreFiles = ignoreFiles;
+        this.skipVcsDirs = skipVcsDirs;
+        this.skipHidden = skipHidden;
+    }
+
+    /**
+     * true when no entry is ever ignored.
+     * */
+    public boolean isEmpty(){
+        return excludes.length == 0 && !ignoreFiles && !skipVcsDirs && !skipHidden;
+    }
+
+    /**
+     * the rules of a walk from the base directory, its own ignore files are read by {@link DirRules#enter(Path)}.
+     * null when nothing is ever ignored.
+     * */
+    public DirRules root(Path baseDir){
+        return isEmpty() ? null : new DirRules(this, baseDir, baseDir, new Rule[0], null);
+    }
+
+    /**
+     * the rules in force in one directory: the exclude globs, the patterns of its ignore files and the
+     * ones of its parents. immutable, shared by the walker threads.
+     * */
+    public static final class DirRules {
+        private final IgnoreRules ignoreRules;
+        // base directory of the walk, the exclude globs are relative to it.
+        private final Path baseDir;
+        // directory of the ignore files of the rules.
+        private final Path dir;
+        private final Rule[] rules;
+        private final DirRules parent;
+
+        private DirRules(IgnoreRules ignoreRules, Path baseDir, Path dir, Rule[] rules, DirRules parent) {
+            this.ignoreRules = ignoreRules;
+            this.baseDir = baseDir;
+            this.dir = dir;
+            this.rules = rules;
+            this.parent = parent;
+        }
+
+        /**
+         * the rules of the entries of the directory, this node when it has no ignore file.
+         * */
+        public DirRules enter(Path dir){
+            if(!ignoreRules.ignoreFiles){
+                return this;
+            }
+            List<String> patterns = new ArrayList<>();
+            for (String ignoreFile : IGNORE_FILES) {
+                readPatterns(dir.resolve(ignoreFile), patterns);
+            }
+            return withPatterns(dir, patterns);
+        }
+
+        /**
+         * {@link #enter(Path)} that reads only the ignore files among the listed entries of the directory.
+         * */
+        public DirRules enter(Path dir, List<Path> entries){
+            if(!ignoreRules.ignoreFiles){
+                return this;
+            }
+            List<String> patterns = null;
+            for (String ignoreFile : IGNORE_FILES) {
+                for (Path entry : entries) {
+                    Path name = entry.getFileName();
+                    if(name != null && ignoreFile.equals(name.toString())){
+                        if(patterns == null){
+                            patterns = new ArrayList<>();
+                        }
+                        readPatterns(entry, patterns);
+                    }
+                }
+            }
+            return patterns == null ? this : withPatterns(dir, patterns);
+        }
+
+        private DirRules withPatterns(Path dir, List<String> patterns){
+            Rule[] dirRules = compile(patterns);
+            return dirRules.length == 0 ? this : new DirRules(ignoreRules, baseDir, dir, dirRules, this);
+        }
+
+        /**
+         * true when the entry of a directory of these rules is ignored, the sub tree of a directory with it.
+         * */
+        public boolean isIgnored(Path entry, boolean directory){
+            Path fileName = entry.getFileName();
+            if(fileName == null){
+                return false;
+            }
+            String name = fileName.toString();
+            if(directory && ignoreRules.skipVcsDirs && VCS_DIRS.contains(name)){
+                return true;
+            }
+            if(ignoreRules.skipHidden && name.length() > 1 && name.charAt(0) == '.'){
+                return true;
+            }
+            Boolean ignored = match(ignoreRules.excludes, baseDir, entry, name, directory);
+            if(ignored != null){
+                return ignored;
+            }
+            for (DirRules node = this; node.parent != null; node = node.parent) {
+                ignored = match(node.rules, node.dir, entry, name, directory);
+                if(ignored != null){
+                    return ignored;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * the last rule matching the entry, null when none matches.
+         * */
+        private static Boolean match(Rule[] rules, Path dir, Path entry, String name, boolean directory){
+            String relativePath = null;
+            for (int i = rules.length - 1; i >= 0; i--) {
+                Rule rule = rules[i];
+                if(rule.dirOnly && !directory){
+                    continue;
+                }
+                String subject = name;
+                if(rule.anchored){
+                    if(relativePath == null){
+                        relativePath = relativePath(dir, entry);
+                        if(relativePath == null){
+                            // not under the directory of the rules.
+                            return null;
+                        }
+                    }
+                    subject = relativePath;
+                }
+                if(rule.matches(subject)){
+                    return !rule.negated;
+                }
+            }
+            return null;
+        }
+
+        private static String relativePath(Path dir, Path entry){
+            if(!entry.startsWith(dir)){
+                return null;
+            }
+            Path relative = dir.relativize(entry);
+            int count = relative.getNameCount();
+            if(count == 1){
+                return relative.toString();
+            }
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < count; i++) {
+                if(i > 0){
+                    sb.append('/');
+                }
+                sb.append(relative.getName(i));
+            }
+            return sb.toString();
+        }
+    }
+
+    private static void readPatterns(Path ignoreFile, List<String> patterns){
+        try(BufferedReader reader = Files.newBufferedReader(ignoreFile, StandardCharsets.UTF_8)){
+            String line;
+            while ((line = reader.readLine()) != null){
+                patterns.add(line);
+            }
+        }catch (IOException ioe){
+            // no such file, or unreadable: no rules.
+        }
+    }
+
+    private static Rule[] compile(Collection<String> patterns){
+        List<Rule> rules = new ArrayList<>();
+        for (String pattern : patterns) {
+            Rule rule = Rule.compile(pattern);
+            if(rule != null){
+                rules.add(rule);
+            }
+        }
+        return rules.toArray(new Rule[0]);
+    }
+
+    /**
+     * one gitignore pattern. a pattern without a slash matches the name of the entry at any depth,
+     * the others the path relative to the directory of the pattern. a literal or a *.suffix pattern
+     * is compared as a string, the other globs run as a regex.
+     * */
+    private static final class Rule {
+        private final boolean negated;
+        private final boolean dirOnly;
+        private final boolean anchored;
+        private final String literal;
+        private final String suffix;
+        private final Pattern regex;
+
+        private Rule(boolean negated, boolean dirOnly, boolean anchored, String literal, String suffix, Pattern regex) {
+            this.negated = negated;
+            this.dirOnly = dirOnly;
+            this.anchored = anchored;
+            this.literal = literal;
+            this.suffix = suffix;
+            this.regex = regex;
+        }
+
+        private boolean matches(String subject){
+            if(literal != null){
+                return literal.equals(subject);
+            }
+            if(suffix != null){
+                return subject.endsWith(suffix);
+            }
+            return regex.matcher(subject).matches();
+        }
+
+        /**
+         * the rule of a line of an ignore file, null for a blank line or a comment.
+         * */
+        private static Rule compile(String line){
+            String pattern = trimTrailingSpaces(line);
+            if(pattern.isEmpty() || pattern.charAt(0) == '#'){
+                return null;
+            }
+            boolean negated = pattern.charAt(0) == '!';
+            if(negated){
+                pattern = pattern.substring(1);
+            }else if(pattern.startsWith("\\!") || pattern.startsWith("\\#")){
+                pattern = pattern.substring(1);
+            }
+            boolean dirOnly = pattern.endsWith("/");
+            if(dirOnly){
+                pattern = pattern.substring(0, pattern.length() - 1);
+            }
+            boolean anchored = pattern.indexOf('/') != -1;
+            if(pattern.startsWith("/")){
+                pattern = pattern.substring(1);
+            }
+            if(pattern.isEmpty()){
+                return null;
+            }
+            if(!hasWildcard(pattern)){
+                return new Rule(negated, dirOnly, anchored, unescape(pattern), null, null);
+            }
+            if(!anchored && pattern.startsWith("*") && !hasWildcard(pattern.substring(1))){
+                return new Rule(negated, dirOnly, false, null, unescape(pattern.substring(1)), null);
+            }
+            return new Rule(negated, dirOnly, anchored, null, null, Pattern.compile(toRegex(pattern)));
+        }
+
+        private static String trimTrailingSpaces(String line){
+            int end = line.length();
+            while (end > 0 && (line.charAt(end - 1) == ' ' || line.charAt(end - 1) == '\t' || line.charAt(end - 1) == '\r')){
+                if(end > 1 && line.charAt(end - 2) == '\\'){
+                    break;
+                }
+                end--;
+            }
+            return line.substring(0, end);
+        }
+
+        private static boolean hasWildcard(String pattern){
+            for (int i = 0; i < pattern.length(); i++) {
+                char c = pattern.charAt(i);
+                if(c == '*' || c == '?' || c == '[' || c == '\\'){
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static String unescape(String pattern){
+            return pattern.indexOf('\\') == -1 ? pattern : pattern.replaceAll("\\\\(.)", "$1");
+        }
+
+        /**
+         * the gitignore glob as a regex: * and ? stop at a slash, a ** path segment spans directories.
+         * */
+        private static String toRegex(String glob){
+            StringBuilder regex = new StringBuilder();
+            int length = glob.length();
+            for (int i = 0; i < length; i++) {
+                char c = glob.charAt(i);
+                switch (c){
+                    case '*':
+                        boolean segmentStart = i == 0 || glob.charAt(i - 1) == '/';
+                        if(i + 1 < length && glob.charAt(i + 1) == '*' && segmentStart &&
+                           (i + 2 == length || glob.charAt(i + 2) == '/')){
+                            if(i + 2 == length){
+                                // a/** : everything inside a.
+                                regex.append(".*");
+                            }else{
+                                // **/b or a/**/b : zero or more directories.
+                                regex.append("(?:.*/)?");
+                                i++;
+                            }
+                            i++;
+                        }else{
+                            regex.append("[^/]*");
+                        }
+                        break;
+                    case '?':
+                        regex.append("[^/]");
+                        break;
+                    case '[':
+                        int end = glob.indexOf(']', i + 2);
+                        if(end == -1){
+                            regex.append("\\[");
+                            break;
+                        }
+                        String set = glob.substring(i + 1, end);
+                        if(set.startsWith("!")){
+                            set = "^" + set.substring(1);
+                        }
+                        regex.append('[').append(set.replace("\\", "\\\\").replace("[", "\\[")).append(']');
+                        i = end;
+                        break;
+                    case '\\':
+                        if(i + 1 < length){
+                            regex.append(Pattern.quote(String.valueOf(glob.charAt(++i))));
+                        }
+                        break;
+                    default:
+                        regex.append(Pattern.quote(String.valueOf(c)));
+                }
+            }
+            return regex.toString();
+        }
+    }
+}
@@ -0,0 +1,395 @@
+package com.github.search.utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.Semaphore;
+import java.util.function.BiConsumer;
+import java.util.function.BiPredicate;
+import java.util.function.Predicate;
+
+/**
+ * work-stealing directory walker, every sub directory becomes a fork join task.
+ * the file filter has the same contract as {@link FilterFileVisitor}, but it is
+ * called concurrently from the walker threads and must be thread safe.
+ * symbolic links are followed and directory cycles are skipped, the same as
+ * {@code Files.walkFileTree} with {@code FileVisitOption.FOLLOW_LINKS}.
+ * the canonical path of a filtered file is its name resolved against the real path of its
+ * directory, only the directories and files reached through symbolic links are resolved.
+ * the depth, exclude, ignore and file system options of the {@link WalkOptions} prune a sub tree before it is listed,
+ * the ignore files of a directory are read when its listing holds them.
+ */
+public class ParallelFileWalker implements Closeable {
+    private final ForkJoinPool forkJoinPool;
+    // limits the directory streams open at the same time.
+    private final Semaphore openDirs;
+    private final WalkOptions options;
+
+    /**
+     * @param parallelism walker threads.
+     * @param maxOpenDirs max directory streams open at the same time.
+     * */
+    public ParallelFileWalker(int parallelism, int maxOpenDirs){
+        this(new WalkOptions(parallelism, maxOpenDirs, false));
+    }
+
+    /**
+     * the parallelism, max open dirs, canonical paths, depth, exclude and file system options of the walks,
+     * the posix attributes are chosen by every walk.
+     * */
+    public ParallelFileWalker(WalkOptions options){
+        this.forkJoinPool = new ForkJoinPool(options.parallelism());
+        this.openDirs = new Semaphore(options.maxOpenDirs());
+        this.options = options;
+    }
+
+    /**
+     * walk the canonical base directory, returns the canonical path of the filtered files.
+     * */
+    public Collection<String> walk(Path baseDir, Predicate<Path> fileFilter){
+        return walk(baseDir, (path, attrs) -> fileFilter.test(path), false);
+    }
+
+    /**
+     * walk the canonical base directory, returns the canonical path of the filtered files.
+     * @param fileFilter filter on the path and the attributes read by the walk.
+     * @param posixAttributes read {@link PosixFileAttributes} instead of the basic ones, with the same single stat.
+     * */
+    public Collection<String> walk(Path baseDir, BiPredicate<Path, BasicFileAttributes> fileFilter, boolean posixAttributes){
+        return walk(baseDir, (dir, attrs) -> true, fileFilter, posixAttributes);
+    }
+
+    /**
+     * walk the canonical base directory, returns the canonical path of the filtered files.
+     * @param dirFilter called for every sub directory before it is listed, false skips the sub tree.
+     * @param fileFilter filter on the path and the attributes read by the walk.
+     * @param posixAttributes read {@link PosixFileAttributes} instead of the basic ones, with the same single stat.
+     * */
+    public Collection<String> walk(Path baseDir,
+                                   BiPredicate<Path, BasicFileAttributes> dirFilter,
+                                   BiPredicate<Path, BasicFileAttributes> fileFilter,
+                                   boolean posixAttributes){
+        ConcurrentLinkedQueue<String> filterFiles = new ConcurrentLinkedQueue<>();
+        walk(baseDir, dirFilter, fileFilter, posixAttributes, (path, attrs) -> filterFiles.add(path));
+        return Collections.unmodifiableCollection(filterFiles);
+    }
+
+    /**
+     * walk the canonical base directory, passes the canonical path and the attributes of every filtered file to the sink
+     * as soon as it is found, nothing is collected.
+     * @param sink called concurrently by the walker threads.
+     * */
+    public void walk(Path baseDir,
+                     BiPredicate<Path, BasicFileAttributes> dirFilter,
+                     BiPredicate<Path, BasicFileAttributes> fileFilter,
+                     boolean posixAttributes,
+                     BiConsumer<String, BasicFileAttributes> sink){
+        walk(baseDir, dirFilter, fileFilter, posixAttributes, null, new WalkStats(), sink);
+    }
+
+    /**
+     * walk the canonical base directory, passes the canonical path and the attributes of every filtered file to the sink
+     * as soon as it is found, nothing is collected.
+     * @param visited file keys of the directories walked and the files filtered, shared by the walks of the
+     *                overlapping roots of a search. a directory whose key is in the set is not listed again,
+     *                a filtered file whose key is in the set is not passed to the sink again, a file filter
+     *                acting on the files it rejects checks the set itself. null keeps every path, only the
+     *                directory cycles are skipped.
+     * @param stats counters of the walk, shared by the walks of a search.
+     * @param sink called concurrently by the walker threads.
+     * */
+    public void walk(Path baseDir,
+                     BiPredicate<Path, BasicFileAttributes> dirFilter,
+                     BiPredicate<Path, BasicFileAttributes> fileFilter,
+                     boolean posixAttributes,
+                     FileKeySet visited,
+                     WalkStats stats,
+                     BiConsumer<String, BasicFileAttributes> sink){
+        long startNanos = System.nanoTime();
+        BasicFileAttributes attrs;
+        try{
+            stats.statCall();
+            attrs = Files.readAttributes(baseDir, BasicFileAttributes.class);
+        }catch (IOException ioe){
+            return;
+        }
+        if(visited != null && !visited.add(attrs.fileKey())){
+            // walked from an overlapping root.
+            stats.duplicateSkipped();
+            return;
+        }
+
+        Ancestor ancestor = new Ancestor(baseDir, attrs.fileKey(), null);
+        WalkState walkState = new WalkState(dirFilter, fileFilter, posixAttributes, visited,
+                options.fileSystemCheck(baseDir, attrs), stats, sink);
+        forkJoinPool.invoke(new DirTask(baseDir, baseDir, 0, ancestor, options.ignoreRules(baseDir), walkState));
+        stats.walked(System.nanoTime() - startNanos);
+    }
+
+    @Override
+    public void close(){
+        forkJoinPool.shutdown();
+    }
+
+    private List<Path> listDir(Path dir, WalkStats stats){
+        List<Path> entries = new ArrayList<>();
+        openDirs.acquireUninterruptibly();
+        try(DirectoryStream<Path> stream = Files.newDirectoryStream(dir)){
+            for (Path entry : stream) {
+                entries.add(entry);
+            }
+            stats.dirListed();
+        }catch (IOException | RuntimeException ex){
+            // same as FilterFileVisitor.visitFileFailed: unreadable directory is skipped.
+        }finally {
+            openDirs.release();
+        }
+        return entries;
+    }
+
+    /**
+     * the attributes of the entry, of the link target for a symbolic link: the entry itself is read
+     * first, so a regular entry costs the same single stat and tells whether it is a link.
+     * */
+    private static EntryAttributes readAttributes(Path file, boolean posixAttributes, WalkStats stats){
+        stats.statCall();
+        BasicFileAttributes attrs = readFileAttributes(file, posixAttributes, LinkOption.NOFOLLOW_LINKS);
+        if(attrs == null || !attrs.isSymbolicLink()){
+            return attrs == null ? null : new EntryAttributes(attrs, false);
+        }
+        stats.statCall();
+        BasicFileAttributes targetAttrs = readFileAttributes(file, posixAttributes);
+        // broken link, visit the link itself.
+        return new EntryAttributes(targetAttrs == null ? attrs : targetAttrs, targetAttrs != null);
+    }
+
+    private static BasicFileAttributes readFileAttributes(Path file, boolean posixAttributes, LinkOption... options){
+        try{
+            if(posixAttributes){
+                try{
+                    return Files.readAttributes(file, PosixFileAttributes.class, options);
+                }catch (UnsupportedOperationException uoe){
+                    // not a posix file system.
+                }
+            }
+            return Files.readAttributes(file, BasicFileAttributes.class, options);
+        }catch (IOException ioe){
+            return null;
+        }
+    }
+
+    /**
+     * attributes of a directory entry, linked is true for a symbolic link that was followed.
+     * */
+    private static final class EntryAttributes {
+        private final BasicFileAttributes attrs;
+        private final boolean linked;
+
+        private EntryAttributes(BasicFileAttributes attrs, boolean linked) {
+            this.attrs = attrs;
+            this.linked = linked;
+        }
+    }
+
+    /**
+     * filters, sink, visited keys and real directory cache of one walk, shared by its tasks.
+     * */
+    private static final class WalkState {
+        private final BiPredicate<Path, BasicFileAttributes> dirFilter;
+        private final BiPredicate<Path, BasicFileAttributes> fileFilter;
+        private final boolean posixAttributes;
+        private final FileKeySet visited;
+        private final WalkOptions.FileSystemCheck fileSystemCheck;
+        private final WalkStats stats;
+        private final BiConsumer<String, BasicFileAttributes> sink;
+        private final RealDirCache realDirs = new RealDirCache();
+
+        private WalkState(BiPredicate<Path, BasicFileAttributes> dirFilter,
+                          BiPredicate<Path, BasicFileAttributes> fileFilter,
+                          boolean posixAttributes,
+                          FileKeySet visited,
+                          WalkOptions.FileSystemCheck fileSystemCheck,
+                          WalkStats stats,
+                          BiConsumer<String, BasicFileAttributes> sink) {
+            this.dirFilter = dirFilter;
+            this.fileFilter = fileFilter;
+            this.posixAttributes = posixAttributes;
+            this.visited = visited;
+            this.fileSystemCheck = fileSystemCheck;
+            this.stats = stats;
+            this.sink = sink;
+        }
+
+        /**
+         * false when the entry was visited before, through a link or an overlapping root.
+         * */
+        private boolean firstVisit(BasicFileAttributes attrs){
+            if(visited == null || visited.add(attrs.fileKey())){
+                return true;
+            }
+            stats.duplicateSkipped();
+            return false;
+        }
+    }
+
+    /**
+     * directory chain from the base directory, used for the cycle check.
+     * */
+    private static final class Ancestor {
+        private final Path dir;
+        private final Object fileKey;
+        private final Ancestor parent;
+
+        private Ancestor(Path dir, Object fileKey, Ancestor parent) {
+            this.dir = dir;
+            this.fileKey = fileKey;
+            this.parent = parent;
+        }
+
+        private boolean isLoop(Path entry, Object entryKey){
+            for (Ancestor ancestor = this; ancestor != null; ancestor = ancestor.parent) {
+                if(entryKey != null && ancestor.fileKey != null){
+                    if(entryKey.equals(ancestor.fileKey)){
+                        return true;
+                    }
+                }else{
+                    try{
+                        if(Files.isSameFile(entry, ancestor.dir)){
+                            return true;
+                        }
+                    }catch (IOException ioe){
+                        // ignore.
+                    }
+                }
+            }
+            return false;
+        }
+    }
+
+    private final class DirTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Path dir;
+        // real path of the directory.
+        private final Path realDir;
+        // depth of the directory, the base directory is at depth 0.
+        private final int depth;
+        private final Ancestor ancestor;
+        // ignore rules of the parent directory, null when nothing is ignored.
+        private final IgnoreRules.DirRules parentRules;
+        private final WalkState walkState;
+
+        private DirTask(Path dir, Path realDir, int depth, Ancestor ancestor, IgnoreRules.DirRules parentRules, WalkState walkState) {
+            this.dir = dir;
+            this.realDir = realDir;
+            this.depth = depth;
+            this.ancestor = ancestor;
+            this.parentRules = parentRules;
+            this.walkState = walkState;
+        }
+
+        @Override
+        protected void compute() {
+            if(options.stopped()){
+                return;
+            }
+            List<DirTask> subTasks = new ArrayList<>();
+            List<Path> entries = listDir(dir, walkState.stats);
+            IgnoreRules.DirRules rules = parentRules == null ? null : parentRules.enter(dir, entries);
+            for (Path entry : entries) {
+                if(options.stopped()){
+                    return;
+                }
+                EntryAttributes entryAttrs = readAttributes(entry, walkState.posixAttributes, walkState.stats);
+                if(entryAttrs == null){
+                    continue;
+                }
+
+                BasicFileAttributes attrs = entryAttrs.attrs;
+                if(rules != null && rules.isIgnored(entry, attrs.isDirectory())){
+                    walkState.stats.entryIgnored();
+                    continue;
+                }
+                if(attrs.isDirectory()){
+                    DirTask subTask = subTask(entry, entryAttrs, rules);
+                    if(subTask != null){
+                        subTasks.add(subTask);
+                    }
+                    continue;
+                }
+                walkState.stats.fileVisited();
+                if(walkState.fileFilter.test(entry, attrs) && walkState.firstVisit(attrs)){
+                    try{
+                        walkState.sink.accept(canonicalPath(entry, entryAttrs.linked), attrs);
+                    }catch (IOException ioe){
+                        // ignore.
+                    }
+                }
+            }
+
+            if(!subTasks.isEmpty()){
+                invokeAll(subTasks);
+            }
+        }
+
+        /**
+         * the task of a sub directory, null when its sub tree is pruned.
+         * */
+        private DirTask subTask(Path entry, EntryAttributes entryAttrs, IgnoreRules.DirRules rules){
+            // the entries of the sub directory are at depth + 2.
+            if(depth + 2 > options.maxDepth()){
+                walkState.stats.dirPruned();
+                return null;
+            }
+            BasicFileAttributes attrs = entryAttrs.attrs;
+            Path realEntry = realDir == null ? null : realDir.resolve(entry.getFileName());
+            if(entryAttrs.linked){
+                try{
+                    realEntry = walkState.realDirs.realPath(entry, attrs.fileKey());
+                }catch (IOException ioe){
+                    realEntry = null;
+                }
+            }
+            if(options.isExcluded(entry, realEntry) ||
+               walkState.fileSystemCheck != null && !walkState.fileSystemCheck.isSameFileSystem(entry, attrs)){
+                walkState.stats.dirPruned();
+                return null;
+            }
+            // the visited keys hold the ancestors, the chain is only walked for the directories without a key.
+            boolean loop = walkState.visited == null || attrs.fileKey() == null ?
+                    ancestor.isLoop(entry, attrs.fileKey()) : !walkState.visited.add(attrs.fileKey());
+            if(loop){
+                walkState.stats.duplicateSkipped();
+                return null;
+            }
+            if(!walkState.dirFilter.test(entry, attrs)){
+                return null;
+            }
+            return new DirTask(entry, realEntry, depth + 1, new Ancestor(entry, attrs.fileKey(), ancestor), rules, walkState);
+        }
+
+        private String canonicalPath(Path file, boolean linked) throws IOException {
+            if(options.canonicalPaths() || realDir == null){
+                walkState.stats.statCall();
+                return file.toFile().getCanonicalPath();
+            }
+            if(linked){
+                walkState.stats.statCall();
+                return file.toRealPath().toString();
+            }
+            return realDir.resolve(file.getFileName()).toString();
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.github.search.utils;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * real paths of the directories reached through symbolic links during one walk, keyed by file key,
+ * so every linked directory is resolved once however many links point to it.
+ */
+final class RealDirCache {
+    private final Map<Object, Path> realDirs = new ConcurrentHashMap<>();
+
+    /**
+     * @param linkedDir a symbolic link to a directory, or a path through one.
+     * @param fileKey file key of the directory, null when the file system has none.
+     * */
+    Path realPath(Path linkedDir, Object fileKey) throws IOException {
+        if(fileKey == null){
+            return linkedDir.toRealPath();
+        }
+        Path realDir = realDirs.get(fileKey);
+        if(realDir == null){
+            realDir = linkedDir.toRealPath();
+            realDirs.put(fileKey, realDir);
+        }
+        return realDir;
+    }
+}
@@ -0,0 +1,320 @@
+package com.github.search.utils;
+
+/**
+ * the longest literal every match of a pattern contains, so the texts without it are rejected by a
+ * substring scan before the pattern runs. the analysis is conservative: an alternation at the top level,
+ * a case insensitive or comments flag, or a pattern without a mandatory literal gives null.
+ */
+public final class RequiredLiterals {
+    private RequiredLiterals(){
+        // no instance.
+    }
+
+    /**
+     * the required literal of a valid java regex, null if there is none.
+     * groups, classes, escapes of character sets and anchors end a literal, an optional atom is dropped.
+     * */
+    public static String ofRegex(String regex){
+        Runs runs = new Runs();
+        int i = 0;
+        int length = regex.length();
+        while (i < length){
+            char c = regex.charAt(i);
+            switch (c){
+                case '|':
+                    // alternatives at the top level have no common literal.
+                    return null;
+                case '(':
+                    if(regex.startsWith("(?", i) && hasCaseOrCommentsFlag(regex, i + 2)){
+                        return null;
+                    }
+                    i = quantified(regex, skipGroup(regex, i), runs, false);
+                    break;
+                case '[':
+                    i = quantified(regex, skipClass(regex, i), runs, false);
+                    break;
+                case '.':
+                case '^':
+                case '$':
+                    i = quantified(regex, i + 1, runs, false);
+                    break;
+                case '\\':
+                    i = escape(regex, i + 1, runs);
+                    break;
+                default:
+                    int charLength = Character.charCount(regex.codePointAt(i));
+                    runs.append(regex, i, i + charLength);
+                    i = quantified(regex, i + charLength, runs, true);
+            }
+        }
+        return runs.longest();
+    }
+
+    /**
+     * the required literal of a glob, null if there is none.
+     * wildcards, bracket expressions and groups of sub patterns end a literal.
+     * */
+    public static String ofGlob(String glob){
+        Runs runs = new Runs();
+        int i = 0;
+        int length = glob.length();
+        while (i < length){
+            char c = glob.charAt(i);
+            switch (c){
+                case '*':
+                case '?':
+                    runs.end();
+                    i++;
+                    break;
+                case '[':
+                    runs.end();
+                    i = skipTo(glob, i + 1, ']');
+                    break;
+                case '{':
+                    runs.end();
+                    i = skipTo(glob, i + 1, '}');
+                    break;
+                case '\\':
+                    if(i + 1 < length){
+                        runs.append(glob, i + 1, i + 2);
+                    }
+                    i += 2;
+                    break;
+                default:
+                    runs.append(glob, i, i + 1);
+                    i++;
+            }
+        }
+        return runs.longest();
+    }
+
+    /**
+     * the index after a quantifier of the atom that ends before i, an optional literal atom is removed
+     * from the run, any quantified or non literal atom ends the run.
+     * */
+    private static int quantified(String regex, int i, Runs runs, boolean literalAtom){
+        if(i >= regex.length()){
+            if(!literalAtom){
+                runs.end();
+            }
+            return i;
+        }
+        char c = regex.charAt(i);
+        int next;
+        boolean optional;
+        if(c == '?' || c == '*'){
+            optional = true;
+            next = i + 1;
+        }else if(c == '+'){
+            optional = false;
+            next = i + 1;
+        }else if(c == '{'){
+            int close = regex.indexOf('}', i);
+            String min = regex.substring(i + 1, close).split(",", -1)[0].trim();
+            optional = Integer.parseInt(min) == 0;
+            next = close + 1;
+        }else{
+            if(!literalAtom){
+                runs.end();
+            }
+            return i;
+        }
+        if(optional && literalAtom){
+            runs.dropLast();
+        }
+        runs.end();
+        // lazy or possessive quantifier.
+        if(next < regex.length() && (regex.charAt(next) == '?' || regex.charAt(next) == '+')){
+            next++;
+        }
+        return next;
+    }
+
+    /**
+     * an escape after the backslash at i - 1, returns the index after it.
+     * */
+    private static int escape(String regex, int i, Runs runs){
+        if(i >= regex.length()){
+            return i;
+        }
+        char c = regex.charAt(i);
+        if(c == 'Q'){
+            // quoted literal up to \E, a quantifier after it applies to the last quoted char.
+            int end = regex.indexOf("\\E", i + 1);
+            int quoteEnd = end == -1 ? regex.length() : end;
+            if(quoteEnd == i + 1){
+                return end == -1 ? quoteEnd : end + 2;
+            }
+            runs.append(regex, i + 1, quoteEnd);
+            return end == -1 ? quoteEnd : quantified(regex, end + 2, runs, true);
+        }
+        if(c == 'E'){
+            return i + 1;
+        }
+        if(!Character.isLetterOrDigit(c)){
+            // an escaped meta character is the literal.
+            int charLength = Character.charCount(regex.codePointAt(i));
+            runs.append(regex, i, i + charLength);
+            return quantified(regex, i + charLength, runs, true);
+        }
+        int next = i + 1;
+        switch (c){
+            case 'x':
+                next = next < regex.length() && regex.charAt(next) == '{' ? skipTo(regex, next + 1, '}') : next + 2;
+                break;
+            case 'u':
+                next += 4;
+                break;
+            case '0':
+                while (next < regex.length() && next < i + 4 && regex.charAt(next) >= '0' && regex.charAt(next) <= '7'){
+                    next++;
+                }
+                break;
+            case 'c':
+                next++;
+                break;
+            case 'k':
+                next = skipTo(regex, next + 1, '>');
+                break;
+            case 'p':
+            case 'P':
+            case 'N':
+                next = next < regex.length() && regex.charAt(next) == '{' ? skipTo(regex, next + 1, '}') : next + 1;
+                break;
+            default:
+                // back references take all the digits.
+                if(Character.isDigit(c)){
+                    while (next < regex.length() && Character.isDigit(regex.charAt(next))){
+                        next++;
+                    }
+                }
+        }
+        // \t, \n and the other control escapes are single chars, but a set or an anchor is not, both end the run.
+        return quantified(regex, Math.min(next, regex.length()), runs, false);
+    }
+
+    private static boolean hasCaseOrCommentsFlag(String regex, int i){
+        for (int j = i; j < regex.length(); j++) {
+            char c = regex.charAt(j);
+            if(c == 'i' || c == 'x'){
+                return true;
+            }
+            if(c == '-' || c == ':' || c == ')' || !Character.isLetter(c)){
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * the index after the group that starts at i.
+     * */
+    private static int skipGroup(String regex, int i){
+        int depth = 0;
+        int j = i;
+        while (j < regex.length()){
+            char c = regex.charAt(j);
+            if(c == '\\'){
+                j = skipEscape(regex, j);
+                continue;
+            }
+            if(c == '['){
+                j = skipClass(regex, j);
+                continue;
+            }
+            if(c == '('){
+                depth++;
+            }else if(c == ')'){
+                depth--;
+                if(depth == 0){
+                    return j + 1;
+                }
+            }
+            j++;
+        }
+        return j;
+    }
+
+    /**
+     * the index after the character class that starts at i.
+     * */
+    private static int skipClass(String regex, int i){
+        int depth = 0;
+        int j = i;
+        while (j < regex.length()){
+            char c = regex.charAt(j);
+            if(c == '\\'){
+                j = skipEscape(regex, j);
+                continue;
+            }
+            if(c == '['){
+                depth++;
+                j++;
+                // a ] first in the class is a member.
+                if(j < regex.length() && regex.charAt(j) == '^'){
+                    j++;
+                }
+                if(j < regex.length() && regex.charAt(j) == ']'){
+                    j++;
+                }
+                continue;
+            }
+            if(c == ']'){
+                depth--;
+                if(depth == 0){
+                    return j + 1;
+                }
+            }
+            j++;
+        }
+        return j;
+    }
+
+    /**
+     * the index after the escape that starts with the backslash at i, \Q quotes to \E.
+     * */
+    private static int skipEscape(String regex, int i){
+        if(regex.startsWith("\\Q", i)){
+            int end = regex.indexOf("\\E", i + 2);
+            return end == -1 ? regex.length() : end + 2;
+        }
+        return Math.min(i + 2, regex.length());
+    }
+
+    private static int skipTo(String s, int i, char close){
+        int end = s.indexOf(close, i);
+        return end == -1 ? s.length() : end + 1;
+    }
+
+    /**
+     * the literal runs of a pattern, only the longest is kept.
+     * */
+    private static final class Runs {
+        private final StringBuilder run = new StringBuilder();
+        private String longest;
+
+        private void append(String s, int from, int to){
+            run.append(s, from, to);
+        }
+
+        private void dropLast(){
+            if(run.length() > 0){
+                int last = run.length() - 1;
+                run.setLength(last > 0 && Character.isLowSurrogate(run.charAt(last)) &&
+                        Character.isHighSurrogate(run.charAt(last - 1)) ? last - 1 : last);
+            }
+        }
+
+        private void end(){
+            if(run.length() > 0 && (longest == null || run.length() > longest.length())){
+                longest = run.toString();
+            }
+            run.setLength(0);
+        }
+
+        private String longest(){
+            end();
+            return longest;
+        }
+    }
+}
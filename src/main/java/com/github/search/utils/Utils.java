@@ -1,12 +1,20 @@
 package com.github.search.utils;
 
+import com.github.search.content.AhoCorasick;
+import com.github.search.content.LineMatchListener;
+import com.github.search.content.MatchLimits;
+
 import java.io.*;
 import java.nio.charset.Charset;
 import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.BiPredicate;
+import java.util.function.Consumer;
 import java.util.function.Predicate;
 
 public final class Utils {
@@ -44,32 +52,94 @@ public final class Utils {
      * directory file scan on file filter.
      * */
     public static Collection<String> dirFileScan(File baseDir, Predicate<Path> fileFilter){
-        if(!baseDir.exists()){
-            throw new IllegalArgumentException(
-                    String.format("the directory %s does not exist.",baseDir)
-            );
-        }
+        return dirFileScan(baseDir, (path, attrs) -> fileFilter.test(path), 1, 1, false);
+    }
 
-        if(!baseDir.isDirectory()){
-            throw new IllegalArgumentException(
-                    String.format("the %s is not a directory.",baseDir)
-            );
+    /**
+     * parallel directory file scan on file filter, the file filter must be thread safe.
+     * @param parallelism walker threads, 1 falls back to the single thread scan.
+     * @param maxOpenDirs max directory streams open at the same time.
+     * */
+    public static Collection<String> dirFileScan(File baseDir, Predicate<Path> fileFilter, int parallelism, int maxOpenDirs){
+        return dirFileScan(baseDir, (path, attrs) -> fileFilter.test(path), parallelism, maxOpenDirs, false);
+    }
+
+    /**
+     * directory file scan on file attributes filter, the attributes are the ones read by the walk,
+     * so filtering on size, modified time or permissions needs no more syscalls.
+     * @param parallelism walker threads, 1 is the single thread scan, unless the walk reads the posix attributes.
+     * @param maxOpenDirs max directory streams open at the same time.
+     * @param posixAttributes pass {@link java.nio.file.attribute.PosixFileAttributes} to the filter.
+     * */
+    public static Collection<String> dirFileScan(File baseDir,
+                                                 BiPredicate<Path, BasicFileAttributes> fileFilter,
+                                                 int parallelism,
+                                                 int maxOpenDirs,
+                                                 boolean posixAttributes){
+        Collection<String> filterFiles = parallelism > 1 ? new ConcurrentLinkedQueue<>() : new LinkedList<>();
+        dirFileScan(baseDir, fileFilter, new WalkOptions(parallelism, maxOpenDirs, posixAttributes), null, new WalkStats(), (path, attrs) -> filterFiles.add(path));
+        return Collections.unmodifiableCollection(filterFiles);
+    }
+
+    /**
+     * streaming directory file scan: the canonical path and the attributes of every filtered file are passed to the sink
+     * as soon as it is found, so memory stays flat whatever the number of files.
+     * @param options parallelism, depth, exclude and file system options of the walk.
+     * @param visited file keys already walked, shared by the scans of the dirs of one search so a file
+     *                reached through a link or an overlapping root is passed to the sink once, see
+     *                {@link ParallelFileWalker#walk(Path, BiPredicate, BiPredicate, boolean, FileKeySet, WalkStats, BiConsumer)}.
+     *                null keeps every path.
+     * @param stats counters of the walk, shared by the scans of one search.
+     * @param sink called concurrently by the walker threads when parallelism is more than 1.
+     * */
+    public static void dirFileScan(File baseDir,
+                                   BiPredicate<Path, BasicFileAttributes> fileFilter,
+                                   WalkOptions options,
+                                   FileKeySet visited,
+                                   WalkStats stats,
+                                   BiConsumer<String, BasicFileAttributes> sink){
+        checkBaseDir(baseDir);
+
+        // Files.walkFileTree reads the basic attributes only, the posix ones would cost a second stat per file.
+        if(options.parallelism() > 1 || options.posixAttributes()){
+            try(ParallelFileWalker fileWalker = new ParallelFileWalker(options)){
+                fileWalker.walk(Paths.get(baseDir.getCanonicalPath()), (dir, attrs) -> true, fileFilter,
+                        options.posixAttributes(), visited, stats, sink);
+            }catch (Exception ex){
+                String errorMsg = stackTrace(ex);
+                System.err.println(errorMsg);
+            }
+            return;
         }
 
-        FilterFileVisitor fileVisitor = new FilterFileVisitor(fileFilter);
+        FilterFileVisitor fileVisitor = new FilterFileVisitor(fileFilter, options, visited, stats, sink);
+        long startNanos = System.nanoTime();
         try{
             Files.walkFileTree(
                     Paths.get(baseDir.getCanonicalPath()),
-                    EnumSet.of(FileVisitOption.FOLLOW_LINKS),
-                    Integer.MAX_VALUE,
+                    EnumSet.noneOf(FileVisitOption.class),
+                    options.maxDepth(),
                     fileVisitor
                     );
         }catch (Exception ex){
             String errorMsg = stackTrace(ex);
             System.err.println(errorMsg);
         }
+        stats.walked(System.nanoTime() - startNanos);
+    }
 
-        return fileVisitor.getFilterFiles();
+    private static void checkBaseDir(File baseDir){
+        if(!baseDir.exists()){
+            throw new IllegalArgumentException(
+                    String.format("the directory %s does not exist.",baseDir)
+            );
+        }
+
+        if(!baseDir.isDirectory()){
+            throw new IllegalArgumentException(
+                    String.format("the %s is not a directory.",baseDir)
+            );
+        }
     }
 
     /**
@@ -140,29 +210,89 @@ public final class Utils {
     }
 
     public static boolean readAndLineMatch(File file, Charset charset,List<String> fileContentWordsList) throws IOException{
+        return readAndLineMatch(file, charset, AhoCorasick.compile(fileContentWordsList));
+    }
+
+    /**
+     * match every line against all the words of the automaton in one pass,
+     * prints a match message for every word found in a line.
+     * */
+    public static boolean readAndLineMatch(File file, Charset charset, AhoCorasick wordsMatcher) throws IOException{
+        return readAndLineMatch(file, charset, wordsMatcher, System.out::println);
+    }
+
+    /**
+     * match every line against all the words of the automaton in one pass,
+     * passes a match message to the consumer for every word found in a line.
+     * */
+    public static boolean readAndLineMatch(File file, Charset charset, AhoCorasick wordsMatcher,
+                                           Consumer<String> matchConsumer) throws IOException{
+        return readAndLineMatch(file, charset, wordsMatcher, MatchLimits.NONE.file(), matchConsumer);
+    }
+
+    /**
+     * match every line against all the words of the automaton in one pass, until the file limit
+     * takes no more lines, passes a match message to the consumer for every word found in a taken line.
+     * */
+    public static boolean readAndLineMatch(File file, Charset charset, AhoCorasick wordsMatcher,
+                                           MatchLimits.FileLimit fileLimit, Consumer<String> matchConsumer) throws IOException{
+        return readAndLineMatch(file, charset, wordsMatcher, fileLimit,
+                (lineNum, line, word) -> matchConsumer.accept(String.format("match:%s,%s,[ %s ]",file,lineNum,line)));
+    }
+
+    /**
+     * match every line against all the words of the automaton in one pass, until the file limit
+     * takes no more lines, passes every word found in a taken line to the listener.
+     * */
+    public static boolean readAndLineMatch(File file, Charset charset, AhoCorasick wordsMatcher,
+                                           MatchLimits.FileLimit fileLimit, LineMatchListener listener) throws IOException{
         BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), charset));
-        boolean matchLineSuccess = false;
         try {
-            int lineNum = 0;
-            for (;;) {
-                String line = reader.readLine();
-                if (line == null){
-                    break;
-                }else{
-                    lineNum++;
-                    for (String s : fileContentWordsList) {
-                        if(line.contains(s)){
-                            String matchMessage = String.format("match:%s,%s,[ %s ]",file,lineNum,line);
-                            System.out.println(matchMessage);
-                            matchLineSuccess = true;
-                        }
-                    }
-                }
-            }
+            return readerLineMatch(reader, wordsMatcher, fileLimit, listener);
         }
         finally {
             reader.close();
         }
+    }
+
+    /**
+     * {@link #readAndLineMatch(File, Charset, AhoCorasick, MatchLimits.FileLimit, Consumer)} on the lines of the
+     * reader, a decompressed archive entry for instance, the reader is not closed.
+     * @param source the file named in the match messages.
+     * */
+    public static boolean readerLineMatch(Object source, BufferedReader reader, AhoCorasick wordsMatcher,
+                                          MatchLimits.FileLimit fileLimit, Consumer<String> matchConsumer) throws IOException{
+        return readerLineMatch(reader, wordsMatcher, fileLimit,
+                (lineNum, line, word) -> matchConsumer.accept(String.format("match:%s,%s,[ %s ]",source,lineNum,line)));
+    }
+
+    /**
+     * {@link #readAndLineMatch(File, Charset, AhoCorasick, MatchLimits.FileLimit, LineMatchListener)} on the lines
+     * of the reader, the reader is not closed.
+     * */
+    public static boolean readerLineMatch(BufferedReader reader, AhoCorasick wordsMatcher,
+                                          MatchLimits.FileLimit fileLimit, LineMatchListener listener) throws IOException{
+        boolean matchLineSuccess = false;
+        int lineNum = 0;
+        for (;;) {
+            String line = reader.readLine();
+            if (line == null || !fileLimit.more()){
+                break;
+            }else{
+                lineNum++;
+                // one pass finds the words, a line without any allocates nothing.
+                Map<String, List<Integer>> matchedWords = wordsMatcher.matchedWords(line);
+                if(!matchedWords.isEmpty()){
+                    if(!fileLimit.tryLine()){
+                        break;
+                    }
+                    for (String word : matchedWords.keySet()) {
+                        listener.onMatch(lineNum, line, word);
+                    }
+                    matchLineSuccess = true;
+                }
+            }
+        }
 
         return matchLineSuccess;
     }
@@ -189,31 +319,19 @@ public final class Utils {
         return threadPool;
     }
 
-    public static Runnable fileContentWordsSearchTask(ConcurrentLinkedQueue<File> filesQueue,
-                                                     List<String> fileContentWordsList){
-        return new Runnable() {
-            @Override
-            public void run() {
-                while(true){
-                    File file = filesQueue.poll();
-                    if(file != null){
-                        try {
-                            boolean matchLineSuccess = Utils.readAndLineMatch(
-                                    file,
-                                    Charset.defaultCharset(),
-                                    fileContentWordsList);
-                            if(matchLineSuccess){
-                                System.out.println("match,thread:" + Thread.currentThread().getId() + ",file:" + file.getName());
-                            }
-                        } catch (IOException e) {
-                            // ignore
-                        }
-                    }else{
-                        sleepQuietly(100);
-                    }
-                }
-            }
-        };
+    /**
+     * pool without a queue or thread limit, for long-lived processes that run tasks needing a thread each.
+     * */
+    public static ThreadPoolExecutor newUnboundedThreadPool(String name,long keepAliveTime){
+        ThreadPoolExecutor threadPool = new ThreadPoolExecutor(
+                0,
+                Integer.MAX_VALUE,
+                keepAliveTime,
+                TimeUnit.SECONDS,
+                new SynchronousQueue<>(),
+                new NamedThreadFactory(name,true));
+
+        return threadPool;
     }
 
     private static class NamedThreadFactory implements ThreadFactory{
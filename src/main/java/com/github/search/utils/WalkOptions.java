@@ -0,0 +1,262 @@
+package com.github.search.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiPredicate;
+import java.util.function.BooleanSupplier;
+
+/**
+ * the options of a directory walk, shared by {@link ParallelFileWalker} and {@link FilterFileVisitor}.
+ * the depth, exclude, ignore and file system options prune a whole sub tree before it is listed,
+ * the stop condition ends the walk early, the entries listed already are still filtered.
+ */
+public final class WalkOptions {
+    private final int parallelism;
+    private final int maxOpenDirs;
+    private final boolean posixAttributes;
+    private final boolean canonicalPaths;
+    private final int maxDepth;
+    private final boolean sameFileSystem;
+    private final Set<String> excludeNames = new HashSet<>();
+    private final Set<Path> excludePaths = new HashSet<>();
+    private final BooleanSupplier stopCondition;
+    private final IgnoreRules ignoreRules;
+
+    /**
+     * @param parallelism walker threads, 1 is the single thread walk.
+     * @param maxOpenDirs max directory streams open at the same time.
+     * @param posixAttributes read {@link java.nio.file.attribute.PosixFileAttributes} instead of the basic ones.
+     * */
+    public WalkOptions(int parallelism, int maxOpenDirs, boolean posixAttributes){
+        this(parallelism, maxOpenDirs, posixAttributes, false, Integer.MAX_VALUE, false, Collections.emptyList());
+    }
+
+    /**
+     * @param parallelism walker threads, 1 is the single thread walk.
+     * @param maxOpenDirs max directory streams open at the same time.
+     * @param posixAttributes read {@link java.nio.file.attribute.PosixFileAttributes} instead of the basic ones.
+     * @param canonicalPaths canonicalize every filtered file with {@link File#getCanonicalPath()}
+     *                       instead of resolving it against its real directory.
+     * @param maxDepth max depth of the visited entries, the entries of the base directory are at depth 1.
+     * @param sameFileSystem do not descend into the directories on another file system than the base directory.
+     * @param excludeDirs directory names, or directory paths when they hold a separator, whose sub tree is skipped.
+     * */
+    public WalkOptions(int parallelism,
+                       int maxOpenDirs,
+                       boolean posixAttributes,
+                       boolean canonicalPaths,
+                       int maxDepth,
+                       boolean sameFileSystem,
+                       Collection<String> excludeDirs){
+        this(parallelism, maxOpenDirs, posixAttributes, canonicalPaths, maxDepth, sameFileSystem, excludeDirs, () -> false);
+    }
+
+    /**
+     * @param stopCondition checked by the walker threads before every directory and entry, true stops the walk.
+     * @see #WalkOptions(int, int, boolean, boolean, int, boolean, Collection)
+     * */
+    public WalkOptions(int parallelism,
+                       int maxOpenDirs,
+                       boolean posixAttributes,
+                       boolean canonicalPaths,
+                       int maxDepth,
+                       boolean sameFileSystem,
+                       Collection<String> excludeDirs,
+                       BooleanSupplier stopCondition){
+        this(parallelism, maxOpenDirs, posixAttributes, canonicalPaths, maxDepth, sameFileSystem, excludeDirs, stopCondition,
+                IgnoreRules.NONE);
+    }
+
+    /**
+     * @param ignoreRules the exclude globs, ignore files, version control and hidden entries skipped by the walks.
+     * @see #WalkOptions(int, int, boolean, boolean, int, boolean, Collection, BooleanSupplier)
+     * */
+    public WalkOptions(int parallelism,
+                       int maxOpenDirs,
+                       boolean posixAttributes,
+                       boolean canonicalPaths,
+                       int maxDepth,
+                       boolean sameFileSystem,
+                       Collection<String> excludeDirs,
+                       BooleanSupplier stopCondition,
+                       IgnoreRules ignoreRules){
+        if(parallelism <= 0){
+            throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+        }
+        if(maxOpenDirs <= 0){
+            throw new IllegalArgumentException("maxOpenDirs must be positive: " + maxOpenDirs);
+        }
+        if(maxDepth <= 0){
+            throw new IllegalArgumentException("maxDepth must be positive: " + maxDepth);
+        }
+        this.parallelism = parallelism;
+        this.maxOpenDirs = maxOpenDirs;
+        this.posixAttributes = posixAttributes;
+        this.canonicalPaths = canonicalPaths;
+        this.maxDepth = maxDepth;
+        this.sameFileSystem = sameFileSystem;
+        this.stopCondition = stopCondition;
+        this.ignoreRules = ignoreRules;
+        for (String excludeDir : excludeDirs) {
+            if(excludeDir.indexOf('/') != -1 || excludeDir.indexOf(File.separatorChar) != -1){
+                excludePaths.add(canonicalPath(excludeDir));
+            }else{
+                excludeNames.add(excludeDir);
+            }
+        }
+    }
+
+    public int parallelism() {
+        return parallelism;
+    }
+
+    public int maxOpenDirs() {
+        return maxOpenDirs;
+    }
+
+    public boolean posixAttributes() {
+        return posixAttributes;
+    }
+
+    public boolean canonicalPaths() {
+        return canonicalPaths;
+    }
+
+    public int maxDepth() {
+        return maxDepth;
+    }
+
+    public boolean sameFileSystem() {
+        return sameFileSystem;
+    }
+
+    /**
+     * true once the walk must stop.
+     * */
+    public boolean stopped() {
+        return stopCondition.getAsBoolean();
+    }
+
+    /**
+     * the ignore rules of a walk from the base directory, null when nothing is ignored.
+     * */
+    public IgnoreRules.DirRules ignoreRules(Path baseDir){
+        return ignoreRules.root(baseDir);
+    }
+
+    /**
+     * true when the sub tree of the directory is skipped by the exclude dirs.
+     * @param dir the directory as walked.
+     * @param realDir real path of the directory, null when unknown.
+     * */
+    public boolean isExcluded(Path dir, Path realDir){
+        Path name = dir.getFileName();
+        if(name != null && excludeNames.contains(name.toString())){
+            return true;
+        }
+        return !excludePaths.isEmpty() && excludePaths.contains(realDir == null ? dir : realDir);
+    }
+
+    /**
+     * the depth, exclude dirs and ignore options as a filter on the files under the root, for the files
+     * answered from an index instead of a walk, the file system option needs the walk.
+     * the ignore files are read once per directory.
+     * */
+    public BiPredicate<Path, BasicFileAttributes> pathFilter(Path root){
+        IgnoreRules.DirRules rootRules = ignoreRules.root(root);
+        if(maxDepth == Integer.MAX_VALUE && excludeNames.isEmpty() && excludePaths.isEmpty() && rootRules == null){
+            return (file, attrs) -> true;
+        }
+        Map<Path, IgnoreRules.DirRules> dirRules = new ConcurrentHashMap<>();
+        return (file, attrs) -> {
+            Path relativePath = root.relativize(file);
+            int depth = relativePath.getNameCount();
+            if(depth > maxDepth){
+                return false;
+            }
+            Path dir = root;
+            IgnoreRules.DirRules rules = rootRules == null ? null : enter(dirRules, rootRules, root);
+            for (int i = 0; i < depth - 1; i++) {
+                dir = dir.resolve(relativePath.getName(i));
+                if(isExcluded(dir, dir)){
+                    return false;
+                }
+                if(rules != null){
+                    if(rules.isIgnored(dir, true)){
+                        return false;
+                    }
+                    rules = enter(dirRules, rules, dir);
+                }
+            }
+            return rules == null || !rules.isIgnored(file, false);
+        };
+    }
+
+    private static IgnoreRules.DirRules enter(Map<Path, IgnoreRules.DirRules> dirRules, IgnoreRules.DirRules parentRules, Path dir){
+        IgnoreRules.DirRules rules = dirRules.get(dir);
+        if(rules == null){
+            rules = parentRules.enter(dir);
+            IgnoreRules.DirRules raced = dirRules.putIfAbsent(dir, rules);
+            if(raced != null){
+                rules = raced;
+            }
+        }
+        return rules;
+    }
+
+    /**
+     * the file system check of the walks from a base directory.
+     * */
+    FileSystemCheck fileSystemCheck(Path baseDir, BasicFileAttributes baseAttrs){
+        return sameFileSystem ? new FileSystemCheck(baseDir, baseAttrs) : null;
+    }
+
+    private static Path canonicalPath(String dir){
+        try{
+            return Paths.get(new File(dir).getCanonicalPath());
+        }catch (IOException ioe){
+            return Paths.get(dir).toAbsolutePath().normalize();
+        }
+    }
+
+    /**
+     * tells whether a directory is on the file system of the base directory, from the device of the
+     * unix file keys, or from the file stores when the file keys have no device.
+     * */
+    static final class FileSystemCheck {
+        private final long device;
+        private final FileStore fileStore;
+
+        private FileSystemCheck(Path baseDir, BasicFileAttributes baseAttrs){
+            this.device = FileKeySet.device(baseAttrs.fileKey());
+            this.fileStore = device == -1 ? fileStore(baseDir) : null;
+        }
+
+        boolean isSameFileSystem(Path dir, BasicFileAttributes attrs){
+            if(device != -1){
+                long dirDevice = FileKeySet.device(attrs.fileKey());
+                return dirDevice == -1 || dirDevice == device;
+            }
+            return fileStore == null || fileStore.equals(fileStore(dir));
+        }
+
+        private static FileStore fileStore(Path path){
+            try{
+                return Files.getFileStore(path);
+            }catch (IOException ioe){
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.github.search.utils;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * counters of the directory walks of one search, updated concurrently by the walker threads.
+ */
+public final class WalkStats {
+    private final LongAdder dirsListed = new LongAdder();
+    private final LongAdder filesVisited = new LongAdder();
+    private final LongAdder statCalls = new LongAdder();
+    private final LongAdder duplicatesSkipped = new LongAdder();
+    private final LongAdder dirsPruned = new LongAdder();
+    private final LongAdder entriesIgnored = new LongAdder();
+    private final LongAdder walkNanos = new LongAdder();
+
+    void dirListed(){
+        dirsListed.increment();
+    }
+
+    void fileVisited(){
+        filesVisited.increment();
+    }
+
+    void statCall(){
+        statCalls.increment();
+    }
+
+    void duplicateSkipped(){
+        duplicatesSkipped.increment();
+    }
+
+    void dirPruned(){
+        dirsPruned.increment();
+    }
+
+    void entryIgnored(){
+        entriesIgnored.increment();
+    }
+
+    void walked(long nanos){
+        walkNanos.add(nanos);
+    }
+
+    /**
+     * directories whose entries were read.
+     * */
+    public long dirsListed() {
+        return dirsListed.sum();
+    }
+
+    /**
+     * non directory entries reached by the walks, before the filter.
+     * */
+    public long filesVisited() {
+        return filesVisited.sum();
+    }
+
+    /**
+     * stat, lstat and path resolution calls made for the entries.
+     * */
+    public long statCalls() {
+        return statCalls.sum();
+    }
+
+    /**
+     * directories and filtered files skipped because they were reached before, directory cycles included.
+     * */
+    public long duplicatesSkipped() {
+        return duplicatesSkipped.sum();
+    }
+
+    /**
+     * directories skipped by the depth, exclude and file system options.
+     * */
+    public long dirsPruned() {
+        return dirsPruned.sum();
+    }
+
+    /**
+     * files and directories skipped by the ignore rules, an ignored directory counts once for its sub tree.
+     * */
+    public long entriesIgnored() {
+        return entriesIgnored.sum();
+    }
+
+    /**
+     * wall time of the walks.
+     * */
+    public long walkNanos() {
+        return walkNanos.sum();
+    }
+}
@@ -0,0 +1,102 @@
+package com.github.search.content;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * the char and byte automatons of {@link AhoCorasick}.
+ */
+public class AhoCorasickTest {
+
+    @Test
+    public void findAllReportsOverlappingWordsByEndOffset(){
+        AhoCorasick matcher = AhoCorasick.compile(Arrays.asList("he", "she", "his", "hers"));
+
+        assertEquals("[she@1, he@2, hers@2]", matcher.findAll("ushers").toString());
+        assertEquals("[his@1, she@3, he@4]", matcher.findAll("ahishe").toString());
+        assertTrue(matcher.findAll("nothing").isEmpty());
+    }
+
+    @Test
+    public void findAllReportsEveryOccurrence(){
+        AhoCorasick matcher = AhoCorasick.compile(Arrays.asList("aa", "a"));
+
+        assertEquals("[a@0, aa@0, a@1, aa@1, a@2]", matcher.findAll("aaa").toString());
+    }
+
+    @Test
+    public void containsAnyStopsAtTheFirstMatch(){
+        AhoCorasick matcher = AhoCorasick.compile(Arrays.asList("error", "timeout"));
+
+        assertTrue(matcher.containsAny("connect timeout after 3s"));
+        assertTrue(matcher.containsAny("error"));
+        assertFalse(matcher.containsAny("erro timeou"));
+        assertFalse(matcher.containsAny(""));
+    }
+
+    @Test
+    public void matchedWordsAreInWordListOrder(){
+        AhoCorasick matcher = AhoCorasick.compile(Arrays.asList("timeout", "error"));
+
+        Map<String, List<Integer>> matched = matcher.matchedWords("error, timeout, error");
+        assertEquals(Arrays.asList("timeout", "error"), new ArrayList<>(matched.keySet()));
+        assertEquals(Collections.singletonList(7), matched.get("timeout"));
+        assertEquals(Arrays.asList(0, 16), matched.get("error"));
+        assertTrue(matcher.matchedWords("none").isEmpty());
+    }
+
+    @Test
+    public void byteScanMatchesTheEncodedWords(){
+        List<String> words = Arrays.asList("超时", "error");
+        AhoCorasick matcher = AhoCorasick.compile(words, StandardCharsets.UTF_8);
+        byte[] text = "x 超时 error 超时".getBytes(StandardCharsets.UTF_8);
+
+        List<String> matches = new ArrayList<>();
+        matcher.scan(ByteBuffer.wrap(text), 0, text.length, (wordIndex, start, end) -> {
+            matches.add(words.get(wordIndex) + "@" + start + "-" + end);
+            return true;
+        });
+        assertEquals(Arrays.asList("超时@2-8", "error@9-14", "超时@15-21"), matches);
+    }
+
+    @Test
+    public void byteScanStaysInTheRangeAndStopsOnFalse(){
+        List<String> words = Arrays.asList("ab", "b");
+        AhoCorasick matcher = AhoCorasick.compile(words, StandardCharsets.US_ASCII);
+        byte[] text = "abab".getBytes(StandardCharsets.US_ASCII);
+
+        List<String> matches = new ArrayList<>();
+        matcher.scan(ByteBuffer.wrap(text), 1, 4, (wordIndex, start, end) -> {
+            matches.add(words.get(wordIndex) + "@" + start);
+            return true;
+        });
+        assertEquals(Arrays.asList("b@1", "ab@2", "b@3"), matches);
+
+        matches.clear();
+        matcher.scan(ByteBuffer.wrap(text), 0, 4, (wordIndex, start, end) -> {
+            matches.add(words.get(wordIndex) + "@" + start);
+            return false;
+        });
+        assertEquals(Collections.singletonList("ab@0"), matches);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void emptyWordIsRejected(){
+        AhoCorasick.compile(Arrays.asList("error", ""));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void byteScanNeedsAByteAutomaton(){
+        byte[] text = "error".getBytes(StandardCharsets.US_ASCII);
+        AhoCorasick.compile(Collections.singletonList("error")).scan(ByteBuffer.wrap(text), 0, text.length, (wordIndex, start, end) -> true);
+    }
+}
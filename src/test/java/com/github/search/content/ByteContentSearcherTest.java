@@ -0,0 +1,180 @@
+package com.github.search.content;
+
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * the line numbers, line texts and byte offsets of {@link ByteContentSearcher} are the same for a streamed,
+ * a mapped and a chunked search, around the 32 MiB chunk boundaries.
+ */
+public class ByteContentSearcherTest {
+    private static final int CHUNK_SIZE = 32 * 1024 * 1024;
+
+    @ClassRule
+    public static final TemporaryFolder FOLDER = new TemporaryFolder();
+
+    // lf line ends, a line with a word across the first chunk boundary, no trailing line feed.
+    private static File spanningFile;
+    private static byte[] spanningContent;
+    // crlf line ends, the first chunk boundary at a line start and the second one between a cr and its lf,
+    // no trailing line feed.
+    private static File crlfFile;
+    private static byte[] crlfContent;
+
+    @BeforeClass
+    public static void writeFiles() throws IOException {
+        StringBuilder lines = new StringBuilder();
+        fill(lines, CHUNK_SIZE - 30, "\n");
+        // timeout starts 3 bytes before the boundary.
+        lines.append("head error zzzzzzzzzzzzzzz timeout gamma and the rest of it error\n");
+        fill(lines, CHUNK_SIZE + 4096, "\n");
+        lines.append("last line with timeout and no line feed");
+        spanningContent = lines.toString().getBytes(StandardCharsets.UTF_8);
+        spanningFile = write("spanning.log", spanningContent);
+
+        lines.setLength(0);
+        lines.append("first error\r\n");
+        fill(lines, CHUNK_SIZE - 7, "\r\n");
+        // the lf is the last byte of the first chunk.
+        lines.append("error\r\n");
+        fill(lines, 2L * CHUNK_SIZE - 6, "\r\n");
+        // the cr is the last byte of the second chunk.
+        lines.append("error\r\n");
+        lines.append("x\r\n");
+        lines.append("\r\n");
+        lines.append("tail timeout error");
+        crlfContent = lines.toString().getBytes(StandardCharsets.UTF_8);
+        crlfFile = write("crlf.log", crlfContent);
+    }
+
+    @Test
+    public void lineSpanningTheChunkBoundaryWithOneWord() throws IOException {
+        assertSearches(spanningFile, spanningContent, Collections.singletonList("error"));
+    }
+
+    @Test
+    public void lineSpanningTheChunkBoundaryWithSeveralWords() throws IOException {
+        assertSearches(spanningFile, spanningContent, Arrays.asList("error", "timeout", "gamma"));
+    }
+
+    @Test
+    public void crlfLinesWithOneWord() throws IOException {
+        assertSearches(crlfFile, crlfContent, Collections.singletonList("error"));
+    }
+
+    @Test
+    public void crlfLinesWithSeveralWords() throws IOException {
+        assertSearches(crlfFile, crlfContent, Arrays.asList("timeout", "error"));
+    }
+
+    @Test
+    public void smallFileWithoutTrailingLineFeed() throws IOException {
+        byte[] content = "alpha\r\nbeta error\n\nerror timeout".getBytes(StandardCharsets.UTF_8);
+        File file = write("small-" + System.nanoTime() + ".log", content);
+        List<String> words = Arrays.asList("error", "timeout");
+
+        List<String> expected = Arrays.asList("2:beta error:12:error", "4:error timeout:19:error", "4:error timeout:25:timeout");
+        assertEquals(expected, expectedHits(content, words));
+        assertEquals(expected, search(new ByteContentSearcher(words, StandardCharsets.UTF_8, ByteContentSearcher.MAX_MMAP_THRESHOLD), file, words));
+        assertEquals(expected, search(new ByteContentSearcher(words, StandardCharsets.UTF_8, 1), file, words));
+    }
+
+    @Test
+    public void fileLimitStopsTheChunkedSearchAfterTheLastTakenLine() throws IOException {
+        List<String> words = Arrays.asList("error", "timeout");
+        ByteContentSearcher searcher = new ByteContentSearcher(words, StandardCharsets.UTF_8, 1, 1);
+        List<String> hits = new ArrayList<>();
+        assertTrue(searcher.search(spanningFile, new MatchLimits(1, Long.MAX_VALUE).file(),
+                (lineNum, line, wordIndex, byteOffset) -> hits.add(lineNum + ":" + words.get(wordIndex))));
+
+        // all the hits of the one taken line, not the one of the last line.
+        List<String> expected = new ArrayList<>();
+        for (String hit : expectedHits(spanningContent, words).subList(0, 2)) {
+            String[] fields = hit.split(":");
+            expected.add(fields[0] + ":" + fields[3]);
+        }
+        assertEquals(expected, hits);
+    }
+
+    /**
+     * the streamed, the mapped and the chunked search report the hits of the reference line split.
+     * */
+    private static void assertSearches(File file, byte[] content, List<String> words) throws IOException {
+        List<String> expected = expectedHits(content, words);
+        assertFalse(expected.isEmpty());
+        assertEquals("streamed", expected, search(new ByteContentSearcher(words, StandardCharsets.UTF_8, ByteContentSearcher.MAX_MMAP_THRESHOLD), file, words));
+        assertEquals("mapped", expected, search(new ByteContentSearcher(words, StandardCharsets.UTF_8, 1), file, words));
+        assertEquals("chunked", expected, search(new ByteContentSearcher(words, StandardCharsets.UTF_8, 1, 1), file, words));
+    }
+
+    private static List<String> search(ByteContentSearcher searcher, File file, List<String> words) throws IOException {
+        List<String> hits = new ArrayList<>();
+        searcher.search(file, (lineNum, line, wordIndex, byteOffset) ->
+                hits.add(lineNum + ":" + line + ":" + byteOffset + ":" + words.get(wordIndex)));
+        return hits;
+    }
+
+    /**
+     * the first hit of every word on every line, in line then offset order, lines are split at lf with the cr dropped.
+     * */
+    private static List<String> expectedHits(byte[] content, List<String> words){
+        List<String> hits = new ArrayList<>();
+        long lineNum = 1;
+        int lineStart = 0;
+        while (lineStart <= content.length){
+            int lineEnd = lineStart;
+            while (lineEnd < content.length && content[lineEnd] != '\n'){
+                lineEnd++;
+            }
+            int textEnd = lineEnd > lineStart && content[lineEnd - 1] == '\r' ? lineEnd - 1 : lineEnd;
+            String line = new String(content, lineStart, textEnd - lineStart, StandardCharsets.UTF_8);
+            List<int[]> lineHits = new ArrayList<>();
+            for (int i = 0; i < words.size(); i++) {
+                int at = line.indexOf(words.get(i));
+                if(at >= 0){
+                    lineHits.add(new int[]{at, i});
+                }
+            }
+            lineHits.sort((h1, h2) -> Integer.compare(h1[0], h2[0]));
+            for (int[] hit : lineHits) {
+                hits.add(lineNum + ":" + line + ":" + (lineStart + hit[0]) + ":" + words.get(hit[1]));
+            }
+            lineNum++;
+            lineStart = lineEnd + 1;
+        }
+        return hits;
+    }
+
+    /**
+     * filler lines without any of the searched words, the next line starts at length.
+     * */
+    private static void fill(StringBuilder lines, long length, String lineEnd){
+        String filler = "xxxxxxx delta xxxxxxxxx beta xxxxxxxx xxxxxx alpha xxxxxxxxxx";
+        while (lines.length() + 2 * (filler.length() + lineEnd.length()) <= length){
+            lines.append(filler).append(lineEnd);
+        }
+        while (lines.length() + lineEnd.length() < length){
+            lines.append('y');
+        }
+        lines.append(lineEnd);
+    }
+
+    private static File write(String name, byte[] content) throws IOException {
+        File file = new File(FOLDER.getRoot(), name);
+        Files.write(file.toPath(), content);
+        return file;
+    }
+}
@@ -0,0 +1,86 @@
+package com.github.search.index;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * the entries saved by {@link FileIndexStore} are the ones its index opens with.
+ */
+public class FileIndexStoreTest {
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void savedEntriesRoundTrip() throws IOException {
+        Path root = folder.newFolder("root").toPath().toRealPath();
+        FileIndexStore store = new FileIndexStore(folder.newFolder("index").toPath(), 1, 16);
+        // unsorted, with shared path prefixes, a non ascii path and a long path.
+        char[] longName = new char[300];
+        Arrays.fill(longName, 'n');
+        List<IndexEntry> entries = Arrays.asList(
+                new IndexEntry("src/main/b.txt", false, 12, 1600000000000L, 0644, "alice", "staff"),
+                new IndexEntry("", true, 0, 1600000000001L, 0755, "alice", "staff"),
+                new IndexEntry("src", true, 0, 1600000000002L, 0755, "alice", "staff"),
+                new IndexEntry("src/main/a.txt", false, 0, 1600000000003L, -1, "", ""),
+                new IndexEntry("src/日志/c.log", false, Long.MAX_VALUE, 0, 0600, "bob", "wheel"),
+                new IndexEntry("src/" + new String(longName), false, 1L << 40, 1600000000004L, 0444, "bob", "staff"));
+
+        store.save(root, entries);
+        FileIndex index = store.open(root, IndexMode.TRUST);
+
+        assertEquals(root, index.root());
+        assertEquals(entries.size(), index.entryCount());
+        List<IndexEntry> expected = new ArrayList<>(entries);
+        expected.sort((e1, e2) -> e1.relativePath().compareTo(e2.relativePath()));
+        List<IndexEntry> loaded = index.entries();
+        assertEquals(expected.size(), loaded.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEntry(expected.get(i), loaded.get(i));
+        }
+    }
+
+    @Test
+    public void scanSkipsTheDirectories() throws IOException {
+        Path root = folder.newFolder("root").toPath().toRealPath();
+        Path indexFile = folder.getRoot().toPath().resolve("root.idx");
+        FileIndex.write(indexFile, root, 1600000000000L, Arrays.asList(
+                new IndexEntry("", true, 0, 1, -1, "", ""),
+                new IndexEntry("a", true, 0, 1, -1, "", ""),
+                new IndexEntry("a/b.txt", false, 3, 1, -1, "", ""),
+                new IndexEntry("c.txt", false, 5, 1, -1, "", "")));
+
+        FileIndex index = FileIndex.load(indexFile);
+        assertEquals(1600000000000L, index.createdMillis());
+        Collection<String> files = index.scan((path, attrs) -> attrs.size() > 0);
+        assertEquals(Arrays.asList(root.resolve("a/b.txt").toString(), root.resolve("c.txt").toString()), new ArrayList<>(files));
+    }
+
+    @Test(expected = IOException.class)
+    public void notAnIndexFileIsAnError() throws IOException {
+        Path indexFile = folder.newFile("broken.idx").toPath();
+        Files.write(indexFile, new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+        FileIndex.load(indexFile);
+    }
+
+    private static void assertEntry(IndexEntry expected, IndexEntry entry){
+        String path = expected.relativePath();
+        assertEquals(path, expected.relativePath(), entry.relativePath());
+        assertEquals(path, expected.isDirectory(), entry.isDirectory());
+        assertEquals(path, expected.size(), entry.size());
+        assertEquals(path, expected.lastModified(), entry.lastModified());
+        assertEquals(path, expected.permissions(), entry.permissions());
+        assertEquals(path, expected.owner(), entry.owner());
+        assertEquals(path, expected.group(), entry.group());
+    }
+}
@@ -0,0 +1,87 @@
+package com.github.search.output;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * the records of the {@link ResultFormat#BINARY} encoder read back by {@link ResultReader}.
+ */
+public class ResultReaderTest {
+    private final RecordEncoder encoder = RecordEncoder.of(ResultFormat.BINARY, StandardCharsets.UTF_8);
+
+    @Test
+    public void recordsRoundTrip() throws IOException {
+        RecordBuffer buffer = new RecordBuffer();
+        encoder.file(buffer, 1, "/data/a.log", 1024, 1600000000123L);
+        encoder.match(buffer, "/data/日志.log", 77, 1600000000456L, 3, 42, "超时", "line 3: 超时 \"quoted\" 😀");
+        encoder.match(buffer, "/data/b.bin", 9, 0, 1, 5, "error", null);
+        encoder.match(buffer, "/data/c.log", 0, -1, 7, -1, "", "");
+        encoder.matchFile(buffer, "/data/c.log", "c.log", 0, -1, true);
+        // nothing without ---files_with_matches.
+        encoder.matchFile(buffer, "/data/c.log", "c.log", 0, -1, false);
+
+        try(ResultReader reader = new ResultReader(new ByteArrayInputStream(bytes(buffer)))){
+            assertRecord(reader.read(), ResultRecord.Type.FILE, "/data/a.log", 1024, 1600000000123L, -1, -1, null, null);
+            assertRecord(reader.read(), ResultRecord.Type.MATCH, "/data/日志.log", 77, 1600000000456L, 3, 42,
+                    "超时", "line 3: 超时 \"quoted\" 😀");
+            assertRecord(reader.read(), ResultRecord.Type.MATCH, "/data/b.bin", 9, 0, 1, 5, "error", null);
+            assertRecord(reader.read(), ResultRecord.Type.MATCH, "/data/c.log", 0, -1, 7, -1, "", "");
+            assertRecord(reader.read(), ResultRecord.Type.MATCH_FILE, "/data/c.log", 0, -1, -1, -1, null, null);
+            assertNull(reader.read());
+        }
+    }
+
+    @Test
+    public void longTextGrowsTheReadBuffer() throws IOException {
+        char[] chars = new char[100000];
+        Arrays.fill(chars, 'é');
+        String text = new String(chars);
+        RecordBuffer buffer = new RecordBuffer();
+        encoder.match(buffer, "/data/long.log", text.length(), 1, 1, 0, "é", text);
+        encoder.file(buffer, 2, "/data/short.log", 1, 1);
+
+        try(ResultReader reader = new ResultReader(new ByteArrayInputStream(bytes(buffer)))){
+            assertEquals(text, reader.read().text());
+            assertEquals("/data/short.log", reader.read().path());
+            assertNull(reader.read());
+        }
+    }
+
+    @Test(expected = EOFException.class)
+    public void truncatedRecordIsAnError() throws IOException {
+        RecordBuffer buffer = new RecordBuffer();
+        encoder.match(buffer, "/data/a.log", 1, 1, 1, 0, "error", "an error line");
+        byte[] bytes = bytes(buffer);
+
+        try(ResultReader reader = new ResultReader(new ByteArrayInputStream(bytes, 0, bytes.length - 3))){
+            reader.read();
+        }
+    }
+
+    private static byte[] bytes(RecordBuffer buffer) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        buffer.writeTo(out);
+        return out.toByteArray();
+    }
+
+    private static void assertRecord(ResultRecord record, ResultRecord.Type type, String path, long size, long lastModified,
+                                     long line, long byteOffset, String word, String text){
+        assertNotNull(record);
+        assertEquals(type, record.type());
+        assertEquals(path, record.path());
+        assertEquals(size, record.size());
+        assertEquals(lastModified, record.lastModified());
+        assertEquals(line, record.line());
+        assertEquals(byteOffset, record.byteOffset());
+        assertEquals(word, record.word());
+        assertEquals(text, record.text());
+    }
+}